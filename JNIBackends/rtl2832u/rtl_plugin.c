@@ -180,25 +180,20 @@ struct demod_state
     jmethodID  onRssiChanged;
 };
 
+/**
+ * The sample ring of the {@code SdrGroupReader}, into which demodulated samples are written.
+ * All members are used only by the demod thread.
+ */
 struct output_state
 {
-	int      exit_flag;
-	pthread_t thread;
-
-	// to access the output stream
-	JavaVM   *jvm;
-	jobject  self;
-    JNIEnv   *env;
-    jobject  tunerOut;
-    jmethodID  write;
-    jbyteArray jdata;
-
-	int16_t  result[MAXIMUM_BUF_LENGTH];
-	int      result_len;
+	jobject  ring;       /**< The {@code SampleRing}, a global reference */
+	int16_t  *samples;   /**< The memory of the direct buffer of the ring */
+	uint32_t capacity;   /**< Capacity of the ring in samples, a power of 2 */
+	uint32_t pos;        /**< Index of the next sample to write, modulo the capacity */
+	jmethodID  getFreeSpace;
+	jmethodID  commit;
+	jmethodID  overrun;
 	int      rate;
-	pthread_rwlock_t rw;
-	pthread_cond_t ready;
-	pthread_mutex_t ready_m;
 };
 
 struct controller_state
@@ -883,6 +878,62 @@ static void *dongle_thread_fn(void *arg)
 	return 0;
 }
 
+/**
+ * @brief Gets hold of the sample ring of the {@code SdrGroupReader}.
+ *
+ * @param s The output state to initialize.
+ * @param env The JNI environment of the demod thread, which writes into the ring.
+ * @param self The {@code SdrGroupReader}.
+ * @return 1 on success, 0 if the ring cannot be accessed.
+ */
+static int output_attach(struct output_state *s, JNIEnv *env, jobject self)
+{
+	jclass clsSelf = (*env)->GetObjectClass(env, self);
+	jfieldID fRing = (*env)->GetFieldID(env, clsSelf, "ring", "Leu/jacquet80/rds/input/SampleRing;");
+	if (!fRing)
+		return 0;
+	jobject ring = (*env)->GetObjectField(env, self, fRing);
+	jclass clsRing = (*env)->GetObjectClass(env, ring);
+	jmethodID getBuffer = (*env)->GetMethodID(env, clsRing, "getBuffer", "()Ljava/nio/ByteBuffer;");
+	s->getFreeSpace = (*env)->GetMethodID(env, clsRing, "getFreeSpace", "()I");
+	s->commit = (*env)->GetMethodID(env, clsRing, "commit", "(I)V");
+	s->overrun = (*env)->GetMethodID(env, clsRing, "overrun", "(I)V");
+	if (!getBuffer || !s->getFreeSpace || !s->commit || !s->overrun)
+		return 0;
+
+	jobject buffer = (*env)->CallObjectMethod(env, ring, getBuffer);
+	s->samples = (*env)->GetDirectBufferAddress(env, buffer);
+	s->capacity = (uint32_t)((*env)->GetDirectBufferCapacity(env, buffer) / 2);
+	s->pos = 0;
+	s->ring = (*env)->NewGlobalRef(env, ring);
+	return s->samples != NULL;
+}
+
+/**
+ * @brief Writes demodulated samples into the sample ring.
+ *
+ * The samples are copied straight into the memory of the ring, then made available to the Java
+ * reader. If the reader lags so much that they do not fit, they are dropped and an overrun is
+ * reported; the demod thread never waits for Java.
+ */
+static void write_output(struct output_state *s, JNIEnv *env, int16_t *samples, int len)
+{
+	uint32_t first;
+
+	if ((*env)->CallIntMethod(env, s->ring, s->getFreeSpace) < len) {
+		(*env)->CallVoidMethod(env, s->ring, s->overrun, len);
+		return;
+	}
+
+	first = s->capacity - s->pos;
+	if (first > (uint32_t)len)
+		first = len;
+	memcpy(s->samples + s->pos, samples, 2*first);
+	memcpy(s->samples, samples + first, 2*(len - first));
+	s->pos = (s->pos + len) & (s->capacity - 1);
+	(*env)->CallVoidMethod(env, s->ring, s->commit, len);
+}
+
 static void *demod_thread_fn(void *arg)
 {
 	struct demod_state *d = arg;
@@ -892,6 +943,12 @@ static void *demod_thread_fn(void *arg)
 	jclass clsSelf = (*(d->env))->GetObjectClass(d->env, d->self);
 	d->onRssiChanged = (*(d->env))->GetMethodID(d->env, clsSelf, "onRssiChanged", "(F)V");
 
+	if (!output_attach(o, d->env, d->self)) {
+		fprintf(stderr, "Could not get reference to sample ring, exiting\n");
+		(*(d->jvm))->DetachCurrentThread(d->jvm);
+		return 0;
+	}
+
 	while (!do_exit) {
 		safe_cond_wait(&d->ready, &d->ready_m);
 		pthread_rwlock_wrlock(&d->rw);
@@ -900,55 +957,14 @@ static void *demod_thread_fn(void *arg)
 		if (d->exit_flag) {
 			do_exit = 1;
 		}
-		pthread_rwlock_wrlock(&o->rw);
-		memcpy(o->result, d->result, 2*d->result_len);
-		o->result_len = d->result_len;
-		pthread_rwlock_unlock(&o->rw);
-		safe_cond_signal(&o->ready, &o->ready_m);
+		write_output(o, d->env, d->result, d->result_len);
 		safe_cond_signal(&controller.hop, &controller.hop_m);
 	}
+	(*(d->env))->DeleteGlobalRef(d->env, o->ring);
 	(*(d->jvm))->DetachCurrentThread(d->jvm);
 	return 0;
 }
 
-static void write_output(struct output_state *s) {
-	int len = 2*s->result_len;
-	void *temp = (*(s->env))->GetPrimitiveArrayCritical(s->env, (jarray) s->jdata, 0);
-	memcpy(temp, &(s->result), len);
-	(*(s->env))->ReleasePrimitiveArrayCritical(s->env, s->jdata, temp, 0);
-	(*(s->env))->CallVoidMethod(s->env, s->tunerOut, s->write, s->jdata, 0, len);
-}
-
-static void *output_thread_fn(void *arg)
-{
-	struct output_state *s = arg;
-
-	(*(s->jvm))->AttachCurrentThread(s->jvm, (void **)&(s->env), NULL);
-	jclass clsSelf = (*(s->env))->GetObjectClass(s->env, s->self);
-	jfieldID fTunerOut = (*(s->env))->GetFieldID(s->env, clsSelf, "tunerOut", "Ljava/io/DataOutputStream;");
-	s->tunerOut = (*(s->env))->GetObjectField(s->env, s->self, fTunerOut);
-	jclass cls = (*(s->env))->GetObjectClass(s->env, s->tunerOut);
-	s->write = (*(s->env))->GetMethodID(s->env, cls, "write", "([BII)V");
-	s->jdata = (*(s->env))->NewByteArray(s->env, 2 * MAXIMUM_BUF_LENGTH);
-
-	if (!s->write || !cls || !s->tunerOut || !fTunerOut || !clsSelf) {
-		fprintf(stderr, "Could not get reference to output stream, exiting\n");
-		return 0;
-	}
-
-	while (!do_exit) {
-		// use timedwait and pad out under runs
-		safe_cond_wait(&s->ready, &s->ready_m);
-		pthread_rwlock_rdlock(&s->rw);
-		write_output(s);
-		pthread_rwlock_unlock(&s->rw);
-	}
-	(*(s->env))->DeleteLocalRef(s->env, s->jdata);
-	(*(s->env))->DeleteGlobalRef(s->env, s->self);
-	(*(s->jvm))->DetachCurrentThread(s->jvm);
-	return 0;
-}
-
 static void optimal_settings(int freq)
 {
 	// giant ball of hacks
@@ -1283,16 +1299,8 @@ void demod_cleanup(struct demod_state *s)
 void output_init(struct output_state *s)
 {
 	s->rate = sampleRateOut;
-	pthread_rwlock_init(&s->rw, NULL);
-	pthread_cond_init(&s->ready, NULL);
-	pthread_mutex_init(&s->ready_m, NULL);
-}
-
-void output_cleanup(struct output_state *s)
-{
-	pthread_rwlock_destroy(&s->rw);
-	pthread_cond_destroy(&s->ready);
-	pthread_mutex_destroy(&s->ready_m);
+	s->ring = NULL;
+	s->samples = NULL;
 }
 
 void controller_init(struct controller_state *s)
@@ -1346,9 +1354,6 @@ JNIEXPORT jboolean JNICALL Java_eu_jacquet80_rds_input_SdrGroupReader_open
 	demod.self = (*env)->NewGlobalRef(env, self);
 	(*env)->GetJavaVM(env, &(demod.jvm));
 
-	output.self = (*env)->NewGlobalRef(env, self);
-	(*env)->GetJavaVM(env, &(output.jvm));
-
 	/* quadruple sample_rate to limit to Δθ to ±π/2 */
 	demod.rate_in *= demod.post_downsample;
 
@@ -1395,7 +1400,6 @@ JNIEXPORT jboolean JNICALL Java_eu_jacquet80_rds_input_SdrGroupReader_open
 
 	pthread_create(&controller.thread, NULL, controller_thread_fn, (void *)(&controller));
 	usleep(100000);
-	pthread_create(&output.thread, NULL, output_thread_fn, (void *)(&output));
 	pthread_create(&demod.thread, NULL, demod_thread_fn, (void *)(&demod));
 
     return 1;
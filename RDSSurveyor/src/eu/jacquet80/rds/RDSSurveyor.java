@@ -25,14 +25,18 @@
 
 package eu.jacquet80.rds;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.lang.reflect.Method;
+import java.sql.SQLException;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 import java.util.prefs.Preferences;
@@ -45,11 +49,16 @@ import com.fazecast.jSerialComm.SerialPort;
 
 import eu.jacquet80.rds.app.oda.TDC;
 import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.core.BandDecoder;
+import eu.jacquet80.rds.core.BatchDecoder;
 import eu.jacquet80.rds.core.BitStreamSynchronizer;
 import eu.jacquet80.rds.core.BitStreamSynchronizer.BitInversion;
 import eu.jacquet80.rds.core.DecoderShell;
+import eu.jacquet80.rds.core.RDS;
 import eu.jacquet80.rds.core.TunedStation;
 import eu.jacquet80.rds.img.Image;
+import eu.jacquet80.rds.input.ArchiveTeeGroupReader;
+import eu.jacquet80.rds.input.AsyncTeeGroupReader;
 import eu.jacquet80.rds.input.AudioBitReader;
 import eu.jacquet80.rds.input.AudioFileBitReader;
 import eu.jacquet80.rds.input.BinStringFileBitReader;
@@ -59,13 +68,15 @@ import eu.jacquet80.rds.input.FileFormatGuesser;
 import eu.jacquet80.rds.input.GnsGroupReader;
 import eu.jacquet80.rds.input.GroupReader;
 import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.IqMpxInputStream;
+import eu.jacquet80.rds.input.IqReader;
 import eu.jacquet80.rds.input.LiveAudioBitReader;
+import eu.jacquet80.rds.input.MultiStreamGroupReader;
 import eu.jacquet80.rds.input.NativeTunerGroupReader;
 import eu.jacquet80.rds.input.SdrGroupReader;
 import eu.jacquet80.rds.input.SyncBinaryFileBitReader;
 import eu.jacquet80.rds.input.TCPTunerGroupReader;
 import eu.jacquet80.rds.input.TeeBitReader;
-import eu.jacquet80.rds.input.TeeGroupReader;
 import eu.jacquet80.rds.input.TunerGroupReader;
 import eu.jacquet80.rds.input.USBFMRadioGroupReader;
 import eu.jacquet80.rds.input.UnavailableInputMethod;
@@ -126,6 +137,8 @@ public class RDSSurveyor {
 		GroupReader reader = null;
 		GroupReader teeReader = null;
 		boolean showGui = true;
+		boolean lazyAnalysis = false;
+		int logMemory = 0;
 		boolean liveInput = false;    // true if input is "live", not playback
 		boolean liveGroupInput = false;
 		boolean scan = false;
@@ -133,11 +146,32 @@ public class RDSSurveyor {
 		Segmenter segmenter = null;
 		File outBinFile = null;
 		File outGroupFile = null;
+		boolean outGroupArchive = false;
+		long syncInterval = AsyncTeeGroupReader.DEFAULT_SYNC_INTERVAL;
 		PrintStream console = System.out;
 		BitStreamSynchronizer.BitInversion inversion = BitInversion.AUTO;
 		BitStreamSynchronizer bitStreamSynchronizer = null;
 		String inLtPath = null;
 		String dbUrl = "jdbc:hsqldb:mem:.";
+		File outSnapshot = null;
+		File inSnapshot = null;
+		int maxCorrectableBurst = BitStreamSynchronizer.DEFAULT_MAX_CORRECTABLE_BURST;
+		int maxSoftFlips = BitStreamSynchronizer.DEFAULT_MAX_SOFT_FLIPS;
+		String batchSpec = null;
+		File batchOutDir = new File(tempDir, "batch");
+		int batchJobs = Runtime.getRuntime().availableProcessors();
+		boolean archiveOutput = false;
+		String widebandPath = null;
+		int iqRate = 2400000;
+		int iqCenter = 0;
+		int iqOffset = 0;
+		File iqFile = null;
+		int channelSpacing = BandDecoder.DEFAULT_SPACING;
+		IqReader.Format iqFormat = IqReader.Format.U8;
+		
+		// the demodulators of MPX inputs are created as soon as their option
+		// is read, so they need to know beforehand which data streams to decode
+		int mpxStreams = Arrays.asList(args).contains("-rds2") ? AudioBitReader.MAX_STREAMS : 1;
 		
 		// RDS Surveyor is non-localized for the time being
 		Locale.setDefault(Locale.US);
@@ -178,7 +212,7 @@ public class RDSSurveyor {
 					reader = bitStreamSynchronizer;
 					liveInput = true;
 				} else if("-inaudiopipe".equals(args[i])) {
-					reader = new BitStreamSynchronizer(console, new AudioBitReader(new DataInputStream(System.in), Integer.parseInt(getParam("inaudiopipe", args, ++i))));
+					reader = MultiStreamGroupReader.forAudio(console, new AudioBitReader(new DataInputStream(System.in), Integer.parseInt(getParam("inaudiopipe", args, ++i)), mpxStreams));
 					liveInput = true;
 				} else if("-inbinfile".equals(args[i])) {
 					reader = new BitStreamSynchronizer(console, new BinaryFileBitReader(new File(getParam("inbinfile", args, ++i))));
@@ -206,7 +240,7 @@ public class RDSSurveyor {
 					liveGroupInput = true;
 				} else if("-inmpxwav".equals(args[i])) {
 					File f = new File(getParam("inmpxwav", args, ++i));
-					reader = new BitStreamSynchronizer(console, new AudioBitReader(f));
+					reader = MultiStreamGroupReader.forAudio(console, new AudioBitReader(f, mpxStreams));
 				} else if("-ingns".equals(args[i])) {
 					int baudRate = 38400;
 					String port = getParam("ingns", args, ++i);
@@ -227,16 +261,66 @@ public class RDSSurveyor {
 					inversion = BitInversion.INVERT;
 				} else if("-noinvert".equals(args[i])) {
 					inversion = BitInversion.NOINVERT;
+				} else if("-correct".equals(args[i])) {
+					maxCorrectableBurst = Integer.parseInt(getParam("correct", args, ++i));
+					if(maxCorrectableBurst < 0 || maxCorrectableBurst > RDS.MAX_BURST_LENGTH) {
+						System.out.println("-correct needs a burst length between 0 and " + RDS.MAX_BURST_LENGTH);
+						System.exit(1);
+					}
+				} else if("-softcorrect".equals(args[i])) {
+					maxSoftFlips = Integer.parseInt(getParam("softcorrect", args, ++i));
+					if(maxSoftFlips < 0 || maxSoftFlips > BitStreamSynchronizer.MAX_SOFT_FLIPS) {
+						System.out.println("-softcorrect needs a number of bits between 0 and " + BitStreamSynchronizer.MAX_SOFT_FLIPS);
+						System.exit(1);
+					}
 				} else if("-inaudiofile".equals(args[i])) {
 					reader = new BitStreamSynchronizer(console, new AudioFileBitReader(new File(getParam("inaudiofile", args, ++i))));
 				} else if("-outbinfile".equals(args[i])) {
 					outBinFile = new File(getParam("outbinfile", args, ++i));
 				} else if("-outgrouphexfile".equals(args[i])) {
 					outGroupFile = new File(getParam("outgrouphexfile", args, ++i));
+					outGroupArchive = false;
+				} else if("-outgrouparchive".equals(args[i])) {
+					outGroupFile = new File(getParam("outgrouparchive", args, ++i));
+					outGroupArchive = true;
+				} else if("-archive".equals(args[i])) {
+					DecoderShell.instance.setArchiveOutput(true);
+					archiveOutput = true;
+				} else if("-rotate".equals(args[i])) {
+					DecoderShell.instance.setRotationPeriod(Integer.parseInt(getParam("rotate", args, ++i)) * 60000L);
+				} else if("-syncinterval".equals(args[i])) {
+					syncInterval = Integer.parseInt(getParam("syncinterval", args, ++i)) * 1000L;
+					DecoderShell.instance.setSyncInterval(syncInterval);
+				} else if("-batch".equals(args[i])) {
+					batchSpec = getParam("batch", args, ++i);
+				} else if("-batchout".equals(args[i])) {
+					batchOutDir = new File(getParam("batchout", args, ++i));
+				} else if("-jobs".equals(args[i])) {
+					batchJobs = Integer.parseInt(getParam("jobs", args, ++i));
+				} else if("-inwideband".equals(args[i])) {
+					widebandPath = getParam("inwideband", args, ++i);
+				} else if("-iniqfile".equals(args[i])) {
+					iqFile = new File(getParam("iniqfile", args, ++i));
+				} else if("-iqoffset".equals(args[i])) {
+					iqOffset = Integer.parseInt(getParam("iqoffset", args, ++i)) * 1000;
+				} else if("-iqrate".equals(args[i])) {
+					iqRate = Integer.parseInt(getParam("iqrate", args, ++i));
+				} else if("-iqcenter".equals(args[i])) {
+					iqCenter = Integer.parseInt(getParam("iqcenter", args, ++i));
+				} else if("-iqformat".equals(args[i])) {
+					iqFormat = IqReader.Format.forName(getParam("iqformat", args, ++i));
+				} else if("-spacing".equals(args[i])) {
+					channelSpacing = Integer.parseInt(getParam("spacing", args, ++i)) * 1000;
+				} else if("-rds2".equals(args[i])) {
+					// already taken into account
 				} else if("-nogui".equals(args[i])) {
 					showGui = false;
 				} else if("-noconsole".equals(args[i])) {
 					console = null;
+				} else if("-lazyanalysis".equals(args[i])) {
+					lazyAnalysis = true;
+				} else if("-logmemory".equals(args[i])) {
+					logMemory = Integer.parseInt(getParam("logmemory", args, ++i));
 				} else if("-segment".equals(args[i])) {
 					console = null;   // implies -noconsole
 					showGui = false;         // implies -nogui
@@ -278,6 +362,17 @@ public class RDSSurveyor {
 					TMC.setCharset(getParam("ltcharset", args, ++i));
 				} else if("-ltdb".equals(args[i])) {
 					dbUrl = String.format("jdbc:hsqldb:file:%s", getParam("ltdb", args, ++i));
+				} else if("-ltcache".equals(args[i])) {
+					int capacity = Integer.parseInt(getParam("ltcache", args, ++i));
+					if(capacity < 1) {
+						System.out.println("-ltcache needs a number of entries of at least 1");
+						System.exit(1);
+					}
+					TMC.setCacheCapacity(capacity);
+				} else if("-ltsnapshot".equals(args[i])) {
+					outSnapshot = new File(getParam("ltsnapshot", args, ++i));
+				} else if("-ltmap".equals(args[i])) {
+					inSnapshot = new File(getParam("ltmap", args, ++i));
 				} else {
 					System.out.println("Unknown argument: " + args[i]);
 					
@@ -294,11 +389,30 @@ public class RDSSurveyor {
 					System.out.println("  -intuner <driver>        Reads from a native tuner, specify driver (.so, .dll, .dylib)");
 					System.out.println("  -insdr <driver>          Reads from an SDR, specify driver (.so, .dll, .dylib)");
 					System.out.println("  -ingns <port>            Reads from a GNS TMC tuner, specify port (tty*, COM*)");
+					System.out.println("  -iniqfile <file>         Use the given I/Q file as input, demodulating the station at its center");
+					System.out.println("  -iqoffset <n>            Frequency of the station relative to the center of the I/Q file, in kHz");
+					System.out.println("  -inwideband <file>       Decode all the FM stations of a wideband I/Q file (- for stdin), then quit");
+					System.out.println("  -iqrate <n>              I/Q sample rate in Hz (default 2400000)");
+					System.out.println("  -iqcenter <n>            Center frequency of the I/Q signal in kHz");
+					System.out.println("  -iqformat <u8|s16>       I/Q sample format (default u8, as recorded by rtl_sdr)");
+					System.out.println("  -spacing <n>             Channel spacing in kHz for -inwideband (default 100)");
+					System.out.println("  -rds2                    Also decode the additional data streams of RDS2 from MPX inputs");
 					System.out.println("  -invert / -noinvert      Force bit inversion (default: auto-detect");
+					System.out.println("  -correct <n>             Correct error bursts up to n bits in bitstreams (0-5, default " + BitStreamSynchronizer.DEFAULT_MAX_CORRECTABLE_BURST + ")");
+					System.out.println("  -softcorrect <n>         Flip up to n of the least reliable bits to correct blocks of MPX inputs (0-3, default " + BitStreamSynchronizer.DEFAULT_MAX_SOFT_FLIPS + ")");
 					System.out.println("  -outbinfile <file>       Write bitstream to binary file (if applicable)");
 					System.out.println("  -outgrouphexfile <file>  Write groups to file (in hexadecimal)");
+					System.out.println("  -outgrouparchive <file>  Write groups to file (compressed binary archive)");
+					System.out.println("  -archive                 Write the default group output file of live inputs (or -batch outputs) as archives");
+					System.out.println("  -rotate <n>              Start a new default group output file every n minutes (0: never, default 60)");
+					System.out.println("  -syncinterval <n>        Write group output files to disk at least every n seconds (default " + AsyncTeeGroupReader.DEFAULT_SYNC_INTERVAL / 1000 + ")");
+					System.out.println("  -batch <dir|pattern>     Decode all the given files (e.g. dir/*.wav) concurrently, then quit");
+					System.out.println("  -batchout <dir>          Write the groups and summary of -batch to the given directory");
+					System.out.println("  -jobs <n>                Decode n files concurrently in -batch mode (default: number of cores)");
 					System.out.println("  -nogui                   Do not show the graphical user interface");
 					System.out.println("  -noconsole               No console analysis");
+					System.out.println("  -lazyanalysis            Render the analysis of groups only when displayed (omits application data)");
+					System.out.println("  -logmemory <n>           Keep at most n log messages in memory, move older ones to disk");
 					System.out.println("  -rds                     Force standard RDS mode (and save as a preference)");
 					System.out.println("  -rbds                    Force American RBDS mode (and save as a preference)");
 					System.out.println("  -tdc <decoder>           Use a given TDC decoder (available decoder: CATRADIO)");
@@ -306,12 +420,22 @@ public class RDSSurveyor {
 					System.out.println("  -lt <path>               Read TMC location tables found at the given path (or subdirs)");
 					System.out.println("  -ltcharset <charset>     Use a specific charset for reading TMC location tables");
 					System.out.println("  -ltdb <path>             Use TMC location database at the given path");
+					System.out.println("  -ltcache <n>             Keep at most n TMC locations and names in memory (default " + TMC.DEFAULT_CACHE_CAPACITY + ")");
+					System.out.println("  -ltsnapshot <file>       Write a snapshot of the TMC location database to the given file");
+					System.out.println("  -ltmap <file>            Look up TMC locations in the given snapshot instead of the database");
 					System.exit(1);
 				}
 			}
 		}
 
-		if ((reader == null) && (inLtPath == null)) {
+		// the I/Q options may come after the file
+		if (iqFile != null) {
+			IqMpxInputStream mpx = new IqMpxInputStream(new IqReader(iqFile, iqFormat), iqRate, iqOffset);
+			mpx.setConsole(console);
+			reader = MultiStreamGroupReader.forAudio(console, new AudioBitReader(new DataInputStream(mpx), mpx.getMpxRate(), mpxStreams));
+		}
+
+		if ((reader == null) && (inLtPath == null) && (outSnapshot == null) && (batchSpec == null) && (widebandPath == null)) {
 			if(showGui) {
 				console = null;
 				InputSelectionDialog dialog = new InputSelectionDialog();
@@ -331,18 +455,72 @@ public class RDSSurveyor {
 			System.out.println("Processing TMC location tables...");
 			TMC.readLocationTables(new File(inLtPath));
 			System.out.println("Done processing TMC location tables.");
-			if (reader == null)
-				System.exit(0);
+		}
+		
+		if (outSnapshot != null) {
+			System.out.println("Writing TMC location snapshot...");
+			try {
+				TMC.writeSnapshot(outSnapshot);
+			} catch (SQLException e) {
+				System.out.println("Could not write TMC location snapshot: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.println("Done writing TMC location snapshot.");
+		}
+		
+		if ((inLtPath != null || outSnapshot != null) && reader == null && batchSpec == null && widebandPath == null)
+			System.exit(0);
+		
+		if (inSnapshot != null)
+			TMC.setSnapshot(inSnapshot);
+		
+		if (widebandPath != null) {
+			InputStream in = "-".equals(widebandPath) ? System.in : new FileInputStream(widebandPath);
+			BandDecoder band = new BandDecoder(iqRate, iqCenter, channelSpacing);
+			try {
+				band.run(new IqReader(new BufferedInputStream(in, 1 << 16), iqFormat));
+			} catch(InterruptedException e) {
+				System.exit(1);
+			}
+			System.exit(0);
+		}
+		
+		if (batchSpec != null) {
+			BatchDecoder batch = new BatchDecoder(batchOutDir, batchJobs);
+			batch.setArchiveOutput(archiveOutput);
+			batch.setMaxCorrectableBurst(maxCorrectableBurst);
+			batch.setMaxSoftFlips(maxSoftFlips);
+			batch.setInversion(inversion);
+			
+			System.out.println("Decoding " + batchSpec + " with " + batchJobs + " jobs into " + batchOutDir.getAbsolutePath());
+			int failed = 0;
+			try {
+				for(BatchDecoder.Result r : batch.run(batchSpec)) {
+					if(r.error != null) failed++;
+				}
+			} catch(InterruptedException e) {
+				System.exit(1);
+			}
+			System.out.println("Done, " + failed + " file(s) failed. Summary in " + new File(batchOutDir, BatchDecoder.SUMMARY_FILE).getAbsolutePath());
+			System.exit(failed == 0 ? 0 : 1);
 		}
 				
 		if (outGroupFile == null)
 			teeReader = reader;
-		else
-			teeReader = new TeeGroupReader(reader, outGroupFile);
+		else if (outGroupArchive)
+			teeReader = new ArchiveTeeGroupReader(reader, outGroupFile);
+		else {
+			teeReader = new AsyncTeeGroupReader(reader, outGroupFile, syncInterval);
+		}
 		
 		// Create a decoder "shell"
 		final PrintStream fConsole = console == null ? nullConsole : console;
 		DecoderShell.instance.setConsole(console);
+		DecoderShell.instance.getLog().setMemoryLimit(logMemory, new File(tempDir));
+		
+		// nobody reads the analysis of groups without a console nor a GUI,
+		// so in this case it is rendered only if really needed
+		DecoderShell.instance.getGroupReader().setAnalysisEnabled(!lazyAnalysis && (console != null || showGui));
 		
 		// Create the input toolbar before wrapping the reader into a station change detector
 		// and possibly a group logger (tee)
@@ -367,6 +545,16 @@ public class RDSSurveyor {
 			bitStreamSynchronizer.forceInversion(inversion);
 		}
 		
+		if(reader instanceof BitStreamSynchronizer) {
+			((BitStreamSynchronizer)reader).setMaxCorrectableBurst(maxCorrectableBurst);
+			((BitStreamSynchronizer)reader).setMaxSoftFlips(maxSoftFlips);
+		} else if(reader instanceof MultiStreamGroupReader) {
+			for(GroupReader stream : ((MultiStreamGroupReader)reader).getStreams()) {
+				((BitStreamSynchronizer)stream).setMaxCorrectableBurst(maxCorrectableBurst);
+				((BitStreamSynchronizer)stream).setMaxSoftFlips(maxSoftFlips);
+			}
+		}
+		
 
 			
 		if(segmenter != null) {
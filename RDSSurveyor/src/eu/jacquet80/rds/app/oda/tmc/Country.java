@@ -1,6 +1,5 @@
 package eu.jacquet80.rds.app.oda.tmc;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** TMC information about a country. */
@@ -17,15 +16,13 @@ public class Country {
 	/**
 	 * @brief Creates a new {@code Country} from a given record.
 	 * 
-	 * This constructor expects one argument, {@code rset}, which must be a result set obtained by
-	 * querying the {@code Countries} table. Prior to calling the constructor, the cursor for
-	 * {@code rset} must be set. The constructor will use the data from the record which the cursor
-	 * points to.
+	 * This constructor expects one argument, {@code rset}, which must be a record of the
+	 * {@code Countries} table.
 	 * 
-	 * @param rset The result set
+	 * @param rset The record
 	 * @throws SQLException
 	 */
-	Country(ResultSet rset) throws SQLException {
+	Country(LocationRecord rset) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.ecc = rset.getString("ECC");
 		// ECC is not mandatory and some countries omit it (e.g. Sweden v2.1)
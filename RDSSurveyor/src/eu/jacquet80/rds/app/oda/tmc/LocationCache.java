@@ -0,0 +1,238 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.util.Arrays;
+
+/**
+ * @brief A bounded cache of the objects read from the location database.
+ *
+ * Entries are keyed by their kind and up to three numbers, typically CID, TABCD and LCD, packed
+ * into a {@code long}, so that lookups allocate nothing. Keys and values are stored in arrays with
+ * open addressing (linear probing). When the cache is full, the CLOCK algorithm evicts an entry
+ * that has not been used since the last time the clock hand passed it. New entries are not marked
+ * as used, so that objects looked up only once go before those looked up repeatedly.
+ *
+ * All methods are thread-safe.
+ */
+public class LocationCache {
+	/** The kinds of cached objects, each with its own key space. */
+	public static enum Kind {
+		/** Any location, by CID, TABCD and LCD. */
+		LOCATION,
+		AREA,
+		ROAD,
+		SEGMENT,
+		/** The first segment of a road or segment, by CID, TABCD and LCD of the latter. */
+		FIRST_SEGMENT,
+		/** The last segment of a road or segment, by CID, TABCD and LCD of the latter. */
+		LAST_SEGMENT,
+		POINT,
+		/** The first point of a road or segment, by CID, TABCD and LCD of the latter. */
+		FIRST_POINT,
+		/** The last point of a road or segment, by CID, TABCD and LCD of the latter. */
+		LAST_POINT,
+		/** A name in the first language, by CID and NID. */
+		NAME,
+		/** A name in a given language, by CID, LID and NID. */
+		LANGUAGE_NAME,
+		/** A location dataset, by CID and TABCD. */
+		DATASET;
+	}
+
+	/** Marks empty slots. Keys are never zero, as their kind is stored plus one. */
+	private static final long EMPTY = 0;
+
+	private long[] keys;
+	private Object[] values;
+	/** Whether each entry has been used since the clock hand last passed it. */
+	private boolean[] referenced;
+	private int mask;
+	private int capacity;
+	private int size = 0;
+	private int hand = 0;
+
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * @brief Creates an empty cache.
+	 *
+	 * @param capacity The maximum number of entries.
+	 */
+	public LocationCache(int capacity) {
+		setCapacity(capacity);
+	}
+
+	/**
+	 * @brief Packs a key.
+	 *
+	 * @param kind The kind of object
+	 * @param a The CID, 12 bits
+	 * @param b The TABCD or LID, 16 bits
+	 * @param c The LCD or NID, 32 bits
+	 */
+	static long key(Kind kind, int a, int b, int c) {
+		return ((long) (kind.ordinal() + 1) << 60) | ((long) (a & 0xFFF) << 48)
+				| ((long) (b & 0xFFFF) << 32) | (c & 0xFFFFFFFFL);
+	}
+
+	private int home(long key) {
+		// MurmurHash3 finalizer, so that consecutive codes do not cluster
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	/**
+	 * @brief Returns the slot of a key, or {@code -1 - slot} of the empty slot where it would go.
+	 */
+	private int find(long key) {
+		int i = home(key);
+		while (keys[i] != EMPTY) {
+			if (keys[i] == key)
+				return i;
+			i = (i + 1) & mask;
+		}
+		return -1 - i;
+	}
+
+	/**
+	 * @brief Returns a cached object, or {@code null} if it is not in the cache.
+	 */
+	public synchronized Object get(Kind kind, int a, int b, int c) {
+		int slot = find(key(kind, a, b, c));
+		if (slot < 0) {
+			misses++;
+			return null;
+		}
+		hits++;
+		referenced[slot] = true;
+		return values[slot];
+	}
+
+	/**
+	 * @brief Adds an object to the cache, evicting another one if the cache is full.
+	 *
+	 * @param value The object, not {@code null}
+	 */
+	public synchronized void put(Kind kind, int a, int b, int c, Object value) {
+		long key = key(kind, a, b, c);
+		int slot = find(key);
+		if (slot < 0) {
+			if (size == capacity) {
+				evict();
+				slot = find(key);
+			}
+			slot = -1 - slot;
+			keys[slot] = key;
+			size++;
+			// a new entry counts as used only once it is looked up again
+			referenced[slot] = false;
+		} else
+			referenced[slot] = true;
+		values[slot] = value;
+	}
+
+	/**
+	 * @brief Advances the clock hand to the first entry not used since its last pass, and evicts it.
+	 */
+	private void evict() {
+		while (true) {
+			if (keys[hand] != EMPTY) {
+				if (!referenced[hand]) {
+					remove(hand);
+					evictions++;
+					return;
+				}
+				referenced[hand] = false;
+			}
+			hand = (hand + 1) & mask;
+		}
+	}
+
+	/**
+	 * @brief Removes an entry, moving back the entries that follow it so that they stay reachable.
+	 */
+	private void remove(int slot) {
+		int i = slot;
+		int j = slot;
+		while (true) {
+			j = (j + 1) & mask;
+			if (keys[j] == EMPTY)
+				break;
+			int h = home(keys[j]);
+			// the entry at j may move to i unless its home is cyclically in (i, j]
+			boolean stays = (i <= j) ? (i < h && h <= j) : (i < h || h <= j);
+			if (!stays) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				referenced[i] = referenced[j];
+				i = j;
+			}
+		}
+		keys[i] = EMPTY;
+		values[i] = null;
+		referenced[i] = false;
+		size--;
+	}
+
+	/**
+	 * @brief Empties the cache. Counters are kept.
+	 */
+	public synchronized void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(values, null);
+		Arrays.fill(referenced, false);
+		size = 0;
+		hand = 0;
+	}
+
+	/**
+	 * @brief Sets the maximum number of entries, and empties the cache.
+	 */
+	public synchronized void setCapacity(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("The cache capacity must be at least 1.");
+		// at most half of the slots are used, so that probe sequences stay short
+		int slots = Integer.highestOneBit(2 * capacity - 1) << 1;
+		this.keys = new long[slots];
+		this.values = new Object[slots];
+		this.referenced = new boolean[slots];
+		this.mask = slots - 1;
+		this.capacity = capacity;
+		this.size = 0;
+		this.hand = 0;
+	}
+
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+
+	public synchronized int size() {
+		return size;
+	}
+
+	/** @brief Returns the number of lookups that found their object. */
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	/** @brief Returns the number of lookups that did not find their object. */
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/** @brief Returns the number of entries evicted to make room for new ones. */
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d/%d entries, %d hits, %d misses, %d evictions",
+				size, capacity, hits, misses, evictions);
+	}
+}
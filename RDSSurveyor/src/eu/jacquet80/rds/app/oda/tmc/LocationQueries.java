@@ -0,0 +1,374 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @brief A connection to the location database, on which each query is prepared only once.
+ *
+ * Lookups borrow a connection from a small pool with {@link #acquire()} and give it back with
+ * {@link #release(LocationQueries)}, so that the decoder and the user interface can query the
+ * database at the same time. Nested lookups on one thread, such as those made by the constructor
+ * of a location to resolve its road or area, share the connection borrowed first. Each nesting
+ * level has its own statements, so that a nested lookup does not close the result set which the
+ * enclosing one is still reading.
+ *
+ * Pooled connections are read-only and commit after each query, so that they hold no locks
+ * between lookups and never block an import.
+ *
+ * When a {@link LocationSnapshot} is set, queries are answered from it instead, without any
+ * connection or lock.
+ *
+ * The time spent in each query and waiting for a connection is recorded, see
+ * {@link #getStatistics()}.
+ */
+public class LocationQueries {
+	/** The queries run on the location database. */
+	public static enum Query {
+		COUNTRY_BY_CCD("select * from Countries where CCD = ? and CID in (select CID from LocationDataSets where TABCD = ?);"),
+		COUNTRY_BY_CID("select * from Countries where CID = ?"),
+		COUNTRY_BY_ECC("select * from Countries where ECC = ?"),
+		DATASET("select * from LocationDataSets where CID = ? AND TABCD = ?"),
+		NAME("select * from Names where CID = ? AND NID = ? ORDER BY LID"),
+		LANGUAGE_NAME("select * from Names where CID = ? AND LID = ? AND NID = ?"),
+		ADMINISTRATIVE_AREA("select * from AdministrativeAreas where CID = ? AND TABCD = ? AND LCD = ?"),
+		OTHER_AREA("select * from OtherAreas where CID = ? AND TABCD = ? AND LCD = ?"),
+		ROAD("select * from Roads where CID = ? AND TABCD = ? AND LCD = ?"),
+		SEGMENT("select * from Segments where CID = ? AND TABCD = ? AND LCD = ?"),
+		SEGMENT_OFFSETS("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?"),
+		FIRST_SEGMENT("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.NEG_OFF_LCD IS NOT NULL)"),
+		LAST_SEGMENT("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.POS_OFF_LCD IS NOT NULL)"),
+		POINT("select * from Points where CID = ? AND TABCD = ? AND LCD = ?"),
+		POINT_OFFSETS("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?"),
+		FIRST_POINT("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.NEG_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)"),
+		LAST_POINT("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.POS_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)"),
+		SEGMENTS_OF_DATASET("select LCD, SEG_LCD, ROA_LCD from Segments where CID = ? AND TABCD = ?"),
+		SEGMENT_OFFSETS_OF_DATASET("select LCD, NEG_OFF_LCD, POS_OFF_LCD from Soffsets where CID = ? AND TABCD = ?"),
+		POINTS_OF_DATASET("select LCD, SEG_LCD, ROA_LCD from Points where CID = ? AND TABCD = ?"),
+		POINT_OFFSETS_OF_DATASET("select LCD, NEG_OFF_LCD, POS_OFF_LCD from Poffsets where CID = ? AND TABCD = ?");
+
+		private final String sql;
+
+		private Query(String sql) {
+			this.sql = sql;
+		}
+	}
+
+	/** The maximum number of connections open at the same time. */
+	public static final int MAX_CONNECTIONS = 4;
+
+	/** Idle connections, also the lock of the pool state. */
+	private static final ArrayList<LocationQueries> idle = new ArrayList<LocationQueries>();
+	private static String url = null;
+	/** Incremented when the database changes, so that connections to the old one are not pooled again. */
+	private static int generation = 0;
+	private static int open = 0;
+
+	/** Answers all queries when a snapshot is used instead of the database. */
+	private static volatile LocationQueries snapshotQueries = null;
+
+	/** The connection borrowed by each thread, if any. */
+	private static final ThreadLocal<LocationQueries> current = new ThreadLocal<LocationQueries>();
+
+	private static final Object statsLock = new Object();
+	private static final long[] queryCounts = new long[Query.values().length];
+	private static final long[] queryTimes = new long[Query.values().length];
+	private static final long[] maxQueryTimes = new long[Query.values().length];
+	private static long acquireCount = 0;
+	private static long acquireTime = 0;
+
+	private final Connection connection;
+	private final LocationSnapshot snapshot;
+	/** The statements prepared for each nesting level, by query. */
+	private final ArrayList<PreparedStatement[]> statements = new ArrayList<PreparedStatement[]>();
+	private final int connectionGeneration;
+	/** How many nested lookups of the owner thread use this connection. */
+	private int depth = 0;
+
+	private LocationQueries(Connection connection, int generation) throws SQLException {
+		this.connection = connection;
+		this.snapshot = null;
+		this.connectionGeneration = generation;
+		connection.setAutoCommit(true);
+		connection.setReadOnly(true);
+	}
+
+	private LocationQueries(LocationSnapshot snapshot) {
+		this.connection = null;
+		this.snapshot = snapshot;
+		this.connectionGeneration = -1;
+	}
+
+	/**
+	 * @brief Sets a snapshot from which to answer queries instead of the database.
+	 *
+	 * @param snapshot The snapshot, or {@code null} to query the database again
+	 */
+	static void setSnapshot(LocationSnapshot snapshot) {
+		snapshotQueries = (snapshot == null) ? null : new LocationQueries(snapshot);
+	}
+
+	/**
+	 * @brief Sets the database to query, closing the idle connections to the previous one.
+	 *
+	 * Connections still in use are closed when they are released.
+	 *
+	 * @param dbUrl The JDBC URL of the database, or {@code null} to stop querying
+	 */
+	static void setDbUrl(String dbUrl) {
+		ArrayList<LocationQueries> toClose;
+		synchronized (idle) {
+			url = dbUrl;
+			generation++;
+			toClose = new ArrayList<LocationQueries>(idle);
+			open -= idle.size();
+			idle.clear();
+			idle.notifyAll();
+		}
+		for (LocationQueries q : toClose)
+			q.close();
+	}
+
+	/**
+	 * @brief Borrows a connection.
+	 *
+	 * If a snapshot is set, it is returned. If the current thread already holds a connection, that
+	 * connection is returned. Otherwise an idle connection is taken from the pool, a new one is
+	 * opened, or the call waits until another thread releases one. Each call must be matched by a
+	 * call to {@link #release(LocationQueries)}.
+	 *
+	 * @throws SQLException if no database is set or a connection cannot be opened
+	 */
+	static LocationQueries acquire() throws SQLException {
+		LocationQueries q = snapshotQueries;
+		if (q != null)
+			return q;
+		q = current.get();
+		if (q != null) {
+			q.depth++;
+			return q;
+		}
+
+		long start = System.nanoTime();
+		String connUrl = null;
+		int connGeneration = 0;
+		synchronized (idle) {
+			while (true) {
+				if (url == null)
+					throw new SQLException("No location database is open.");
+				if (!idle.isEmpty()) {
+					q = idle.remove(idle.size() - 1);
+					break;
+				}
+				if (open < MAX_CONNECTIONS) {
+					open++;
+					connUrl = url;
+					connGeneration = generation;
+					break;
+				}
+				try {
+					idle.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException("Interrupted while waiting for a location database connection.");
+				}
+			}
+		}
+		if (q == null) {
+			try {
+				q = new LocationQueries(DriverManager.getConnection(connUrl), connGeneration);
+			} catch (SQLException e) {
+				synchronized (idle) {
+					open--;
+					idle.notify();
+				}
+				throw e;
+			}
+		}
+		synchronized (statsLock) {
+			acquireCount++;
+			acquireTime += System.nanoTime() - start;
+		}
+
+		q.depth = 1;
+		current.set(q);
+		return q;
+	}
+
+	/**
+	 * @brief Gives back a connection borrowed with {@link #acquire()}.
+	 *
+	 * @param q The connection, may be {@code null} if {@link #acquire()} failed
+	 */
+	static void release(LocationQueries q) {
+		if (q == null || q.snapshot != null || --q.depth > 0)
+			return;
+		current.remove();
+		synchronized (idle) {
+			if (q.connectionGeneration == generation) {
+				idle.add(q);
+				idle.notify();
+				return;
+			}
+			open--;
+		}
+		q.close();
+	}
+
+	/**
+	 * @brief Runs a query and returns its first row.
+	 *
+	 * On the database, the query is prepared on its first use at the current nesting level. The
+	 * row stays valid until the same query is run again at the same nesting level, or until the
+	 * connection is released.
+	 *
+	 * @param query The query
+	 * @param params The parameters of the query, as {@code Integer} or {@code String}
+	 * @return The first row, or {@code null} if the query returns none
+	 */
+	LocationRecord find(Query query, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		LocationRecord res;
+		if (snapshot != null)
+			res = snapshot.find(query, params);
+		else {
+			ResultSet rset = execute(query, params);
+			res = rset.next() ? LocationRecord.of(rset) : null;
+		}
+		record(query, start);
+		return res;
+	}
+
+	/**
+	 * @brief Runs a query and returns integer columns of all its rows.
+	 *
+	 * @param query The query
+	 * @param columns The columns to return
+	 * @param params The parameters of the query, as {@code Integer} or {@code String}
+	 * @return The values of the columns for each row, in no particular order, with -1 for NULL
+	 */
+	int[][] findAll(Query query, String[] columns, Object... params) throws SQLException {
+		long start = System.nanoTime();
+		List<int[]> rows = new ArrayList<int[]>();
+		if (snapshot != null) {
+			for (LocationRecord rec : snapshot.findAll(query, params))
+				rows.add(getInts(rec, columns));
+		} else {
+			ResultSet rset = execute(query, params);
+			LocationRecord rec = LocationRecord.of(rset);
+			while (rset.next())
+				rows.add(getInts(rec, columns));
+		}
+		record(query, start);
+		return rows.toArray(new int[rows.size()][]);
+	}
+
+	private static int[] getInts(LocationRecord rec, String[] columns) throws SQLException {
+		int[] res = new int[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			res[i] = rec.getInt(columns[i]);
+			if (rec.wasNull())
+				res[i] = -1;
+		}
+		return res;
+	}
+
+	private static void record(Query query, long start) {
+		long time = System.nanoTime() - start;
+		synchronized (statsLock) {
+			int i = query.ordinal();
+			queryCounts[i]++;
+			queryTimes[i] += time;
+			if (time > maxQueryTimes[i])
+				maxQueryTimes[i] = time;
+		}
+	}
+
+	private ResultSet execute(Query query, Object... params) throws SQLException {
+		while (statements.size() < depth)
+			statements.add(new PreparedStatement[Query.values().length]);
+		PreparedStatement[] level = statements.get(depth - 1);
+		PreparedStatement stmt = level[query.ordinal()];
+		if (stmt == null) {
+			stmt = connection.prepareStatement(query.sql);
+			level[query.ordinal()] = stmt;
+		}
+		for (int i = 0; i < params.length; i++) {
+			if (params[i] instanceof String)
+				stmt.setString(i + 1, (String) params[i]);
+			else
+				stmt.setInt(i + 1, (Integer) params[i]);
+		}
+		return stmt.executeQuery();
+	}
+
+	private void close() {
+		try {
+			// closing the connection closes its statements
+			if (!connection.isClosed())
+				connection.close();
+		} catch (SQLException e) {
+			// NOP
+		}
+	}
+
+	/** @brief Returns how many times a query has been run. */
+	public static long getQueryCount(Query query) {
+		synchronized (statsLock) {
+			return queryCounts[query.ordinal()];
+		}
+	}
+
+	/** @brief Returns the total time spent running a query, in nanoseconds. */
+	public static long getQueryTime(Query query) {
+		synchronized (statsLock) {
+			return queryTimes[query.ordinal()];
+		}
+	}
+
+	/** @brief Returns the longest time taken by a single run of a query, in nanoseconds. */
+	public static long getMaxQueryTime(Query query) {
+		synchronized (statsLock) {
+			return maxQueryTimes[query.ordinal()];
+		}
+	}
+
+	/** @brief Resets the query statistics. */
+	public static void resetStatistics() {
+		synchronized (statsLock) {
+			for (int i = 0; i < queryCounts.length; i++) {
+				queryCounts[i] = 0;
+				queryTimes[i] = 0;
+				maxQueryTimes[i] = 0;
+			}
+			acquireCount = 0;
+			acquireTime = 0;
+		}
+	}
+
+	/**
+	 * @brief Returns the number of runs, mean and maximum latency of each query that has been run,
+	 * and the mean time taken to get a connection, one per line.
+	 */
+	public static String getStatistics() {
+		StringBuilder res = new StringBuilder();
+		synchronized (statsLock) {
+			for (Query query : Query.values()) {
+				int i = query.ordinal();
+				if (queryCounts[i] == 0)
+					continue;
+				res.append(String.format("%-26s %8d runs, mean %8.1f us, max %8.1f us\n", query,
+						queryCounts[i], queryTimes[i] / 1e3 / queryCounts[i], maxQueryTimes[i] / 1e3));
+			}
+			if (acquireCount > 0)
+				res.append(String.format("%-26s %8d times, mean %8.1f us\n", "connection",
+						acquireCount, acquireTime / 1e3 / acquireCount));
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,60 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * @brief A row of a location table, from which datasets, names and locations are built.
+ *
+ * The methods follow those of {@link ResultSet}: a NULL value is returned as zero, {@code false}
+ * or {@code null}, and {@link #wasNull()} tells whether the last value read was NULL. Rows come
+ * from the database or from a {@link LocationSnapshot}.
+ */
+abstract class LocationRecord {
+	abstract int getInt(String column) throws SQLException;
+
+	abstract float getFloat(String column) throws SQLException;
+
+	abstract String getString(String column) throws SQLException;
+
+	abstract boolean getBoolean(String column) throws SQLException;
+
+	/**
+	 * @brief Whether the last value read was NULL.
+	 */
+	abstract boolean wasNull() throws SQLException;
+
+	/**
+	 * @brief Returns the current row of a result set.
+	 *
+	 * The record reads the result set, so it must not be used once the cursor has moved.
+	 */
+	static LocationRecord of(final ResultSet rset) {
+		return new LocationRecord() {
+			@Override
+			int getInt(String column) throws SQLException {
+				return rset.getInt(column);
+			}
+
+			@Override
+			float getFloat(String column) throws SQLException {
+				return rset.getFloat(column);
+			}
+
+			@Override
+			String getString(String column) throws SQLException {
+				return rset.getString(column);
+			}
+
+			@Override
+			boolean getBoolean(String column) throws SQLException {
+				return rset.getBoolean(column);
+			}
+
+			@Override
+			boolean wasNull() throws SQLException {
+				return rset.wasNull();
+			}
+		};
+	}
+}
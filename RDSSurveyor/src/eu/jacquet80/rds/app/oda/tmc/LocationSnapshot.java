@@ -0,0 +1,638 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.jacquet80.rds.app.oda.tmc.LocationQueries.Query;
+
+/**
+ * @brief A read-only copy of the location database, compiled into a file and memory-mapped.
+ *
+ * Each table is stored as fixed-width rows sorted by their key, with one 32-bit cell per column.
+ * Strings are stored once in a shared pool. Rows are found by binary search on their key. The first
+ * and last points and segments of each road and segment, which take a scan of a whole table in SQL,
+ * are precomputed into a table of their own.
+ *
+ * The mapping is only read, with absolute accesses, so lookups take no lock and a single snapshot
+ * can serve any number of threads. Write a snapshot with {@link #compile(Connection, File)} and read
+ * it with {@link #open(File)}.
+ */
+public class LocationSnapshot {
+	/** "RDSLTSNP" */
+	private static final long MAGIC = 0x5244534C54534E50L;
+	private static final int VERSION = 1;
+
+	/** Stored in integer and boolean cells for NULL. */
+	private static final int NULL = Integer.MIN_VALUE;
+	/** Stored in float cells for NULL. */
+	private static final int NULL_FLOAT = Float.floatToIntBits(Float.NaN);
+	/** Stored in string cells for NULL. */
+	private static final int NULL_STRING = -1;
+
+	private static final byte TYPE_INT = 0;
+	private static final byte TYPE_FLOAT = 1;
+	private static final byte TYPE_STRING = 2;
+	private static final byte TYPE_BOOLEAN = 3;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The tables copied from the database, each followed by its key columns. */
+	private static final String[][] TABLES = {
+		{"Countries", "CID"},
+		{"LocationDataSets", "CID", "TABCD"},
+		{"Names", "CID", "NID", "LID"},
+		{"AdministrativeAreas", "CID", "TABCD", "LCD"},
+		{"OtherAreas", "CID", "TABCD", "LCD"},
+		{"Roads", "CID", "TABCD", "LCD"},
+		{"Segments", "CID", "TABCD", "LCD"},
+		{"Soffsets", "CID", "TABCD", "LCD"},
+		{"Points", "CID", "TABCD", "LCD"},
+		{"Poffsets", "CID", "TABCD", "LCD"},
+	};
+
+	/** The table of first and last points and segments, keyed by the road or segment. */
+	private static final String ENDS = "Ends";
+	private static final String[] ENDS_COLUMNS = {"CID", "TABCD", "LCD", "FIRST_POINT", "LAST_POINT", "FIRST_SEGMENT", "LAST_SEGMENT"};
+
+	/** A table in the snapshot. */
+	private static class Table {
+		final String name;
+		final int nbKeys;
+		final byte[] types;
+		final Map<String, Integer> columns = new HashMap<String, Integer>();
+		final int nbRows;
+		final int offset;
+		final int rowSize;
+
+		Table(String name, int nbKeys, String[] columns, byte[] types, int nbRows, int offset) {
+			this.name = name;
+			this.nbKeys = nbKeys;
+			this.types = types;
+			for (int i = 0; i < columns.length; i++)
+				this.columns.put(columns[i], i);
+			this.nbRows = nbRows;
+			this.offset = offset;
+			this.rowSize = 4 * columns.length;
+		}
+
+		int position(int row, int column) {
+			return offset + row * rowSize + 4 * column;
+		}
+	}
+
+	private final ByteBuffer buffer;
+	private final int poolOffset;
+	private final Table countries, datasets, names, administrativeAreas, otherAreas, roads, segments, soffsets,
+			points, poffsets, ends;
+
+	private LocationSnapshot(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if ((buffer.capacity() < 20) || (buffer.getLong(0) != MAGIC))
+			throw new IOException("Not a location table snapshot");
+		if (buffer.getInt(8) != VERSION)
+			throw new IOException("Unsupported location table snapshot version " + buffer.getInt(8));
+
+		long dirOffset = buffer.getLong(buffer.capacity() - 8);
+		ByteBuffer dup = buffer.duplicate();
+		dup.position((int) dirOffset);
+		byte[] dir = new byte[buffer.capacity() - 8 - (int) dirOffset];
+		dup.get(dir);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(dir));
+		Map<String, Table> tables = new HashMap<String, Table>();
+		int nbTables = in.readInt();
+		for (int t = 0; t < nbTables; t++) {
+			String name = in.readUTF();
+			int nbKeys = in.readInt();
+			String[] columns = new String[in.readInt()];
+			byte[] types = new byte[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				columns[i] = in.readUTF();
+				types[i] = in.readByte();
+			}
+			int nbRows = in.readInt();
+			int offset = in.readInt();
+			tables.put(name, new Table(name, nbKeys, columns, types, nbRows, offset));
+		}
+		this.poolOffset = in.readInt();
+
+		countries = table(tables, "Countries");
+		datasets = table(tables, "LocationDataSets");
+		names = table(tables, "Names");
+		administrativeAreas = table(tables, "AdministrativeAreas");
+		otherAreas = table(tables, "OtherAreas");
+		roads = table(tables, "Roads");
+		segments = table(tables, "Segments");
+		soffsets = table(tables, "Soffsets");
+		points = table(tables, "Points");
+		poffsets = table(tables, "Poffsets");
+		ends = table(tables, ENDS);
+	}
+
+	private static Table table(Map<String, Table> tables, String name) throws IOException {
+		Table res = tables.get(name);
+		if (res == null)
+			throw new IOException("Table " + name + " is missing from the location table snapshot");
+		return res;
+	}
+
+	/**
+	 * @brief Maps a snapshot file into memory.
+	 *
+	 * @param file A file written by {@link #compile(Connection, File)}
+	 */
+	public static LocationSnapshot open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Location table snapshot too large: " + file.getAbsolutePath());
+			// the mapping stays valid once the file is closed
+			return new LocationSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * @brief Returns the number of rows of each table, one table per line.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder res = new StringBuilder();
+		for (Table t : new Table[] {countries, datasets, names, administrativeAreas, otherAreas, roads, segments,
+				soffsets, points, poffsets, ends})
+			res.append(String.format("%-20s %8d rows\n", t.name, t.nbRows));
+		return res.toString();
+	}
+
+	/**
+	 * @brief Runs a query on the snapshot.
+	 *
+	 * @param query The query
+	 * @param params The parameters of the query, as for {@link LocationQueries}
+	 * @return The first row that the query returns on the database, or {@code null} if it returns none
+	 */
+	LocationRecord find(Query query, Object... params) {
+		switch (query) {
+			case COUNTRY_BY_CCD:
+				for (int r = 0; r < countries.nbRows; r++) {
+					Row row = new Row(countries, r);
+					if (params[0].equals(row.getString("CCD")) && (search(datasets, row.getInt("CID"), (Integer) params[1]) >= 0))
+						return row;
+				}
+				return null;
+			case COUNTRY_BY_CID:
+				return get(countries, params);
+			case COUNTRY_BY_ECC:
+				for (int r = 0; r < countries.nbRows; r++) {
+					Row row = new Row(countries, r);
+					if (params[0].equals(row.getString("ECC")))
+						return row;
+				}
+				return null;
+			case DATASET:
+				return get(datasets, params);
+			case NAME:
+				// the first of the rows sorted by LID
+				return get(names, params);
+			case LANGUAGE_NAME: {
+				int cid = (Integer) params[0];
+				int lid = (Integer) params[1];
+				int nid = (Integer) params[2];
+				int lidColumn = names.columns.get("LID");
+				for (int r = search(names, cid, nid); (r >= 0) && (r < names.nbRows) && (compare(names, r, cid, nid) == 0); r++)
+					if (buffer.getInt(names.position(r, lidColumn)) == lid)
+						return new Row(names, r);
+				return null;
+			}
+			case ADMINISTRATIVE_AREA:
+				return get(administrativeAreas, params);
+			case OTHER_AREA:
+				return get(otherAreas, params);
+			case ROAD:
+				return get(roads, params);
+			case SEGMENT:
+				return get(segments, params);
+			case SEGMENT_OFFSETS:
+				return get(soffsets, params);
+			case FIRST_SEGMENT:
+				return end(segments, "FIRST_SEGMENT", params);
+			case LAST_SEGMENT:
+				return end(segments, "LAST_SEGMENT", params);
+			case POINT:
+				return get(points, params);
+			case POINT_OFFSETS:
+				return get(poffsets, params);
+			case FIRST_POINT:
+				return end(points, "FIRST_POINT", params);
+			case LAST_POINT:
+				return end(points, "LAST_POINT", params);
+			default:
+				throw new IllegalArgumentException("Unsupported query " + query);
+		}
+	}
+
+	/**
+	 * @brief Runs a query which returns all the rows of a data set on the snapshot.
+	 *
+	 * @param query The query
+	 * @param params The parameters of the query, as for {@link LocationQueries}
+	 * @return The rows that the query returns on the database
+	 */
+	List<LocationRecord> findAll(Query query, Object... params) {
+		Table table;
+		switch (query) {
+			case SEGMENTS_OF_DATASET:
+				table = segments;
+				break;
+			case SEGMENT_OFFSETS_OF_DATASET:
+				table = soffsets;
+				break;
+			case POINTS_OF_DATASET:
+				table = points;
+				break;
+			case POINT_OFFSETS_OF_DATASET:
+				table = poffsets;
+				break;
+			default:
+				throw new IllegalArgumentException("Unsupported query " + query);
+		}
+		int cid = (Integer) params[0];
+		int tabcd = (Integer) params[1];
+		List<LocationRecord> res = new ArrayList<LocationRecord>();
+		for (int r = search(table, cid, tabcd); (r >= 0) && (r < table.nbRows) && (compare(table, r, cid, tabcd) == 0); r++)
+			res.add(new Row(table, r));
+		return res;
+	}
+
+	/**
+	 * @brief Returns the first row of a table whose key starts with the given integer parameters.
+	 */
+	private Row get(Table table, Object[] params) {
+		int[] key = new int[params.length];
+		for (int i = 0; i < key.length; i++)
+			key[i] = (Integer) params[i];
+		int r = search(table, key);
+		return (r < 0) ? null : new Row(table, r);
+	}
+
+	/**
+	 * @brief Returns the first or last point or segment of a road or segment.
+	 *
+	 * @param params CID, TABCD and LCD of the road or segment
+	 */
+	private Row end(Table table, String column, Object[] params) {
+		int cid = (Integer) params[0];
+		int tabcd = (Integer) params[1];
+		int r = search(ends, cid, tabcd, (Integer) params[2]);
+		if (r < 0)
+			return null;
+		int lcd = buffer.getInt(ends.position(r, ends.columns.get(column)));
+		if (lcd == NULL)
+			return null;
+		r = search(table, cid, tabcd, lcd);
+		return (r < 0) ? null : new Row(table, r);
+	}
+
+	/**
+	 * @brief Returns the first row whose key starts with the given values, or -1 if there is none.
+	 */
+	private int search(Table table, int... key) {
+		int lo = 0;
+		int hi = table.nbRows;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(table, mid, key) < 0)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return ((lo < table.nbRows) && (compare(table, lo, key) == 0)) ? lo : -1;
+	}
+
+	private int compare(Table table, int row, int... key) {
+		for (int k = 0; k < key.length; k++) {
+			int v = buffer.getInt(table.position(row, k));
+			if (v != key[k])
+				return (v < key[k]) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	private String string(int ref) {
+		int pos = poolOffset + ref;
+		byte[] bytes = new byte[buffer.getInt(pos)];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = buffer.get(pos + 4 + i);
+		return new String(bytes, UTF8);
+	}
+
+	/** A row of a table in the snapshot. */
+	private class Row extends LocationRecord {
+		private final Table table;
+		private final int row;
+		private boolean lastNull = false;
+
+		Row(Table table, int row) {
+			this.table = table;
+			this.row = row;
+		}
+
+		private int cell(String column) {
+			Integer i = table.columns.get(column);
+			if (i == null)
+				throw new IllegalArgumentException("Column not found: " + table.name + "." + column);
+			return buffer.getInt(table.position(row, i));
+		}
+
+		@Override
+		int getInt(String column) {
+			int v = cell(column);
+			lastNull = (v == NULL);
+			return lastNull ? 0 : v;
+		}
+
+		@Override
+		float getFloat(String column) {
+			int v = cell(column);
+			lastNull = (v == NULL_FLOAT);
+			return lastNull ? 0 : Float.intBitsToFloat(v);
+		}
+
+		@Override
+		String getString(String column) {
+			int v = cell(column);
+			lastNull = (v == NULL_STRING);
+			return lastNull ? null : string(v);
+		}
+
+		@Override
+		boolean getBoolean(String column) {
+			int v = cell(column);
+			lastNull = (v == NULL);
+			return v == 1;
+		}
+
+		@Override
+		boolean wasNull() {
+			return lastNull;
+		}
+	}
+
+	/** Strings written to a snapshot, each stored once. */
+	private static class StringPool {
+		private final Map<String, Integer> refs = new HashMap<String, Integer>();
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(bytes);
+
+		int intern(String s) throws IOException {
+			Integer ref = refs.get(s);
+			if (ref == null) {
+				ref = out.size();
+				byte[] b = s.getBytes(UTF8);
+				out.writeInt(b.length);
+				out.write(b);
+				refs.put(s, ref);
+			}
+			return ref;
+		}
+	}
+
+	/** Where a table has been written. */
+	private static class TableEntry {
+		String name;
+		int nbKeys;
+		String[] columns;
+		byte[] types;
+		int nbRows;
+		int offset;
+	}
+
+	/**
+	 * @brief Writes a snapshot of the location database to a file.
+	 *
+	 * @param connection A connection to the location database
+	 * @param file The file to write, replaced if it exists
+	 */
+	public static void compile(Connection connection, File file) throws IOException, SQLException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		try {
+			StringPool pool = new StringPool();
+			List<TableEntry> entries = new ArrayList<TableEntry>();
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			for (String[] table : TABLES)
+				entries.add(writeTable(connection, out, pool, table[0], Arrays.copyOfRange(table, 1, table.length)));
+			entries.add(writeEnds(connection, out));
+
+			int poolOffset = out.size();
+			pool.bytes.writeTo(out);
+
+			int dirOffset = out.size();
+			out.writeInt(entries.size());
+			for (TableEntry e : entries) {
+				out.writeUTF(e.name);
+				out.writeInt(e.nbKeys);
+				out.writeInt(e.columns.length);
+				for (int i = 0; i < e.columns.length; i++) {
+					out.writeUTF(e.columns[i]);
+					out.writeByte(e.types[i]);
+				}
+				out.writeInt(e.nbRows);
+				out.writeInt(e.offset);
+			}
+			out.writeInt(poolOffset);
+			if (out.size() < 0)
+				throw new IOException("Location table snapshot too large");
+			out.writeLong(dirOffset);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static byte typeOf(int sqlType, String column) throws SQLException {
+		switch (sqlType) {
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return TYPE_INT;
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+			case Types.REAL:
+			case Types.FLOAT:
+			case Types.DOUBLE:
+				return TYPE_FLOAT;
+			case Types.VARCHAR:
+			case Types.CHAR:
+				return TYPE_STRING;
+			case Types.BOOLEAN:
+			case Types.BIT:
+				return TYPE_BOOLEAN;
+			default:
+				throw new SQLException(String.format("Unsupported type %d for column %s", sqlType, column));
+		}
+	}
+
+	/**
+	 * @brief Copies a table, its key columns first, sorted by key.
+	 */
+	private static TableEntry writeTable(Connection connection, DataOutputStream out, StringPool pool,
+			String name, String[] keys) throws IOException, SQLException {
+		StringBuilder order = new StringBuilder();
+		for (String key : keys)
+			order.append((order.length() == 0) ? "" : ", ").append(key);
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rset = stmt.executeQuery(String.format("select * from %s order by %s", name, order));
+			ResultSetMetaData meta = rset.getMetaData();
+
+			// key columns first, in key order, then the others
+			TableEntry e = new TableEntry();
+			e.name = name;
+			e.nbKeys = keys.length;
+			e.columns = new String[meta.getColumnCount()];
+			e.types = new byte[e.columns.length];
+			int[] sqlColumns = new int[e.columns.length];
+			int n = 0;
+			for (String key : keys)
+				sqlColumns[n++] = rset.findColumn(key);
+			for (int i = 1; i <= e.columns.length; i++)
+				if (!Arrays.asList(keys).contains(meta.getColumnName(i).toUpperCase()))
+					sqlColumns[n++] = i;
+			for (int i = 0; i < e.columns.length; i++) {
+				e.columns[i] = meta.getColumnName(sqlColumns[i]).toUpperCase();
+				e.types[i] = typeOf(meta.getColumnType(sqlColumns[i]), e.columns[i]);
+				if ((i < keys.length) && (e.types[i] != TYPE_INT))
+					throw new SQLException(String.format("Key column %s.%s is not an integer", name, e.columns[i]));
+			}
+
+			e.offset = out.size();
+			while (rset.next()) {
+				for (int i = 0; i < e.columns.length; i++) {
+					int col = sqlColumns[i];
+					switch (e.types[i]) {
+						case TYPE_INT: {
+							int v = rset.getInt(col);
+							out.writeInt(rset.wasNull() ? NULL : v);
+							break;
+						}
+						case TYPE_FLOAT: {
+							float v = rset.getFloat(col);
+							out.writeInt(rset.wasNull() ? NULL_FLOAT : Float.floatToIntBits(v));
+							break;
+						}
+						case TYPE_STRING: {
+							String v = rset.getString(col);
+							out.writeInt((v == null) ? NULL_STRING : pool.intern(v));
+							break;
+						}
+						case TYPE_BOOLEAN: {
+							boolean v = rset.getBoolean(col);
+							out.writeInt(rset.wasNull() ? NULL : (v ? 1 : 0));
+							break;
+						}
+					}
+				}
+				e.nbRows++;
+			}
+			return e;
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private static long endKey(int cid, int tabcd, int lcd) {
+		return ((long) cid << 48) | ((long) (tabcd & 0xFFFF) << 32) | (lcd & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * @brief Finds, for each road or segment, the points or segments which have no offset in one
+	 * direction, as the {@code FIRST_*} and {@code LAST_*} queries of {@link LocationQueries} do.
+	 *
+	 * When several rows match, the one with the lowest location code is kept.
+	 *
+	 * @param firstColumn Where the first point or segment goes in the rows of {@code ends}
+	 */
+	private static void findEnds(Connection connection, String sql, TreeMap<Long, int[]> ends, int firstColumn)
+			throws SQLException {
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet rset = stmt.executeQuery(sql);
+			while (rset.next()) {
+				int cid = rset.getInt("CID");
+				int tabcd = rset.getInt("TABCD");
+				int lcd = rset.getInt("LCD");
+				rset.getInt("NEG_OFF_LCD");
+				boolean first = rset.wasNull();
+				rset.getInt("POS_OFF_LCD");
+				boolean last = rset.wasNull();
+				for (String parent : new String[] {"SEG_LCD", "ROA_LCD"}) {
+					int parentLcd = rset.getInt(parent);
+					if (rset.wasNull())
+						continue;
+					Long key = endKey(cid, tabcd, parentLcd);
+					int[] row = ends.get(key);
+					if (row == null) {
+						row = new int[] {NULL, NULL, NULL, NULL};
+						ends.put(key, row);
+					}
+					if (first && (row[firstColumn] == NULL))
+						row[firstColumn] = lcd;
+					if (last && (row[firstColumn + 1] == NULL))
+						row[firstColumn + 1] = lcd;
+				}
+			}
+		} finally {
+			stmt.close();
+		}
+	}
+
+	private static TableEntry writeEnds(Connection connection, DataOutputStream out) throws IOException, SQLException {
+		TreeMap<Long, int[]> ends = new TreeMap<Long, int[]>();
+		findEnds(connection, "select P.CID, P.TABCD, P.LCD, P.SEG_LCD, P.ROA_LCD, O.NEG_OFF_LCD, O.POS_OFF_LCD "
+				+ "from Points P left join Poffsets O on O.CID = P.CID and O.TABCD = P.TABCD and O.LCD = P.LCD "
+				+ "where P.INTERRUPTSROAD is null or P.INTERRUPTSROAD = 0 order by P.CID, P.TABCD, P.LCD", ends, 0);
+		findEnds(connection, "select S.CID, S.TABCD, S.LCD, S.SEG_LCD, S.ROA_LCD, O.NEG_OFF_LCD, O.POS_OFF_LCD "
+				+ "from Segments S left join Soffsets O on O.CID = S.CID and O.TABCD = S.TABCD and O.LCD = S.LCD "
+				+ "order by S.CID, S.TABCD, S.LCD", ends, 2);
+
+		TableEntry e = new TableEntry();
+		e.name = ENDS;
+		e.nbKeys = 3;
+		e.columns = ENDS_COLUMNS;
+		e.types = new byte[e.columns.length];
+		e.offset = out.size();
+		for (Map.Entry<Long, int[]> end : ends.entrySet()) {
+			long key = end.getKey();
+			out.writeInt((int) (key >>> 48));
+			out.writeInt((int) ((key >>> 32) & 0xFFFF));
+			out.writeInt((int) key);
+			for (int v : end.getValue())
+				out.writeInt(v);
+			e.nbRows++;
+		}
+		return e;
+	}
+}
@@ -0,0 +1,369 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * @brief Imports location table files into the database.
+ *
+ * Files are parsed into typed rows on worker threads, while the thread which calls {@link #run()}
+ * inserts them in batches, one table after the other, in the order in which they were added. Files
+ * added before the import starts, including those of other datasets, are parsed ahead while earlier
+ * tables are being written, which keeps the single writer busy.
+ *
+ * Rows which violate an integrity constraint are skipped, as with single inserts.
+ */
+class LocationTableImporter {
+	/** The number of rows inserted with each {@code executeBatch()}. */
+	static final int BATCH_SIZE = 1000;
+
+	/** The number of parsed batches waiting for the writer, per file. */
+	private static final int QUEUE_BATCHES = 8;
+
+	/** How often progress is reported while importing a large file, in rows. */
+	private static final int PROGRESS_ROWS = 100000;
+
+	/** Marks the end of a file in a queue of batches. */
+	private static final List<Object[]> END = new ArrayList<Object[]>();
+
+	private final Connection connection;
+	private final ExecutorService parsers;
+	/** The types of the columns of each table, by column name. */
+	private final Map<String, Map<String, Integer>> columnTypes = new HashMap<String, Map<String, Integer>>();
+	private final List<TableFile> files = new ArrayList<TableFile>();
+	private long totalRows = 0;
+
+	/** A file being imported into a table. */
+	private static class TableFile {
+		final String table;
+		final File file;
+		final BlockingQueue<List<Object[]>> batches = new ArrayBlockingQueue<List<Object[]>>(QUEUE_BATCHES);
+		/** Set by the parser before it queues the first batch. */
+		volatile String[] fields;
+		volatile int[] types;
+		volatile Exception error;
+
+		TableFile(String table, File file) {
+			this.table = table;
+			this.file = file;
+		}
+	}
+
+	/**
+	 * @brief Creates an importer.
+	 *
+	 * @param connection The connection on which rows are inserted, which must not be in auto-commit
+	 * mode
+	 */
+	LocationTableImporter(Connection connection) {
+		this.connection = connection;
+		int nbThreads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		this.parsers = Executors.newFixedThreadPool(nbThreads, new ThreadFactory() {
+			private int count = 0;
+
+			@Override
+			public synchronized Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "LT-Parser-" + (++count));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * @brief Adds a file to import, and starts parsing it.
+	 *
+	 * Nothing happens if the file does not exist.
+	 *
+	 * @param table The table in which the rows will be stored
+	 * @param file The file to import (a file from a LT in exchange format)
+	 */
+	void add(String table, File file) throws SQLException {
+		if (!file.exists())
+			return;
+		if (!columnTypes.containsKey(table))
+			columnTypes.put(table, readColumnTypes(table));
+		final Map<String, Integer> types = columnTypes.get(table);
+		final TableFile tf = new TableFile(table, file);
+		files.add(tf);
+		/*
+		 * Tasks start in the order in which they are submitted, and the writer takes files in that
+		 * order too, so the file it waits for has always been started: a parser blocked on a full
+		 * queue never prevents it from being parsed.
+		 */
+		parsers.execute(new Runnable() {
+			@Override
+			public void run() {
+				parse(tf, types);
+			}
+		});
+	}
+
+	/**
+	 * @brief Returns the types of all the columns of a table.
+	 */
+	private Map<String, Integer> readColumnTypes(String table) throws SQLException {
+		Map<String, Integer> res = new HashMap<String, Integer>();
+		PreparedStatement stmt = connection.prepareStatement(String.format("select * from %s limit 1;", table));
+		try {
+			ResultSetMetaData meta = stmt.executeQuery().getMetaData();
+			for (int i = 1; i <= meta.getColumnCount(); i++)
+				res.put(meta.getColumnName(i).toUpperCase(), meta.getColumnType(i));
+		} finally {
+			stmt.close();
+		}
+		return res;
+	}
+
+	/**
+	 * @brief Splits a line of a location table file into its fields.
+	 *
+	 * Unlike {@code Pattern.split()}, trailing empty fields are kept.
+	 */
+	static String[] splitLine(String line) {
+		int count = 1;
+		for (int i = line.indexOf(';'); i >= 0; i = line.indexOf(';', i + 1))
+			count++;
+		String[] res = new String[count];
+		int start = 0;
+		for (int i = 0; i < count - 1; i++) {
+			int end = line.indexOf(';', start);
+			res[i] = line.substring(start, end);
+			start = end + 1;
+		}
+		res[count - 1] = line.substring(start);
+		return res;
+	}
+
+	/**
+	 * @brief Converts a field of a location table file to the value stored in the database.
+	 *
+	 * @return The value, or {@code null} to store NULL
+	 */
+	private static Object convert(String value, int type) {
+		if (value.isEmpty())
+			return null;
+		switch (type) {
+			case Types.BOOLEAN:
+				return Boolean.parseBoolean(value);
+			case Types.DECIMAL:
+				/* Special case: this is the only type which requires conversion.
+				 * DECIMAL is currently used only for two columns, Points.XCOORD and Points.YCOORD.
+				 * Both are represented as 1/100000s of a degree in the source files and are
+				 * converted to degrees on import.
+				 * If further DECIMAL columns are introduced in the DB at a later stage, extra
+				 * logic may be needed here.
+				 */
+				return Integer.parseInt(value) / 100000.0f;
+			case Types.INTEGER:
+				return Integer.parseInt(value);
+			case Types.VARCHAR:
+				return value;
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @brief Parses a file into batches of rows, on a worker thread.
+	 */
+	private void parse(TableFile tf, Map<String, Integer> columns) {
+		try {
+			try {
+				BufferedReader br = TMC.openLTFile(tf.file);
+				try {
+					String[] fields = TMC.getFields(br.readLine());
+					int[] types = new int[fields.length];
+					for (int i = 0; i < fields.length; i++) {
+						Integer type = columns.get(fields[i].toUpperCase());
+						if (type == null) {
+							System.err.println(String.format("Could not determine type for column %s", fields[i]));
+							types[i] = Types.NULL;
+						} else
+							types[i] = type;
+						if ((types[i] != Types.BOOLEAN) && (types[i] != Types.DECIMAL)
+								&& (types[i] != Types.INTEGER) && (types[i] != Types.VARCHAR))
+							System.err.println(String.format("Unknown type for parameter %d (%s.%s), type %d", i, tf.table, fields[i], types[i]));
+					}
+					tf.types = types;
+					tf.fields = fields;
+
+					List<Object[]> batch = new ArrayList<Object[]>(BATCH_SIZE);
+					String line;
+					while ((line = br.readLine()) != null)
+						if (line.length() > 0) {
+							String[] values = splitLine(line);
+							Object[] row = new Object[fields.length];
+							for (int i = 0; i < fields.length && i < values.length; i++)
+								row[i] = convert(values[i], types[i]);
+							batch.add(row);
+							if (batch.size() == BATCH_SIZE) {
+								tf.batches.put(batch);
+								batch = new ArrayList<Object[]>(BATCH_SIZE);
+							}
+						}
+					if (!batch.isEmpty())
+						tf.batches.put(batch);
+				} finally {
+					br.close();
+				}
+			} catch (Exception e) {
+				tf.error = e;
+			}
+			tf.batches.put(END);
+		} catch (InterruptedException e) {
+			// the import has been abandoned
+		}
+	}
+
+	/**
+	 * @brief Inserts the rows of all the files added so far, one table after the other.
+	 *
+	 * Each file is committed once all its rows are inserted. A file which cannot be read or inserted
+	 * is reported and skipped.
+	 */
+	void run() throws InterruptedException {
+		long start = System.nanoTime();
+		for (TableFile tf : files)
+			write(tf);
+		files.clear();
+		double secs = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Imported %d rows in %.1f s (%.0f rows/s)", totalRows, secs, totalRows / secs));
+	}
+
+	/**
+	 * @brief Stops the worker threads.
+	 */
+	void close() {
+		parsers.shutdownNow();
+	}
+
+	private void write(TableFile tf) throws InterruptedException {
+		long start = System.nanoTime();
+		int rows = 0;
+		int skipped = 0;
+		PreparedStatement stmt = null;
+		List<Object[]> batch = null;
+		try {
+			batch = tf.batches.take();
+			if (tf.error != null)
+				throw tf.error;
+
+			StringBuilder stmtBuilder = new StringBuilder("insert into ");
+			stmtBuilder.append(tf.table);
+			stmtBuilder.append(" (");
+			for (int i = 0; i < tf.fields.length; i++) {
+				if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
+					stmtBuilder.append(", ");
+				stmtBuilder.append(tf.fields[i]);
+			}
+			stmtBuilder.append(") VALUES (");
+			for (int i = 0; i < tf.fields.length; i++) {
+				if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
+					stmtBuilder.append(", ");
+				stmtBuilder.append("?");
+			}
+			stmtBuilder.append(");");
+			stmt = connection.prepareStatement(stmtBuilder.toString());
+
+			for (; batch != END; batch = tf.batches.take()) {
+				int batchSkipped = insert(stmt, tf.types, batch);
+				skipped += batchSkipped;
+				rows += batch.size() - batchSkipped;
+				if (rows % PROGRESS_ROWS < batch.size() - batchSkipped)
+					System.out.println(String.format("  %s: %d rows", tf.table, rows));
+			}
+			if (tf.error != null)
+				throw tf.error;
+			connection.commit();
+		} catch (InterruptedException e) {
+			throw e;
+		} catch (Exception e) {
+			System.err.println(String.format("Error importing %s into %s:", tf.file.getAbsolutePath(), tf.table));
+			e.printStackTrace(System.err);
+			try {
+				connection.rollback();
+			} catch (SQLException e1) {
+				// NOP
+			}
+			// let the parser finish
+			while (batch != END)
+				batch = tf.batches.take();
+			return;
+		} finally {
+			if (stmt != null)
+				try {
+					stmt.close();
+				} catch (SQLException e) {
+					// NOP
+				}
+		}
+
+		totalRows += rows;
+		double secs = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("Imported %d rows into %s from %s in %.2f s (%.0f rows/s)",
+				rows, tf.table, tf.file.getAbsolutePath(), secs, rows / secs));
+		if (skipped > 0)
+			System.err.println(String.format("%d records from %s were skipped due to integrity constraint violations.", skipped, tf.file.getAbsolutePath()));
+	}
+
+	/**
+	 * @brief Inserts rows as a batch, skipping those which violate an integrity constraint.
+	 *
+	 * @param stmt The insert statement
+	 * @param types The SQL types of the parameters
+	 * @param rows The rows
+	 * @return The number of rows skipped
+	 */
+	private static int insert(PreparedStatement stmt, int[] types, List<Object[]> rows) throws SQLException {
+		int skipped = 0;
+		int from = 0;
+		while (from < rows.size()) {
+			for (int r = from; r < rows.size(); r++) {
+				Object[] row = rows.get(r);
+				for (int i = 0; i < row.length; i++) {
+					Object value = row[i];
+					if (value == null)
+						stmt.setNull(i + 1, types[i]);
+					else if (value instanceof Integer)
+						stmt.setInt(i + 1, (Integer) value);
+					else if (value instanceof String)
+						stmt.setString(i + 1, (String) value);
+					else if (value instanceof Float)
+						stmt.setFloat(i + 1, (Float) value);
+					else
+						stmt.setBoolean(i + 1, (Boolean) value);
+				}
+				stmt.addBatch();
+			}
+			try {
+				stmt.executeBatch();
+				return skipped;
+			} catch (BatchUpdateException e) {
+				// class 23 is for integrity constraint violations, anything else is an error
+				if ((e.getSQLState() == null) || !e.getSQLState().startsWith("23"))
+					throw e;
+				stmt.clearBatch();
+				skipped++;
+				// the batch stops at the row which failed: skip it and go on with the next ones
+				from += e.getUpdateCounts().length + 1;
+			}
+		}
+		return skipped;
+	}
+}
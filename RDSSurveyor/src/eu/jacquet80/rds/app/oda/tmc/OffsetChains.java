@@ -0,0 +1,182 @@
+package eu.jacquet80.rds.app.oda.tmc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @brief The points or the segments of a location data set, in the order of their offsets.
+ *
+ * Offsets link each location to its neighbors in either direction, so that walking to the location
+ * at a given extent takes one lookup per step. Here each sequence of linked locations is stored as
+ * an array, ordered from negative to positive direction, and the position of each location in its
+ * array is known: the location at any extent and direction is a single index.
+ *
+ * Only sequences whose links agree in both directions are stored. Locations in any other sequence,
+ * such as a loop or two sequences merging, are not indexed and their offsets must be walked.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+class OffsetChains {
+	/** The columns read from the {@code Points} or {@code Segments} table. */
+	static final String[] LOCATION_COLUMNS = {"LCD", "SEG_LCD", "ROA_LCD"};
+
+	/** The columns read from the {@code Poffsets} or {@code Soffsets} table. */
+	static final String[] OFFSET_COLUMNS = {"LCD", "NEG_OFF_LCD", "POS_OFF_LCD"};
+
+	private static final int[] NONE = new int[0];
+
+	/** All the location codes, sorted. */
+	private final int[] lcds;
+	/** For each location code, the chain it belongs to, or -1. */
+	private final int[] chainOf;
+	/** For each location code, its index in its chain. */
+	private final int[] position;
+	/** The location codes of each chain, from negative to positive direction. */
+	private final int[][] chains;
+	/** The locations of each road or segment, by location code of the road or segment. */
+	private final Map<Integer, int[]> members;
+
+	private OffsetChains(int[] lcds, int[] chainOf, int[] position, int[][] chains, Map<Integer, int[]> members) {
+		this.lcds = lcds;
+		this.chainOf = chainOf;
+		this.position = position;
+		this.chains = chains;
+		this.members = members;
+	}
+
+	/**
+	 * @brief Builds the chains of a location data set.
+	 *
+	 * @param locations The {@link #LOCATION_COLUMNS} of all the points or segments of the data set,
+	 * with -1 for NULL
+	 * @param offsets The {@link #OFFSET_COLUMNS} of all their offsets, with -1 for NULL
+	 */
+	static OffsetChains build(int[][] locations, int[][] offsets) {
+		locations = locations.clone();
+		Arrays.sort(locations, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] lhs, int[] rhs) {
+				return (lhs[0] < rhs[0]) ? -1 : ((lhs[0] == rhs[0]) ? 0 : 1);
+			}
+		});
+		int n = locations.length;
+		int[] lcds = new int[n];
+		for (int i = 0; i < n; i++)
+			lcds[i] = locations[i][0];
+
+		// links between indices in lcds, -1 where there is no link or the location does not exist
+		int[] neg = new int[n];
+		int[] pos = new int[n];
+		Arrays.fill(neg, -1);
+		Arrays.fill(pos, -1);
+		for (int[] offset : offsets) {
+			int i = Arrays.binarySearch(lcds, offset[0]);
+			if (i < 0)
+				continue;
+			neg[i] = (offset[1] == -1) ? -1 : Math.max(-1, Arrays.binarySearch(lcds, offset[1]));
+			pos[i] = (offset[2] == -1) ? -1 : Math.max(-1, Arrays.binarySearch(lcds, offset[2]));
+		}
+
+		int[] chainOf = new int[n];
+		int[] position = new int[n];
+		Arrays.fill(chainOf, -1);
+		List<int[]> chains = new ArrayList<int[]>();
+		Map<Integer, List<Integer>> members = new HashMap<Integer, List<Integer>>();
+		List<Integer> chain = new ArrayList<Integer>();
+		for (int head = 0; head < n; head++) {
+			if ((neg[head] != -1) || (pos[head] == -1))
+				continue;
+			/*
+			 * Each location has a single negative offset, which must be the previous one in the chain:
+			 * this rules out both loops, which cannot return to the head, and merging chains.
+			 */
+			chain.clear();
+			boolean consistent = true;
+			for (int i = head; i != -1; i = pos[i]) {
+				if ((i != head) && (neg[i] != chain.get(chain.size() - 1))) {
+					consistent = false;
+					break;
+				}
+				chain.add(i);
+			}
+			if (!consistent)
+				continue;
+
+			int[] chainLcds = new int[chain.size()];
+			for (int k = 0; k < chainLcds.length; k++) {
+				int i = chain.get(k);
+				chainLcds[k] = lcds[i];
+				chainOf[i] = chains.size();
+				position[i] = k;
+				addMember(members, locations[i]);
+			}
+			chains.add(chainLcds);
+		}
+		// locations outside any chain come after the chains of their road or segment
+		for (int i = 0; i < n; i++)
+			if (chainOf[i] == -1)
+				addMember(members, locations[i]);
+
+		Map<Integer, int[]> memberArrays = new HashMap<Integer, int[]>();
+		for (Map.Entry<Integer, List<Integer>> entry : members.entrySet()) {
+			int[] array = new int[entry.getValue().size()];
+			for (int k = 0; k < array.length; k++)
+				array[k] = entry.getValue().get(k);
+			memberArrays.put(entry.getKey(), array);
+		}
+		return new OffsetChains(lcds, chainOf, position, chains.toArray(new int[chains.size()][]), memberArrays);
+	}
+
+	private static void addMember(Map<Integer, List<Integer>> members, int[] location) {
+		for (int k = 1; k < LOCATION_COLUMNS.length; k++) {
+			if (location[k] == -1)
+				continue;
+			List<Integer> list = members.get(location[k]);
+			if (list == null) {
+				list = new ArrayList<Integer>();
+				members.put(location[k], list);
+			}
+			list.add(location[0]);
+		}
+	}
+
+	/**
+	 * @brief Returns the location at the given offset in the given direction from another one.
+	 *
+	 * As when walking the offsets, the last location of the chain is returned if the extent goes
+	 * beyond it.
+	 *
+	 * @param lcd The location code of the location from which to start
+	 * @param extent The extent (i.e. number of steps) as indicated in the TMC message.
+	 * @param direction The direction as indicated in the TMC message (0 = positive, 1 = negative).
+	 * @return The location code of the location, or -1 if {@code lcd} is not part of a chain
+	 */
+	int getOffset(int lcd, int extent, int direction) {
+		int i = Arrays.binarySearch(lcds, lcd);
+		if ((i < 0) || (chainOf[i] == -1))
+			return -1;
+		int[] chain = chains[chainOf[i]];
+		if (extent <= 0)
+			return lcd;
+		long target = position[i] + ((direction == 0) ? (long) extent : -(long) extent);
+		return chain[(int) Math.max(0, Math.min(chain.length - 1, target))];
+	}
+
+	/**
+	 * @brief Returns the points or segments of a road or segment.
+	 *
+	 * These are the locations whose {@code ROA_LCD} or {@code SEG_LCD} is the given location code.
+	 * Locations which are part of a chain come first, in the order of their offsets.
+	 *
+	 * @param lcd The location code of the road or segment
+	 * @return The location codes, which may be empty
+	 */
+	int[] getMembers(int lcd) {
+		int[] res = members.get(lcd);
+		return (res == null) ? NONE : res;
+	}
+}
@@ -1,6 +1,5 @@
 package eu.jacquet80.rds.app.oda.tmc;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** Describes a TMC ROAD location. */
@@ -16,15 +15,13 @@ public class Road extends TMCLocation {
 	/**
 	 * @brief Creates a new {@code Road} from a given record.
 	 * 
-	 * This constructor expects one argument, {@code rset}, which must be a result set obtained by
-	 * querying the {@code Roads} table. Prior to calling the constructor, the cursor for
-	 * {@code rset} must be set. The constructor will use the data from the record which the cursor
-	 * points to.
+	 * This constructor expects one argument, {@code rset}, which must be a record of the {@code Roads}
+	 * table.
 	 * 
-	 * @param rset The result set
+	 * @param rset The record
 	 * @throws SQLException
 	 */
-	Road(ResultSet rset) throws SQLException {
+	Road(LocationRecord rset) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.tabcd = rset.getInt("TABCD");
 		this.lcd = rset.getInt("LCD");
@@ -45,6 +45,22 @@ public class Segment extends TMCLocation {
 	 * @throws SQLException
 	 */
 	public Segment(ResultSet rset, ResultSet offsets) throws SQLException {
+		this(LocationRecord.of(rset), (offsets == null) ? null : LocationRecord.of(offsets));
+	}
+
+	/**
+	 * @brief Creates a new {@code Segment} from a given record.
+	 * 
+	 * This constructor expects two arguments, {@code rset} and {@code offsets}. {@code rset} must be a
+	 * record of the {@code Segments} table. {@code offsets} must be a record of the {@code Soffsets}
+	 * table. It can be {@code null}, in which case the segment will have no offsets in either
+	 * direction and no extents can be resolved for this segment.
+	 * 
+	 * @param rset The record containing the segment.
+	 * @param offsets The record containing the offset. This argument can be {@code null}.
+	 * @throws SQLException
+	 */
+	Segment(LocationRecord rset, LocationRecord offsets) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.tabcd = rset.getInt("TABCD");
 		this.lcd = rset.getInt("LCD");
@@ -198,12 +214,27 @@ public class Segment extends TMCLocation {
 	 * the respective direction. The extent of a valid TMC message will never exceed the boundaries
 	 * of the list. If this method is nonetheless called with an invalid extent, the last location
 	 * in the linked list is returned to ensure that this method always returns a valid location.
+	 * 
+	 * The location is looked up directly in the offset chains of the data set, which are built once.
+	 * The list is walked only for locations which are not part of a chain.
 	 *
 	 * @param extent The extent (i.e. number of steps) as indicated in the TMC message.
 	 * @param direction The direction as indicated in the TMC message (0 = positive, 1 = negative).
 	 */
 	@Override
 	public Segment getOffset(int extent, int direction) {
+		if (extent <= 0)
+			return this;
+		OffsetChains chains = TMC.getSegmentChains(this.cid, this.tabcd);
+		int lcd = (chains == null) ? -1 : chains.getOffset(this.lcd, extent, direction);
+		if (lcd == this.lcd)
+			return this;
+		if (lcd != -1) {
+			Segment offset = TMC.getSegment(this.cid, this.tabcd, lcd);
+			if (offset != null)
+				return offset;
+		}
+		
 		Segment ret = this;
 		for (int i = 1; i <= extent; i++)
 			if ((direction == 0) && (ret.getPosOffset() != null))
@@ -13,14 +13,17 @@ import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.SQLIntegrityConstraintViolationException;
-import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
+import eu.jacquet80.rds.app.oda.tmc.LocationCache.Kind;
+import eu.jacquet80.rds.app.oda.tmc.LocationQueries.Query;
+
 public class TMC {
 	private static final String[] initStmts = {
 		// 1 - Countries - COUNTRIES.DAT;
@@ -63,6 +66,7 @@ public class TMC {
 		// 22 - Intersections - INTERSECTIONS.DAT; skipped for now
 	};
 	private static String dbUrl = null;
+	/** The connection used to create tables and import location tables. Lookups use {@link LocationQueries}. */
 	private static Connection dbConnection = null;
 	private static Charset charset = null;
 	
@@ -154,9 +158,13 @@ public class TMC {
 	/**
 	 * @brief Sets the database URL.
 	 * 
+	 * Cached locations are dropped.
+	 * 
 	 * @param dbUrl the dbUrl to set
 	 */
 	public static void setDbUrl(String dbUrl) {
+		LocationQueries.setDbUrl(null);
+		clearCaches();
 		if (dbConnection != null)
 			try {
 				if (!dbConnection.isClosed())
@@ -180,12 +188,42 @@ public class TMC {
 			// for an in-memory DB, create tables
 			if (isDbInMemory())
 				initDb();
+			LocationQueries.setDbUrl(dbUrl);
 		} catch (SQLException e) {
-			dbUrl = null;
+			TMC.dbUrl = null;
 			e.printStackTrace(System.err);
 		}
 	}
 	
+	/**
+	 * @brief Reads locations from a snapshot instead of the database.
+	 * 
+	 * The database is not needed while a snapshot is used. Cached locations are dropped.
+	 * 
+	 * @param file A snapshot written by {@link #writeSnapshot(File)}, or {@code null} to read
+	 * locations from the database again
+	 * @throws IOException if the snapshot cannot be read
+	 */
+	public static void setSnapshot(File file) throws IOException {
+		LocationQueries.setSnapshot((file == null) ? null : LocationSnapshot.open(file));
+		clearCaches();
+	}
+
+	/**
+	 * @brief Writes a snapshot of the location database, for use with {@link #setSnapshot(File)}.
+	 * 
+	 * @param file The file to write
+	 */
+	public static void writeSnapshot(File file) throws IOException, SQLException {
+		if (dbConnection == null)
+			throw new SQLException("No location database is open.");
+		try {
+			LocationSnapshot.compile(dbConnection, file);
+		} finally {
+			dbConnection.commit();
+		}
+	}
+
 	/**
 	 * @brief Whether an in-memory database is used.
 	 * 
@@ -244,17 +282,16 @@ public class TMC {
 		return r;
 	}
 	
-	private static Map<String, Country> COUNTRIES = new HashMap<String, Country>();
+	private static Map<String, Country> COUNTRIES = Collections.synchronizedMap(new HashMap<String, Country>());
 
 	public static Country getCountry(String cc, int ltn) {
 		Country ret = COUNTRIES.get("ccd=" + cc + ";tabcd=" + ltn);
-		if (ret == null) 
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where CCD = ? and CID in (select CID from LocationDataSets where TABCD = ?);");
-				stmt.setString(1, cc);
-				stmt.setInt(2, ltn);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.COUNTRY_BY_CCD, cc, ltn);
+				if (rset != null) {
 					Country country = new Country(rset);
 					putCountry(cc, ltn, country);
 					putCountry(country.cid, country);
@@ -265,18 +302,20 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static Country getCountry(int cid) {
 		Country ret = COUNTRIES.get("cid=" + cid);
-		if (ret == null) 
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where CID = ?");
-				stmt.setInt(1, cid);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.COUNTRY_BY_CID, cid);
+				if (rset != null) {
 					Country country = new Country(rset);
 					putCountry(cid, country);
 					putCountry(country.ecc, country);
@@ -286,18 +325,20 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static Country getCountry(String ecc) {
 		Country ret = COUNTRIES.get("ecc=" + ecc);
-		if (ret == null) 
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Countries where ECC = ?");
-				stmt.setString(1, ecc);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.COUNTRY_BY_ECC, ecc);
+				if (rset != null) {
 					Country country = new Country(rset);
 					putCountry(ecc, country);
 					putCountry(country.cid, country);
@@ -307,6 +348,8 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
@@ -323,17 +366,38 @@ public class TMC {
 		COUNTRIES.put("ecc=" + ecc, country);
 	}
 	
-	private static Map<String, LocationDataset> LOCATION_DATASETS = new HashMap<String, LocationDataset>();
+	/** The default capacity of the location cache, in entries. */
+	public static final int DEFAULT_CACHE_CAPACITY = 1 << 16;
+
+	/** Datasets, names and locations read from the database. */
+	private static final LocationCache CACHE = new LocationCache(DEFAULT_CACHE_CAPACITY);
+
+	/**
+	 * @brief Returns the cache of datasets, names and locations read from the database.
+	 * 
+	 * Its counters tell how often the database is queried.
+	 */
+	public static LocationCache getCache() {
+		return CACHE;
+	}
+
+	/**
+	 * @brief Sets the maximum number of datasets, names and locations kept in memory.
+	 * 
+	 * The cache is emptied.
+	 */
+	public static void setCacheCapacity(int capacity) {
+		CACHE.setCapacity(capacity);
+	}
 
 	public static LocationDataset getLocationDataset(int cid, int tabcd) {
-		LocationDataset ret = LOCATION_DATASETS.get(cid + ";" + tabcd);
-		if (ret == null) 
+		LocationDataset ret = (LocationDataset) CACHE.get(Kind.DATASET, cid, tabcd, 0);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from LocationDataSets where CID = ? AND TABCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.DATASET, cid, tabcd);
+				if (rset != null) {
 					LocationDataset lds = new LocationDataset(rset);
 					putLocationDataset(cid, tabcd, lds);
 					return lds;
@@ -342,25 +406,24 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putLocationDataset(int cid, int tabcd, LocationDataset locationDataset) {
-		LOCATION_DATASETS.put(cid + ";" + tabcd, locationDataset);
+		CACHE.put(Kind.DATASET, cid, tabcd, 0, locationDataset);
 	}
 	
-	private static Map<String, TMCName> NAMES = new HashMap<String, TMCName>();
-
 	public static TMCName getName(int cid, int nid) {
-		TMCName ret = NAMES.get(cid + ";" + nid);
-		if (ret == null) 
+		TMCName ret = (TMCName) CACHE.get(Kind.NAME, cid, 0, nid);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Names where CID = ? AND NID = ? ORDER BY LID");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, nid);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.NAME, cid, nid);
+				if (rset != null) {
 					TMCName name = getName(rset.getInt("CID"), rset.getInt("LID"), rset.getInt("NID"));
 					if (name == null)
 						name = new TMCName(rset);
@@ -372,20 +435,20 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 
 	public static TMCName getName(int cid, int lid, int nid) {
-		TMCName ret = NAMES.get(cid + ";" + lid + ";" + nid);
-		if (ret == null) 
+		TMCName ret = (TMCName) CACHE.get(Kind.LANGUAGE_NAME, cid, lid, nid);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Names where CID = ? AND LID = ? AND NID = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, lid);
-				stmt.setInt(3, nid);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.LANGUAGE_NAME, cid, lid, nid);
+				if (rset != null) {
 					TMCName name = new TMCName(rset);
 					putName(cid, lid, nid, name);
 					return name;
@@ -394,22 +457,22 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putName(int cid, int nid, TMCName name) {
-		NAMES.put(cid + ";" + nid, name);
+		CACHE.put(Kind.NAME, cid, 0, nid, name);
 	}
 	
 	public static void putName(int cid, int lid, int nid, TMCName name) {
-		NAMES.put(cid + ";" + lid + ";" + nid, name);
+		CACHE.put(Kind.LANGUAGE_NAME, cid, lid, nid, name);
 	}
 	
-	private static Map<String, TMCLocation> LOCATIONS = new HashMap<String, TMCLocation>();
-
 	public static TMCLocation getLocation(int cid, int tabcd, int lcd) {
-		TMCLocation ret = LOCATIONS.get(cid + ";" + tabcd + ";" + lcd);
+		TMCLocation ret = (TMCLocation) CACHE.get(Kind.LOCATION, cid, tabcd, lcd);
 		if (ret == null) {
 			ret = getArea(cid, tabcd, lcd);
 			if (ret == null)
@@ -433,32 +496,24 @@ public class TMC {
 	}
 	
 	public static void putLocation(int cid, int tabcd, int lcd, TMCLocation location) {
-		LOCATIONS.put(cid + ";" + tabcd + ";" + lcd, location);
+		CACHE.put(Kind.LOCATION, cid, tabcd, lcd, location);
 	}
 	
-	private static Map<String, TMCArea> AREAS = new HashMap<String, TMCArea>();
-
 	public static TMCArea getArea(int cid, int tabcd, int lcd) {
-		TMCArea ret = AREAS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCArea ret = (TMCArea) CACHE.get(Kind.AREA, cid, tabcd, lcd);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from AdministrativeAreas where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.ADMINISTRATIVE_AREA, cid, tabcd, lcd);
+				if (rset != null) {
 					TMCArea area = new TMCArea(rset);
 					putArea(cid, tabcd, lcd, area);
 					putLocation(cid, tabcd, lcd, area);
 					return area;
 				} else {
-					stmt = dbConnection.prepareStatement("select * from OtherAreas where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					rset = stmt.executeQuery();
-					if (rset.next()) {
+					rset = queries.find(Query.OTHER_AREA, cid, tabcd, lcd);
+					if (rset != null) {
 						TMCArea area = new TMCArea(rset);
 						putArea(cid, tabcd, lcd, area);
 						putLocation(cid, tabcd, lcd, area);
@@ -469,26 +524,24 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putArea(int cid, int tabcd, int lcd, TMCArea area) {
-		AREAS.put(cid + ";" + tabcd + ";" + lcd, area);
+		CACHE.put(Kind.AREA, cid, tabcd, lcd, area);
 	}
 
-	private static Map<String, Road> ROADS = new HashMap<String, Road>();
-
 	public static Road getRoad(int cid, int tabcd, int lcd) {
-		Road ret = ROADS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		Road ret = (Road) CACHE.get(Kind.ROAD, cid, tabcd, lcd);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Roads where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.ROAD, cid, tabcd, lcd);
+				if (rset != null) {
 					Road road = new Road(rset);
 					putRoad(cid, tabcd, lcd, road);
 					putLocation(cid, tabcd, lcd, road);
@@ -498,33 +551,27 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putRoad(int cid, int tabcd, int lcd, Road road) {
-		ROADS.put(cid + ";" + tabcd + ";" + lcd, road);
+		CACHE.put(Kind.ROAD, cid, tabcd, lcd, road);
 	}
 	
-	private static Map<String, Segment> SEGMENTS = new HashMap<String, Segment>();
-
 	public static Segment getSegment(int cid, int tabcd, int lcd) {
-		Segment ret = SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		Segment ret = (Segment) CACHE.get(Kind.SEGMENT, cid, tabcd, lcd);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
-				if (rset.next()) {
-					stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					ResultSet offsets = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.SEGMENT, cid, tabcd, lcd);
+				if (rset != null) {
+					LocationRecord offsets = queries.find(Query.SEGMENT_OFFSETS, cid, tabcd, lcd);
 					Segment segment;
-					if (offsets.next())
+					if (offsets != null)
 						segment = new Segment(rset, offsets);
 					else
 						segment = new Segment(rset, null);
@@ -537,16 +584,16 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putSegment(int cid, int tabcd, int lcd, Segment segment) {
-		SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		CACHE.put(Kind.SEGMENT, cid, tabcd, lcd, segment);
 	}
 	
-	private static Map<String, Segment> FIRST_SEGMENTS = new HashMap<String, Segment>();
-
 	/**
 	 * @brief Gets the first segment of the location specified by the arguments.
 	 * 
@@ -557,29 +604,22 @@ public class TMC {
 	 * @return The first segment, or {@code null} if not found.
 	 */
 	public static Segment getFirstSegment(int cid, int tabcd, int lcd) {
-		Segment ret = FIRST_SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
+		Segment ret = (Segment) CACHE.get(Kind.FIRST_SEGMENT, cid, tabcd, lcd);
+		LocationQueries queries = null;
 		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.NEG_OFF_LCD IS NOT NULL)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.FIRST_SEGMENT, cid, tabcd, lcd, lcd);
 				Segment segment = null;
-				if (rset.next()) {
+				if (rset != null) {
 					try {
 						segment = getSegment(cid, tabcd, rset.getInt("LCD"));
 					} catch (SQLException e) {
 						segment = null;
 					}
 					if (segment == null) {
-						stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
+						LocationRecord offsets = queries.find(Query.SEGMENT_OFFSETS, cid, tabcd, lcd);
+						if (offsets != null)
 							segment = new Segment(rset, offsets);
 						else
 							segment = new Segment(rset, null);
@@ -594,16 +634,16 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putFirstSegment(int cid, int tabcd, int lcd, Segment segment) {
-		FIRST_SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		CACHE.put(Kind.FIRST_SEGMENT, cid, tabcd, lcd, segment);
 	}
 	
-	private static Map<String, Segment> LAST_SEGMENTS = new HashMap<String, Segment>();
-
 	/**
 	 * @brief Gets the last segment of the location specified by the arguments.
 	 * 
@@ -614,29 +654,22 @@ public class TMC {
 	 * @return The last segment, or {@code null} if not found.
 	 */
 	public static Segment getLastSegment(int cid, int tabcd, int lcd) {
-		Segment ret = LAST_SEGMENTS.get(cid + ";" + tabcd + ";" + lcd);
+		Segment ret = (Segment) CACHE.get(Kind.LAST_SEGMENT, cid, tabcd, lcd);
+		LocationQueries queries = null;
 		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Segments where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Soffsets WHERE Soffsets.CID = Segments.CID AND Soffsets.TABCD = Segments.TABCD AND Soffsets.LCD = Segments.LCD AND Soffsets.POS_OFF_LCD IS NOT NULL)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.LAST_SEGMENT, cid, tabcd, lcd, lcd);
 				Segment segment = null;
-				if (rset.next()) {
+				if (rset != null) {
 					try {
 						segment = getSegment(cid, tabcd, rset.getInt("LCD"));
 					} catch (SQLException e) {
 						segment = null;
 					}
 					if (segment == null) {
-						stmt = dbConnection.prepareStatement("select * from Soffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
+						LocationRecord offsets = queries.find(Query.SEGMENT_OFFSETS, cid, tabcd, lcd);
+						if (offsets != null)
 							segment = new Segment(rset, offsets);
 						else
 							segment = new Segment(rset, null);
@@ -651,33 +684,27 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putLastSegment(int cid, int tabcd, int lcd, Segment segment) {
-		LAST_SEGMENTS.put(cid + ";" + tabcd + ";" + lcd, segment);
+		CACHE.put(Kind.LAST_SEGMENT, cid, tabcd, lcd, segment);
 	}
 	
-	private static Map<String, TMCPoint> POINTS = new HashMap<String, TMCPoint>();
-
 	public static TMCPoint getPoint(int cid, int tabcd, int lcd) {
-		TMCPoint ret = POINTS.get(cid + ";" + tabcd + ";" + lcd);
-		if (ret == null) 
+		TMCPoint ret = (TMCPoint) CACHE.get(Kind.POINT, cid, tabcd, lcd);
+		LocationQueries queries = null;
+		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND LCD = ?");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				ResultSet rset = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.POINT, cid, tabcd, lcd);
 				TMCPoint point;
-				if (rset.next()) {
-					stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-					stmt.setInt(1, cid);
-					stmt.setInt(2, tabcd);
-					stmt.setInt(3, lcd);
-					ResultSet offsets = stmt.executeQuery();
-					if (offsets.next())
+				if (rset != null) {
+					LocationRecord offsets = queries.find(Query.POINT_OFFSETS, cid, tabcd, lcd);
+					if (offsets != null)
 						point = new TMCPoint(rset, offsets);
 					else
 						point = new TMCPoint(rset, null);
@@ -690,16 +717,16 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putPoint(int cid, int tabcd, int lcd, TMCPoint point) {
-		POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		CACHE.put(Kind.POINT, cid, tabcd, lcd, point);
 	}
 	
-	private static Map<String, TMCPoint> FIRST_POINTS = new HashMap<String, TMCPoint>();
-
 	/**
 	 * @brief Gets the first point of the location specified by the arguments.
 	 * 
@@ -710,29 +737,22 @@ public class TMC {
 	 * @return The first point, or {@code null} if not found.
 	 */
 	public static TMCPoint getFirstPoint(int cid, int tabcd, int lcd) {
-		TMCPoint ret = FIRST_POINTS.get(cid + ";" + tabcd + ";" + lcd);
+		TMCPoint ret = (TMCPoint) CACHE.get(Kind.FIRST_POINT, cid, tabcd, lcd);
+		LocationQueries queries = null;
 		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.NEG_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.FIRST_POINT, cid, tabcd, lcd, lcd);
 				TMCPoint point = null;
-				if (rset.next()) {
+				if (rset != null) {
 					try {
 						point = getPoint(cid, tabcd, rset.getInt("LCD"));
 					} catch (SQLException e) {
 						point = null;
 					}
 					if (point == null) {
-						stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
+						LocationRecord offsets = queries.find(Query.POINT_OFFSETS, cid, tabcd, lcd);
+						if (offsets != null)
 							point = new TMCPoint(rset, offsets);
 						else
 							point = new TMCPoint(rset, null);
@@ -747,16 +767,16 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putFirstPoint(int cid, int tabcd, int lcd, TMCPoint point) {
-		FIRST_POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		CACHE.put(Kind.FIRST_POINT, cid, tabcd, lcd, point);
 	}
 	
-	private static Map<String, TMCPoint> LAST_POINTS = new HashMap<String, TMCPoint>();
-
 	/**
 	 * @brief Gets the last point of the location specified by the arguments.
 	 * 
@@ -767,29 +787,22 @@ public class TMC {
 	 * @return The last point, or {@code null} if not found.
 	 */
 	public static TMCPoint getLastPoint(int cid, int tabcd, int lcd) {
-		TMCPoint ret = LAST_POINTS.get(cid + ";" + tabcd + ";" + lcd);
+		TMCPoint ret = (TMCPoint) CACHE.get(Kind.LAST_POINT, cid, tabcd, lcd);
+		LocationQueries queries = null;
 		if (ret == null)
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("select * from Points where CID = ? AND TABCD = ? AND (SEG_LCD = ? OR ROA_LCD = ?) AND NOT EXISTS (SELECT * FROM Poffsets WHERE Poffsets.CID = Points.CID AND Poffsets.TABCD = Points.TABCD AND Poffsets.LCD = Points.LCD AND Poffsets.POS_OFF_LCD IS NOT NULL) AND (INTERRUPTSROAD IS NULL OR INTERRUPTSROAD = 0)");
-				stmt.setInt(1, cid);
-				stmt.setInt(2, tabcd);
-				stmt.setInt(3, lcd);
-				stmt.setInt(4, lcd);
-				ResultSet rset = stmt.executeQuery();
+				queries = LocationQueries.acquire();
+				LocationRecord rset = queries.find(Query.LAST_POINT, cid, tabcd, lcd, lcd);
 				TMCPoint point = null;
-				if (rset.next()) {
+				if (rset != null) {
 					try {
 						point = getPoint(cid, tabcd, rset.getInt("LCD"));
 					} catch (SQLException e) {
 						point = null;
 					}
 					if (point == null) {
-						stmt = dbConnection.prepareStatement("select * from Poffsets where CID = ? AND TABCD = ? AND LCD = ?");
-						stmt.setInt(1, cid);
-						stmt.setInt(2, tabcd);
-						stmt.setInt(3, lcd);
-						ResultSet offsets = stmt.executeQuery();
-						if (offsets.next())
+						LocationRecord offsets = queries.find(Query.POINT_OFFSETS, cid, tabcd, lcd);
+						if (offsets != null)
 							point = new TMCPoint(rset, offsets);
 						else
 							point = new TMCPoint(rset, null);
@@ -804,12 +817,98 @@ public class TMC {
 			} catch (SQLException e) {
 				e.printStackTrace(System.err);
 				return null;
+			} finally {
+				LocationQueries.release(queries);
 			}
 		return ret;
 	}
 	
 	public static void putLastPoint(int cid, int tabcd, int lcd, TMCPoint point) {
-		LAST_POINTS.put(cid + ";" + tabcd + ";" + lcd, point);
+		CACHE.put(Kind.LAST_POINT, cid, tabcd, lcd, point);
+	}
+	
+	/** Offset chains of the points of each data set, built on first use. */
+	private static final Map<Integer, OffsetChains> POINT_CHAINS = new ConcurrentHashMap<Integer, OffsetChains>();
+	
+	/** Offset chains of the segments of each data set, built on first use. */
+	private static final Map<Integer, OffsetChains> SEGMENT_CHAINS = new ConcurrentHashMap<Integer, OffsetChains>();
+	
+	/**
+	 * @brief Gets the offset chains of the points of a data set.
+	 * 
+	 * @return The chains, or {@code null} if they cannot be built.
+	 */
+	static OffsetChains getPointChains(int cid, int tabcd) {
+		return getChains(POINT_CHAINS, Query.POINTS_OF_DATASET, Query.POINT_OFFSETS_OF_DATASET, cid, tabcd);
+	}
+	
+	/**
+	 * @brief Gets the offset chains of the segments of a data set.
+	 * 
+	 * @return The chains, or {@code null} if they cannot be built.
+	 */
+	static OffsetChains getSegmentChains(int cid, int tabcd) {
+		return getChains(SEGMENT_CHAINS, Query.SEGMENTS_OF_DATASET, Query.SEGMENT_OFFSETS_OF_DATASET, cid, tabcd);
+	}
+	
+	private static OffsetChains getChains(Map<Integer, OffsetChains> chains, Query locations, Query offsets, int cid, int tabcd) {
+		Integer key = (cid << 16) | tabcd;
+		OffsetChains ret = chains.get(key);
+		LocationQueries queries = null;
+		if (ret == null)
+			try {
+				/*
+				 * Two threads may build the same chains at once, which is harmless: holding a lock
+				 * while waiting for a connection could deadlock with a thread which holds one.
+				 */
+				queries = LocationQueries.acquire();
+				ret = OffsetChains.build(queries.findAll(locations, OffsetChains.LOCATION_COLUMNS, cid, tabcd),
+						queries.findAll(offsets, OffsetChains.OFFSET_COLUMNS, cid, tabcd));
+				chains.put(key, ret);
+			} catch (SQLException e) {
+				e.printStackTrace(System.err);
+				return null;
+			} finally {
+				LocationQueries.release(queries);
+			}
+		return ret;
+	}
+	
+	/**
+	 * @brief Drops the cached locations and offset chains, after the locations have changed.
+	 */
+	private static void clearCaches() {
+		CACHE.clear();
+		COUNTRIES.clear();
+		POINT_CHAINS.clear();
+		SEGMENT_CHAINS.clear();
+	}
+	
+	/**
+	 * @brief Loads all the points and segments of a road or segment into the cache.
+	 * 
+	 * Resolving the extent of messages on that road then takes no further lookups, as long as the
+	 * cache can hold all of its locations.
+	 * 
+	 * @param cid
+	 * @param tabcd
+	 * @param lcd The location code of the road or segment.
+	 * 
+	 * @return The number of points and segments loaded.
+	 */
+	public static int prefetch(int cid, int tabcd, int lcd) {
+		int res = 0;
+		OffsetChains segments = getSegmentChains(cid, tabcd);
+		if (segments != null)
+			for (int member : segments.getMembers(lcd))
+				if (getSegment(cid, tabcd, member) != null)
+					res++;
+		OffsetChains points = getPointChains(cid, tabcd);
+		if (points != null)
+			for (int member : points.getMembers(lcd))
+				if (getPoint(cid, tabcd, member) != null)
+					res++;
+		return res;
 	}
 	
 	/**
@@ -838,15 +937,40 @@ public class TMC {
 		if (!isDbInMemory())
 			initDb();
 		
-		readLocationTablesFromDir(path);
-		for (File file: path.listFiles())
-			if (file.isDirectory())
-				readLocationTablesFromDir(file);
+		// all datasets are parsed in parallel, and written one after the other
+		LocationTableImporter importer = new LocationTableImporter(dbConnection);
+		try {
+			if (!isDbInMemory()) {
+				/*
+				 * Do not log each insert: the database is compacted and reopened once the import is
+				 * finished, and an interrupted import leaves incomplete datasets anyway.
+				 */
+				PreparedStatement stmt = dbConnection.prepareStatement("set files log false;");
+				stmt.execute();
+				stmt.close();
+			}
+			readLocationTablesFromDir(path, importer);
+			for (File file: path.listFiles())
+				if (file.isDirectory())
+					readLocationTablesFromDir(file, importer);
+			importer.run();
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			importer.close();
+			clearCaches();
+		}
 		
 		if (!isDbInMemory()) {
 			// if database is not an in-memory DB, close database to compact files on disk, then reopen it
+			LocationQueries.setDbUrl(null);
 			try {
-				PreparedStatement stmt = dbConnection.prepareStatement("shutdown compact;");
+				PreparedStatement stmt = dbConnection.prepareStatement("set files log true;");
+				stmt.execute();
+				stmt = dbConnection.prepareStatement("shutdown compact;");
 				stmt.execute();
 				dbConnection.commit();
 			} catch (SQLException e) {
@@ -1005,6 +1129,29 @@ public class TMC {
 	 * @param path The folder in which the files for the location data set are located.
 	 */
 	public static void readLocationTablesFromDir(File path) {
+		LocationTableImporter importer = new LocationTableImporter(dbConnection);
+		try {
+			readLocationTablesFromDir(path, importer);
+			importer.run();
+		} catch (SQLException e) {
+			e.printStackTrace(System.err);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			importer.close();
+			clearCaches();
+		}
+	}
+
+	/**
+	 * @brief Adds the files of a single location data set to an import.
+	 * 
+	 * If an older version of the data set is in the database, it is deleted right away.
+	 * 
+	 * @param path The folder in which the files for the location data set are located.
+	 * @param importer The import to which the files are added.
+	 */
+	private static void readLocationTablesFromDir(File path, LocationTableImporter importer) throws SQLException {
 		File file;
 		
 		if (!prepareDataSetUpdate(path)) {
@@ -1013,11 +1160,11 @@ public class TMC {
 		
 		// 1 - COUNTRIES.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "COUNTRIES.DAT");
-		importTable("Countries", file);
+		importer.add("Countries", file);
 
 		// 2 - LOCATIONDATASETS.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "LOCATIONDATASETS.DAT");
-		importTable("LocationDataSets", file);
+		importer.add("LocationDataSets", file);
 		
 		// 3 - LOCATIONCODES.DAT; skipped for now
 		// 4 - CLASSES.DAT; skipped for now
@@ -1028,7 +1175,7 @@ public class TMC {
 
 		// 9 - NAMES.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "NAMES.DAT");
-		importTable("Names", file);
+		importer.add("Names", file);
 		
 		// 10 - NAMETRANSLATIONS.DAT; skipped for now
 		// 11 - SUBTYPETRANSLATIONS.DAT; skipped for now
@@ -1036,149 +1183,36 @@ public class TMC {
 
 		// 13 - ADMINISTRATIVEAREA.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "ADMINISTRATIVEAREA.DAT");
-		importTable("AdministrativeAreas", file);
+		importer.add("AdministrativeAreas", file);
 
 		// 14 - OTHERAREAS.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "OTHERAREAS.DAT");
-		importTable("OtherAreas", file);
+		importer.add("OtherAreas", file);
 
 		// 15 - ROADS.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "ROADS.DAT");
-		importTable("Roads", file);
+		importer.add("Roads", file);
 		
 		// 16 - ROAD_NETWORK_LEVEL_TYPES.DAT; skipped for now
 
 		// 17 - SEGMENTS.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "SEGMENTS.DAT");
-		importTable("Segments", file);
+		importer.add("Segments", file);
 
 		// 18 - SOFFSETS.DAT
 		file = new File(path.getAbsolutePath() + File.separator + "SOFFSETS.DAT");
-		importTable("Soffsets", file);
+		importer.add("Soffsets", file);
 		
 		// 19 - SEG_HAS_ERNO.DAT; skipped for now
 
 		// 20 - POINTS.DAT;
 		file = new File(path.getAbsolutePath() + File.separator + "POINTS.DAT");
-		importTable("Points", file);
+		importer.add("Points", file);
 		
 		// 21 - POFFSETS.DAT
 		file = new File(path.getAbsolutePath() + File.separator + "POFFSETS.DAT");
-		importTable("Poffsets", file);
+		importer.add("Poffsets", file);
 		
 		// 22 - INTERSECTIONS.DAT; skipped for now
 	}
-	
-	/**
-	 * @brief Returns the SQL types for the specified columns of the specified table.
-	 * 
-	 * @param table The table name for which to return column types
-	 * @param fields An array containing the field names
-	 * @return An array of {@link java.sql.Types} constants representing the SQL types. The order
-	 * matches that of {@code fields}. If one of the values in {@code fields} does not correspond
-	 * to a column of the table specified by {@code table}, its type is {@link java.sql.Types.NULL}.
-	 * @throws SQLException
-	 */
-	static int[] getColumnTypes(String table, String[] fields) throws SQLException {
-		int[] res = new int[fields.length];
-		PreparedStatement stmt = dbConnection.prepareStatement(String.format("select * from %s limit 1;", table));
-		ResultSet rs = stmt.executeQuery();
-		for (int i = 0; i < fields.length; i++) {
-			try {
-				res[i] = rs.getMetaData().getColumnType(rs.findColumn(fields[i]));
-			} catch (SQLException e) {
-				System.err.println(String.format("Could not determine type for column %s:", fields[i]));
-				e.printStackTrace(System.err);
-				res[i] = Types.NULL;
-			}
-		}
-		return res;
-	}
-	
-	/** @brief Imports a new location table file into the database.
-	 * 
-	 * @param table The table in which the record will be stored
-	 * @param file The file to import (a file from a LT in exchange format)
-	 */
-	static void importTable(String table, File file) {
-		PreparedStatement stmt = null;
-		Boolean hasConstraintViolations = false;
-		System.out.println(String.format("Processing table %s from file %s", table, file.getAbsolutePath()));
-		if (file.exists()) {
-			try {
-				BufferedReader br = openLTFile(file);
-				String line = br.readLine();
-				String[] fields = getFields(line);
-				int[] types = getColumnTypes(table, fields);
-				String[] values;
-				StringBuilder stmtBuilder = new StringBuilder("insert into ");
-				stmtBuilder.append(table);
-				stmtBuilder.append(" (");
-				for (int i = 0; i < fields.length; i++) {
-					if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
-						stmtBuilder.append(", ");
-					stmtBuilder.append(fields[i]);
-				}
-				stmtBuilder.append(") VALUES (");
-				for (int i = 0; i < fields.length; i++) {
-					if (stmtBuilder.charAt(stmtBuilder.length() - 1) != '(')
-						stmtBuilder.append(", ");
-					stmtBuilder.append("?");
-				}
-				stmtBuilder.append(");");
-				stmt = dbConnection.prepareStatement(stmtBuilder.toString());
-				while((line = br.readLine()) != null)
-					if (line.length() > 0) {
-						stmt.clearParameters();
-						values = TMC.colonPattern.split(line);
-						for (int i = 0; i < fields.length; i++) {
-							if ((i >= values.length) || values[i].isEmpty())
-								stmt.setNull(i + 1, types[i]);
-							else
-								switch (types[i]) {
-									case Types.BOOLEAN:
-										stmt.setBoolean(i + 1, Boolean.parseBoolean(values[i]));
-										break;
-									case Types.DECIMAL:
-										/* Special case: this is the only type which requires conversion.
-										 * DECIMAL is currently used only for two columns, Points.XCOORD and Points.YCOORD.
-										 * Both are represented as 1/100000s of a degree in the source files and are
-										 * converted to degrees on import.
-										 * If further DECIMAL columns are introduced in the DB at a later stage, extra
-										 * logic may be needed here.
-										 */
-										stmt.setFloat(i + 1, Integer.parseInt(values[i]) / 100000.0f);
-										break;
-									case Types.INTEGER:
-										stmt.setInt(i + 1, Integer.parseInt(values[i]));
-										break;
-									case Types.VARCHAR:
-										stmt.setString(i + 1, values[i]);
-										break;
-									default:
-										System.err.println(String.format("Unknown type for parameter %d (%s.%s), type %d", i, table, fields[i], types[i]));
-										stmt.setNull(i + 1, types[i]);
-								}
-						}
-						
-						try {
-							stmt.executeUpdate();
-						} catch (SQLIntegrityConstraintViolationException e) {
-							hasConstraintViolations = true;
-						}
-					}
-				dbConnection.commit();
-			} catch (IOException e) {
-				e.printStackTrace(System.err);
-				return;
-			} catch (SQLException e) {
-				if (stmt != null)
-					System.err.println(String.format("Error executing: %s", stmt.toString()));
-				e.printStackTrace(System.err);
-				return;
-			}
-			if (hasConstraintViolations)
-				System.err.println(String.format("Some records from %s were skipped due to integrity constraint violations.", file.getAbsolutePath()));
-		}
-	}
 }
@@ -1,6 +1,5 @@
 package eu.jacquet80.rds.app.oda.tmc;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** Describes a TMC AREA location. */
@@ -9,15 +8,13 @@ public class TMCArea extends TMCLocation {
 	/**
 	 * @brief Creates a new {@code TMCArea} from a given record.
 	 * 
-	 * This constructor expects one argument, {@code rset}, which must be a result set obtained by
-	 * querying one of the {@code AdministrativeAreas} or {@code OtherAreas} tables. Prior to calling
-	 * the constructor, the cursor for {@code rset} must be set. The constructor will use the data
-	 * from the record which the cursor points to.
+	 * This constructor expects one argument, {@code rset}, which must be a record of one of the
+	 * {@code AdministrativeAreas} or {@code OtherAreas} tables.
 	 * 
-	 * @param rset The result set
+	 * @param rset The record
 	 * @throws SQLException
 	 */
-	TMCArea(ResultSet rset) throws SQLException {
+	TMCArea(LocationRecord rset) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.tabcd = rset.getInt("TABCD");
 		this.lcd = rset.getInt("LCD");
@@ -1,6 +1,5 @@
 package eu.jacquet80.rds.app.oda.tmc;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** Describes a TMC location name. */
@@ -18,15 +17,13 @@ public class TMCName {
 	/**
 	 * @brief Creates a new {@code TMCName} from a given record.
 	 * 
-	 * This constructor expects one argument, {@code rset}, which must be a result set obtained by
-	 * querying the {@code Names} table. Prior to calling the constructor, the cursor for
-	 * {@code rset} must be set. The constructor will use the data from the record which the cursor
-	 * points to.
+	 * This constructor expects one argument, {@code rset}, which must be a record of the {@code Names}
+	 * table.
 	 * 
-	 * @param rset The result set
+	 * @param rset The record
 	 * @throws SQLException
 	 */
-	TMCName(ResultSet rset) throws SQLException {
+	TMCName(LocationRecord rset) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.lid = rset.getInt("LID");
 		this.nid = rset.getInt("NID");
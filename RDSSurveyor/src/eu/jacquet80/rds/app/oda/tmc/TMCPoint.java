@@ -1,6 +1,5 @@
 package eu.jacquet80.rds.app.oda.tmc;
 
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 /** Describes a TMC POINT location. */
@@ -80,18 +79,16 @@ public class TMCPoint extends TMCLocation {
 	/**
 	 * @brief Creates a new {@code TMCPoint} from a given record.
 	 * 
-	 * This constructor expects two arguments, {@code rset} and {@code offsets}. {@code rset} must
-	 * be a result set obtained by querying the {@code Points} table. {@code offsets} must be a
-	 * result set obtained by querying the {@code Poffsets} table. It can be null, in which case
-	 * the segment will have no offsets in either direction and no extents can be resolved for this
-	 * segment. Prior to calling the constructor, the cursor for both result sets must be set. The
-	 * constructor will use the data from the records which the cursors point to.
+	 * This constructor expects two arguments, {@code rset} and {@code offsets}. {@code rset} must be a
+	 * record of the {@code Points} table. {@code offsets} must be a record of the {@code Poffsets}
+	 * table. It can be {@code null}, in which case the segment will have no offsets in either
+	 * direction and no extents can be resolved for this segment.
 	 * 
-	 * @param rset The result set containing the point.
-	 * @param offsets The result set containing the offset. This argument can be {@code null}.
+	 * @param rset The record containing the point.
+	 * @param offsets The record containing the offset. This argument can be {@code null}.
 	 * @throws SQLException
 	 */
-	TMCPoint(ResultSet rset, ResultSet offsets) throws SQLException {
+	TMCPoint(LocationRecord rset, LocationRecord offsets) throws SQLException {
 		this.cid = rset.getInt("CID");
 		this.tabcd = rset.getInt("TABCD");
 		this.lcd = rset.getInt("LCD");
@@ -254,12 +251,27 @@ public class TMCPoint extends TMCLocation {
 	 * the respective direction. The extent of a valid TMC message will never exceed the boundaries
 	 * of the list. If this method is nonetheless called with an invalid extent, the last location
 	 * in the linked list is returned to ensure that this method always returns a valid location.
+	 * 
+	 * The location is looked up directly in the offset chains of the data set, which are built once.
+	 * The list is walked only for locations which are not part of a chain.
 	 *
 	 * @param extent The extent (i.e. number of steps) as indicated in the TMC message.
 	 * @param direction The direction as indicated in the TMC message (0 = positive, 1 = negative).
 	 */
 	@Override
 	public TMCPoint getOffset(int extent, int direction) {
+		if (extent <= 0)
+			return this;
+		OffsetChains chains = TMC.getPointChains(this.cid, this.tabcd);
+		int lcd = (chains == null) ? -1 : chains.getOffset(this.lcd, extent, direction);
+		if (lcd == this.lcd)
+			return this;
+		if (lcd != -1) {
+			TMCPoint offset = TMC.getPoint(this.cid, this.tabcd, lcd);
+			if (offset != null)
+				return offset;
+		}
+		
 		TMCPoint ret = this;
 		for (int i = 1; i <= extent; i++)
 			if ((direction == 0) && (ret.getPosOffset() != null))
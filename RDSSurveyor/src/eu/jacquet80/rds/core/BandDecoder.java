@@ -0,0 +1,255 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.IqReader;
+import eu.jacquet80.rds.util.FmDemodulator;
+import eu.jacquet80.rds.util.PolyphaseChannelizer;
+
+/**
+ * Decodes all the FM stations of a wideband I/Q signal at once, e.g. a
+ * recording of 2.4 MHz of the FM band.
+ *
+ * The signal is split into channels by a {@link PolyphaseChannelizer}. The
+ * power of each channel is measured at the beginning of the signal, and each
+ * channel clearly above the noise floor is FM-demodulated and decoded by a
+ * demodulator ({@link AudioBitReader}) and a {@link DecoderSession} of its
+ * own, each running in its own threads.
+ */
+public class BandDecoder {
+	public final static int DEFAULT_SPACING = 100000;
+	public final static double DEFAULT_THRESHOLD = 10;
+
+	// bandwidth kept around each channel, and minimum rate of the demodulated MPX
+	private final static int CHANNEL_BANDWIDTH = 200000;
+	private final static int MIN_CHANNEL_RATE = 240000;
+
+	// channels further from the center are attenuated by the tuner
+	private final static double USABLE_BANDWIDTH = .8;
+
+	private final static double MEASUREMENT_TIME = .25;
+	private final static int BLOCK_SIZE = 1 << 15;
+
+	private final int sampleRate;
+	private final int centerFrequency;
+	private final int spacing;
+	private double threshold = DEFAULT_THRESHOLD;
+	private boolean writeLogs = true;
+	private PrintStream console = System.out;
+
+	/**
+	 * A channel of the band, and its decoder if it is occupied.
+	 */
+	public static class Channel {
+		/** Center frequency, in kHz */
+		public final int frequency;
+
+		/** Power relative to the median channel power, in dB */
+		public final double power;
+
+		private final int index;
+		private final FmDemodulator demodulator = new FmDemodulator();
+		private PipedOutputStream mpx;
+		private DecoderSession session;
+
+		private Channel(int index, int frequency, double power) {
+			this.index = index;
+			this.frequency = frequency;
+			this.power = power;
+		}
+
+		/**
+		 * Returns the decoding session of this channel, {@code null} if the
+		 * channel is not occupied.
+		 */
+		public DecoderSession getSession() {
+			return session;
+		}
+
+		@Override
+		public String toString() {
+			String res = String.format("%7.1f MHz %5.1f dB  ", frequency / 1000., power);
+			TunedStation station = session == null ? null : session.getGroupReader().getTunedStation();
+			if(station == null) return res + "no RDS";
+			return res + String.format("%04X %-8s  %d blocks, %d%% OK", station.getPI(), station.getStationName(),
+					station.getTotalBlocks(), station.getTotalBlocks() == 0 ? 0 : 100L * station.getTotalBlocksOk() / station.getTotalBlocks());
+		}
+	}
+
+	/**
+	 * @param sampleRate the I/Q sample rate, a multiple of the spacing
+	 * @param centerFrequency the center frequency of the signal, in kHz
+	 * @param spacing the channel spacing, in Hz
+	 */
+	public BandDecoder(int sampleRate, int centerFrequency, int spacing) {
+		if(spacing <= 0 || sampleRate % spacing != 0) {
+			throw new IllegalArgumentException("The sample rate must be a multiple of the channel spacing.");
+		}
+		if(sampleRate < MIN_CHANNEL_RATE) {
+			throw new IllegalArgumentException("The sample rate must be at least " + MIN_CHANNEL_RATE + " Hz.");
+		}
+		this.sampleRate = sampleRate;
+		this.centerFrequency = centerFrequency;
+		this.spacing = spacing;
+	}
+
+	/**
+	 * Sets the power above the median channel power, in dB, from which a
+	 * channel is considered occupied.
+	 */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Writes the groups of each channel to the default group output files of
+	 * its session (the default).
+	 */
+	public void setWriteLogs(boolean writeLogs) {
+		this.writeLogs = writeLogs;
+	}
+
+	public void setConsole(PrintStream console) {
+		this.console = console == null ? RDSSurveyor.nullConsole : console;
+	}
+
+	// the largest decimation that divides the sample rate, and keeps the MPX rate high enough
+	private int getDecimation() {
+		for(int d = sampleRate / MIN_CHANNEL_RATE; d > 1; d--) {
+			if(sampleRate % d == 0) return d;
+		}
+		return 1;
+	}
+
+	/**
+	 * Decodes the signal up to its end, and waits for the decoders.
+	 *
+	 * @return the usable channels, from the lowest frequency to the highest
+	 */
+	public List<Channel> run(IqReader in) throws IOException, InterruptedException {
+		final int m = sampleRate / spacing;
+		final int decimation = getDecimation();
+		final int channelRate = sampleRate / decimation;
+
+		// the prototype filter passes the channel, and stops what would alias into it
+		int transition = channelRate - CHANNEL_BANDWIDTH;
+		int tapsPerChannel = (int) Math.ceil(5.5 * sampleRate / transition / m);
+		PolyphaseChannelizer channelizer = new PolyphaseChannelizer(m, decimation, tapsPerChannel, .5 / decimation);
+
+		float[] inI = new float[BLOCK_SIZE], inQ = new float[BLOCK_SIZE];
+		int maxOut = channelizer.getMaxOutputCount(BLOCK_SIZE);
+		float[][] outI = new float[m][maxOut], outQ = new float[m][maxOut];
+		byte[] pcm = new byte[2 * maxOut];
+
+		long start = System.nanoTime();
+		long samples = 0;
+
+		// measure the power of each channel
+		double[] power = new double[m];
+		long measured = 0;
+		while(measured < MEASUREMENT_TIME * channelRate) {
+			int n = in.read(inI, inQ, BLOCK_SIZE);
+			if(n < 0) break;
+			samples += n;
+			int count = channelizer.process(inI, inQ, n, outI, outQ);
+			for(int k=0; k<m; k++) {
+				for(int j=0; j<count; j++) power[k] += outI[k][j] * outI[k][j] + outQ[k][j] * outQ[k][j];
+			}
+			measured += count;
+		}
+
+		// usable channels, by increasing frequency
+		List<Channel> channels = new ArrayList<Channel>();
+		int first = m/2 + 1 - m, last = m/2;
+		while((double) -first * spacing > USABLE_BANDWIDTH * sampleRate / 2) first++;
+		while((double) last * spacing > USABLE_BANDWIDTH * sampleRate / 2) last--;
+
+		// the noise floor, i.e. the median power, as most channels are usually empty
+		double[] sorted = new double[last - first + 1];
+		for(int k = first; k <= last; k++) sorted[k - first] = power[(k + m) % m];
+		Arrays.sort(sorted);
+		double median = sorted[sorted.length / 2];
+
+		List<Channel> occupied = new ArrayList<Channel>();
+		for(int k = first; k <= last; k++) {
+			int idx = (k + m) % m;
+			double db = power[idx] > 0 ? 10 * Math.log10(power[idx] / Math.max(median, Double.MIN_VALUE)) : Double.NEGATIVE_INFINITY;
+			Channel ch = new Channel(idx, centerFrequency + k * spacing / 1000, db);
+			channels.add(ch);
+			if(db < threshold) continue;
+			
+			// a station spills over the adjacent channels, so only local maxima are stations
+			if(power[idx] < power[(idx + 1) % m] || power[idx] < power[(idx + m - 1) % m]) continue;
+
+			PipedInputStream pipe = new PipedInputStream(4 * BLOCK_SIZE);
+			ch.mpx = new PipedOutputStream(pipe);
+			ch.session = new DecoderSession(String.valueOf(ch.frequency));
+			ch.session.processAndQuit(
+					new BitStreamSynchronizer(RDSSurveyor.nullConsole,
+							new AudioBitReader(new DataInputStream(pipe), channelRate)),
+					writeLogs);
+			occupied.add(ch);
+		}
+
+		console.printf("%d channels of %d kHz at %d Hz, %d occupied\n", channels.size(), spacing / 1000, channelRate, occupied.size());
+
+		// demodulate the occupied channels until the end of the signal
+		try {
+			while(true) {
+				int n = in.read(inI, inQ, BLOCK_SIZE);
+				if(n < 0) break;
+				samples += n;
+				int count = channelizer.process(inI, inQ, n, outI, outQ);
+				for(Channel ch : occupied) {
+					ch.demodulator.demodulate(outI[ch.index], outQ[ch.index], count, pcm, 0);
+					ch.mpx.write(pcm, 0, 2 * count);
+				}
+			}
+		} finally {
+			for(Channel ch : occupied) ch.mpx.close();
+		}
+
+		double secs = (System.nanoTime() - start) / 1e9;
+		console.printf("Channelized %.1f s of signal in %.1f s (%.2f MS/s)\n",
+				(double) samples / sampleRate, secs, samples / secs / 1e6);
+
+		for(Channel ch : occupied) ch.session.join();
+		for(Channel ch : channels) console.println(ch);
+
+		return channels;
+	}
+}
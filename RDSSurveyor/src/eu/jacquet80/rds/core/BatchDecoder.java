@@ -0,0 +1,423 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.core;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer.BitInversion;
+import eu.jacquet80.rds.input.ArchiveTeeGroupReader;
+import eu.jacquet80.rds.input.AsyncTeeGroupReader;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.FileFormatGuesser;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.StationChangeDetector;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.StationLost;
+
+/**
+ * Decodes many recordings at once, for instance to reprocess drive tests
+ * after the decoder has been improved.
+ *
+ * Inputs may be MPX audio files (16-bit mono PCM) or any file that
+ * {@link FileFormatGuesser} recognizes. Each input is decoded by a chain of
+ * its own (demodulator, bitstream synchronizer, group-level decoder and
+ * log), on a bounded pool of threads. The groups of each input are written
+ * to a file of the same relative path in the output directory, and a
+ * summary of all inputs to {@link #SUMMARY_FILE}.
+ */
+public class BatchDecoder {
+	public final static String SUMMARY_FILE = "summary.csv";
+
+	private final File outDir;
+	private final int jobs;
+
+	private PrintStream console = System.out;
+	private boolean archiveOutput = false;
+	private int maxCorrectableBurst = BitStreamSynchronizer.DEFAULT_MAX_CORRECTABLE_BURST;
+	private int maxSoftFlips = BitStreamSynchronizer.DEFAULT_MAX_SOFT_FLIPS;
+	private BitInversion inversion = BitInversion.AUTO;
+
+	/**
+	 * @param outDir the directory of the output files
+	 * @param jobs the number of files decoded concurrently
+	 */
+	public BatchDecoder(File outDir, int jobs) {
+		this.outDir = outDir;
+		this.jobs = Math.max(1, jobs);
+	}
+
+	/**
+	 * Sets the console on which the progress is reported, {@code null} for none.
+	 */
+	public void setConsole(PrintStream console) {
+		this.console = console == null ? RDSSurveyor.nullConsole : console;
+	}
+
+	/**
+	 * Writes the groups as binary archives rather than in hexadecimal.
+	 */
+	public void setArchiveOutput(boolean archiveOutput) {
+		this.archiveOutput = archiveOutput;
+	}
+
+	public void setMaxCorrectableBurst(int maxCorrectableBurst) {
+		this.maxCorrectableBurst = maxCorrectableBurst;
+	}
+
+	public void setMaxSoftFlips(int maxSoftFlips) {
+		this.maxSoftFlips = maxSoftFlips;
+	}
+
+	public void setInversion(BitInversion inversion) {
+		this.inversion = inversion;
+	}
+
+	/**
+	 * The outcome of the decoding of one input file.
+	 */
+	public static class Result {
+		public final File input;
+		public final File output;
+
+		/** The reason why decoding failed, or {@code null} */
+		public String error = null;
+
+		public int groups = 0;
+		public long totalBlocks = 0;
+		public long totalBlocksOk = 0;
+
+		/** The names of the stations received, by PI code */
+		public final Map<Integer, String> stations = new LinkedHashMap<Integer, String>();
+
+		/** The decoding time, in milliseconds */
+		public long elapsed = 0;
+
+		public Result(File input, File output) {
+			this.input = input;
+			this.output = output;
+		}
+
+		private void addStation(TunedStation station) {
+			if(station.getPI() != 0) stations.put(station.getPI(), station.getStationName().trim());
+			totalBlocks += station.getTotalBlocks();
+			totalBlocksOk += station.getTotalBlocksOk();
+		}
+
+		public String getStationList() {
+			StringBuilder res = new StringBuilder();
+			for(Map.Entry<Integer, String> s : stations.entrySet()) {
+				if(res.length() > 0) res.append("; ");
+				res.append(String.format("%04X", s.getKey()));
+				if(s.getValue().length() > 0) res.append(" ").append(s.getValue());
+			}
+			return res.toString();
+		}
+
+		@Override
+		public String toString() {
+			if(error != null) return "failed: " + error;
+			return groups + " groups, stations: " + (stations.isEmpty() ? "none" : getStationList());
+		}
+	}
+
+	/**
+	 * Lists the input files designated by a directory (searched
+	 * recursively), a file, or a pattern with {@code *} and {@code ?}
+	 * wildcards in its last element, e.g. {@code recordings/*.wav}.
+	 */
+	public static List<File> listInputs(String spec) {
+		File f = new File(spec);
+		List<File> files = new ArrayList<File>();
+		if(f.isDirectory()) {
+			addFiles(f, files);
+		} else if(f.isFile()) {
+			files.add(f);
+		} else {
+			final Pattern pattern = globPattern(f.getName());
+			File[] matches = getBaseDir(spec).listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					return file.isFile() && pattern.matcher(file.getName()).matches();
+				}
+			});
+			if(matches != null) {
+				Arrays.sort(matches);
+				files.addAll(Arrays.asList(matches));
+			}
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the directory relative to which the output files of the
+	 * inputs listed by {@link #listInputs(String)} are named.
+	 */
+	public static File getBaseDir(String spec) {
+		File f = new File(spec);
+		if(f.isDirectory()) return f;
+		return f.getParentFile() == null ? new File(".") : f.getParentFile();
+	}
+
+	private static void addFiles(File dir, List<File> files) {
+		File[] list = dir.listFiles();
+		if(list == null) return;
+		Arrays.sort(list);
+		for(File f : list) {
+			if(f.getName().startsWith(".")) continue;
+			if(f.isDirectory()) addFiles(f, files);
+			else if(f.isFile()) files.add(f);
+		}
+	}
+
+	private static Pattern globPattern(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for(int i=0; i<glob.length(); i++) {
+			char c = glob.charAt(i);
+			if(c == '*') regex.append(".*");
+			else if(c == '?') regex.append('.');
+			else regex.append(Pattern.quote(String.valueOf(c)));
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Decodes the inputs designated by the given specification (see
+	 * {@link #listInputs(String)}).
+	 */
+	public List<Result> run(String spec) throws IOException, InterruptedException {
+		return run(listInputs(spec), getBaseDir(spec));
+	}
+
+	/**
+	 * Decodes the given inputs concurrently, and writes the summary once
+	 * they are all done.
+	 *
+	 * @param baseDir the output files are named after the paths of the
+	 * inputs relative to this directory
+	 * @return the results, in the order of the inputs
+	 */
+	public List<Result> run(List<File> inputs, File baseDir) throws IOException, InterruptedException {
+		final int total = inputs.size();
+		final AtomicInteger done = new AtomicInteger();
+
+		ExecutorService pool = Executors.newFixedThreadPool(jobs, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r);
+				t.setName("RDS-Batch-" + count.incrementAndGet());
+				return t;
+			}
+		});
+
+		List<Future<Result>> futures = new ArrayList<Future<Result>>(total);
+		for(final File input : inputs) {
+			final File output = getOutputFile(input, baseDir);
+			futures.add(pool.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					Result r = decode(input, output);
+					console.printf("[%d/%d] %s: %s\n", done.incrementAndGet(), total, input.getPath(), r);
+					return r;
+				}
+			}));
+		}
+		pool.shutdown();
+
+		List<Result> results = new ArrayList<Result>(total);
+		try {
+			for(Future<Result> f : futures) results.add(f.get());
+		} catch(ExecutionException e) {
+			pool.shutdownNow();
+			throw new IOException("Batch decoding failed: " + e.getCause(), e.getCause());
+		} catch(InterruptedException e) {
+			pool.shutdownNow();
+			throw e;
+		}
+
+		writeSummary(results);
+		return results;
+	}
+
+	private File getOutputFile(File input, File baseDir) {
+		String path = input.getName();
+		String base = baseDir.getAbsolutePath() + File.separator;
+		String in = input.getAbsolutePath();
+		if(in.startsWith(base)) path = in.substring(base.length());
+
+		// keep the input extension, so that e.g. x.wav and x.bin do not collide
+		return new File(outDir, path + (archiveOutput ? ".rdsa" : ".rds"));
+	}
+
+	private static boolean isAudioFile(File f) {
+		try {
+			AudioSystem.getAudioFileFormat(f);
+			return true;
+		} catch(UnsupportedAudioFileException e) {
+			return false;
+		} catch(IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Decodes one input file, in the calling thread.
+	 */
+	public Result decode(File input, File output) {
+		Result r = new Result(input, output);
+		long start = System.currentTimeMillis();
+
+		AudioBitReader audio = null;
+		InputStream in = null;
+		GroupReader tee = null;
+		try {
+			GroupReader reader;
+			if(isAudioFile(input)) {
+				AudioInputStream ais = AudioSystem.getAudioInputStream(input);
+				AudioFormat format = ais.getFormat();
+				if(format.getChannels() != 1 || format.getSampleSizeInBits() != 16 || format.isBigEndian()) {
+					ais.close();
+					throw new UnsupportedAudioFileException("Only 16-bit PCM, mono, little-endian audio is supported.");
+				}
+				audio = new AudioBitReader(new DataInputStream(ais), (int) format.getSampleRate());
+				reader = new BitStreamSynchronizer(RDSSurveyor.nullConsole, audio);
+			} else {
+				in = new FileInputStream(input);
+				reader = FileFormatGuesser.createReader(in, RDSSurveyor.nullConsole);
+			}
+
+			if(reader instanceof BitStreamSynchronizer) {
+				BitStreamSynchronizer sync = (BitStreamSynchronizer) reader;
+				sync.setMaxCorrectableBurst(maxCorrectableBurst);
+				sync.setMaxSoftFlips(maxSoftFlips);
+				if(inversion != BitInversion.AUTO) sync.forceInversion(inversion);
+			}
+
+			output.getParentFile().mkdirs();
+			if(archiveOutput) tee = new ArchiveTeeGroupReader(reader, output);
+			else tee = new AsyncTeeGroupReader(reader, output);
+
+			decodeGroups(new StationChangeDetector(tee), r);
+		} catch(Exception e) {
+			r.error = e.toString();
+		} finally {
+			// release everything, whether the input was read to its end or not
+			if(audio != null) audio.close();
+			try {
+				if(in != null) in.close();
+				if(tee instanceof AsyncTeeGroupReader) ((AsyncTeeGroupReader) tee).close();
+				if(tee instanceof ArchiveTeeGroupReader) ((ArchiveTeeGroupReader) tee).close();
+			} catch(IOException e) {
+				if(r.error == null) r.error = e.toString();
+			}
+		}
+
+		r.elapsed = System.currentTimeMillis() - start;
+		return r;
+	}
+
+	private void decodeGroups(GroupReader reader, final Result r) throws IOException {
+		Log log = new Log();
+		GroupLevelDecoder groupDecoder = new GroupLevelDecoder(log);
+
+		// nobody reads the analysis of groups
+		groupDecoder.setAnalysisEnabled(false);
+
+		log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				r.groups++;
+			}
+
+			@Override
+			public void visit(StationLost stationLost) {
+				r.addStation(stationLost.getStation());
+			}
+		});
+
+		try {
+			while(true) {
+				groupDecoder.processOneGroup(reader.getGroup());
+			}
+		} catch(GroupReader.EndOfStream eos) {
+			TunedStation lastStation = groupDecoder.getTunedStation();
+			if(lastStation != null) {
+				log.addMessage(new StationLost(null, lastStation, true));
+			}
+		}
+	}
+
+	private void writeSummary(List<Result> results) throws IOException {
+		outDir.mkdirs();
+		PrintWriter w = new PrintWriter(new File(outDir, SUMMARY_FILE), "UTF-8");
+		try {
+			w.println("file,output,status,groups,blocks,blocks_ok,stations,seconds");
+			for(Result r : results) {
+				w.printf("%s,%s,%s,%d,%d,%d,%s,%.3f\n",
+						csv(r.input.getPath()), csv(r.output.getPath()),
+						csv(r.error == null ? "ok" : r.error),
+						r.groups, r.totalBlocks, r.totalBlocksOk,
+						csv(r.getStationList()), r.elapsed / 1000.);
+			}
+		} finally {
+			w.close();
+		}
+	}
+
+	private static String csv(String s) {
+		if(s.indexOf(',') < 0 && s.indexOf('"') < 0 && s.indexOf('\n') < 0) return s;
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+}
@@ -28,7 +28,7 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
 
 import eu.jacquet80.rds.input.BitReader;
@@ -39,13 +39,35 @@ import eu.jacquet80.rds.log.SequentialTime;
 
 
 public class BitStreamSynchronizer extends GroupReader {
-	private final static int SYNC_THRESHOLD = 2;  // need 2 blocks after initial block to confirm synchronization
 	private final static int SYNC_CONFIRM_DURATION = 5;  // 3 blocks in 5 groups
 	private final static int SYNC_LOSS_DURATION = 10;    // lose synchronization if 10 groups without a good syndrome
+	
+	/**
+	 * Longer bursts may be corrected, but the more bits are corrected, the
+	 * more likely a garbled block is mistaken for a valid one.
+	 */
+	public final static int DEFAULT_MAX_CORRECTABLE_BURST = 2;
+	
+	/**
+	 * With a bit reader that gives the reliability of bits, up to this many
+	 * of the least reliable bits of a block may be flipped to correct it.
+	 * Off by default: keeping reliabilities slows down the demodulator, so
+	 * they are only asked for when soft-decision correction is enabled.
+	 */
+	public final static int DEFAULT_MAX_SOFT_FLIPS = 0;
+	
+	/** Maximum number of bits flipped by soft-decision correction */
+	public final static int MAX_SOFT_FLIPS = 3;
+	
+	// the bits among which soft-decision correction looks for errors: the
+	// least reliable ones of the block, below the mean reliability
+	private final static int SOFT_CANDIDATES = 6;
+	private final static int SOFT_RELIABILITY_THRESHOLD = 128;
 
 	private final PrintStream console;
 	//private final Log log;
 	private final BitReader reader;
+	private final int stream;
 	private BitInversion inversion = BitInversion.AUTO;
 	
 	private int block = 0;        // block contents
@@ -59,91 +81,216 @@ public class BitStreamSynchronizer extends GroupReader {
 	private int groupCount = 0;
 	private int bitTime = 0;
 	private boolean negativePolarity = false;
-	private @SuppressWarnings("unchecked") LinkedList<Integer> nbSyncAtOffset[][][] = new LinkedList[26][4][2];
+	private int maxCorrectableBurst = DEFAULT_MAX_CORRECTABLE_BURST;
+	private int maxSoftFlips = DEFAULT_MAX_SOFT_FLIPS;
+	private int correctedBlocks = 0;   // bit i set if block i of the current group was corrected
+	
+	// bits read ahead from the bit reader, packed as by BitReader.readBits
+	private final static int BIT_BUFFER_SIZE = 4096;
+	private final long[] bitBuffer = new long[BIT_BUFFER_SIZE / 64];
+	private int bitBufferPos = 0;
+	private int bitBufferCount = 0;
+	
+	// reliabilities of the bits of the bit buffer, allocated when
+	// soft-decision correction is enabled and the bit reader gives them, and
+	// of the bits of the current block, in reception order
+	private byte[] reliabilityBuffer = null;
+	private boolean bufferHasReliability = false;
+	private final int[] blockReliability = new int[26];
+	private final int[] softCandidates = new int[SOFT_CANDIDATES];
+	
+	// syndrome of the current block, maintained incrementally while not synced
+	private int syndrome = 0;
+	
+	// times of the last two syndrome hits, for every (offset, pseudo-block, polarity)
+	private final int[] lastSyncHits = new int[26 * 4 * 2 * 2];
+	
+	/**
+	 * Shifting the block by one bit multiplies its syndrome by x modulo the
+	 * generator polynomial. This table gives the feedback term to XOR into the
+	 * shifted syndrome, indexed by (outgoing syndrome bit XOR bit leaving the
+	 * block) << 1 | incoming bit.
+	 */
+	private final static int[] SYNDROME_FEEDBACK = {0, 0x31B, 0x1B9, 0x1B9 ^ 0x31B};
+	
+	/**
+	 * For every syndrome value, bits 0-3 tell whether it is the syndrome of
+	 * block A to D, and bits 4-7 whether its inverse is.
+	 */
+	private final static byte[] SYNDROME_OFFSET_MATCH = new byte[1024];
+	
+	static {
+		int inverted = RDS.calcSyndrome(0x3FFFFFF);
+		for(int s=0; s<1024; s++) {
+			int m = 0;
+			for(int i=0; i<4; i++) {
+				if(s == RDS.syndromes[i][0] || s == RDS.syndromes[i][1]) m |= 1 << i;
+				int si = s ^ inverted;
+				if(si == RDS.syndromes[i][0] || si == RDS.syndromes[i][1]) m |= 1 << (i+4);
+			}
+			SYNDROME_OFFSET_MATCH[s] = (byte) m;
+		}
+	}
+	
+	/** Syndrome of an error on the i-th bit of a block, in reception order */
+	private final static int[] BIT_SYNDROMES = new int[26];
+	
+	static {
+		for(int i=0; i<26; i++) BIT_SYNDROMES[i] = RDS.calcSyndrome(1 << (25 - i));
+	}
+	
+	private final static byte[] DOTS = new byte[64];
+	
+	static {
+		Arrays.fill(DOTS, (byte) '.');
+	}
 	
 	private List<StatusChangeListener> statusChangeListeners = new ArrayList<StatusChangeListener>();
 	
 	
 	public BitStreamSynchronizer(PrintStream console, BitReader reader) {
+		this(console, reader, 0);
+	}
+	
+	/**
+	 * @param stream the data stream the bits belong to, 0 for the basic
+	 * stream, 1 to 3 for the additional streams of RDS2; groups are tagged
+	 * with it
+	 */
+	public BitStreamSynchronizer(PrintStream console, BitReader reader, int stream) {
 		this.console = console;
 		//this.log = log;
 		this.reader = reader;
+		this.stream = stream;
 		setParent(reader);
 		
-		eraseSyncArray(nbSyncAtOffset);
+		Arrays.fill(lastSyncHits, Integer.MIN_VALUE);
 	}
 	
-	private final static void eraseSyncArray(LinkedList<Integer> nbSyncAtOffset[][][]) {
-		for(int i=0; i<nbSyncAtOffset.length; i++)
-			for(int j=0; j<nbSyncAtOffset[i].length; j++)
-				for(int k=0; k<nbSyncAtOffset[i][j].length; k++)
-					nbSyncAtOffset[i][j][k] = new LinkedList<Integer>();
+	/**
+	 * Refills the bit buffer with whatever the bit reader can provide.
+	 */
+	private void fillBitBuffer() throws IOException, EndOfStream {
+		int n;
+		try {
+			bufferHasReliability = reliabilityBuffer != null;
+			if(bufferHasReliability) n = reader.readBits(bitBuffer, reliabilityBuffer, BIT_BUFFER_SIZE);
+			else n = reader.readBits(bitBuffer, BIT_BUFFER_SIZE);
+		} catch(EOFException e) {
+			n = -1;
+		}
+		if(n < 0) throw new EndOfStream();
+		
+		bitBufferPos = 0;
+		bitBufferCount = n;
 	}
 	
-	@Override
-	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
-		while(true) {
-			// read bit and add it to stream
-			boolean bit = false;
-			try {
-				bit = reader.getBit();
-			} catch(EOFException e) {
-				throw new EndOfStream();
-			}
-			block = (block << 1) & 0x3FFFFFF;
-			if(bit) block |= 1;
-			bitCount++;
-			bitTime++;
-						
-			if(! synced) {
-				int[] synd = { RDS.calcSyndrome(block), RDS.calcSyndrome(~block) };
+	/**
+	 * Consumes the bit buffer one word at a time, looking for offset words at
+	 * every bit position. Stops right after the bit that yields
+	 * synchronization, if any, so that the remaining bits are processed as
+	 * synchronized data.
+	 */
+	private void searchSync() {
+		while(bitBufferPos < bitBufferCount) {
+			long word = bitBuffer[bitBufferPos >> 6];
+			int end = Math.min(bitBufferCount - (bitBufferPos & ~63), 64);
+			int nbDots = 0;
+			
+			for(int b = bitBufferPos & 63; b < end; b++) {
+				int bit = (int) (word >>> (63 - b)) & 1;
+				int out = (block >> 25) & 1;
+				block = ((block << 1) | bit) & 0x3FFFFFF;
+				syndrome = ((syndrome << 1) & 0x3FF) ^ SYNDROME_FEEDBACK[(((syndrome >> 9) ^ out) << 1) | bit];
+				bitBufferPos++;
+				bitCount++;
+				bitTime++;
+				nbDots++;
 				
-				console.print(".");
-
-				for(int i=0; i<4; i++) {
-					for(int j=0; j<2; j++) {
-						if(j==0 && inversion == BitInversion.INVERT ||
-								j==1 && inversion == BitInversion.NOINVERT) continue;
-						if(synd[j] == RDS.syndromes[i][0] || synd[j] == RDS.syndromes[i][1]) {
-							int offset = bitTime % 26;
-							int pseudoBlock = (bitTime / 26 + 4 - i) % 4;
-
-							console.print("[" + (j==0 ? "+" : "-") + ((char)('A'+i)) + ":" + offset + "/" + pseudoBlock + "]");
-
-							// add current time to the list of syndrome hits
-							nbSyncAtOffset[offset][pseudoBlock][j].addLast(bitTime);
-
-							// weed out out-of-time hits
-							while(nbSyncAtOffset[offset][pseudoBlock][j].getFirst() < bitTime - SYNC_CONFIRM_DURATION * 104)
-								nbSyncAtOffset[offset][pseudoBlock][j].removeFirst();
-
-							// are we above threshold
-							if(nbSyncAtOffset[offset][pseudoBlock][j].size() > SYNC_THRESHOLD) {
-								synced = true;
-								eraseSyncArray(nbSyncAtOffset);
-
-								group[i] = (block >> 10) & 0xFFFF;
-								blockCount = (i+1) % 4;
-								bitCount = 0;
-								nbOk = 1;
-								for(int k=0; k<4; k++) blocksOk[k] = (k == i);
-								negativePolarity = (j==1);
-								
-								if(negativePolarity) group[i] = ~ group[i];
-								
-								console.println("\nGot synchronization on block " + (char)('A' + i) + "! (" + (j==0 ? "positive" : "negative") + " polarity)");
-								console.print("      ");
-								for(int k=0; k<i; k++) console.print(".");
-								console.print("S");
-								if(blockCount == 0) console.println();
-								reportStatus();
-							}
-							break;
+				int match = SYNDROME_OFFSET_MATCH[syndrome];
+				if(match != 0) {
+					console.write(DOTS, 0, nbDots);
+					nbDots = 0;
+					if(syndromeHit(match)) return;
+				}
+			}
+			
+			console.write(DOTS, 0, nbDots);
+		}
+	}
+	
+	/**
+	 * Records a syndrome hit at the current bit time.
+	 * 
+	 * @param match the offset words matched, as in SYNDROME_OFFSET_MATCH
+	 * @return true if synchronization has been acquired
+	 */
+	private boolean syndromeHit(int match) {
+		for(int i=0; i<4; i++) {
+			for(int j=0; j<2; j++) {
+				if(j==0 && inversion == BitInversion.INVERT ||
+						j==1 && inversion == BitInversion.NOINVERT) continue;
+				if((match & (1 << (i + 4*j))) != 0) {
+					int offset = bitTime % 26;
+					int pseudoBlock = (bitTime / 26 + 4 - i) % 4;
 
-						}
+					console.print("[" + (j==0 ? "+" : "-") + ((char)('A'+i)) + ":" + offset + "/" + pseudoBlock + "]");
+
+					// we are above threshold if the two previous hits are
+					// recent enough, otherwise just remember this hit
+					int idx = ((offset * 4 + pseudoBlock) * 2 + j) * 2;
+					if(lastSyncHits[idx + 1] >= bitTime - SYNC_CONFIRM_DURATION * 104) {
+						synced = true;
+						Arrays.fill(lastSyncHits, Integer.MIN_VALUE);
+
+						group[i] = (block >> 10) & 0xFFFF;
+						blockCount = (i+1) % 4;
+						bitCount = 0;
+						nbOk = 1;
+						for(int k=0; k<4; k++) blocksOk[k] = (k == i);
+						negativePolarity = (j==1);
+						
+						if(negativePolarity) group[i] = ~ group[i];
+						
+						console.println("\nGot synchronization on block " + (char)('A' + i) + "! (" + (j==0 ? "positive" : "negative") + " polarity)");
+						console.print("      ");
+						for(int k=0; k<i; k++) console.print(".");
+						console.print("S");
+						if(blockCount == 0) console.println();
+						reportStatus();
+						return true;
 					}
+					lastSyncHits[idx + 1] = lastSyncHits[idx];
+					lastSyncHits[idx] = bitTime;
+					break;
 				}
+			}
+		}
+		return false;
+	}
+	
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		while(true) {
+			if(bitBufferPos == bitBufferCount) fillBitBuffer();
+			
+			if(! synced) {
+				searchSync();
 			} else {   // if synced
+				// take as many bits of the current block as available
+				int nbBits = Math.min(26 - bitCount, bitBufferCount - bitBufferPos);
+				int offset = bitBufferPos & 63;
+				long word = bitBuffer[bitBufferPos >> 6] << offset;
+				if(offset + nbBits > 64) word |= bitBuffer[(bitBufferPos >> 6) + 1] >>> (64 - offset);
+				int bits = (int) (word >>> (64 - nbBits));
+				if(bufferHasReliability) {
+					for(int i=0; i<nbBits; i++) blockReliability[bitCount + i] = reliabilityBuffer[bitBufferPos + i] & 0xFF;
+				}
+				bitBufferPos += nbBits;
+				block = ((block << nbBits) | bits) & 0x3FFFFFF;
+				bitCount += nbBits;
+				bitTime += nbBits;
+				
 				if(bitCount == 26) {
 					if(negativePolarity) block = ~block;    // invert block if polarity is negative
 					group[blockCount] = (block>>10) & 0xFFFF;
@@ -154,26 +301,16 @@ public class BitStreamSynchronizer extends GroupReader {
 						blocksOk[blockCount] = true;
 						if(synd == RDS.syndromes[blockCount][0]) console.print("G");   // type A offset word
 						else console.print("g");   // type B offset word (for group C)
+					} else if(bufferHasReliability && maxSoftFlips > 0 && correctSoft(synd)
+							|| maxCorrectableBurst > 0 && correctBlock(synd)) {
+						// corrected blocks do not count towards keeping synchronization
+						blocksOk[blockCount] = true;
+						correctedBlocks |= 1 << blockCount;
+						console.print("c");
 					} else {
 						blocksOk[blockCount] = false;
 						group[blockCount] = -1;
 						console.print(".");
-						/*
-						This is a placeholder for error correction code
-						
-						int syndrome = (synd ^ syndromes[blockCount][0])>>6;///
-						
-						int nbErrors = 1;
-						if(nbErrors <= 0) {
-							block = RDS.correct(block, syndrome); ///
-							group[blockCount] = (block>>10) & 0xFFFF; ///
-							blocksOk[blockCount] = true;
-							output.print("c");
-						} else {
-							blocksOk[blockCount] = false;
-							output.print(".");
-						}
-						*/
 					}
 					
 					//console.printf("-%07X>%04X+%03X ", block, group[blockCount], synd);
@@ -193,6 +330,7 @@ public class BitStreamSynchronizer extends GroupReader {
 						// after a while without a correct block, decide we have lost synchronization
 						if(nbUnsync > SYNC_LOSS_DURATION) {
 							synced = false;
+							syndrome = RDS.calcSyndrome(block);
 							//groupLevelDecoder.loseSync();
 							//TODO: need a means to inform a group decoder of a sync loss?
 							console.println(" Lost synchronization.");
@@ -211,7 +349,9 @@ public class BitStreamSynchronizer extends GroupReader {
 						// return group data
 						int[] theGroup = new int[4];
 						System.arraycopy(group, 0, theGroup, 0, 4);
-						return new GroupEvent(new SequentialTime(bitTime), theGroup, false);
+						int corrected = correctedBlocks;
+						correctedBlocks = 0;
+						return new GroupEvent(new SequentialTime(bitTime), theGroup, false, corrected, stream);
 						//groupLevelDecoder.processGroup(nbOk, blocksOk, group, bitTime);
 					}
 				}
@@ -219,6 +359,150 @@ public class BitStreamSynchronizer extends GroupReader {
 		}
 	}
 	
+	/**
+	 * Tries to correct the current block, which has a bad syndrome, by
+	 * flipping a few of its least reliable bits. Of the combinations of
+	 * flips that yield a valid syndrome, the least reliable one is applied.
+	 * As for burst errors, a block C whose version is unknown is only
+	 * corrected if just one of offset words C and C' can be reached.
+	 * 
+	 * @param synd the syndrome of the block
+	 * @return true if the block has been corrected
+	 */
+	private boolean correctSoft(int synd) {
+		// select the least reliable bits, least reliable first
+		int nbCandidates = 0;
+		for(int i=0; i<26; i++) {
+			int r = blockReliability[i];
+			if(r >= SOFT_RELIABILITY_THRESHOLD) continue;
+			if(nbCandidates == SOFT_CANDIDATES && r >= blockReliability[softCandidates[nbCandidates-1]]) continue;
+			int j = Math.min(nbCandidates, SOFT_CANDIDATES - 1);
+			while(j > 0 && blockReliability[softCandidates[j-1]] > r) {
+				softCandidates[j] = softCandidates[j-1];
+				j--;
+			}
+			softCandidates[j] = i;
+			if(nbCandidates < SOFT_CANDIDATES) nbCandidates++;
+		}
+		if(nbCandidates == 0) return false;
+		
+		// same choice of offset words as for burst errors
+		int firstOffset = 0, lastOffset = 0;
+		if(blockCount == 2) {
+			if(blocksOk[1]) firstOffset = lastOffset = (group[1] >> 11) & 1;
+			else lastOffset = 1;
+		}
+		
+		int pattern = 0, nbMatches = 0;
+		for(int i=firstOffset; i<=lastOffset; i++) {
+			int p = softErrorPattern(synd ^ RDS.syndromes[blockCount][i], nbCandidates);
+			if(p == 0) continue;
+			nbMatches++;
+			pattern = p;
+		}
+		
+		if(nbMatches != 1) return false;
+		
+		block ^= pattern;
+		group[blockCount] = (block>>10) & 0xFFFF;
+		return true;
+	}
+	
+	/**
+	 * Finds the least reliable combination of at most {@link #maxSoftFlips}
+	 * of the candidate bits whose syndrome is the given error syndrome.
+	 * 
+	 * @return the error pattern, or 0 if there is none
+	 */
+	private int softErrorPattern(int errorSyndrome, int nbCandidates) {
+		// the syndrome is linear: flipping bits XORs their syndromes into it
+		int bestPattern = 0, bestCost = Integer.MAX_VALUE;
+		for(int flips=1; flips < (1 << nbCandidates); flips++) {
+			if(Integer.bitCount(flips) > maxSoftFlips) continue;
+			int s = 0, pattern = 0, cost = 0;
+			for(int j=0; j<nbCandidates; j++) {
+				if((flips & (1 << j)) == 0) continue;
+				int bit = softCandidates[j];
+				s ^= BIT_SYNDROMES[bit];
+				pattern |= 1 << (25 - bit);
+				cost += blockReliability[bit];
+			}
+			if(s == errorSyndrome && cost < bestCost) {
+				bestPattern = pattern;
+				bestCost = cost;
+			}
+		}
+		return bestPattern;
+	}
+	
+	/**
+	 * Tries to correct the current block, which has a bad syndrome, assuming
+	 * that it contains a burst error.
+	 * 
+	 * @param synd the syndrome of the block
+	 * @return true if the block has been corrected
+	 */
+	private boolean correctBlock(int synd) {
+		// block C may use offset word C or C'; if block B is known, the group
+		// version tells which one, otherwise only one of them must match a
+		// correctable burst
+		int firstOffset = 0, lastOffset = 0;
+		if(blockCount == 2) {
+			if(blocksOk[1]) firstOffset = lastOffset = (group[1] >> 11) & 1;
+			else lastOffset = 1;
+		}
+		
+		int pattern = 0, length = 0, nbCandidates = 0;
+		for(int i=firstOffset; i<=lastOffset; i++) {
+			int errorSyndrome = synd ^ RDS.syndromes[blockCount][i];
+			int l = RDS.getBurstErrorLength(errorSyndrome);
+			if(l == 0) continue;
+			nbCandidates++;
+			length = l;
+			pattern = RDS.getBurstErrorPattern(errorSyndrome);
+		}
+		
+		if(nbCandidates != 1 || length > maxCorrectableBurst) return false;
+		
+		block ^= pattern;
+		group[blockCount] = (block>>10) & 0xFFFF;
+		return true;
+	}
+	
+	/**
+	 * Sets the maximum length of the burst errors that are corrected in
+	 * synchronized blocks.
+	 * 
+	 * @param maxBurst maximum burst length, from 0 (no correction) to
+	 * {@link RDS#MAX_BURST_LENGTH}
+	 */
+	public void setMaxCorrectableBurst(int maxBurst) {
+		if(maxBurst < 0 || maxBurst > RDS.MAX_BURST_LENGTH)
+			throw new IllegalArgumentException("Correctable burst length must be between 0 and " + RDS.MAX_BURST_LENGTH);
+		this.maxCorrectableBurst = maxBurst;
+	}
+	
+	/**
+	 * Sets the maximum number of bits flipped to correct a synchronized
+	 * block, when the bit reader gives the reliability of bits. Soft-decision
+	 * correction is tried before burst correction.
+	 * 
+	 * Enabling it asks the bit reader to keep the reliability of the bits,
+	 * so it should be done before the first group is read.
+	 * 
+	 * @param maxFlips maximum number of flipped bits, from 0 (no soft-decision
+	 * correction) to {@link #MAX_SOFT_FLIPS}
+	 */
+	public void setMaxSoftFlips(int maxFlips) {
+		if(maxFlips < 0 || maxFlips > MAX_SOFT_FLIPS)
+			throw new IllegalArgumentException("Number of soft flips must be between 0 and " + MAX_SOFT_FLIPS);
+		this.maxSoftFlips = maxFlips;
+		if(maxFlips > 0 && reliabilityBuffer == null && reader.hasReliability()) {
+			reader.keepReliability();
+			reliabilityBuffer = new byte[BIT_BUFFER_SIZE];
+		}
+	}
+	
 	public void forceInversion(BitInversion inversion) {
 		this.inversion = inversion;
 	}
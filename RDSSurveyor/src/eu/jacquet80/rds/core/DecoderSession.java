@@ -0,0 +1,224 @@
+package eu.jacquet80.rds.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Semaphore;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.input.ArchiveTeeGroupReader;
+import eu.jacquet80.rds.input.AsyncTeeGroupReader;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.StationChangeDetector;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.EndOfStream;
+import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogMessageVisitor;
+import eu.jacquet80.rds.log.StationLost;
+
+/**
+ * Decodes one input: owns its reader chain, log, group-level decoder (hence
+ * the state of the tuned station) and worker thread.
+ * 
+ * Several sessions may run in the same JVM, e.g. one per tuner. The GUI and
+ * the command line use the default session, {@link DecoderShell#instance}.
+ */
+public class DecoderSession {
+	private final Log log = new Log();
+	
+	private final Thread worker;
+	
+	// concurrent accesses to reader must be synchronized on this session's monitor
+	private GroupReader reader;
+	private final GroupLevelDecoder groupDecoder = new GroupLevelDecoder(log);
+	
+	private final Semaphore groupReady = new Semaphore(0);
+	private boolean quitAfterProcess = false;
+	private volatile boolean closed = false;
+	
+	// directory of the default group output files
+	private final File outputDir;
+	
+	private PrintStream console = RDSSurveyor.nullConsole;
+	
+	// write the default group output file as a binary archive rather than in hexadecimal
+	private boolean archiveOutput = false;
+	
+	// hex group output files are rotated hourly, and synced to disk every few seconds
+	private long rotationPeriod = 3600000;
+	private long syncInterval = AsyncTeeGroupReader.DEFAULT_SYNC_INTERVAL;
+	private AsyncTeeGroupReader tee = null;
+	
+	/**
+	 * Creates a session, whose worker thread is named after the given name,
+	 * and whose default group output files are written to a subdirectory of
+	 * that name in {@link RDSSurveyor#tempDir}.
+	 */
+	public DecoderSession(String name) {
+		this("RDS-Worker-" + name, new File(RDSSurveyor.tempDir, name));
+	}
+	
+	DecoderSession(final String threadName, File outputDir) {
+		this.outputDir = outputDir;
+		// synchronous, so that group lines do not interleave with what the
+		// bit stream synchronizer prints to the same console
+		this.log.addNewMessageListener(consolePrinter);
+		
+		worker = new Thread() {
+			{
+				setName(threadName);
+			}
+			
+			public void run() {
+				try {
+					while(true) {
+						groupReady.acquireUninterruptibly();
+						if(closed) return;
+						
+						GroupReaderEvent evt;
+						boolean goOn;
+
+						try {
+							GroupReader r;
+							synchronized(DecoderSession.this) {
+								r = reader;
+							}
+							evt = r.getGroup();
+							goOn = true;
+							groupDecoder.processOneGroup(evt);
+						} catch(eu.jacquet80.rds.input.GroupReader.EndOfStream eos) {
+							TunedStation lastStation = groupDecoder.getTunedStation();
+							if(lastStation != null) {
+								log.addMessage(new StationLost(null, lastStation, true));
+							}
+							log.addMessage(new eu.jacquet80.rds.log.EndOfStream(null));
+							goOn = false;
+							if(quitAfterProcess) {
+								log.flush();
+								return;
+							}
+						}
+
+						if(goOn) groupReady.release();
+					}
+				} catch (IOException e) {
+					System.err.println("In RDS worker thread: " + e);
+					e.printStackTrace(System.err);
+				}
+			};
+		};
+
+		this.worker.start();
+	}
+	
+	public void setConsole(final PrintStream console) {
+		this.console = console == null ? RDSSurveyor.nullConsole : console;
+	}
+	
+	private final LogMessageVisitor consolePrinter = new DefaultLogMessageVisitor() {
+		@Override
+		public void visit(EndOfStream endOfStream) {
+			//console.println("\nProcessing complete.");
+		}
+		
+		@Override
+		public void visit(GroupReceived groupReceived) {
+			if(console != RDSSurveyor.nullConsole) console.println(groupReceived.toString(true));
+		}
+	};
+	
+	public void setArchiveOutput(boolean archiveOutput) {
+		this.archiveOutput = archiveOutput;
+	}
+	
+	public void setRotationPeriod(long rotationPeriod) {
+		this.rotationPeriod = rotationPeriod;
+	}
+	
+	public void setSyncInterval(long syncInterval) {
+		this.syncInterval = syncInterval;
+	}
+	
+	public Log getLog() {
+		return this.log;
+	}
+	
+	public synchronized void process(final GroupReader aReader, boolean outFile) {
+		// implicitly, this is the end of the previous stream
+		// (important to have this for UI parts that may react to stream changes)
+		log.addMessage(new EndOfStream(null));
+
+		this.reader = aReader;
+		
+		// stop writing the output of the previous stream
+		if(tee != null) {
+			tee.close();
+			tee = null;
+		}
+		
+		// output file?
+		if(outFile) {
+			System.out.print("Using default group output file. ");
+			try {
+				if(archiveOutput) {
+					outputDir.mkdirs();
+					File outGroupFile = new File(outputDir, "rdslog_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".rdsa");
+					System.out.println("Group archive output file is " + outGroupFile.getAbsoluteFile());
+					this.reader = new ArchiveTeeGroupReader(this.reader, outGroupFile);
+				} else {
+					outputDir.mkdirs();
+					System.out.println("Hex group output files are rdslog_*.rds in " + outputDir.getAbsolutePath());
+					tee = new AsyncTeeGroupReader(this.reader, outputDir, 0, rotationPeriod, syncInterval);
+					this.reader = tee;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		
+		// add a station change detector
+		this.reader = new StationChangeDetector(this.reader);
+
+		this.groupReady.release();
+	}
+	
+	public void processAndQuit(final GroupReader reader, boolean outFile) {
+		this.quitAfterProcess = true;
+		process(reader, outFile);
+	}
+	
+	public GroupLevelDecoder getGroupReader() {
+		return groupDecoder;
+	}
+	
+	/**
+	 * Waits for the worker thread to end, that is for the end of the stream
+	 * after {@link #processAndQuit(GroupReader, boolean)}, or for
+	 * {@link #close()}.
+	 */
+	public void join() throws InterruptedException {
+		worker.join();
+	}
+	
+	/**
+	 * Stops the session: its worker thread ends after the group being read,
+	 * if any, and the default group output file is closed.
+	 */
+	public void close() {
+		closed = true;
+		groupReady.release();
+		log.removeNewMessageListener(consolePrinter);
+		
+		AsyncTeeGroupReader t;
+		synchronized(this) {
+			t = tee;
+			tee = null;
+		}
+		if(t != null) t.close();
+	}
+}
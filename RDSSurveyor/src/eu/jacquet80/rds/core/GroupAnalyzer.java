@@ -0,0 +1,466 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package eu.jacquet80.rds.core;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Formatter;
+
+import eu.jacquet80.rds.app.Application;
+import eu.jacquet80.rds.app.oda.ODA;
+
+/**
+ * Renders the analysis text of a group.
+ *
+ * {@link GroupLevelDecoder} renders the analysis of each group just after
+ * it has decoded it, and passes the {@link Details} it has recorded about
+ * the group: RBDS call signs, paging state, ODA names, the output of
+ * applications and the AF list each AF pair belongs to. Without them, the
+ * analysis is rendered from the blocks only, which is used to render the
+ * analysis of groups on demand, long after they have been decoded.
+ */
+public class GroupAnalyzer {
+	final static String[] RP_TNGD_VALUES = {
+			"No RP",
+			"RP groups 00-99",
+			"RP groups 00-39",
+			"RP groups 40-99",
+			"RP groups 40-69",
+			"RP groups 70-99",
+			"RP groups 00-19",
+			"RP groups 20-39",
+	};
+
+	private final static String[][] DI_NAMES = {
+		{"SPTY", "DPTY"},
+		{"NCmp", "Comp"},
+		{"NArH", "ArtH"},
+		{"Mono", "Ster"},
+	};
+
+	/**
+	 * What the decoder knows about a group beyond its blocks. It is filled
+	 * in while the group is decoded, and reused from one group to the next.
+	 */
+	static class Details {
+		/** The station that transmitted the group */
+		Station station;
+		/** The AF pair or the mapped frequency, described in its AF list */
+		String af;
+		/** The paging state given by 1A and 4A groups */
+		String paging;
+		/** The application carried in 7A groups, while a 1A group indicates paging */
+		Application rpConflict;
+		/** The application carried in 8A groups, while a 1A group indicates TMC */
+		Application tmcConflict;
+		/** The application carried in the group announced by a 3A group, if it does not match the AID */
+		Application odaConflict;
+		/** The application the group is meant for */
+		Application app;
+		private final StringWriter appOutput = new StringWriter();
+		/** Where the application writes what it makes of the group */
+		final PrintWriter appConsole = new PrintWriter(appOutput);
+
+		void clear(Station station) {
+			this.station = station;
+			af = paging = null;
+			rpConflict = tmcConflict = odaConflict = app = null;
+			appOutput.getBuffer().setLength(0);
+		}
+	}
+
+	/**
+	 * Renders the analysis of a group of one of the additional data streams
+	 * of RDS2. Only the function header is shown, the contents are not
+	 * decoded.
+	 *
+	 * @param stream the data stream, 1 to 3
+	 * @param blocks the blocks of the group, -1 for blocks not received
+	 * @return the analysis text
+	 */
+	public static String analyzeStreamGroup(int stream, int[] blocks) {
+		return blocks[0] >= 0 ?
+				String.format("Stream %d, Type C, FH=%02X", stream, (blocks[0] >> 8) & 0xFF) :
+				"Stream " + stream + ", Type C";
+	}
+
+	/**
+	 * Renders the analysis of a group from its blocks only.
+	 *
+	 * @param blocks the blocks of the group, -1 for blocks not received
+	 * @param correctedBlocks a bit mask of the blocks that were corrected,
+	 * block 0 being the least-significant bit
+	 * @return the analysis text
+	 */
+	public static String analyze(int[] blocks, int correctedBlocks) {
+		return analyze(blocks, correctedBlocks, null);
+	}
+
+	/**
+	 * Renders the analysis of a group.
+	 *
+	 * @param blocks the blocks of the group, -1 for blocks not received
+	 * @param correctedBlocks a bit mask of the blocks that were corrected,
+	 * block 0 being the least-significant bit
+	 * @param details what the decoder recorded about the group, or
+	 * {@code null} to render the analysis from the blocks only
+	 * @return the analysis text
+	 */
+	static String analyze(int[] blocks, int correctedBlocks, Details details) {
+		StringBuilder sb = new StringBuilder();
+		Formatter f = new Formatter(sb);
+
+		boolean[] blocksOk = new boolean[4];
+		for(int i=0; i<4; i++) blocksOk[i] = blocks[i] >= 0;
+
+		int type = -1, version = -1;
+		if(blocksOk[1]) {
+			type = ((blocks[1]>>12) & 0xF);
+			version = ((blocks[1]>>11) & 1);
+		}
+
+		int pi = -1;
+		if(blocksOk[0]) {
+			pi = blocks[0];
+		} else if(version == 1 && blocksOk[2]) {
+			pi = blocks[2];
+		}
+
+		if(pi != -1) {
+			f.format("PI=%04X", pi);
+			String callsign = details == null ? null : details.station.getCallsign();
+			if(callsign != null) sb.append(" [").append(callsign).append(']');
+			sb.append(", ");
+		} else sb.append("         ");
+
+		if(blocksOk[1]) {
+			sb.append("Type ").append(type).append((char)('A' + version))
+				.append(", TP=").append((blocks[1]>>10) & 1)
+				.append(", PTY=").append((blocks[1]>>5) & 0x1F).append(", ");
+		}
+
+		// Groups 0A & 0B
+		if(type == 0) {
+			int addr = basicTuningBits(sb, blocks[1]);
+
+			if(blocksOk[3]) {
+				sb.append("PS pos=").append(addr).append(": \"");
+				chars(sb, blocks[3]);
+				sb.append("\" ");
+			}
+
+			if(version == 0 && blocksOk[2]) sb.append(af(details, (blocks[2]>>8) & 0xFF, blocks[2] & 0xFF));
+		}
+
+		// Group 1A: radio paging configuration
+		if(type == 1 && version == 0) {
+			sb.append("RP Config: [").append(RP_TNGD_VALUES[(blocks[1]>>2) & 7]);
+			if(details != null && details.rpConflict != null) {
+				sb.append("Error: this group indicates the presence of paging, while group 7A is used for '")
+					.append(details.rpConflict.getName()).append("'!");
+			}
+			if(details != null && details.paging != null) sb.append(", ").append(details.paging);
+			sb.append("], ");
+		}
+
+		// Groups 1A & 1B: PIN
+		if(type == 1 && blocksOk[3]) {
+			int pin = blocks[3];
+			int day = (pin>>11) & 0x1F;
+			if(day != 0) {
+				f.format("PIN=%04X [D=%d, H=%02d:%02d] ", pin, day, (pin>>6) & 0x1F, pin & 0x3F);
+			} else {
+				int variant = (blocks[3]>>8) & 0xF;
+				switch(variant) {
+				case 0: case 1: case 2: case 3:
+					int opc = blocks[3] & 0xF;
+					opc(f, opc);
+					if(opc != 0) f.format("PAC=%d ", (blocks[3] >> 4) & 0x3F);
+					break;
+				case 4:
+					ecc(f, pi, blocks[3] & 0xFF);
+					break;
+				default:
+					f.format("<Variant %d not implemented> ", variant);
+				}
+			}
+		}
+
+		// Group 1A: slow labeling codes
+		if(type == 1 && version == 0 && blocksOk[2]) {
+			int variant = (blocks[2] >> 12) & 0x7;
+			int la = (blocks[2] >> 15) & 0x1;
+			sb.append("LA=").append(la).append(" v=").append(variant).append(' ');
+			switch(variant) {
+			case 0:
+				ecc(f, pi, blocks[2] & 0xFF);
+				opc(f, (blocks[2] >> 8) & 0xF);
+				break;
+			case 1:
+				int tmcid = blocks[2] & 0xFFF;
+				f.format("TMC (old way) ID=0x%03X / (dec)%d", tmcid, tmcid);
+				if(details != null && details.tmcConflict != null) {
+					sb.append("Error: this group indicates the presence of TMC, while group 8A is used for '")
+						.append(details.tmcConflict.getName()).append("'!");
+				}
+				break;
+			case 2:
+				int opc = (blocks[2] >> 8) & 0xF;
+				opc(f, opc);
+				if(opc != 0) f.format("PAC=%d ", blocks[2] & 0x3F);
+				break;
+			case 3:
+				int langID = blocks[2] & 0xFF;
+				f.format("Language: %02X [%s]", langID,
+						langID < RDS.languages.length ? RDS.languages[langID][1] : "");
+				break;
+			case 6:
+				f.format("Broadcaster data: %03X", blocks[2] & 0xFFF);
+				break;
+			case 7:
+				f.format("EWS identification: %03X", blocks[2] & 0xFFF);
+				break;
+			default:
+				f.format("Unhandled data: %03X", blocks[2] & 0xFFF);
+			}
+		}
+
+		// Groups 2A and 2B: radiotext
+		if(type == 2 && (blocksOk[2] || blocksOk[3])) {
+			int addr = blocks[1] & 0xF;
+			int ab = (blocks[1]>>4) & 1;
+			sb.append("RT A/B=").append(ab == 0 ? 'A' : 'B').append(" pos=").append(addr).append(": \"");
+			if(version == 0) chars(sb, blocks[2]);
+			chars(sb, blocks[3]);
+			sb.append('\"');
+		}
+
+		// Group 3A: ODA identification
+		if(type == 3 && version == 0 && blocksOk[3]) {
+			int aid = blocks[3];
+			int odaG = (blocks[1]>>1) & 0xF;
+			int odaV = blocks[1] & 1;
+
+			if(aid == 0) sb.append("NO AID: ");
+			else f.format("AID #%04X ", aid);
+
+			if(details != null) {
+				if(details.odaConflict instanceof ODA) {
+					f.format("Current AID for group (%04X) does not match new AID (%04X)", ((ODA)details.odaConflict).getAID(), aid);
+				} else if(details.odaConflict != null) {
+					f.format("Currently group assigned to '%s' (non-ODA); it should not be assigned to AID %04X", details.odaConflict.getName(), aid);
+				} else if(details.app == null) {
+					sb.append("Unknown AID!");
+				}
+			}
+
+			if(details != null && details.app != null) sb.append('(').append(details.app.getName()).append("): ");
+			else sb.append(' ');
+
+			if(odaG == 0 && odaV == 0) sb.append("only in group 3A   ");
+			else if(odaG == 0xF && odaV == 1) sb.append("temporary data fault at encoder   ");
+			else sb.append("group ").append(odaG).append((char)('A' + odaV)).append("   ");
+
+			if(blocksOk[2]) {
+				f.format("ODA data=%04X", blocks[2]);
+				appOutput(f, details);
+			}
+		}
+
+		// Group 4A: clock time
+		if(type == 4 && version == 0 && blocksOk[2] && blocksOk[3]) {
+			int mjd = ((blocks[1] & 0x3)<<15) | ((blocks[2] & 0xFFFE)>>1);
+			int hour = ((blocks[2] & 1)<<4) | ((blocks[3] & 0xF000)>>12);
+			int minute = ((blocks[3]>>6) & 0x3F);
+			int sign = (blocks[3] & 0x20) == 0 ? 1 : -1;
+			int offset = blocks[3] & 0x1F;
+
+			if(mjd >= 15079) {
+				int yp = (int)((mjd - 15078.2)/365.25);
+				int mp = (int)( ( mjd - 14956.1 - (int)(yp * 365.25) ) / 30.6001 );
+				int day = mjd - 14956 - (int)( yp * 365.25 ) - (int)( mp * 30.6001 );
+				int k = (mp == 14 || mp == 15) ? 1 : 0;
+				int year = 1900 + yp + k;
+				int month = mp - 1 - k * 12;
+				f.format("CT %02d:%02d%c%dmin %04d-%02d-%02d",
+						hour, minute, sign>0 ? '+' : '-', offset*30, year, month, day);
+			} else sb.append("CT invalid");
+		}
+		if(type == 4 && version == 0 && details != null && details.paging != null) {
+			sb.append(", [RT: ").append(details.paging).append(']');
+		}
+
+		// Groups 5A-9A, 11A-13A: TDC and ODA
+		if(((type >= 5 && type <= 9) || (type >= 11 && type <= 13)) && version == 0) {
+			switch(type) {
+			case 5: sb.append("TDC/ODA "); break;
+			case 6: sb.append("IH/ODA "); break;
+			case 7: sb.append("RP/ODA "); break;
+			case 8: sb.append("TMC/ODA "); break;
+			case 9: sb.append("EWS/ODA "); break;
+			case 13: sb.append("ERP/ODA "); break;
+			default: sb.append("ODA ");
+			}
+
+			if(blocksOk[2] && blocksOk[3]) {
+				f.format("%02X/%04X-%04X", blocks[1] & 0x1F, blocks[2], blocks[3]);
+				if(type == 5 || type == 6) {
+					sb.append(" (");
+					chars(sb, blocks[2]);
+					chars(sb, blocks[3]);
+					sb.append(')');
+				}
+			}
+			appOutput(f, details);
+		}
+
+		// Group 10A: PTYN
+		if(type == 10 && version == 0) {
+			int ab = (blocks[1] >> 4) & 1;
+			int pos = blocks[1] & 1;
+			sb.append("PTYN, flag=").append((char)('A' + ab)).append(", pos=").append(pos).append(": \"");
+			chars(sb, blocks[2]);
+			chars(sb, blocks[3]);
+			sb.append('\"');
+		}
+
+		// Groups 14A and 14B: EON
+		if(type == 14) {
+			sb.append("EON, ");
+			int onPI = -1;
+			if(blocksOk[3]) {
+				onPI = blocks[3];
+				f.format("ON.PI=%04X%s, ", onPI, onPI == pi ? " (self)" : "");
+			}
+			sb.append("ON.TP=").append((blocks[1]>>4) & 1).append(", ");
+
+			if(version == 0) {
+				int variant = blocks[1] & 0xF;
+				sb.append("v=").append(variant).append(", ");
+
+				if(blocksOk[2]) {
+					int a = (blocks[2]>>8) & 0xFF, b = blocks[2] & 0xFF;
+					if(variant >= 0 && variant <= 3) {
+						sb.append("ON.PS pos=").append(variant).append(": \"");
+						chars(sb, blocks[2]);
+						sb.append("\", ");
+					} else if(variant == 4) {
+						if(onPI != -1) sb.append("ON.AF: ").append(af(details, a, b)).append(' ');
+					} else if(variant >= 5 && variant <= 8) {
+						if(onPI != -1) {
+							sb.append("ON.AF: ");
+							if(details != null && details.af != null) sb.append(details.af);
+							else sb.append(Station.frequencyToString(Station.channelToFrequency(a)))
+								.append(" -> ").append(Station.frequencyToString(Station.channelToFrequency(b)));
+						}
+					} else if(variant == 12) {
+						f.format("Linkage information: %04X ", blocks[2]);
+					} else if(variant == 13) {
+						f.format("ON.PTY=%d, ON.TA=%d ", (blocks[2]>>11) & 0x1F, blocks[2] & 1);
+					} else if(variant == 14) {
+						int onpin = blocks[2];
+						f.format("ON.PIN=%04X ", onpin);
+						if(onPI != -1 && ((onpin>>11) & 0x1F) != 0) {
+							f.format("[D=%d, H=%02d:%02d]", (onpin>>11) & 0x1F, (onpin>>6) & 0x1F, onpin & 0x3F);
+						}
+					}
+				}
+			} else {
+				int onta = (blocks[1]>>3) & 1;
+				sb.append("ON.TA=").append(onta).append(", ")
+					.append(onta == 1 ? "Switch now to ON" : "Switch back from ON");
+			}
+		}
+
+		// Group 15A: Long PS
+		if(type == 15 && version == 0) {
+			sb.append("Long PS, pos=").append(blocks[1] & 7).append(':');
+			for(int i=2; i<=3; i++) {
+				if(blocksOk[i]) f.format(" %02X %02X", (blocks[i]>>8) & 0xFF, blocks[i] & 0xFF);
+				else sb.append(" -- --");
+			}
+			sb.append(", TA=").append((blocks[1]>>4) & 1);
+		}
+
+		// Group 15B: basic tuning bits in blocks 1 and 3
+		if(type == 15 && version == 1) {
+			basicTuningBits(sb, blocks[1]);
+			if(blocksOk[3]) basicTuningBits(sb, blocks[3]);
+		}
+
+		if(correctedBlocks != 0) {
+			sb.append(" [corrected:");
+			for(int i=0; i<4; i++) {
+				if((correctedBlocks & (1<<i)) != 0) sb.append(' ').append((char)('A' + i));
+			}
+			sb.append(']');
+		}
+
+		return sb.toString();
+	}
+
+	private static void appOutput(Formatter f, Details details) {
+		if(details != null && details.app != null) {
+			f.format("%n\t%s --> %s", details.app.getName(), details.appOutput);
+		}
+	}
+
+	private static String af(Details details, int a, int b) {
+		if(details != null && details.af != null) return details.af;
+
+		if(Station.isListLengthIndicator(a)) {
+			if(b >= 0 && b <= 205) {
+				return "AF: #" + (a-224) + ", freq=" + Station.frequencyToString(Station.channelToFrequency(b));
+			} else return "No AF information";
+		} else if(a >= 0 && a <= 205 && b >= 0 && b <= 205) {
+			return "AF: " + Station.frequencyToString(Station.channelToFrequency(a)) + "  "
+					+ Station.frequencyToString(Station.channelToFrequency(b));
+		} else return "Unhandled AF pair: " + a + ", " + b;
+	}
+
+	private static int basicTuningBits(StringBuilder sb, int block) {
+		int addr = block & 3;
+		sb.append("TA=").append((block>>4) & 1).append(", ")
+			.append(((block>>3) & 1) == 1 ? "M/s" : "m/S").append(", ")
+			.append("DI:").append(DI_NAMES[addr][(block>>2) & 1]).append(", ");
+		return addr;
+	}
+
+	private static void chars(StringBuilder sb, int block) {
+		if(block < 0) sb.append("??");
+		else sb.append(RDS.toChar((block>>8) & 0xFF)).append(RDS.toChar(block & 0xFF));
+	}
+
+	private static void ecc(Formatter f, int pi, int ecc) {
+		f.format("ECC=%02X ", ecc);
+		if(pi != -1) f.format("[%s] ", RDS.getISOCountryCode((pi>>12) & 0xF, ecc));
+	}
+
+	private static void opc(Formatter f, int opc) {
+		if(opc == 0) f.format("No ERP ");
+		else f.format("ERP OPC=%d ", opc);
+	}
+}
@@ -27,7 +27,7 @@ package eu.jacquet80.rds.core;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.Writer;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -64,36 +64,61 @@ public class GroupLevelDecoder {
 	// this allows to merge a bunch of "EON switch" messages together
 	private int groupCountSinceEonSwitch = 0;
 
-	private final String[] RP_TNGD_VALUES = {
-			"No RP",
-			"RP groups 00-99",
-			"RP groups 00-39",
-			"RP groups 40-99",
-			"RP groups 40-69",
-			"RP groups 70-99",
-			"RP groups 00-19",
-			"RP groups 20-39",
-	};
+	// scratch state reused from one group to the next
+	private boolean analysisEnabled = true;
+	private final ServiceStat serviceStat = new ServiceStat();
+	private final boolean[] blocksOk = new boolean[4];
+	private final int[] groupBlocks = new int[4];
+	private final GroupAnalyzer.Details details = new GroupAnalyzer.Details();
+
+	/**
+	 * A console that discards everything written to it, given to the
+	 * applications when the analysis text is not wanted.
+	 */
+	private final static PrintWriter NULL_CONSOLE = new PrintWriter(new Writer() {
+		@Override public void write(char[] cbuf, int off, int len) {}
+		@Override public void write(String str, int off, int len) {}
+		@Override public void write(int c) {}
+		@Override public void flush() {}
+		@Override public void close() {}
+	});
 
 	public GroupLevelDecoder(Log log) {
 		this.log = log;
 	}
 
+	/**
+	 * Enables or disables the generation of the textual analysis of each
+	 * group. When it is disabled, groups are still fully decoded and logged,
+	 * but the decoder does not allocate anything for the groups it processes
+	 * (except in the applications, and for occasional events such as station
+	 * changes). The analysis of logged groups is then rendered lazily from
+	 * their blocks, see {@link GroupAnalyzer}.
+	 * 
+	 * @param enabled {@code true} to generate the analysis text (the default)
+	 */
+	public void setAnalysisEnabled(boolean enabled) {
+		this.analysisEnabled = enabled;
+	}
+
+	public boolean isAnalysisEnabled() {
+		return analysisEnabled;
+	}
+
 	public void loseSync() {
 		synced = false;
 	}
 
-	private int processBasicTuningBits(PrintWriter console, int block1, RDSTime time) {
+	private int processBasicTuningBits(int block1, RDSTime time) {
 		// Groups 0A, 0B, 15B : for TA, M/S and DI we need only block 1 (or block 3 for 15B)
 		int ta = (block1>>4) & 1;
 		int ms = (block1>>3) & 1;
 		int addr = block1 & 3;
 
 		station.setMusic(ms == 1);
-		console.print("TA=" + ta + ", " + (ms==1 ? "M/s" : "m/S") + ", ");
 		
 		boolean diInfo = ((block1>>2) & 1) == 1;		
-		station.setDIbit(addr, diInfo, console);
+		station.setDIbit(addr, diInfo);
 
 		boolean newTa = (ta == 1);
 
@@ -107,9 +132,30 @@ public class GroupLevelDecoder {
 		return addr;
 	}
 
-	private void processGroup(int nbOk, boolean[] blocksOk, int[] blocks, RDSTime time) {
-		StringWriter consoleWriter = new StringWriter();
-		PrintWriter console = new PrintWriter(consoleWriter);
+	private void processGroup(int nbOk, boolean[] blocksOk, int[] eventBlocks, int corrected, RDSTime time) {
+		details.clear(station);
+		PrintWriter console = analysisEnabled ? details.appConsole : NULL_CONSOLE;
+
+		// the event is shared with the other consumers of the group stream,
+		// so blocks are rejected in a copy
+		int[] blocks = groupBlocks;
+		System.arraycopy(eventBlocks, 0, blocks, 0, 4);
+		boolean rejected = false;
+
+		// Corrected blocks are less reliable than blocks received without
+		// errors, so do not let them change the PI of the current station,
+		// once it is known.
+		for(int i=0; i<=2 && station.getPI() != 0; i+=2) {
+			if((corrected & (1<<i)) == 0) continue;
+			boolean isPI = i == 0 || (blocksOk[1] && ((blocks[1]>>11) & 1) == 1);
+			if(isPI && blocks[i] != station.getPI()) {
+				blocksOk[i] = false;
+				blocks[i] = -1;
+				nbOk--;
+				corrected &= ~(1<<i);
+				rejected = true;
+			}
+		}
 
 		//console.print(" (" + (station == null ? null : station.getStationName() ) + ") ");
 		Application newApp = null;
@@ -137,21 +183,10 @@ public class GroupLevelDecoder {
 			pi = blocks[2];
 		}
 
-		if(pi != -1) {
-			console.printf("PI=%04X", pi);
-
-			String callsign = station.getCallsign();
-			if(callsign != null) {
-				console.printf(" [" + callsign + "]");
-			}
-
-			console.print(", ");
-
-			if(station.getPI() == 0) {
-				// new station
-				station.setPI(pi);
-			}
-		} else console.print("         ");
+		if(pi != -1 && station.getPI() == 0) {
+			// new station
+			station.setPI(pi);
+		}
 
 		if(!synced) return;   // after a sync loss, we wait for a PI before processing further data
 
@@ -163,13 +198,10 @@ public class GroupLevelDecoder {
 
 			int pty = (blocks[1]>>5) & 0x1F;
 			workingStation.setPTY(pty);
-
-			console.print("Type " + type + (char)('A' + version) + ", TP=" + tp + ", PTY=" + pty + ", ");
-			//console.print("Group (" + (nbOk == 4 ? "full" : "part") + ") type " + type + (char)('A' + version) + ", TP=" + tp + ", PTY=" + pty + ", ");
 		} else workingStation.addUnknownGroupToStats(nbOk);
 
 		// initialize service stats
-		ServiceStat serviceStat = new ServiceStat();
+		serviceStat.clear();
 		serviceStat.add(ServiceStat.PI, 16);  // always a PI code on 16 bits
 		serviceStat.add(ServiceStat.OVERHEAD, 5);	// group type: protocol overhead
 		serviceStat.add(ServiceStat.PROG_TYPE, 5+1);	// PTY+TP: program type
@@ -177,20 +209,19 @@ public class GroupLevelDecoder {
 
 		// Groups 0A & 0B
 		if(type == 0) {
-			int addr = processBasicTuningBits(console, blocks[1], time);
+			int addr = processBasicTuningBits(blocks[1], time);
 
 			// Groups 0A & 0B: to extract PS segment we need blocks 1 and 3
 			if(blocksOk[3]) {
 				char ch1 = RDS.toChar( (blocks[3]>>8) & 0xFF);
 				char ch2 = RDS.toChar(blocks[3] & 0xFF);
-				console.print("PS pos=" + addr + ": \"" + ch1 + ch2 + "\" ");
 				workingStation.getPS().setChars(addr, ch1, ch2);
 			}
 
 			// Groups 0A: to extract AFs we need blocks 1 and 2
 			if(version == 0 && blocksOk[2]) {
 				//console.printf("Raw AF: %d %d", (blocks[2]>>8) & 0xFF, blocks[2] & 0xFF);
-				console.print(workingStation.addAFPair((blocks[2]>>8) & 0xFF, blocks[2] & 0xFF));
+				details.af = workingStation.addAFPair((blocks[2]>>8) & 0xFF, blocks[2] & 0xFF, analysisEnabled);
 			}
 
 			serviceStat.add(ServiceStat.PROG_TYPE, 3);	// TA, M/S, DI
@@ -202,20 +233,20 @@ public class GroupLevelDecoder {
 		if(type == 1 && version == 0) {
 			int tngd = (blocks[1]>>2) & 7;   // transmitter network group designator
 			int bsi = (blocks[1]) & 3;       // battery saving interval sync and id
-			console.print("RP Config: [" + RP_TNGD_VALUES[tngd]);
-			if(tngd > 0) {   // print the rest only if there IS RP
+			if(tngd > 0) {   // the rest is meaningful only if there IS RP
 				Application app = workingStation.getApplicationForGroup(7, 0);
 				if(app == null) {
-					newApp = app = new Paging(workingStation, RP_TNGD_VALUES[tngd]);
+					newApp = app = new Paging(workingStation, GroupAnalyzer.RP_TNGD_VALUES[tngd]);
 
 					workingStation.setApplicationForGroup(7, 0, app);
-				} else if(!(app instanceof Paging)) {
-					console.print("Error: this group indicates the presence of paging, while group 7A is used for '" + app.getName() + "'!");
 				}
 
-				console.print(", " + ((Paging)app).syncInfo((bsi >> 1) & 1, bsi & 1));
+				if(app instanceof Paging) {
+					details.paging = ((Paging)app).syncInfo((bsi >> 1) & 1, bsi & 1);
+				} else {
+					details.rpConflict = app;
+				}
 			}
-			console.print("], ");
 
 			serviceStat.add(ServiceStat.OVERHEAD, 16);
 		}
@@ -231,50 +262,20 @@ public class GroupLevelDecoder {
 			boolean pinValid = workingStation.setPIN(pin);
 			// Radio Paging section 3.2.4.3: if day=0 in the PIN, the PIN is invalid
 			// and the field is used to transmit enhanced paging info instead.
-			if(pinValid) {
-				console.printf("PIN=%04X [%s] ", pin, station.getPINText());
-			} else {
-				int variant = (blocks[3]>>8) & 0xF;
-				switch(variant) {
-				case 0: case 1: case 2: case 3:
-					int opc = blocks[3] & 0xF;
-					printOPC(console, opc);
-					if(opc != 0) {
-						int pac = (blocks[3] >> 4) & 0x3F;
-						printPAC(console, pac);
-					}
-					break;
-				case 4:
-					int ecc = blocks[3] & 0xFF;
-					workingStation.setECC(ecc);
-					printECC(console, station.getPI(), ecc);
-					break;
-				default:
-					console.printf("<Variant %d not implemented> ", variant);
-				}
+			if(!pinValid && ((blocks[3]>>8) & 0xF) == 4) {
+				workingStation.setECC(blocks[3] & 0xFF);
 			}
 		}
 
 		// Group 1A: to extract slow labeling codes, we need blocks 1 and 2
 		if(type == 1 && version == 0 && blocksOk[2]) {
 			int variant = (blocks[2] >> 12) & 0x7;
-			int la = (blocks[2] >> 15) & 0x1;
-			console.print("LA=" + la + " v=" + variant + " ");
 			switch(variant) {
 			case 0:
-			{
-				int ecc = blocks[2] & 0xFF;
-				workingStation.setECC(ecc);
-				printECC(console, station.getPI(), ecc);
-				int opc = (blocks[2] >> 8) & 0xF;
-				printOPC(console, opc);
+				workingStation.setECC(blocks[2] & 0xFF);
 				break;
-			}
 
 			case 1:
-				int tmcid = blocks[2] & 0xFFF;
-				console.printf("TMC (old way) ID=0x%03X / (dec)%d", tmcid, tmcid);
-
 				// connect 8A groups with the TMC application
 				Application app = workingStation.getApplicationForGroup(8, 0);
 				if(app == null) {
@@ -282,38 +283,13 @@ public class GroupLevelDecoder {
 					workingStation.setApplicationForGroup(8, 0, appTMC);
 					appTMC.setStation(workingStation);
 				} else if(!(app instanceof AlertC)) {
-					console.print("Error: this group indicates the presence of TMC, while group 8A is used for '" + app.getName() + "'!");
-				}
-				break;
-
-			case 2:
-			{
-				int opc = (blocks[2] >> 8) & 0xF;
-				printOPC(console, opc);
-				if(opc != 0) {
-					int pac = blocks[2] & 0x3F;
-					printPAC(console, pac);
+					details.tmcConflict = app;
 				}
 				break;
-			}
 
 			case 3:
-				int langID = blocks[2] & 0xFF;
-				workingStation.setLanguage(langID);
-				console.printf("Language: %02X [%s]", langID, 
-						langID < RDS.languages.length ? RDS.languages[langID][1] : "");
-				break;
-
-			case 6:
-				console.printf("Broadcaster data: %03X", blocks[2] & 0xFFF);
+				workingStation.setLanguage(blocks[2] & 0xFF);
 				break;
-
-			case 7:
-				console.printf("EWS identification: %03X", blocks[2] & 0xFFF);
-				break;
-
-			default:
-				console.printf("Unhandled data: %03X", blocks[2] & 0xFFF);
 			}
 		}
 
@@ -353,11 +329,6 @@ public class GroupLevelDecoder {
 			}
 
 			rt.setFlag(ab);
-
-			console.print("RT A/B=" + (ab == 0 ? 'A' : 'B') + " pos=" + addr + ": \"");
-			if(version == 0) console.print(ch1 + "" + ch2);
-			console.print(ch3 + "" + ch4);
-			console.print('\"');
 		}
 
 		if(type == 2) serviceStat.add(ServiceStat.RT, version == 0 ? 5+16+16 : 5+16); 
@@ -368,16 +339,13 @@ public class GroupLevelDecoder {
 			int odaG = (blocks[1]>>1) & 0xF;
 			int odaV = blocks[1] & 1;
 
-			if(aid == 0) console.print("NO AID: ");
-			else console.printf("AID #%04X ", aid);
-
 			// return the ODA
 			Application app = workingStation.getApplicationForGroup(odaG, odaV);
 			if(app != null) {
 				if(!(app instanceof ODA)) {
-					console.printf("Currently group assigned to '%s' (non-ODA); it should not be assigned to AID %04X", app.getName(), aid);
+					details.odaConflict = app;
 				} else if(((ODA)app).getAID() != aid) { 
-					console.printf("Current AID for group (%04X) does not match new AID (%04X)", ((ODA)app).getAID(), aid);
+					details.odaConflict = app;
 					app = null;
 				}
 			} else {
@@ -389,26 +357,13 @@ public class GroupLevelDecoder {
 					newApp = app;
 					workingStation.setApplicationForGroup(odaG, odaV, app);
 					app.setStation(workingStation);
-				} else {
-					console.print("Unknown AID!");
 				}
 			}
 
-			if(app != null) {
-				console.print("(" + app.getName() + "): ");
-			}
-			else console.print(" ");
-
-			if(odaG == 0 && odaV == 0) console.print("only in group 3A   ");
-			else if(odaG == 0xF && odaV == 1) console.print("temporary data fault at encoder   ");
-			else console.print("group " + odaG + (char)('A' + odaV) + "   ");
+			details.app = app;
 
 			// if data ok, pass it to the ODA handler
 			if(app != null && blocksOk[2]) {
-				console.printf("ODA data=%04X", blocks[2]);
-
-				console.println();
-				console.print("\t" + app.getName()  + " --> ");
 				app.receiveGroup(console, type, version, blocks, blocksOk, time);
 			}
 		}
@@ -448,21 +403,18 @@ public class GroupLevelDecoder {
 
 				String datetime = String.format("%02d:%02d%c%dmin %04d-%02d-%02d", 
 						hour, minute, sign>0 ? '+' : '-', offset*30, year, month, day);
-				console.printf("CT " + datetime);
 				workingStation.setTimeZone(tz);
 				workingStation.setDate(date, datetime, time);
 				log.addMessage(new ClockTime(time, date));
-			} else {
-				// Ignore earlier dates.
-				console.printf("CT invalid");
 			}
+			// Ignore earlier dates.
 		}
 		if(type == 4 && version == 0) {
 			// is there paging ?
 			Application app = workingStation.getApplicationForGroup(7, 0);
 			if(app != null && app instanceof Paging) {
 				// then the 4A group act as 1A - start of interval
-				console.print(", [RT: " + ((Paging)app).fullMinute() + "]");
+				details.paging = ((Paging)app).fullMinute();
 			}
 
 			serviceStat.add(ServiceStat.CT, 2+16+16);
@@ -472,28 +424,6 @@ public class GroupLevelDecoder {
 		// Groups 5A-9A, 11A-13A: TDC, we need blocks 1, 2 and 3
 		// but don't handle 7A groups here if using RP
 		if(((type >= 5 && type <= 9) || (type >= 11 && type <= 13)) && version == 0) {
-			int a = (blocks[1] & 0x1F);
-
-			switch(type) {
-			case 5: console.print("TDC/ODA "); break;
-			case 6: console.print("IH/ODA "); break;
-			case 7: console.print("RP/ODA "); break;
-			case 8: console.print("TMC/ODA "); break;
-			case 9: console.print("EWS/ODA "); break;
-			case 11: console.print("ODA "); break;
-			case 12: console.print("ODA "); break;
-			case 13: console.print("ERP/ODA "); break;
-			}
-
-			if(blocksOk[2] && blocksOk[3]) {
-				console.printf("%02X/%04X-%04X", a, blocks[2], blocks[3]);
-				if(type == 5 || type == 6) {
-					console.printf(" (%c%c%c%c)", 
-							RDS.toChar((blocks[2]>>8) & 0xFF), RDS.toChar(blocks[2] & 0xFF), 
-							RDS.toChar((blocks[3]>>8) & 0xFF), RDS.toChar(blocks[3] & 0xFF));
-				}
-			}
-
 			Application app = workingStation.getApplicationForGroup(type, version);
 
 			if(app == null) {
@@ -508,11 +438,10 @@ public class GroupLevelDecoder {
 			}
 
 			if(app != null) {
-				console.println();
-				console.print("\t" + app.getName() +  " --> ");
+				details.app = app;
 				app.receiveGroup(console, type, version, blocks, blocksOk, time);
 
-				serviceStat.add(app.getName(), 5+16+16);
+				serviceStat.addApplication(type, version, 5+16+16);
 			} else {
 				serviceStat.add(ServiceStat.WASTE, 5+16+16);
 			}
@@ -522,26 +451,19 @@ public class GroupLevelDecoder {
 
 		// Groups 10A: PTYN, we need blocks 1, 2 and 3
 		if(type == 10 && version == 0 && blocksOk[1]) {
-			int ab = (blocks[1] >> 4) & 1;
 			int pos = blocks[1] & 1;
 
-			console.print("PTYN, flag=" + (char)('A' + ab) + ", pos=" + pos + ": \"");
-
 			if(blocksOk[2]) {
 				char c1 = RDS.toChar((blocks[2]>>8) & 0xFF);
 				char c2 = RDS.toChar(blocks[2] & 0xFF);
 				workingStation.getPTYN().setChars(pos*2, c1, c2);
-				console.print(Character.toString(c1) + Character.toString(c2));
-			} else console.print("??");
+			}
 
 			if(blocksOk[3]) {
 				char c1 = RDS.toChar((blocks[3]>>8) & 0xFF);
 				char c2 = RDS.toChar(blocks[3] & 0xFF);
 				workingStation.getPTYN().setChars(pos*2+1, c1, c2);
-				console.print(Character.toString(c1) + Character.toString(c2));
-			} else console.print("??");
-
-			console.print("\"");
+			}
 
 			serviceStat.add(ServiceStat.PTYN, 2+16+16);
 			serviceStat.add(ServiceStat.OVERHEAD, 3);
@@ -550,13 +472,11 @@ public class GroupLevelDecoder {
 		// Groups 14: to extract variant we need only block 1
 		if(type == 14) {
 			Station on = null;
-			console.print("EON, ");
 
 			// in both versions if we have block 3 we have ON PI
 			int onPI = -1;
 			if(blocksOk[3]) {
 				onPI = blocks[3];
-				console.printf("ON.PI=%04X%s, ", onPI, onPI == workingStation.getPI() ? " (self)" : "");
 
 				if(onPI != workingStation.getPI()) {
 					on = workingStation.getON(onPI);
@@ -575,42 +495,30 @@ public class GroupLevelDecoder {
 
 			int ontp = (blocks[1]>>4) & 1;
 			if(on != null) on.setTP(ontp == 1);
-			console.print("ON.TP=" + ontp + ", ");
 
 			if(version == 0) { // info about ON only in 14A groups
 				int variant = blocks[1] & 0xF; 
-				console.print("v=" + variant + ", ");
 
 				// to extract ON info we need block 2
 				if(blocksOk[2]) {
 					if(variant >= 0 && variant <= 3) {  // ON PS
 						char ch1 = RDS.toChar( (blocks[2]>>8) & 0xFF);
 						char ch2 = RDS.toChar( blocks[2] & 0xFF);
-						console.print("ON.PS pos=" + variant + ": \"" + ch1 + ch2 + "\", ");
 
 						if(on != null) on.getPS().setChars(variant, ch1, ch2);
 					}
 
 					if(variant == 4) { // frequencies
-						if(on != null) {
-							console.print("ON.AF: " + on.addAFPair((blocks[2]>>8)&0xFF, blocks[2]&0xFF) + " ");
-						}
+						if(on != null) details.af = on.addAFPair((blocks[2]>>8)&0xFF, blocks[2]&0xFF, analysisEnabled);
 					}
 
 					if(variant >= 5 && variant <= 8) {
-						if(on != null) {
-							console.print("ON.AF: " + on.addMappedFreq((blocks[2]>>8) & 0xFF, blocks[2] & 0xFF));
-						}
-					}
-
-					if(variant == 12) {
-						console.printf("Linkage information: %04X ", blocks[2]);
+						if(on != null) details.af = on.addMappedFreq((blocks[2]>>8) & 0xFF, blocks[2] & 0xFF);
 					}
 
 					if(variant == 13) {
 						int onpty = (blocks[2]>>11) & 0x1F;
 						int onta = (blocks[2]) & 1;
-						console.printf("ON.PTY=%d, ON.TA=%d ", onpty, onta);
 						if(on != null) {
 							on.setPTY(onpty);
 							on.setTA(onta == 1);
@@ -618,27 +526,23 @@ public class GroupLevelDecoder {
 					}
 
 					if(variant == 14) {
-						int onpin = blocks[2];
-						console.printf("ON.PIN=%04X ", onpin);
-						if(on != null) {
-							on.setPIN(onpin);
-							console.print("[" + on.getPINText() + "]");
-						}
+						if(on != null) on.setPIN(blocks[2]);
 					}
 				}
 				serviceStat.add(ServiceStat.ON, 5+16+16);
 			} else { // 14B groups
 				int onta = (blocks[1]>>3) & 1;
-				String message = (onta==1 ? "Switch now to ON" : "Switch back from ON");
-				console.print("ON.TA=" + onta + ", " + message);
 				if(onta == 1) {
 					log.addMessage(new EONSwitch(time, on));
 				} else {
 					log.addMessage(new EONReturn(time, on));
 				}
-				if(onPI >= 0) message += String.format(": PI=%04X", onPI);
-				if(on != null) message += " (" + on.getStationName().trim() + ")";
-				if(groupCountSinceEonSwitch > 20) station.addTrafficEvent(time, message);
+				if(groupCountSinceEonSwitch > 20) {
+					String message = (onta==1 ? "Switch now to ON" : "Switch back from ON");
+					if(onPI >= 0) message += String.format(": PI=%04X", onPI);
+					if(on != null) message += " (" + on.getStationName().trim() + ")";
+					station.addTrafficEvent(time, message);
+				}
 				groupCountSinceEonSwitch = 0;
 
 				serviceStat.add(ServiceStat.ON, 2+16);
@@ -660,16 +564,13 @@ public class GroupLevelDecoder {
 		// Fast PS uses.
 		if(type == 15 && version == 0) {
 			int addr = blocks[1] & 7;
-			console.print("Long PS, pos=" + addr + ":");
 			for(int i=0; i<=1; i++) {
 				if(blocksOk[i+2]) {
 					byte byte1 = (byte)((blocks[i+2]>>8) & 0xFF);
 					byte byte2 = (byte)(blocks[i+2] & 0xFF);
-					console.print(String.format(" %02X %02X", byte1, byte2));
 					station.getLPS().set(addr*4+i*2, byte1, byte2);
-				} else console.print(" -- --");
+				}
 			}
-			console.print(", TA=" + ((blocks[1]>>4) & 1));
 
 			serviceStat.add(ServiceStat.PROG_TYPE, 1);	// TA bit
 			serviceStat.add(ServiceStat.NAME, 3+16+16);	// address + 4 characters
@@ -678,8 +579,8 @@ public class GroupLevelDecoder {
 
 		// For 15B we need only group 1, and possibly group 3
 		if(type == 15 && version == 1) {
-			processBasicTuningBits(console, blocks[1], time);
-			if(blocksOk[3]) processBasicTuningBits(console, blocks[3], time);
+			processBasicTuningBits(blocks[1], time);
+			if(blocksOk[3]) processBasicTuningBits(blocks[3], time);
 
 			serviceStat.add(ServiceStat.OVERHEAD, 5);	// group type: protocol overhead in group D
 			serviceStat.add(ServiceStat.PROG_TYPE, 6);	// PTY+TP: program type in group D
@@ -687,7 +588,12 @@ public class GroupLevelDecoder {
 		}
 
 		// add a log message for each group
-		log.addMessage(new GroupReceived(time, blocks, nbOk, consoleWriter.toString()));
+		int[] loggedBlocks = rejected ? blocks.clone() : eventBlocks;
+		if(analysisEnabled) {
+			log.addMessage(new GroupReceived(time, loggedBlocks, nbOk, GroupAnalyzer.analyze(blocks, corrected, details), corrected));
+		} else {
+			log.addMessage(new GroupReceived(time, loggedBlocks, nbOk, corrected));
+		}
 
 		// if the last 3 blocks of a group were received completely, then commit service stats
 		if(blocksOk[1] && blocksOk[2] && blocksOk[3]) {
@@ -702,21 +608,18 @@ public class GroupLevelDecoder {
 
 	}
 
-	private void printECC(PrintWriter console, int pi, int ecc) {
-		console.printf("ECC=%02X ", ecc);
-		if(pi != -1) console.print("[" + RDS.getISOCountryCode((pi>>12) & 0xF, ecc) + "] ");
-	}
-
-	private void printOPC(PrintWriter console, int opc) {
-		if(opc == 0) {
-			console.print("No ERP ");
-		} else {
-			console.printf("ERP OPC=%d ", opc);
-		}
-	}
+	/**
+	 * Processes a group of one of the additional data streams of RDS2. These
+	 * groups carry neither the PI nor the group type of RDS1 groups: they are
+	 * type C groups, whose first byte is a function header (FH) that tells
+	 * what they carry. They are counted and logged, but their contents are
+	 * not decoded.
+	 */
+	private void processStreamGroup(int stream, int nbOk, int[] blocks, int corrected, RDSTime time) {
+		station.addStreamGroupToStats(stream, nbOk);
 
-	private void printPAC(PrintWriter console, int pac) {
-		console.printf("PAC=%d ", pac);
+		// the analysis depends on the blocks only, so it is always rendered lazily
+		log.addMessage(new GroupReceived(time, blocks, nbOk, corrected, stream));
 	}
 
 	public TunedStation getTunedStation() {
@@ -753,14 +656,17 @@ public class GroupLevelDecoder {
 
 			int[] blocks = groupEvent.blocks;
 
-			boolean[] blocksOk = new boolean[4];
 			int nbOk = 0;
 			for(int i=0; i<4; i++) {
 				blocksOk[i] = (blocks[i] >= 0);
 				if(blocksOk[i]) nbOk++;
 			}
 
-			processGroup(nbOk, blocksOk, blocks, time);
+			if(groupEvent.stream != 0) {
+				processStreamGroup(groupEvent.stream, nbOk, blocks, groupEvent.correctedBlocks, time);
+			} else {
+				processGroup(nbOk, blocksOk, blocks, groupEvent.correctedBlocks, time);
+			}
 			if(log != null) log.notifyGroup();
 		}
 
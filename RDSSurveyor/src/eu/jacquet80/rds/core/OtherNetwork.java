@@ -101,6 +101,12 @@ public class OtherNetwork extends Station {
 		return res.toString();
 	}
 	
+	@Override
+	public String addAFPair(int a, int b, boolean describe) {
+		String res = addAFPair(a, b);
+		return describe ? res : null;
+	}
+	
 	@Override
 	public String afsToString() {
 		if(mappedAFs.size() == 0) {
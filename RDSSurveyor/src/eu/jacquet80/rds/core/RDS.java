@@ -237,6 +237,55 @@ public class RDS {
 		return synd;
 	}
 	
+	/** Maximum length of the error bursts that {@link #getBurstErrorPattern(int)} can correct */
+	public final static int MAX_BURST_LENGTH = 5;
+	
+	private final static int[] burstErrorPatterns = new int[1024];
+	private final static byte[] burstErrorLengths = new byte[1024];
+	
+	static {
+		// For the (26,16) shortened cyclic code, all bursts of up to 5 bits
+		// have distinct syndromes, so they can be listed in a single table.
+		for(int len=1; len<=MAX_BURST_LENGTH; len++) {
+			int nbInner = len > 2 ? 1 << (len-2) : 1;
+			for(int inner=0; inner<nbInner; inner++) {
+				int burst = len == 1 ? 1 : 1 | (inner << 1) | (1 << (len-1));
+				for(int pos=0; pos<=26-len; pos++) {
+					int synd = calcSyndrome(burst << pos);
+					if(burstErrorLengths[synd] == 0) {
+						burstErrorPatterns[synd] = burst << pos;
+						burstErrorLengths[synd] = (byte) len;
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the burst error pattern that yields a given error syndrome,
+	 * that is the XOR of the syndrome of a received block and the syndrome
+	 * of the offset word expected for that block.
+	 * 
+	 * @param errorSyndrome the error syndrome
+	 * @return the 26-bit error pattern, or 0 if the syndrome does not match
+	 * a burst of at most {@link #MAX_BURST_LENGTH} bits
+	 */
+	public final static int getBurstErrorPattern(int errorSyndrome) {
+		return burstErrorPatterns[errorSyndrome];
+	}
+	
+	/**
+	 * Returns the length of the burst error pattern that yields a given
+	 * error syndrome.
+	 * 
+	 * @param errorSyndrome the error syndrome
+	 * @return the length of the burst, or 0 if not correctable
+	 * @see #getBurstErrorPattern(int)
+	 */
+	public final static int getBurstErrorLength(int errorSyndrome) {
+		return burstErrorLengths[errorSyndrome];
+	}
+	
 	private final static char CTRLCHAR = '\u2423';
 	
 	private final static char[] charmap = new char[] {
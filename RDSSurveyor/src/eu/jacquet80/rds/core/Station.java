@@ -24,11 +24,10 @@
 */
 
 package eu.jacquet80.rds.core;
+import java.util.BitSet;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import eu.jacquet80.rds.RDSSurveyor;
 import eu.jacquet80.rds.log.RDSTime;
@@ -102,29 +101,45 @@ public abstract class Station {
 		return a >= 224 && a <= 249;
 	}
 	
-	public synchronized String addAFPair(int a, int b) {
+	public String addAFPair(int a, int b) {
+		return addAFPair(a, b, true);
+	}
+	
+	/**
+	 * @brief Adds a pair of alternate frequencies.
+	 * 
+	 * @param a The first alternate frequency, represented as a channel number
+	 * @param b The second alternate frequency, represented as a channel number
+	 * @param describe Whether to return a textual description
+	 * 
+	 * @return A textual representation of the pair, or null if {@code describe} is false
+	 */
+	public synchronized String addAFPair(int a, int b, boolean describe) {
 		if(isListLengthIndicator(a)) {
 			if(b >= 0 && b <= 205) {
-				currentAFList = afs.get(b);
-				if(currentAFList == null) {
-					currentAFList = new AFList(b);
-					afs.put(b, currentAFList);
+				if(currentAFList == null || currentAFList.getTransmitterFrequency() != channelToFrequency(b)) {
+					currentAFList = afs.get(b);
+					if(currentAFList == null) {
+						currentAFList = new AFList(b);
+						afs.put(b, currentAFList);
+					}
 				}
 			
+				if(!describe) return null;
 				return "AF: #" + (a-224) + ", freq=" + frequencyToString(currentAFList.getTransmitterFrequency());
-			} else return "No AF information";
+			} else return describe ? "No AF information" : null;
 		} else {
 			if(a >= 0 && a <= 205 && b >= 0 && b <= 205) {
-				String res = currentAFList == null ? null : currentAFList.addPair(a, b);
+				String res = currentAFList == null ? null : currentAFList.addPair(a, b, describe);
 				if(res == null) {
 					// this means that the method addPair has determined that
 					// the new AF pair cannot belong to the existing list
 					// So create a new list
 					currentAFList = new AFList(-1);
-					res = currentAFList.addPair(a, b);
+					res = currentAFList.addPair(a, b, describe);
 				}
-				return "AF: " + res;
-			} else return "Unhandled AF pair: " + a + ", " + b;
+				return describe ? "AF: " + res : null;
+			} else return describe ? "Unhandled AF pair: " + a + ", " + b : null;
 		}
 	}
 	
@@ -311,8 +326,11 @@ public abstract class Station {
 }
 
 class AFList {
+	/** Returned by {@link #addPair(int, int, boolean)} when no description is wanted */
+	private final static String ADDED = "";
+	
 	private final int transmitterFrequency;
-	private final Set<Integer> afs = new HashSet<Integer>(24);
+	private final BitSet afs = new BitSet(1080);
 	private char method = '?';
 	
 	public AFList(int transmitterFrequency) {
@@ -323,18 +341,26 @@ class AFList {
 		return transmitterFrequency;
 	}
 	
-	public String addPair(int a, int b) {
+	/**
+	 * Adds a pair of alternate frequencies to the list.
+	 * 
+	 * @return a description of the pair (or an empty string if
+	 * {@code describe} is false), or null if the pair cannot belong to this
+	 * list
+	 */
+	public String addPair(int a, int b, boolean describe) {
 		int fA = Station.channelToFrequency(a);
 		int fB = Station.channelToFrequency(b);
-		String typeIfB = fA < fB ? "same" : "variant"; 
 		if(fA == transmitterFrequency && fA > 0) {  // method B
 			method = 'B';
-			if(fB > 0) afs.add(fB);
-			return "Method B: " + Station.frequencyToString(transmitterFrequency) + " -> " + Station.frequencyToString(fB) + " (" + typeIfB + ")";
+			if(fB > 0) afs.set(fB);
+			if(!describe) return ADDED;
+			return "Method B: " + Station.frequencyToString(transmitterFrequency) + " -> " + Station.frequencyToString(fB) + " (" + (fA < fB ? "same" : "variant") + ")";
 		} else if(fB == transmitterFrequency && fB > 0) {  // method B
 			method = 'B';
-			if(fA > 0) afs.add(fA);
-			return "Method B: " + Station.frequencyToString(transmitterFrequency) + " -> " + Station.frequencyToString(fA) + " (" + typeIfB + ")";
+			if(fA > 0) afs.set(fA);
+			if(!describe) return ADDED;
+			return "Method B: " + Station.frequencyToString(transmitterFrequency) + " -> " + Station.frequencyToString(fA) + " (" + (fA < fB ? "same" : "variant") + ")";
 		} else if(fA > 0 || fB > 0){  // method A
 			if(transmitterFrequency != 0) {
 				if(method == 'B') {
@@ -348,32 +374,34 @@ class AFList {
 				} // else
 				method = 'A';
 			}
+			if(fA > 0) afs.set(fA);
+			if(fB > 0) afs.set(fB);
+			if(!describe) return ADDED;
+			
 			String res = (method == 'A' ? "Method A: " : "Unknown method: ");
 			if(fA > 0) {
-				afs.add(fA);
 				res += Station.frequencyToString(fA) + "  ";
 			}
 			if(fB > 0) {
-				afs.add(fB);
 				res += Station.frequencyToString(fB);
 			}
 			return res;
-		} else return "No info";
+		} else return describe ? "No info" : ADDED;
 	}
 	
 	public String toString() {
-		StringBuffer res = new StringBuffer("List[").append(method).append(", sz=").append(afs.size()).append("]: ");
+		StringBuffer res = new StringBuffer("List[").append(method).append(", sz=").append(afs.cardinality()).append("]: ");
 		res.append(Station.frequencyToString(transmitterFrequency)).append(" -> ");
-		for(int af : afs) {
+		for(int af = afs.nextSetBit(0); af >= 0; af = afs.nextSetBit(af+1)) {
 			res.append(Station.frequencyToString(af)).append("  ");
 		}
 		return res.toString();
 	}
 	
 	public String toHTML() {
-		StringBuffer res = new StringBuffer("<b>AF list, method ").append(method).append(", size ").append(afs.size()).append(":</b> ");
+		StringBuffer res = new StringBuffer("<b>AF list, method ").append(method).append(", size ").append(afs.cardinality()).append(":</b> ");
 		res.append(Station.frequencyToString(transmitterFrequency)).append(" → ");
-		for(int af : afs) {
+		for(int af = afs.nextSetBit(0); af >= 0; af = afs.nextSetBit(af+1)) {
 			res.append(Station.frequencyToString(af)).append("  ");
 		}
 		return res.toString();
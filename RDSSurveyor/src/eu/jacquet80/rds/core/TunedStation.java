@@ -24,9 +24,9 @@
 */
 
 package eu.jacquet80.rds.core;
-import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
@@ -55,6 +55,7 @@ public class TunedStation extends Station {
 	private boolean diMusic;
 	private boolean diStereo, diArtif, diCompressed, diDPTY;
 	private int totalBlocks, totalBlocksOk;
+	private int[] streamGroups = new int[4], streamBlocksOk = new int[4];   // additional data streams of RDS2
 	private int[] latestBlocksOk = new int[25];
 	private int latestBlocksOkPtr = 0;
 	private int latestBlocksOkCount = 0;
@@ -101,6 +102,10 @@ public class TunedStation extends Station {
 				groupStats[i][j] = 0;
 		totalBlocks = 0;
 		totalBlocksOk = 0;
+		for(int i=0; i<4; i++) {
+			streamGroups[i] = 0;
+			streamBlocksOk[i] = 0;
+		}
 		
 		applications = new Application[32];
 		
@@ -154,6 +159,8 @@ public class TunedStation extends Station {
 			for(int j=0; j<2; j++)
 				if(groupStats[i][j] > 0) res.append(String.format("%d%c: %d,   ", i, (char)('A' + j), groupStats[i][j]));
 		res.append("U: " + groupStats[16][0]);
+		for(int i=1; i<4; i++)
+			if(streamGroups[i] > 0) res.append(String.format(",   stream %d: %d", i, streamGroups[i]));
 		return res.toString();
 	}
 	
@@ -181,6 +188,28 @@ public class TunedStation extends Station {
 		if(latestBlocksOkCount < latestBlocksOk.length) latestBlocksOkCount++;
 	}
 	
+	/**
+	 * Counts a group received on one of the additional data streams of
+	 * RDS2. These groups are not included in the statistics of the basic
+	 * stream.
+	 */
+	public void addStreamGroupToStats(int stream, int nbOk) {
+		streamGroups[stream]++;
+		streamBlocksOk[stream] += nbOk;
+	}
+	
+	/**
+	 * Returns the number of groups received on a data stream of RDS2 other
+	 * than the basic stream (1 to 3).
+	 */
+	public int getStreamGroupCount(int stream) {
+		return streamGroups[stream];
+	}
+	
+	public int getStreamBlocksOk(int stream) {
+		return streamBlocksOk[stream];
+	}
+	
 	public void addUnknownGroupToStats(int nbOk) {
 		addGroupToStats(16, 0, nbOk);
 	}
@@ -255,15 +284,13 @@ public class TunedStation extends Station {
 		this.diMusic = diMusic;
 	}
 	
-	public void setDIbit(int addr, boolean diInfo, PrintWriter console) {
-		console.print("DI:");
+	public void setDIbit(int addr, boolean diInfo) {
 		switch(addr) {
-		case 3: console.print(diInfo ? "Ster" : "Mono"); diStereo = diInfo; break;
-		case 2: console.print(diInfo ? "ArtH" : "NArH"); diArtif = diInfo; break;
-		case 1: console.print(diInfo ? "Comp" : "NCmp"); diCompressed = diInfo; break;
-		case 0: console.print(diInfo ? "DPTY" : "SPTY"); diDPTY = diInfo; break;
+		case 3: diStereo = diInfo; break;
+		case 2: diArtif = diInfo; break;
+		case 1: diCompressed = diInfo; break;
+		case 0: diDPTY = diInfo; break;
 		}
-		console.print(", ");
 	}
 	
 	public int getTotalBlocks() {
@@ -460,18 +487,44 @@ class GroupStatElement implements Comparable<GroupStatElement> {
 	}
 }
 
+/**
+ * Counts the number of bits used by each service. Applications carried in
+ * groups 5A-9A and 11A-13A are counted per group type.
+ */
 class ServiceStat {
-	private Map<String, Integer> stats = new HashMap<String, Integer>();
+	public static final int 
+			OVERHEAD = 0,		// protocol overhead: addressing, very basic features, etc.
+			PROG_TYPE = 1,		// program type: PTY + TA/TP
+			PI = 2,				// program identification
+			NAME = 3,			// station name
+			RT = 4,				// radiotext
+			AF = 5,				// alternative frequencies
+			ON = 6,				// other networks
+			CT = 7,				// clock time
+			PAGING = 8,
+			IH = 9,				// in-house data
+			TDC = 10,			// transparent data channels
+			PTYN = 11,			// program type name
+			WASTE = 12,			// wasted bandwidth
+			PIN = 13,			// program item number
+			ODA = 14;
+	
+	private static final int NB_SERVICES = ODA + 1;
+	
+	// services, then applications indexed by (group type << 1 | version)
+	private final int[] stats = new int[NB_SERVICES + 32];
 	
-	public void add(String service, int bits) {
-		Integer previousCount = stats.get(service);
-		if(previousCount == null) previousCount = 0;
-		stats.put(service, bits + previousCount);
+	public void add(int service, int bits) {
+		stats[service] += bits;
+	}
+	
+	public void addApplication(int type, int version, int bits) {
+		stats[NB_SERVICES + (type << 1 | version)] += bits;
 	}
 	
 	public int getTotalCount() {
 		int count = 0;
-		for(int c : stats.values()) {
+		for(int c : stats) {
 			count += c;
 		}
 		
@@ -479,25 +532,12 @@ class ServiceStat {
 	}
 	
 	public void merge(ServiceStat other) {
-		for(Map.Entry<String, Integer> e : other.stats.entrySet()) {
-			this.add(e.getKey(), e.getValue());
+		for(int i=0; i<stats.length; i++) {
+			stats[i] += other.stats[i];
 		}
 	}
 	
-	public static final String 
-			OVERHEAD = "Protocol overhead",		// addressing, very basic features, etc.
-			PROG_TYPE = "Program type",		// PTY + TA/TP
-			PI = "Program Identification",
-			NAME = "Station name",
-			RT = "Radiotext",
-			AF = "Alternative frequencies",
-			ON = "Other networks",
-			CT = "Clock time",
-			PAGING = "Paging",
-			IH = "In-house data",
-			TDC = "Transparent data channels",
-			PTYN = "Program type name",
-			WASTE = "Wasted bandwidth",
-			PIN = "Program Item Number",
-			ODA = "ODA";
-}
\ No newline at end of file
+	public void clear() {
+		Arrays.fill(stats, 0);
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+ 
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Same as {@link TeeGroupReader}, but writes the groups to a binary archive
+ * (see {@link GroupArchiveWriter}). The archive is closed at the end of the
+ * stream, and so is the reader if it can be closed (e.g. a
+ * {@link GroupArchiveReader}).
+ */
+public class ArchiveTeeGroupReader extends GroupReader {
+	private final GroupArchiveWriter writer;
+	private final GroupReader reader;
+	
+	public ArchiveTeeGroupReader(GroupReader reader, File of) throws IOException {
+		this.reader = reader;
+		writer = new GroupArchiveWriter(of);
+		setParent(reader);
+	}
+	
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		GroupReaderEvent event;
+		try {
+			event = reader.getGroup();
+		} catch(EndOfStream eos) {
+			close();
+			throw eos;
+		}
+		if(event == null) return null;		// propagate null event
+		
+		writer.write(event);
+		
+		return event;
+	}
+	
+	/**
+	 * Closes the archive and the reader before the end of the stream.
+	 */
+	public void close() throws IOException {
+		writer.close();
+		if(reader instanceof Closeable) ((Closeable) reader).close();
+	}
+}
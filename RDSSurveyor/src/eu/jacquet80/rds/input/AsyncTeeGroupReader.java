@@ -0,0 +1,361 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+import eu.jacquet80.rds.log.RDSTime;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Same as {@link TeeGroupReader}, but the groups are written by a background
+ * thread, so that slow storage does not delay the decoding.
+ *
+ * Events are handed to the writer thread through a bounded queue. The writer
+ * formats them in the same format as {@link TeeGroupReader}, writes them in
+ * batches, and makes them durable every sync interval. The output may be
+ * rotated into several {@code rdslog_yyyyMMdd_HHmmss.rds} files by size or
+ * by time.
+ *
+ * The pending events are written when the JVM exits, even if the reader has
+ * not been closed, e.g. when the user quits the GUI during a live capture.
+ */
+public class AsyncTeeGroupReader extends GroupReader {
+	public final static int DEFAULT_QUEUE_SIZE = 1 << 16;
+	public final static long DEFAULT_SYNC_INTERVAL = 10000;
+
+	private final static char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	// signals the end of the stream to the writer
+	private final static GroupReaderEvent END = new StationChangeEvent(null);
+
+	private final GroupReader reader;
+	private final BlockingQueue<GroupReaderEvent> queue;
+	private final Thread writerThread;
+
+	// output: a single file, or rotated files in a directory
+	private final File file;
+	private final File dir;
+	private final long maxSize;
+	private final long rotationPeriod;
+	private final long syncInterval;
+
+	// closes the reader if the JVM exits first
+	private final Thread shutdownHook = new Thread("RDS-Tee-Shutdown") {
+		public void run() {
+			close();
+		}
+	};
+
+	// the fields below are used only by the writer thread
+	private FileOutputStream fos;
+	private Writer writer;
+	private long size;
+	private long nextRotation;
+	private long nextSync;
+	private char[] line = new char[128];
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.");
+	private long formattedSecond = Long.MIN_VALUE;
+	private String formattedDate;
+
+	/**
+	 * Writes the groups to a single file.
+	 */
+	public AsyncTeeGroupReader(GroupReader reader, File of) throws IOException {
+		this(reader, of, DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Writes the groups to a single file.
+	 *
+	 * @param syncInterval the maximum time between durable flushes of the
+	 *   output to disk, in milliseconds
+	 */
+	public AsyncTeeGroupReader(GroupReader reader, File of, long syncInterval) throws IOException {
+		this(reader, of, null, 0, 0, syncInterval);
+	}
+
+	/**
+	 * Writes the groups to files {@code rdslog_yyyyMMdd_HHmmss.rds} in the
+	 * given directory.
+	 *
+	 * @param maxSize the size after which a new file is started, 0 for no limit
+	 * @param rotationPeriod a new file is started at each multiple of this
+	 *   period in local time (e.g. 3600000 for hourly files), 0 for none
+	 */
+	public AsyncTeeGroupReader(GroupReader reader, File dir, long maxSize, long rotationPeriod) throws IOException {
+		this(reader, dir, maxSize, rotationPeriod, DEFAULT_SYNC_INTERVAL);
+	}
+
+	/**
+	 * Writes the groups to files {@code rdslog_yyyyMMdd_HHmmss.rds} in the
+	 * given directory.
+	 *
+	 * @param maxSize the size after which a new file is started, 0 for no limit
+	 * @param rotationPeriod a new file is started at each multiple of this
+	 *   period in local time (e.g. 3600000 for hourly files), 0 for none
+	 * @param syncInterval the maximum time between durable flushes of the
+	 *   output to disk, in milliseconds
+	 */
+	public AsyncTeeGroupReader(GroupReader reader, File dir, long maxSize, long rotationPeriod, long syncInterval) throws IOException {
+		this(reader, null, dir, maxSize, rotationPeriod, syncInterval);
+	}
+
+	private AsyncTeeGroupReader(GroupReader reader, File of, File dir, long maxSize, long rotationPeriod, long syncInterval) throws IOException {
+		this.reader = reader;
+		this.file = of;
+		this.dir = dir;
+		this.maxSize = maxSize;
+		this.rotationPeriod = rotationPeriod;
+		this.syncInterval = syncInterval;
+		this.queue = new ArrayBlockingQueue<GroupReaderEvent>(DEFAULT_QUEUE_SIZE);
+		setParent(reader);
+
+		// open the first file now, so that errors are reported to the caller
+		open(System.currentTimeMillis());
+
+		writerThread = new Thread() {
+			public void run() {
+				writeLoop();
+			}
+		};
+		writerThread.setName("RDS-Tee-Writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+	}
+
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		GroupReaderEvent event;
+		try {
+			event = reader.getGroup();
+		} catch(EndOfStream eos) {
+			close();
+			throw eos;
+		}
+		if(event == null) return null;		// propagate null event
+
+		// the blocks may be modified by the caller before they are written
+		if(event instanceof GroupEvent) {
+			GroupEvent group = (GroupEvent) event;
+			enqueue(new GroupEvent(group.getTime(), group.blocks.clone(), group.ignored, group.correctedBlocks, group.stream));
+		} else enqueue(event);
+
+		return event;
+	}
+
+	private void enqueue(GroupReaderEvent event) {
+		// the queue is large enough for storage hiccups, so this waits only
+		// if the writer cannot keep up at all
+		try {
+			while(!queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+				if(!writerThread.isAlive()) return;
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops the writer thread after the pending events have been written,
+	 * and waits for it. This is done automatically at the end of the stream.
+	 */
+	public void close() {
+		if(Thread.currentThread() != shutdownHook) {
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch(IllegalStateException e) {
+				// the JVM is exiting, the hook closes the reader as well
+			}
+		}
+		if(!writerThread.isAlive()) return;
+		enqueue(END);
+		try {
+			writerThread.join();
+		} catch(InterruptedException e) {
+			// give up waiting
+		}
+	}
+
+	private void writeLoop() {
+		List<GroupReaderEvent> batch = new ArrayList<GroupReaderEvent>();
+		try {
+			while(true) {
+				GroupReaderEvent first = queue.poll(Math.max(1, nextSync - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+				if(first != null) {
+					batch.add(first);
+					queue.drainTo(batch);
+				}
+
+				boolean end = false;
+				for(GroupReaderEvent e : batch) {
+					if(e == END) {
+						end = true;
+						break;
+					}
+					write(e);
+				}
+				batch.clear();
+
+				long now = System.currentTimeMillis();
+				if(end || now >= nextSync) sync(now);
+				if(end) {
+					writer.close();
+					return;
+				}
+			}
+		} catch(IOException e) {
+			System.err.println("In group writer thread: " + e);
+			e.printStackTrace(System.err);
+		} catch(InterruptedException e) {
+			// stop writing
+		}
+		queue.clear();
+	}
+
+	private void open(long now) throws IOException {
+		File f = file;
+		if(f == null) {
+			String name = "rdslog_" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date(now));
+			f = new File(dir, name + ".rds");
+			for(int i=1; f.exists(); i++) f = new File(dir, name + "_" + i + ".rds");
+		}
+		fos = new FileOutputStream(f);
+		writer = new OutputStreamWriter(fos, "ASCII");
+		writer.write("% RDS hexgroups\n");
+		size = 16;
+		nextSync = now + syncInterval;
+
+		if(rotationPeriod > 0) {
+			long offset = TimeZone.getDefault().getOffset(now);
+			nextRotation = ((now + offset) / rotationPeriod + 1) * rotationPeriod - offset;
+		} else nextRotation = Long.MAX_VALUE;
+	}
+
+	private void sync(long now) throws IOException {
+		writer.flush();
+		fos.getFD().sync();
+		nextSync = now + syncInterval;
+	}
+
+	private void write(GroupReaderEvent event) throws IOException {
+		// the hex format has no notion of the additional data streams of RDS2
+		if(event instanceof GroupEvent && ((GroupEvent) event).stream != 0) return;
+
+		if(dir != null) {
+			long now = System.currentTimeMillis();
+			if(now >= nextRotation || (maxSize > 0 && size >= maxSize)) {
+				sync(now);
+				writer.close();
+				open(now);
+			}
+		}
+
+		int len = 0;
+		if(event instanceof GroupEvent) {
+			int[] blocks = ((GroupEvent) event).blocks;
+			for(int i=0; i<4; i++) {
+				int b = blocks[i];
+				if(b >= 0) {
+					line[len++] = HEX[(b >> 12) & 0xF];
+					line[len++] = HEX[(b >> 8) & 0xF];
+					line[len++] = HEX[(b >> 4) & 0xF];
+					line[len++] = HEX[b & 0xF];
+				} else {
+					line[len++] = '-'; line[len++] = '-'; line[len++] = '-'; line[len++] = '-';
+				}
+				line[len++] = ' ';
+			}
+			line[len++] = '@';
+			len = appendTime(len, event.getTime());
+		} else if(event instanceof FrequencyChangeEvent) {
+			String s = "% Freq " + ((FrequencyChangeEvent) event).frequency + ", date=";
+			s.getChars(0, s.length(), line, 0);
+			len = appendTime(s.length(), event.getTime());
+		}
+		line[len++] = '\n';
+
+		writer.write(line, 0, len);
+		size += len;
+	}
+
+	// same as RDSTime.toLongString(), but the date is formatted once per second
+	private int appendTime(int len, RDSTime time) {
+		if(time instanceof RealTime) {
+			long t = time.getRealTime(null, null).getTime();
+			long second = t / 1000 - (t % 1000 < 0 ? 1 : 0);
+			if(second != formattedSecond) {
+				formattedDate = dateFormat.format(new Date(second * 1000));
+				formattedSecond = second;
+			}
+			formattedDate.getChars(0, formattedDate.length(), line, len);
+			len += formattedDate.length();
+			int ms = (int) (t - second * 1000);
+			line[len++] = (char) ('0' + ms / 100);
+			line[len++] = (char) ('0' + ms / 10 % 10);
+			line[len++] = (char) ('0' + ms % 10);
+		} else if(time instanceof SequentialTime) {
+			int t = ((SequentialTime) time).getGroupTime() % 10000;
+			if(t < 0) {
+				line[len++] = '-';
+				t = -t;
+			}
+			line[len++] = (char) ('0' + t / 1000);
+			line[len++] = (char) ('0' + t / 100 % 10);
+			line[len++] = (char) ('0' + t / 10 % 10);
+			line[len++] = (char) ('0' + t % 10);
+		} else if(time != null) {
+			String s = time.toLongString();
+			if(len + s.length() + 1 > line.length) {
+				char[] l = new char[len + s.length() + 1];
+				System.arraycopy(line, 0, l, 0, len);
+				line = l;
+			}
+			s.getChars(0, s.length(), line, len);
+			len += s.length();
+		}
+		return len;
+	}
+}
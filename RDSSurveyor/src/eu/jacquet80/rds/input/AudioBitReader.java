@@ -3,7 +3,7 @@
  For more information see
    http://www.jacquet80.eu/
    http://rds-surveyor.sourceforge.net/
- 
+
  Copyright (c) 2015 Michael von Glasow
  Portions Copyright (c) Oona Räisänen OH2EIQ (windyoona@gmail.com)
 
@@ -36,27 +36,50 @@ import java.io.InputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.PrintStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
+import eu.jacquet80.rds.util.BlockIirFilter;
 import eu.jacquet80.rds.util.MathUtil;
+import eu.jacquet80.rds.util.PackedBitQueue;
 import biz.source_code.dsp.filter.FilterCharacteristicsType;
 import biz.source_code.dsp.filter.FilterPassType;
-import biz.source_code.dsp.filter.IirFilter;
 import biz.source_code.dsp.filter.IirFilterCoefficients;
 import biz.source_code.dsp.filter.IirFilterDesignFisher;
 
+/**
+ * Demodulates RDS from an MPX signal.
+ *
+ * The basic data stream, on the 57 kHz subcarrier, is demodulated in the thread that reads the
+ * MPX input. Optionally, the additional data streams of RDS2, on the 66.5, 71.25 and 76 kHz
+ * subcarriers, are demodulated in parallel, each in a thread of its own, and read through
+ * {@link #getStream(int)}.
+ */
 public class AudioBitReader extends BitReader {
 	private static final boolean DEBUG = false; // set to true to enable debug output
 	
 	/** RDS carrier frequency */
 	private static final double FC_0 = 57000.0;
+
+	/**
+	 * Subcarrier frequencies of the data streams: stream 0 is the basic stream of RDS1, streams
+	 * 1 to 3 are the additional streams of RDS2.
+	 */
+	public static final double[] STREAM_CARRIERS = {FC_0, 66500.0, 71250.0, 76000.0};
+
+	/** Maximum number of data streams */
+	public static final int MAX_STREAMS = STREAM_CARRIERS.length;
+
+	/** RDS bit rate, of which all the subcarrier frequencies are multiples */
+	private static final double BIT_RATE = 1187.5;
+
+	/** Bandwidth of RDS on each side of a subcarrier */
+	private static final double RDS_BANDWIDTH = 2400.0;
 	
 	/** 
 	 * Tolerance of RDS subcarrier frequency.
@@ -68,8 +91,14 @@ public class AudioBitReader extends BitReader {
 	/** Input buffer length, in samples */
 	private static final int IBUFLEN = 4096;
 	
-	/** Output buffer length for decoded data bits */
-	private static final int OBUFLEN = 128;
+	/** Output buffer length for decoded data bits (more than 10 seconds) */
+	private static final int OBUFLEN = 1 << 14;
+
+	/** Number of input buffers waiting to be demodulated by each additional stream */
+	private static final int STREAM_QUEUE_LENGTH = 16;
+
+	/** Marks the end of the input in the queues of the additional streams */
+	private static final float[] END_OF_INPUT = new float[0];
 	
 	/** A stream from which other applications can retrieve audio data */
 	private PipedInputStream audioMirrorSource;
@@ -97,27 +126,27 @@ public class AudioBitReader extends BitReader {
 	/** Decimation factor, determined based on the sample rate */
 	private final int decimate;
 	
-	/** A queue for the bits decoded from the audio stream. */
-	private final ArrayBlockingQueue<Boolean> bits = new ArrayBlockingQueue<Boolean>(OBUFLEN);
+	/**
+	 * A queue for the bits decoded from the basic data stream. Reliabilities are kept only once
+	 * asked for by {@link #keepReliability()}.
+	 */
+	private final PackedBitQueue bits = new PackedBitQueue(OBUFLEN);
+
+	/** The demodulator of the basic data stream */
+	private final SubcarrierDemodulator demodulator;
 
-	/** Demodulated sample from RDS data stream (NRZ-M encoded) */
-	private int dbit = 0;
+	/** The additional data streams, empty unless RDS2 streams have been requested */
+	private final StreamBitReader[] streams;
 	
-	// Used by biphase()
-	private double prev_acc = 0;
-	private int counter = 0;
-	private int reading_frame = 0;
-	private int tot_errs[] = new int[] {0, 0};
-
-	/* Decoded data bit from RDS stream, for debugging only */
-	private int sbit;
+	/** Set by close() to stop the demodulator before the end of the input. */
+	private volatile boolean stopped = false;
 	
 	private static class InputSpec {
-		public final DataInputStream stream;
+		public final SampleSource source;
 		public final int sampleRate;
 		
-		public InputSpec(DataInputStream stream, int sampleRate) {
-			this.stream = stream;
+		public InputSpec(SampleSource source, int sampleRate) {
+			this.source = source;
 			this.sampleRate = sampleRate;
 		}
 	}
@@ -125,9 +154,17 @@ public class AudioBitReader extends BitReader {
 	/**
 	 * Creates a new AudioBitReader and starts decoding RDS date from it.
 	 * 
-	 * @param srate
+	 * @param in the input stream and its sample rate
+	 * @param nbStreams the number of data streams to demodulate, 1 for the basic stream only, up
+	 *   to {@link #MAX_STREAMS}
 	 */
-	public AudioBitReader(final InputSpec in) {
+	private AudioBitReader(final InputSpec in, int nbStreams) {
+		if(nbStreams < 1 || nbStreams > MAX_STREAMS) {
+			throw new IllegalArgumentException("The number of data streams must be between 1 and " + MAX_STREAMS + ".");
+		}
+		if(in.sampleRate < 2 * (STREAM_CARRIERS[nbStreams - 1] + RDS_BANDWIDTH)) {
+			throw new IllegalArgumentException("A sample rate of " + in.sampleRate + " Hz is too low for " + nbStreams + " data stream(s).");
+		}
 		this.sampleRate = in.sampleRate;
 		this.decimate = this.sampleRate / 7125;
 		this.audioMirrorSource = new PipedInputStream();
@@ -136,154 +173,55 @@ public class AudioBitReader extends BitReader {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
+
+		this.demodulator = new SubcarrierDemodulator(0, bits);
+		this.streams = new StreamBitReader[nbStreams - 1];
+		for (int s = 1; s < nbStreams; s++) streams[s - 1] = new StreamBitReader(s);
+
 		new Thread() {
 			public void run() {
-				/* Subcarrier frequency */
-				double fsc = FC_0;
-
-				/* Subcarrier phase */
-				double subcarr_phi    = 0;
-				
-				double subcarr_bb[]   = new double[] {0, 0};
-				
-				/* Clock phase offset */
-				double clock_offset   = 0;
-				
-				/* Clock phase */
-				double clock_phi      = 0;
-				
-				double lo_clock       = 0;
-				double prevclock      = 0;
-				double prev_bb        = 0;
-				
-				/* Subcarrier phase error */
-				double d_phi_sc       = 0;
-
-				/* Clock phase error */
-				double d_cphi         = 0;
-				
-				double acc            = 0;
-				
-				double pll_beta       = 50;
-
-				/* Number of samples (NOT bytes) read */
-				int bytesread;
-
-				int numsamples = 0;
 				int i;
-				
+
 				calculateResampleRatio();
-			
-				IirFilterCoefficients lp2400Coeffs = IirFilterDesignFisher.design(FilterPassType.lowpass,
-						FilterCharacteristicsType.butterworth, 5, 0, 2000.0 / sampleRate, 2000.0 / sampleRate);
-				
-				IirFilterCoefficients lpPllCoeffs = IirFilterDesignFisher.design(FilterPassType.lowpass,
-						FilterCharacteristicsType.butterworth, 1, 0, 2200.0 / sampleRate, 2200.0 / sampleRate);
-
-				IirFilter lp2400iFilter = new IirFilter(lp2400Coeffs);
-				IirFilter lp2400qFilter = new IirFilter(lp2400Coeffs);
-				IirFilter lpPllFilter = new IirFilter(lpPllCoeffs);
-				
-				// for debugging only
-				double t = 0;
-				short outbuf;
-				Process pU;
-				Process pIQ;
-				Process pRaw;
-				String tempPath = "/tmp";
-				String pathSep ="/";
-				try {
-					tempPath = System.getProperty("java.io.tmpdir", tempPath);
-				} catch (Exception e) {
-					// NOP
-				}
-				try {
-					pathSep = System.getProperty("file.separator", pathSep);
-				} catch (Exception e) {
-					// NOP
-				}
-				String[] cmdU = {"sox", "-c", "5", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out.wav"};
-				String[] cmdIQ = {"sox", "-c", "2", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out-iq.wav"};
-				String[] cmdRaw = {"sox", "-c", "1", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out-raw.wav"};
-				DataOutputStream outU = null;
-				DataOutputStream outIQ = null;
-				DataOutputStream outRaw = null;
-				PrintStream stats = null;
-				
-				if (DEBUG) {
-					sbit = 0;
-					dbit = 0;
 
-					try {
-						pU = new ProcessBuilder()
-							.command(cmdU)
-							.redirectErrorStream(true)
-							.start();
-						outU = new DataOutputStream(pU.getOutputStream());
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					
-					try {
-						pIQ = new ProcessBuilder()
-							.command(cmdIQ)
-							.redirectErrorStream(true)
-							.start();
-						outIQ = new DataOutputStream(pIQ.getOutputStream());
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					
-					try {
-						pRaw = new ProcessBuilder()
-							.command(cmdRaw)
-							.redirectErrorStream(true)
-							.start();
-						outRaw = new DataOutputStream(pRaw.getOutputStream());
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-					
-					try {
-						stats = new PrintStream(new File(tempPath, "stats.csv"));
-						stats.print("t,fsc,d_phi_sc,subcarr_bb_re,subcarr_bb_im,clock_offset\n");
-					} catch (FileNotFoundException e) {
-						e.printStackTrace();
-						stats = null;
-					}
-				}
-				
-				/* Array of audio samples retrieved, IBUFLEN samples, 16 bits (2 bytes) per sample */
-				final byte[] buf = new byte[IBUFLEN*2];
-				final ByteBuffer bb = ByteBuffer.wrap(buf);
-				bb.order(ByteOrder.LITTLE_ENDIAN);
+				/* Samples, as floats */
+				float[] samples = new float[IBUFLEN];
+
+				while (!stopped) {
+					/* Hand the bits decoded so far to the consumer before waiting for input */
+					bits.flush();
+
+					/* The additional streams keep the buffers they are given */
+					if (streams.length > 0) samples = new float[IBUFLEN];
 
-				while (true) {
 					try {
-						in.stream.readFully(buf);
+						for (i = 0; i < IBUFLEN; ) {
+							int n = in.source.read(samples, i, IBUFLEN - i);
+							if (n < 0) throw new EOFException();
+							i += n;
+						}
 					} catch (EOFException e) {
 						break;
 					} catch (IOException e) {
+						if (stopped) break;
 						e.printStackTrace(System.err);
 						continue;
 					}
-					bytesread = IBUFLEN;
-					bb.rewind();
 
 					/* Reset audio counters periodically to prevent overflow */
 					inCount %= inRatio;
 					outCount %= outRatio;
-					
-					for (i = 0; i < bytesread; i++) {
-						final short sample = bb.getShort();
-						if (isPlaying && (audioMirrorSink != null))
+
+					if (isPlaying && (audioMirrorSink != null)) {
+						for (i = 0; i < IBUFLEN; i++) {
 							try {
+								final short sample = (short) (samples[i] * 32768);
 								/* resample */
 								inCount++;
-								/* 
+								/*
 								 * if the downsampling ratio has not been exceeded yet
 								 * (outCount * inRatio <= outRatio * inCount
-								 * is just an integer-friendly and div-by-zero-proof representation of 
+								 * is just an integer-friendly and div-by-zero-proof representation of
 								 * outCount/inCount <= outRatio/inRatio)
 								 */
 								if (outCount * inRatio <= outRatio * inCount) {
@@ -293,138 +231,53 @@ public class AudioBitReader extends BitReader {
 							} catch (IOException e) {
 								e.printStackTrace();
 							}
+						}
+					}
 
-						/* Subcarrier downmix & phase recovery */
-
-						subcarr_phi    += 2 * Math.PI * fsc / (double) sampleRate;
-						subcarr_bb[0]  = lp2400iFilter.step(sample / 32768.0 * Math.cos(subcarr_phi));
-						subcarr_bb[1]  = lp2400qFilter.step(sample / 32768.0 * Math.sin(subcarr_phi));
-
-						d_phi_sc = lpPllFilter.step(subcarr_bb[1] * subcarr_bb[0]);
-						subcarr_phi -= pll_beta * d_phi_sc;
-						fsc         -= 0.5 * pll_beta * d_phi_sc;
-						
-						/* Decimate band-limited signal */
-						if (numsamples % decimate == 0) {
-							/* Reset subcarrier frequency if it is outside tolerance range */
-							if ((fsc > FC_0 + FC_TOLERANCE) || (fsc < FC_0 - FC_TOLERANCE)) {
-								fsc = FC_0;
-							}
-
-							/* 1187.5 Hz clock */
-
-							clock_phi = subcarr_phi / 48.0 + clock_offset;
-							lo_clock  = ((clock_phi % (2 * Math.PI)) < Math.PI ? 1 : -1);
-
-							/* Clock phase recovery */
-
-							if (sign(prev_bb) != sign(subcarr_bb[0])) {
-								d_cphi = clock_phi % Math.PI;
-								if (d_cphi >= (Math.PI / 2)) d_cphi -= Math.PI;
-								clock_offset -= 0.005 * d_cphi;
-							}
-
-							/* biphase symbol integrate & dump */
-							acc += subcarr_bb[0] * lo_clock;
+					for (StreamBitReader stream : streams) stream.offer(samples);
 
-							if (sign(lo_clock) != sign(prevclock)) {
-								biphase(acc);
-								acc = 0;
-							}
+					demodulator.process(samples, IBUFLEN);
+				}
 
-							prevclock = lo_clock;
-							prev_bb = subcarr_bb[0];
-
-							if (DEBUG) {
-								if (outRaw != null)
-									try {
-										outRaw.writeShort(Short.reverseBytes(sample));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-								/* dbg-out.wav channel 1: d_phi_sc */
-								outbuf = (short) (d_phi_sc * 6000);
-								if (outU != null)
-									try {
-										outU.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-
-								/* dbg-out.wav channel 2: 1187.5 Hz clock */
-								outbuf = (short) (lo_clock * 16000);
-								if (outU != null)
-									try {
-										outU.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-
-								/* dbg-out-iq.wav channel 1 */
-								outbuf = (short) (subcarr_bb[0] * 32000);
-								if (outIQ != null)
-									try {
-										outIQ.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-
-								/* dbg-out-iq.wav channel 2 */
-								outbuf = (short) (subcarr_bb[1] * 32000);
-								if (outIQ != null)
-									try {
-										outIQ.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-								/* dbg-out.wav channel 3: acc */
-								outbuf = (short) (acc * 800);
-								if (outU != null)
-									try {
-										outU.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-								/* dbg-out.wav channel 4: dbit (demodulated RDS stream) */
-								outbuf = (short) (dbit * 16000);
-								if (outU != null)
-									try {
-										outU.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-
-								/* dbg-out.wav channel 5: sbit (decoded RDS data stream) */
-								outbuf = (short) (sbit * 16000);
-								if (outU != null)
-									try {
-										outU.writeShort(Short.reverseBytes(outbuf));
-									} catch (IOException e) {
-										e.printStackTrace();
-									}
-
-								t += 1.0/sampleRate;
-								if ((stats != null) && (numsamples % (decimate * 16) == 0))
-									// qua (quality) is not implemented so far
-									stats.printf("%f,%f,%f,%f,%f,%f\n", t, fsc, d_phi_sc, subcarr_bb[0], subcarr_bb[1], clock_offset);
-							}
-						}
-						
-						numsamples++;
-					}
+				bits.close();
+				for (StreamBitReader stream : streams) stream.offer(END_OF_INPUT);
+				try {
+					in.source.close();
+				} catch (IOException e) {
+					// nothing more to read anyway
 				}
 			}
 		}.start();
 	}
-	
+
 	public AudioBitReader(DataInputStream stream, int sampleRate) {
-		this(new InputSpec(stream, sampleRate));
+		this(new InputSpec(new StreamSampleSource(stream), sampleRate), 1);
 	}
-	
+
+	/**
+	 * @param nbStreams the number of data streams to demodulate: 1 for the basic stream only,
+	 *   {@link #MAX_STREAMS} for all the streams of RDS2
+	 */
+	public AudioBitReader(DataInputStream stream, int sampleRate, int nbStreams) {
+		this(new InputSpec(new StreamSampleSource(stream), sampleRate), nbStreams);
+	}
+
+	/**
+	 * Creates a new AudioBitReader that decodes the samples of any source, such as the
+	 * {@link SampleRing} filled by the driver of a tuner.
+	 */
+	public AudioBitReader(SampleSource source, int sampleRate) {
+		this(new InputSpec(source, sampleRate), 1);
+	}
+
 	public AudioBitReader(File audioFile) throws UnsupportedAudioFileException, IOException {
-		this(audioFileDataInputStream(audioFile));
+		this(audioFileDataInputStream(audioFile), 1);
 	}
-	
+
+	public AudioBitReader(File audioFile, int nbStreams) throws UnsupportedAudioFileException, IOException {
+		this(audioFileDataInputStream(audioFile), nbStreams);
+	}
+
 	private static InputSpec audioFileDataInputStream(File audioFile) throws UnsupportedAudioFileException, IOException {
 		AudioInputStream ais = AudioSystem.getAudioInputStream(audioFile);
 		AudioFormat format = ais.getFormat();
@@ -432,12 +285,12 @@ public class AudioBitReader extends BitReader {
 		if(format.getChannels() != 1 || format.getSampleSizeInBits() != 16 || format.isBigEndian()) {
 			throw new UnsupportedAudioFileException("RDS Surveyor currently supports only the 16-bit PCM, mono, little-endian format.");
 		}
-		return new InputSpec(new DataInputStream(ais), (int)format.getSampleRate());
+		return new InputSpec(new StreamSampleSource(ais), (int)format.getSampleRate());
 	}
-	
+
 	/**
 	 * @brief Returns a stream on which audio output is mirrored as it is processed.
-	 * 
+	 *
 	 * To start receiving data from the stream, consumers must call {@link #startPlaying()}.
 	 * Consumers who are no longer interested in audio data must call {@link #stopPlaying()}.
 	 */
@@ -455,22 +308,88 @@ public class AudioBitReader extends BitReader {
 
 	@Override
 	public boolean getBit() throws IOException {
-		boolean ret;
-		while (true) {
-			try {
-				ret = bits.take();
-				return ret;
-			} catch (InterruptedException e) {
-				System.err.println("InterruptedException.");
-			}
-		}
+		return bits.take();
 	}
-	
+
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		// wait for the first bit, then take those already decoded
+		return bits.take(dst, maxBits);
+	}
+
+	@Override
+	public boolean hasReliability() {
+		return true;
+	}
+
+	@Override
+	public void keepReliability() {
+		bits.keepReliabilities();
+	}
+
+	@Override
+	public int readBits(long[] dst, byte[] reliability, int maxBits) throws IOException {
+		return bits.take(dst, reliability, maxBits);
+	}
+
+	/**
+	 * @brief Returns the number of data streams being demodulated.
+	 */
+	public int getStreamCount() {
+		return streams.length + 1;
+	}
+
+	/**
+	 * @brief Returns the bits of a data stream.
+	 *
+	 * Stream 0 is the basic stream, that is this reader itself. As demodulation waits for the
+	 * slowest stream, the bits of every stream must be read.
+	 *
+	 * @param stream the data stream, less than {@link #getStreamCount()}
+	 */
+	public BitReader getStream(int stream) {
+		return stream == 0 ? this : streams[stream - 1];
+	}
+
+	/**
+	 * @brief Stops decoding and closes the input, for readers which do not read up to the end of
+	 * the stream.
+	 *
+	 * The input is otherwise closed at its end. Subsequent reads report the end of the stream.
+	 */
+	public void close() {
+		stopped = true;
+		bits.cancel();
+		for (StreamBitReader stream : streams) stream.bits.cancel();
+	}
+
+	/**
+	 * @brief Returns the number of decoded bits waiting to be read.
+	 */
+	public long getQueuedBitCount() {
+		return bits.size();
+	}
+
+	/**
+	 * @brief Returns the largest number of decoded bits that have been waiting to be read.
+	 */
+	public long getMaxQueuedBitCount() {
+		return bits.getMaxOccupancy();
+	}
+
+	/**
+	 * @brief Returns the number of times decoding had to wait because too many bits were waiting
+	 * to be read.
+	 */
+	public long getOverrunCount() {
+		return bits.getOverrunCount();
+	}
+
 	/**
 	 * @brief Sets the sample rate for audio output.
-	 * 
+	 *
 	 * Changes take effect immediately, and audio will be briefly interrupted.
-	 *  
+	 *
 	 * @param outSampleRate the outSampleRate to set
 	 */
 	public synchronized void setAudioSampleRate(int outSampleRate) {
@@ -484,9 +403,9 @@ public class AudioBitReader extends BitReader {
 
 	/**
 	 * @brief Starts mirroring audio samples to the audio stream.
-	 * 
+	 *
 	 * Consumers must call this method to receive audio data on the audio mirror stream.
-	 * 
+	 *
 	 * The audio mirror stream can be obtained by calling {@link #getAudioMirrorStream()}.
 	 */
 	public synchronized void startPlaying() {
@@ -494,67 +413,477 @@ public class AudioBitReader extends BitReader {
 		outCount = 0;
 		isPlaying = true;
 	}
-	
+
 	/**
 	 * @brief Stops mirroring audio samples to the audio stream.
-	 * 
+	 *
 	 * When consumers are no longer interested in audio data from the audio mirror stream, they
 	 * must call this method.
-	 * 
+	 *
 	 * The audio mirror stream can be obtained by calling {@link #getAudioMirrorStream()}.
 	 */
 	public synchronized void stopPlaying() {
 		isPlaying = false;
 	}
-	
+
+	private static int sign(double a) {
+		return (a >= 0 ? 1 : 0);
+	}
+
+	private void calculateResampleRatio() {
+		/* Set up audio downsampling */
+		int gcd = MathUtil.gcd(sampleRate, outSampleRate);
+		inRatio = sampleRate / gcd;
+		outRatio = outSampleRate / gcd;
+
+		System.out.println(String.format("AudioBitReader: audio downsampling ratio set to %d:%d", inRatio, outRatio));
+	}
+
 	/**
-	 * Stores a value in the queue {@code bits}.
-	 * 
-	 * @param b The new bit received. If it is different from the last bit that was received, 1 is
-	 * stored, else 0 is stored.
+	 * @brief An additional data stream, demodulated in a thread of its own from the samples
+	 * handed over by the input thread.
 	 */
-	private void storeValue(int b) {
-		if (DEBUG) {
-			sbit = (((b ^ dbit) != 0) ? 1 : -1);
+	private class StreamBitReader extends BitReader {
+		private final PackedBitQueue bits = new PackedBitQueue(OBUFLEN);
+		private final SubcarrierDemodulator demodulator;
+		private final BlockingQueue<float[]> buffers = new ArrayBlockingQueue<float[]>(STREAM_QUEUE_LENGTH);
+
+		public StreamBitReader(int stream) {
+			this.demodulator = new SubcarrierDemodulator(stream, bits);
+
+			new Thread("AudioBitReader-Stream-" + stream) {
+				public void run() {
+					try {
+						while (true) {
+							float[] samples = buffers.take();
+							if (samples == END_OF_INPUT) break;
+							demodulator.process(samples, samples.length);
+							bits.flush();
+						}
+					} catch (InterruptedException e) {
+						// end of demodulation
+					}
+					bits.close();
+				}
+			}.start();
 		}
-		try {
-			bits.put((b ^ dbit) != 0);
-		} catch (InterruptedException e) {
-			System.err.println("InterruptedException.");
+
+		/**
+		 * Hands over a buffer of samples, waiting while too many buffers are still to be
+		 * demodulated.
+		 */
+		void offer(float[] samples) {
+			try {
+				buffers.put(samples);
+			} catch (InterruptedException e) {
+				stopped = true;
+			}
 		}
-		dbit = b;
-	}
 
-	private int sign(double a) {
-		return (a >= 0 ? 1 : 0);
-	}
+		@Override
+		public boolean getBit() throws IOException {
+			return bits.take();
+		}
 
-	private void biphase(double acc) {
-		if (sign(acc) != sign(prev_acc)) {
-			tot_errs[counter % 2] ++;
+		@Override
+		public int readBits(long[] dst, int maxBits) throws IOException {
+			return bits.take(dst, maxBits);
 		}
 
-		if (counter % 2 == reading_frame) {
-			storeValue(sign(acc + prev_acc));
+		@Override
+		public boolean hasReliability() {
+			return true;
 		}
-		if (counter == 0) {
-			if (tot_errs[1 - reading_frame] < tot_errs[reading_frame]) {
-				reading_frame = 1 - reading_frame;
-			}
-			tot_errs[0] = 0;
-			tot_errs[1] = 0;
+
+		@Override
+		public void keepReliability() {
+			bits.keepReliabilities();
 		}
 
-		prev_acc = acc;
-		counter = (counter + 1) % 800;
+		@Override
+		public int readBits(long[] dst, byte[] reliability, int maxBits) throws IOException {
+			return bits.take(dst, reliability, maxBits);
+		}
 	}
 
-	private void calculateResampleRatio() {
-		/* Set up audio downsampling */
-		int gcd = MathUtil.gcd(sampleRate, outSampleRate);
-		inRatio = sampleRate / gcd;
-		outRatio = outSampleRate / gcd;
+	/**
+	 * @brief Demodulates the data stream of one subcarrier.
+	 *
+	 * Each subcarrier is recovered by a PLL of its own. As subcarrier frequencies are multiples
+	 * of the bit rate, the bit clock is derived from the subcarrier phase.
+	 */
+	private class SubcarrierDemodulator {
+		private final int stream;
+		private final PackedBitQueue bits;
+
+		/** Nominal subcarrier frequency */
+		private final double fc;
+
+		/** Ratio of the subcarrier frequency to the bit rate */
+		private final int clockDivider;
+
+		/* Subcarrier frequency */
+		private double fsc;
+
+		/* Subcarrier phase, kept in [0, 2 pi clockDivider) so that the clock phase is exact */
+		private double subcarr_phi    = 0;
 		
-		System.out.println(String.format("AudioBitReader: audio downsampling ratio set to %d:%d", inRatio, outRatio));
+		private final double subcarr_bb[]   = new double[] {0, 0};
+		
+		/* Clock phase offset, kept in [0, 2 pi) */
+		private double clock_offset   = 0;
+		
+		/* Clock phase */
+		private double clock_phi      = 0;
+		
+		private double lo_clock       = 0;
+		private double prevclock      = 0;
+		private double prev_bb        = 0;
+		
+		/* Subcarrier phase error */
+		private double d_phi_sc       = 0;
+
+		/* Clock phase error */
+		private double d_cphi         = 0;
+		
+		private double acc            = 0;
+		
+		private final double pll_beta = 50;
+		
+		/*
+		 * Numerically controlled oscillator: cos and sin of the subcarrier phase of the next
+		 * sample, advanced by a rotation of the phase step. They are computed exactly after
+		 * each PLL update, that is once per decimated sample.
+		 */
+		private double phi_step, nco_cos, nco_sin, step_cos, step_sin;
+
+		/* Number of samples until the next decimated sample */
+		private int untilDecimation = 1;
+
+		private int numsamples = 0;
+		
+		private final BlockIirFilter lp2400iFilter, lp2400qFilter, lpPllFilter;
+
+		/* In-phase and quadrature components of the subcarrier */
+		private final float[] bbI = new float[IBUFLEN];
+		private final float[] bbQ = new float[IBUFLEN];
+
+		/** Demodulated sample from RDS data stream (NRZ-M encoded) */
+		private int dbit = 0;
+
+		// Used by biphase()
+		private double prev_acc = 0;
+		private int counter = 0;
+		private int reading_frame = 0;
+		private final int tot_errs[] = new int[] {0, 0};
+
+		/* Magnitude of the last biphase symbol, and running mean of the magnitudes */
+		private double prev_magnitude = 0;
+		private double mean_magnitude = 0;
+
+		/* Decoded data bit from RDS stream, for debugging only */
+		private int sbit;
+
+		// for debugging only
+		private double t = 0;
+		private DataOutputStream outU = null;
+		private DataOutputStream outIQ = null;
+		private DataOutputStream outRaw = null;
+		private PrintStream stats = null;
+
+		public SubcarrierDemodulator(int stream, PackedBitQueue bits) {
+			this.stream = stream;
+			this.bits = bits;
+			this.fc = STREAM_CARRIERS[stream];
+			this.clockDivider = (int) Math.round(fc / BIT_RATE);
+			this.fsc = fc;
+
+			phi_step = 2 * Math.PI * fsc / sampleRate;
+			nco_cos = Math.cos(phi_step);
+			nco_sin = Math.sin(phi_step);
+			step_cos = nco_cos;
+			step_sin = nco_sin;
+			
+			IirFilterCoefficients lp2400Coeffs = IirFilterDesignFisher.design(FilterPassType.lowpass,
+					FilterCharacteristicsType.butterworth, 5, 0, 2000.0 / sampleRate, 2000.0 / sampleRate);
+			
+			/* The PLL runs at the decimated rate */
+			IirFilterCoefficients lpPllCoeffs = IirFilterDesignFisher.design(FilterPassType.lowpass,
+					FilterCharacteristicsType.butterworth, 1, 0, 2200.0 * decimate / sampleRate, 2200.0 * decimate / sampleRate);
+
+			lp2400iFilter = new BlockIirFilter(lp2400Coeffs);
+			lp2400qFilter = new BlockIirFilter(lp2400Coeffs);
+			lpPllFilter = new BlockIirFilter(lpPllCoeffs);
+			
+			if (DEBUG && stream == 0) openDebugOutputs();
+		}
+
+		private void openDebugOutputs() {
+			Process pU;
+			Process pIQ;
+			Process pRaw;
+			String tempPath = "/tmp";
+			String pathSep ="/";
+			try {
+				tempPath = System.getProperty("java.io.tmpdir", tempPath);
+			} catch (Exception e) {
+				// NOP
+			}
+			try {
+				pathSep = System.getProperty("file.separator", pathSep);
+			} catch (Exception e) {
+				// NOP
+			}
+			String[] cmdU = {"sox", "-c", "5", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out.wav"};
+			String[] cmdIQ = {"sox", "-c", "2", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out-iq.wav"};
+			String[] cmdRaw = {"sox", "-c", "1", "-r", Integer.toString(sampleRate), "-t", ".s16", "-", tempPath + pathSep + "dbg-out-raw.wav"};
+			
+			sbit = 0;
+			dbit = 0;
+
+			try {
+				pU = new ProcessBuilder()
+					.command(cmdU)
+					.redirectErrorStream(true)
+					.start();
+				outU = new DataOutputStream(pU.getOutputStream());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			try {
+				pIQ = new ProcessBuilder()
+					.command(cmdIQ)
+					.redirectErrorStream(true)
+					.start();
+				outIQ = new DataOutputStream(pIQ.getOutputStream());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			try {
+				pRaw = new ProcessBuilder()
+					.command(cmdRaw)
+					.redirectErrorStream(true)
+					.start();
+				outRaw = new DataOutputStream(pRaw.getOutputStream());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			
+			try {
+				stats = new PrintStream(new File(tempPath, "stats.csv"));
+				stats.print("t,fsc,d_phi_sc,subcarr_bb_re,subcarr_bb_im,clock_offset\n");
+			} catch (FileNotFoundException e) {
+				e.printStackTrace();
+				stats = null;
+			}
+		}
+		
+		/**
+		 * Demodulates a buffer of samples, storing the decoded bits.
+		 */
+		public void process(float[] samples, int count) {
+			int i;
+			short outbuf;
+			
+			/* Process the buffer in segments ending at each decimated sample */
+			int pos = 0;
+			while (pos < count) {
+				final int end = Math.min(count, pos + untilDecimation);
+
+				/* Subcarrier downmix */
+				double c = nco_cos, s = nco_sin;
+				for (i = pos; i < end; i++) {
+					bbI[i] = (float) (samples[i] * c);
+					bbQ[i] = (float) (samples[i] * s);
+					final double c2 = c * step_cos - s * step_sin;
+					s = s * step_cos + c * step_sin;
+					c = c2;
+				}
+				nco_cos = c;
+				nco_sin = s;
+				subcarr_phi += (end - pos) * phi_step;
+
+				lp2400iFilter.filter(bbI, pos, end);
+				lp2400qFilter.filter(bbQ, pos, end);
+
+				numsamples += end - pos;
+				untilDecimation -= end - pos;
+				pos = end;
+				if (untilDecimation > 0) continue;
+				untilDecimation = decimate;
+
+				/* Decimate band-limited signal */
+				subcarr_bb[0] = bbI[end - 1];
+				subcarr_bb[1] = bbQ[end - 1];
+				final short sample = (short) (samples[end - 1] * 32768);
+
+				/* Subcarrier phase recovery */
+				d_phi_sc = lpPllFilter.step(subcarr_bb[1] * subcarr_bb[0]);
+				subcarr_phi -= pll_beta * decimate * d_phi_sc;
+				fsc         -= 0.5 * pll_beta * decimate * d_phi_sc;
+
+				/* Reset subcarrier frequency if it is outside tolerance range */
+				if ((fsc > fc + FC_TOLERANCE) || (fsc < fc - FC_TOLERANCE)) {
+					fsc = fc;
+				}
+
+				while (subcarr_phi >= 2 * clockDivider * Math.PI) subcarr_phi -= 2 * clockDivider * Math.PI;
+				while (subcarr_phi < 0) subcarr_phi += 2 * clockDivider * Math.PI;
+
+				phi_step = 2 * Math.PI * fsc / sampleRate;
+				step_cos = Math.cos(phi_step);
+				step_sin = Math.sin(phi_step);
+				nco_cos = Math.cos(subcarr_phi + phi_step);
+				nco_sin = Math.sin(subcarr_phi + phi_step);
+
+				/* 1187.5 Hz clock */
+
+				clock_phi = subcarr_phi / clockDivider + clock_offset;
+				if (clock_phi >= 2 * Math.PI) clock_phi -= 2 * Math.PI;
+				lo_clock  = (clock_phi < Math.PI ? 1 : -1);
+
+				/* Clock phase recovery */
+
+				if (sign(prev_bb) != sign(subcarr_bb[0])) {
+					d_cphi = (clock_phi >= Math.PI) ? clock_phi - Math.PI : clock_phi;
+					if (d_cphi >= (Math.PI / 2)) d_cphi -= Math.PI;
+					clock_offset -= 0.005 * d_cphi;
+					if (clock_offset < 0) clock_offset += 2 * Math.PI;
+					else if (clock_offset >= 2 * Math.PI) clock_offset -= 2 * Math.PI;
+				}
+
+				/* biphase symbol integrate & dump */
+				acc += subcarr_bb[0] * lo_clock;
+
+				if (sign(lo_clock) != sign(prevclock)) {
+					biphase(acc);
+					acc = 0;
+				}
+
+				prevclock = lo_clock;
+				prev_bb = subcarr_bb[0];
+
+				if (DEBUG && stream == 0) {
+					if (outRaw != null)
+						try {
+							outRaw.writeShort(Short.reverseBytes(sample));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					/* dbg-out.wav channel 1: d_phi_sc */
+					outbuf = (short) (d_phi_sc * 6000);
+					if (outU != null)
+						try {
+							outU.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+
+					/* dbg-out.wav channel 2: 1187.5 Hz clock */
+					outbuf = (short) (lo_clock * 16000);
+					if (outU != null)
+						try {
+							outU.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+
+					/* dbg-out-iq.wav channel 1 */
+					outbuf = (short) (subcarr_bb[0] * 32000);
+					if (outIQ != null)
+						try {
+							outIQ.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+
+					/* dbg-out-iq.wav channel 2 */
+					outbuf = (short) (subcarr_bb[1] * 32000);
+					if (outIQ != null)
+						try {
+							outIQ.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					/* dbg-out.wav channel 3: acc */
+					outbuf = (short) (acc * 800);
+					if (outU != null)
+						try {
+							outU.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+					/* dbg-out.wav channel 4: dbit (demodulated RDS stream) */
+					outbuf = (short) (dbit * 16000);
+					if (outU != null)
+						try {
+							outU.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+
+					/* dbg-out.wav channel 5: sbit (decoded RDS data stream) */
+					outbuf = (short) (sbit * 16000);
+					if (outU != null)
+						try {
+							outU.writeShort(Short.reverseBytes(outbuf));
+						} catch (IOException e) {
+							e.printStackTrace();
+						}
+
+					t += (double) decimate / sampleRate;
+					if ((stats != null) && (numsamples / decimate % 16 == 0))
+						// qua (quality) is not implemented so far
+						stats.printf("%f,%f,%f,%f,%f,%f\n", t, fsc, d_phi_sc, subcarr_bb[0], subcarr_bb[1], clock_offset);
+				}
+			}
+		}
+		
+		/**
+		 * Stores a value in the queue {@code bits}.
+		 * 
+		 * @param b The new bit received. If it is different from the last bit that was received,
+		 * 1 is stored, else 0 is stored.
+		 * @param magnitude The magnitude of the biphase symbol {@code b} was decided from.
+		 */
+		private void storeValue(int b, double magnitude) {
+			if (DEBUG) {
+				sbit = (((b ^ dbit) != 0) ? 1 : -1);
+			}
+
+			/*
+			 * The bit is wrong if either symbol is, so it is as reliable as the weaker one. The
+			 * reliability is relative to the mean magnitude, which maps to 128.
+			 */
+			mean_magnitude += (magnitude - mean_magnitude) / 64;
+			double weaker = Math.min(magnitude, prev_magnitude);
+			int reliability = mean_magnitude > 0 ? (int) Math.min(255, 128 * weaker / mean_magnitude) : 0;
+			prev_magnitude = magnitude;
+
+			bits.put((b ^ dbit) != 0, reliability);
+			dbit = b;
+		}
+
+		private void biphase(double acc) {
+			if (sign(acc) != sign(prev_acc)) {
+				tot_errs[counter % 2] ++;
+			}
+
+			if (counter % 2 == reading_frame) {
+				storeValue(sign(acc + prev_acc), Math.abs(acc + prev_acc));
+			}
+			if (counter == 0) {
+				if (tot_errs[1 - reading_frame] < tot_errs[reading_frame]) {
+					reading_frame = 1 - reading_frame;
+				}
+				tot_errs[0] = 0;
+				tot_errs[1] = 0;
+			}
+
+			prev_acc = acc;
+			counter = (counter + 1) % 800;
+		}
 	}
 }
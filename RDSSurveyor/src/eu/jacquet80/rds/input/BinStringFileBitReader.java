@@ -37,6 +37,9 @@ import java.io.UnsupportedEncodingException;
 
 public class BinStringFileBitReader extends BitReader {
 	private final InputStream isr;
+	private final byte[] buf = new byte[4096];
+	private int bufPos = 0;
+	private int bufLen = 0;
 	
 	public BinStringFileBitReader(InputStream isr) {
 		this.isr = isr;
@@ -46,15 +49,52 @@ public class BinStringFileBitReader extends BitReader {
 		isr = new FileInputStream(f);
 	}
 	
+	/**
+	 * Refills the input buffer.
+	 * 
+	 * @param block whether to block if no data is available yet
+	 * @return false at the end of the stream, or if no data is available
+	 * and <code>block</code> is false
+	 */
+	private boolean fill(boolean block) throws IOException {
+		if(!block && isr.available() == 0) return false;
+		bufLen = isr.read(buf);
+		bufPos = 0;
+		if(bufLen <= 0) {
+			bufLen = 0;
+			return false;
+		}
+		return true;
+	}
+	
 	public boolean getBit() throws IOException {
 		while(true) {
-			int c = isr.read();
-			switch(c) {
+			if(bufPos == bufLen && !fill(true)) throw new EOFException();
+			switch(buf[bufPos++]) {
 			case '0': return false;
 			case '1': return true;
-			case -1: throw new EOFException();
 			}
 		}
 	}
-
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = 0;
+		long word = 0;
+		while(n < maxBits) {
+			if(bufPos == bufLen && !fill(n == 0)) break;
+			
+			int c = buf[bufPos++];
+			if(c != '0' && c != '1') continue;
+			
+			word = (word << 1) | (c - '0');
+			n++;
+			if((n & 63) == 0) {
+				dst[(n >> 6) - 1] = word;
+				word = 0;
+			}
+		}
+		if((n & 63) != 0) dst[n >> 6] = word << (64 - (n & 63));
+		return n == 0 ? -1 : n;
+	}
 }
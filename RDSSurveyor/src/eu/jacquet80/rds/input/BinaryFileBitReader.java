@@ -34,8 +34,11 @@ import java.io.InputStream;
 
 public class BinaryFileBitReader extends BitReader {
 	private final InputStream is;
+	private final byte[] buf = new byte[4096];
+	private int bufPos = 0;
+	private int bufLen = 0;
 	private int oct;
-	private int octPtr;
+	private int octPtr;     // number of bits of oct not read yet
 	
 	public BinaryFileBitReader(InputStream is) {
 		this.is = is;
@@ -48,21 +51,50 @@ public class BinaryFileBitReader extends BitReader {
 		this(new FileInputStream(f));
 	}
 	
+	/**
+	 * Loads the next byte into oct.
+	 * 
+	 * @param block whether to block if no data is available yet
+	 * @return false at the end of the stream, or if no data is available
+	 * and <code>block</code> is false
+	 */
+	private boolean nextByte(boolean block) throws IOException {
+		if(bufPos == bufLen) {
+			if(!block && is.available() == 0) return false;
+			bufLen = is.read(buf);
+			bufPos = 0;
+			if(bufLen <= 0) {
+				bufLen = 0;
+				return false;
+			}
+		}
+		oct = buf[bufPos++] & 0xFF;
+		octPtr = 8;
+		return true;
+	}
 	
 	public boolean getBit() throws IOException {
-		oct = oct<<1;
-
 		if(octPtr==0) {
-			oct = is.read();
-			if(oct == -1) {
+			if(! nextByte(true)) {
 				throw new EOFException();
 			}
-			octPtr=8;
 		}
 
 		octPtr--;
-		return (oct&128) != 0;
+		return ((oct >> octPtr) & 1) != 0;
+	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = 0;
+		while(n < maxBits) {
+			if(octPtr == 0 && !nextByte(n == 0)) break;
+			
+			int count = Math.min(octPtr, maxBits - n);
+			octPtr -= count;
+			putBits(dst, n, oct >> octPtr, count);
+			n += count;
+		}
+		return n == 0 ? -1 : n;
 	}
-
-
 }
@@ -24,9 +24,105 @@
 */
 
 package eu.jacquet80.rds.input;
+import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 
 
 public abstract class BitReader extends RDSReader {
+	/**
+	 * Reads one bit.
+	 * 
+	 * @return the bit read
+	 * @throws EOFException at the end of the stream
+	 */
 	public abstract boolean getBit() throws IOException;
+	
+	/**
+	 * Reads several bits at once. Bits are packed into <code>dst</code>,
+	 * most significant bit first: bit <i>i</i> is bit 63-(<i>i</i>%64) of
+	 * <code>dst[i/64]</code>. The unused bits of the last word are zero.
+	 * 
+	 * This blocks until at least one bit is available, but may return
+	 * fewer than <code>maxBits</code> bits, for instance when no more data
+	 * is available yet on a live source.
+	 * 
+	 * The default implementation reads at most 64 bits one by one with
+	 * {@link #getBit()}. Readers should override it whenever they can do
+	 * better.
+	 * 
+	 * @param dst the destination buffer, at least <code>(maxBits+63)/64</code> long
+	 * @param maxBits the maximum number of bits to read, at least 1
+	 * @return the number of bits read, or -1 at the end of the stream
+	 */
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int max = Math.min(maxBits, 64);
+		long word = 0;
+		int n = 0;
+		try {
+			while(n < max) {
+				word = (word << 1) | (getBit() ? 1 : 0);
+				n++;
+			}
+		} catch(EOFException e) {
+			if(n == 0) return -1;
+		}
+		dst[0] = word << (64 - n);
+		return n;
+	}
+	
+	/**
+	 * Tells whether {@link #readBits(long[], byte[], int)} gives the actual
+	 * reliability of the bits, that is whether the reader makes soft
+	 * decisions. Readers of hard bits return false.
+	 */
+	public boolean hasReliability() {
+		return false;
+	}
+	
+	/**
+	 * Asks a reader that makes soft decisions to keep the reliability of
+	 * the bits it decodes from now on. Such readers only keep them once
+	 * asked, because it costs time and memory; until then,
+	 * {@link #readBits(long[], byte[], int)} gives all bits reliability
+	 * 255. Readers of hard bits ignore this.
+	 */
+	public void keepReliability() {
+	}
+	
+	/**
+	 * Reads several bits at once, as {@link #readBits(long[], int)}, along
+	 * with the reliability of each bit: <code>reliability[i]</code> is
+	 * the reliability of bit <i>i</i>, as an unsigned byte, from 0 for a
+	 * mere guess to 255 for a certain bit.
+	 * 
+	 * The default implementation reads hard bits, and gives them all
+	 * reliability 255.
+	 * 
+	 * @param reliability at least <code>maxBits</code> long
+	 * @return the number of bits read, or -1 at the end of the stream
+	 */
+	public int readBits(long[] dst, byte[] reliability, int maxBits) throws IOException {
+		int n = readBits(dst, maxBits);
+		if(n > 0) Arrays.fill(reliability, 0, n, (byte) 255);
+		return n;
+	}
+	
+	/**
+	 * Stores <code>count</code> bits (1 to 64) in a packed bit buffer, in the
+	 * format used by {@link #readBits(long[], int)}. Buffer words are
+	 * cleared as they are first written, so bits must be stored in order.
+	 * 
+	 * @param dst the packed bit buffer
+	 * @param pos the position of the first bit to store
+	 * @param bits the bits to store, right-aligned, first bit most significant
+	 * @param count the number of bits to store
+	 */
+	protected static void putBits(long[] dst, int pos, long bits, int count) {
+		int word = pos >> 6;
+		int offset = pos & 63;
+		long v = bits << (64 - count);
+		if(offset == 0) dst[word] = v; else dst[word] |= v >>> offset;
+		if(offset + count > 64) dst[word + 1] = v << (64 - offset);
+	}
 }
@@ -2,11 +2,14 @@ package eu.jacquet80.rds.input;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.net.URL;
 import java.util.regex.Pattern;
 
@@ -20,6 +23,15 @@ public class FileFormatGuesser {
 			Pattern.compile("[01]{40}");
 	
 	private static GroupReader createReader(InputStream is) throws IOException {
+		return createReader(is, System.out);
+	}
+	
+	/**
+	 * Creates a reader for a stream of any format except audio, reporting
+	 * the format detected and the synchronization of bitstreams on the
+	 * given console.
+	 */
+	public static GroupReader createReader(InputStream is, PrintStream console) throws IOException {
 		char[] guessBuffer = new char[GUESS_BUFFER_SIZE];
 		BufferedInputStream bis = new BufferedInputStream(is);
 		InputStreamReader isr = new InputStreamReader(bis, "ASCII");
@@ -32,28 +44,33 @@ public class FileFormatGuesser {
 
 		String guessString = new String(guessBuffer, 0, guessCharCount);
 		
-		if(guessString.startsWith("% RDS hexgroups") ||
+		if(guessString.startsWith(GroupArchiveWriter.MAGIC)) {
+			// group archive, read sequentially
+			console.println("Detected a group archive.");
+			bis.reset();
+			return new GroupArchiveReader(bis);
+		} else if(guessString.startsWith("% RDS hexgroups") ||
 				guessString.startsWith("<recorder=\"RDS Spy\"") ||
 				HEXGROUP_PATTERN.matcher(guessString).matches()) {
 			// grouphexfile
-			System.out.println("Detected a group-level file.");
+			console.println("Detected a group-level file.");
 			bis.reset();
 			return new HexFileGroupReader(new BufferedReader(new InputStreamReader(bis)));
 		} else if (BINSTR_PATTERN.matcher(guessString).matches()) {
 			// binstrfile
-			System.out.println("Detected a binary string file.");
+			console.println("Detected a binary string file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new BinStringFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new BinStringFileBitReader(bis));
 		} else if ((guessString.length() >= 2) && (guessString.codePointAt(0) == 0xfffd) && (guessString.codePointAt(1) == 0x6)) {
 			// syncbinfile
-			System.out.println("Detected a synchronized binary file.");
+			console.println("Detected a synchronized binary file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new SyncBinaryFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new SyncBinaryFileBitReader(bis));
 		} else {
 			// binfile
-			System.out.println("Detected a binary file.");
+			console.println("Detected a binary file.");
 			bis.reset();
-			return new BitStreamSynchronizer(System.out, new BinaryFileBitReader(bis));
+			return new BitStreamSynchronizer(console, new BinaryFileBitReader(bis));
 		}
 		
 		//throw new IOException("Could not identify the file format");
@@ -63,7 +80,27 @@ public class FileFormatGuesser {
 		return createReader(url.openStream());
 	}
 	
+	/**
+	 * Creates a reader for a file of any format except audio. Group archives
+	 * are opened with random access, as a {@link GroupArchiveReader} which
+	 * the caller must close.
+	 */
 	public static GroupReader createReader(File file) throws IOException {
+		// group archives are opened with random access
+		byte[] magic = new byte[GroupArchiveWriter.MAGIC.length()];
+		DataInputStream dis = new DataInputStream(new FileInputStream(file));
+		try {
+			dis.readFully(magic);
+			if(GroupArchiveWriter.MAGIC.equals(new String(magic, "ASCII"))) {
+				System.out.println("Detected a group archive.");
+				return new GroupArchiveReader(file);
+			}
+		} catch(EOFException e) {
+			// too short to be an archive
+		} finally {
+			dis.close();
+		}
+		
 		return createReader(new FileInputStream(file));
 	}
 }
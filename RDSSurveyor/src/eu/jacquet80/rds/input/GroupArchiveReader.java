@@ -0,0 +1,457 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+import eu.jacquet80.rds.log.RDSTime;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Reads a group archive written by {@link GroupArchiveWriter}.
+ *
+ * When created from a file, the reader can jump to any time, event or
+ * frequency/station change using the index of chunks, decoding only the
+ * chunk that contains the target. When created from a stream, the archive
+ * can only be read sequentially.
+ *
+ * The reader is not closed at the end of the archive, as it can still seek
+ * back into it: it must be closed by the caller.
+ */
+public class GroupArchiveReader extends GroupReader implements Closeable {
+	/**
+	 * Header of a chunk of events, also used as an index entry.
+	 */
+	/* package */ static class Chunk {
+		/* package */ final static int HEADER_SIZE = 4 + 4 + 4 + 8 + 8 + 1 + 4;
+
+		/* package */ final long offset;
+		/* package */ final int rawLength, compressedLength, eventCount;
+		/* package */ final long firstTime, lastTime;
+		/* package */ final int flags, frequency;
+
+		// index of the first event of the chunk in the archive
+		/* package */ long firstEvent;
+
+		/* package */ Chunk(long offset, int rawLength, int compressedLength, int eventCount,
+				long firstTime, long lastTime, int flags, int frequency) {
+			this.offset = offset;
+			this.rawLength = rawLength;
+			this.compressedLength = compressedLength;
+			this.eventCount = eventCount;
+			this.firstTime = firstTime;
+			this.lastTime = lastTime;
+			this.flags = flags;
+			this.frequency = frequency;
+		}
+
+		/* package */ void write(DataOutput out) throws IOException {
+			out.writeInt(rawLength);
+			out.writeInt(compressedLength);
+			out.writeInt(eventCount);
+			out.writeLong(firstTime);
+			out.writeLong(lastTime);
+			out.writeByte(flags);
+			out.writeInt(frequency);
+		}
+
+		/**
+		 * Reads a chunk header.
+		 *
+		 * @return the header, or {@code null} if the index starts here
+		 */
+		/* package */ static Chunk read(DataInput in, long offset) throws IOException {
+			int rawLength = in.readInt();
+			if(rawLength < 0) return null;
+			return new Chunk(offset, rawLength, in.readInt(), in.readInt(),
+					in.readLong(), in.readLong(), in.readUnsignedByte(), in.readInt());
+		}
+	}
+
+	private final DataInput in;
+	private final RandomAccessFile raf;
+	private final Closeable source;
+
+	// all chunks when reading a file, null when reading a stream
+	private final List<Chunk> index;
+	private long eventCount = 0;
+
+	// position in the file (or stream) of the next chunk header
+	private long nextChunkOffset;
+	private int nextChunk = 0;
+
+	private final Inflater inflater = new Inflater();
+	private byte[] compressed = new byte[1024];
+	private byte[] raw = new byte[1024];
+	private int rawLength = 0, rawPos = 0;
+	private long prevSequential, prevReal;
+	private int frequency = 0;
+
+	/**
+	 * Opens an archive file, with random access.
+	 */
+	public GroupArchiveReader(File file) throws IOException {
+		raf = new RandomAccessFile(file, "r");
+		in = raf;
+		source = raf;
+		try {
+			checkMagic();
+			index = readIndex();
+		} catch(IOException e) {
+			raf.close();
+			throw e;
+		}
+		nextChunkOffset = GroupArchiveWriter.MAGIC.length();
+	}
+
+	/**
+	 * Reads an archive from a stream, sequentially.
+	 */
+	public GroupArchiveReader(InputStream is) throws IOException {
+		raf = null;
+		DataInputStream dis = new DataInputStream(is);
+		in = dis;
+		source = dis;
+		checkMagic();
+		index = null;
+		nextChunkOffset = GroupArchiveWriter.MAGIC.length();
+	}
+
+	/**
+	 * Closes the archive file, or the stream it is read from.
+	 */
+	public void close() throws IOException {
+		source.close();
+	}
+
+	private void checkMagic() throws IOException {
+		byte[] magic = new byte[GroupArchiveWriter.MAGIC.length()];
+		in.readFully(magic);
+		if(!GroupArchiveWriter.MAGIC.equals(new String(magic, "ASCII"))) {
+			throw new IOException("Not a group archive");
+		}
+	}
+
+	private List<Chunk> readIndex() throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		long length = raf.length();
+		int trailer = 8 + GroupArchiveWriter.INDEX_MAGIC.length();
+
+		byte[] magic = new byte[GroupArchiveWriter.INDEX_MAGIC.length()];
+		if(length >= GroupArchiveWriter.MAGIC.length() + trailer) {
+			raf.seek(length - magic.length);
+			raf.readFully(magic);
+		}
+
+		if(GroupArchiveWriter.INDEX_MAGIC.equals(new String(magic, "ASCII"))) {
+			raf.seek(length - trailer);
+			raf.seek(raf.readLong());
+			raf.readInt();
+			int count = raf.readInt();
+			for(int i=0; i<count; i++) {
+				chunks.add(Chunk.read(raf, raf.readLong()));
+			}
+		} else {
+			// no index (interrupted recording): scan the chunk headers
+			long pos = GroupArchiveWriter.MAGIC.length();
+			while(pos + Chunk.HEADER_SIZE <= length) {
+				raf.seek(pos);
+				Chunk c = Chunk.read(raf, pos);
+				if(c == null || pos + Chunk.HEADER_SIZE + c.compressedLength > length) break;
+				chunks.add(c);
+				pos += Chunk.HEADER_SIZE + c.compressedLength;
+			}
+		}
+
+		for(Chunk c : chunks) {
+			c.firstEvent = eventCount;
+			eventCount += c.eventCount;
+		}
+		return chunks;
+	}
+
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		while(rawPos == rawLength) {
+			if(!loadNextChunk()) throw new EndOfStream();
+		}
+
+		int tag = raw[rawPos++] & 0xFF;
+		int type = tag & 3;
+		int extra = type == GroupArchiveWriter.TYPE_GROUP_EXTRA ? raw[rawPos++] : 0;
+
+		RDSTime time = null;
+		switch((tag >> 2) & 3) {
+		case GroupArchiveWriter.TIME_SEQUENTIAL:
+			prevSequential += readVarLong();
+			time = new SequentialTime((int) prevSequential);
+			break;
+		case GroupArchiveWriter.TIME_REAL:
+			prevReal += readVarLong();
+			time = new RealTime(new Date(prevReal));
+			break;
+		}
+
+		switch(type) {
+		case GroupArchiveWriter.TYPE_FREQUENCY:
+			frequency = (int) readVarLong();
+			return new FrequencyChangeEvent(time, frequency);
+		case GroupArchiveWriter.TYPE_STATION:
+			return new StationChangeEvent(time);
+		default:
+			int[] blocks = new int[4];
+			for(int i=0; i<4; i++) {
+				if((tag & (1 << (4+i))) != 0) blocks[i] = -1;
+				else {
+					blocks[i] = ((raw[rawPos] & 0xFF) << 8) | (raw[rawPos+1] & 0xFF);
+					rawPos += 2;
+				}
+			}
+			return new GroupEvent(time, blocks, (extra & 0x10) != 0, extra & 0xF, (extra >> 5) & 3);
+		}
+	}
+
+	private long readVarLong() {
+		long v = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = raw[rawPos++];
+			v |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while(b < 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	private boolean loadNextChunk() throws IOException {
+		Chunk c;
+		if(index != null) {
+			if(nextChunk == index.size()) return false;
+			c = index.get(nextChunk);
+			raf.seek(c.offset + Chunk.HEADER_SIZE);
+		} else {
+			try {
+				c = Chunk.read(in, nextChunkOffset);
+			} catch(EOFException e) {
+				// interrupted recording
+				return false;
+			}
+			if(c == null) return false;
+		}
+
+		if(compressed.length < c.compressedLength) compressed = new byte[c.compressedLength];
+		if(raw.length < c.rawLength) raw = new byte[c.rawLength];
+		try {
+			in.readFully(compressed, 0, c.compressedLength);
+		} catch(EOFException e) {
+			return false;
+		}
+
+		inflater.reset();
+		inflater.setInput(compressed, 0, c.compressedLength);
+		try {
+			int n = 0;
+			while(n < c.rawLength && !inflater.finished()) {
+				int r = inflater.inflate(raw, n, c.rawLength - n);
+				if(r == 0 && inflater.needsInput()) break;
+				n += r;
+			}
+			if(n != c.rawLength) throw new IOException("Truncated chunk at offset " + c.offset);
+		} catch(DataFormatException e) {
+			throw new IOException("Corrupted chunk at offset " + c.offset + ": " + e.getMessage());
+		}
+
+		rawLength = c.rawLength;
+		rawPos = 0;
+		prevSequential = prevReal = 0;
+		frequency = c.frequency;
+		nextChunk++;
+		nextChunkOffset = c.offset + Chunk.HEADER_SIZE + c.compressedLength;
+		return true;
+	}
+
+	private void checkSeekable() throws IOException {
+		if(index == null) throw new IOException("Archive read from a stream, cannot seek");
+	}
+
+	// positions the reader at the start of the given chunk
+	private void seekChunk(int chunk) {
+		nextChunk = chunk;
+		rawLength = rawPos = 0;
+	}
+
+	/**
+	 * Returns the number of events in the archive.
+	 */
+	public long getEventCount() throws IOException {
+		checkSeekable();
+		return eventCount;
+	}
+
+	/**
+	 * Returns the time of the first event having a real time, or
+	 * {@code null} if there is none.
+	 */
+	public Date getStartTime() throws IOException {
+		checkSeekable();
+		for(Chunk c : index) {
+			if(c.firstTime != GroupArchiveWriter.NO_TIME) return new Date(c.firstTime);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the time of the last event having a real time, or
+	 * {@code null} if there is none.
+	 */
+	public Date getEndTime() throws IOException {
+		checkSeekable();
+		for(int i=index.size()-1; i>=0; i--) {
+			Chunk c = index.get(i);
+			if(c.lastTime != GroupArchiveWriter.NO_TIME) return new Date(c.lastTime);
+		}
+		return null;
+	}
+
+	/**
+	 * Positions the reader on the given event.
+	 *
+	 * @param event the index of the event in the archive
+	 */
+	public void seekToEvent(long event) throws IOException {
+		checkSeekable();
+		int lo = 0, hi = index.size();
+		while(hi - lo > 1) {
+			int mid = (lo + hi) >>> 1;
+			if(index.get(mid).firstEvent <= event) lo = mid;
+			else hi = mid;
+		}
+		seekChunk(lo);
+		if(lo < index.size()) {
+			loadNextChunk();
+			for(long i=index.get(lo).firstEvent; i<event && rawPos < rawLength; i++) {
+				skipEvent();
+			}
+		}
+	}
+
+	/**
+	 * Positions the reader on the first event whose real time is not
+	 * before the given date. Events without a real time are skipped only if
+	 * they are in the same chunk as a preceding event before the date.
+	 */
+	public void seek(Date date) throws IOException {
+		checkSeekable();
+		long t = date.getTime();
+		int chunk = 0;
+		while(chunk < index.size() && (index.get(chunk).lastTime == GroupArchiveWriter.NO_TIME ||
+				index.get(chunk).lastTime < t)) {
+			chunk++;
+		}
+		seekChunk(chunk);
+		if(chunk == index.size()) return;
+
+		loadNextChunk();
+		while(rawPos < rawLength) {
+			int mark = rawPos;
+			long prevS = prevSequential, prevR = prevReal;
+			int tag = raw[rawPos] & 0xFF;
+			skipEvent();
+			if(((tag >> 2) & 3) == GroupArchiveWriter.TIME_REAL && prevReal >= t) {
+				// rewind to this event
+				rawPos = mark;
+				prevSequential = prevS;
+				prevReal = prevR;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Positions the reader on the next frequency or station change.
+	 *
+	 * @return {@code false} if there is no change after the current position
+	 */
+	public boolean seekToNextChange() throws IOException {
+		checkSeekable();
+		for(int i=nextChunk; i<index.size(); i++) {
+			if(index.get(i).flags != 0) {
+				seekChunk(i);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the frequency tuned at the current position, 0 if unknown.
+	 */
+	public int getFrequency() {
+		return frequency;
+	}
+
+	// decodes an event, updating the time deltas, and throws it away
+	private void skipEvent() throws IOException {
+		int tag = raw[rawPos] & 0xFF;
+		if((tag & 3) == GroupArchiveWriter.TYPE_FREQUENCY) {
+			// keeps track of the current frequency
+			try {
+				getGroup();
+			} catch(EndOfStream e) {
+				// not possible, the chunk is loaded
+			}
+			return;
+		}
+
+		rawPos++;
+		if((tag & 3) == GroupArchiveWriter.TYPE_GROUP_EXTRA) rawPos++;
+		switch((tag >> 2) & 3) {
+		case GroupArchiveWriter.TIME_SEQUENTIAL: prevSequential += readVarLong(); break;
+		case GroupArchiveWriter.TIME_REAL: prevReal += readVarLong(); break;
+		}
+		if((tag & 3) != GroupArchiveWriter.TYPE_STATION) {
+			rawPos += 2 * (4 - Integer.bitCount(tag >> 4));
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.input.group.StationChangeEvent;
+import eu.jacquet80.rds.log.RDSTime;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+/**
+ * Writes group events to a compact binary archive, read back by
+ * {@link GroupArchiveReader}.
+ *
+ * The file starts with {@link #MAGIC}, followed by chunks of events. Each
+ * chunk has a fixed-size header (see {@link GroupArchiveReader.Chunk}) and
+ * is compressed on its own, so that it can be decoded without reading the
+ * preceding ones. A chunk ends after {@link #MAX_CHUNK_EVENTS} events or
+ * {@link #MAX_CHUNK_DURATION} ms of real time, and a new chunk is started
+ * at each frequency or station change.
+ *
+ * When the archive is closed, a copy of all chunk headers is appended as an
+ * index, followed by {@link #INDEX_MAGIC}. If the index is missing (the
+ * recording was interrupted), the reader rebuilds it from the chunk headers.
+ *
+ * Within a chunk, each event starts with a tag byte: the event type on bits
+ * 0-1, the kind of time on bits 2-3 and, for groups, the mask of missing
+ * blocks on bits 4-7. The time is delta-encoded with respect to the previous
+ * time of the same kind in the chunk. Groups are then followed by their
+ * available blocks on 16 bits, frequency changes by their frequency.
+ *
+ * Groups with corrected blocks, ignored groups and groups of the additional
+ * data streams of RDS2 have an extra byte after the tag: the mask of
+ * corrected blocks on bits 0-3, the ignored flag on bit 4 and the data
+ * stream on bits 5-6.
+ */
+public class GroupArchiveWriter {
+	public final static String MAGIC = "RDSARCH1";
+	public final static String INDEX_MAGIC = "RDSAIDX1";
+
+	public final static int MAX_CHUNK_EVENTS = 4096;
+	public final static long MAX_CHUNK_DURATION = 60000;
+
+	/* package */ final static int TYPE_GROUP = 0, TYPE_GROUP_EXTRA = 1, TYPE_FREQUENCY = 2, TYPE_STATION = 3;
+	/* package */ final static int TIME_NONE = 0, TIME_SEQUENTIAL = 1, TIME_REAL = 2;
+
+	/* package */ final static int FLAG_FREQUENCY_CHANGE = 1, FLAG_STATION_CHANGE = 2;
+
+	/* package */ final static long NO_TIME = Long.MIN_VALUE;
+
+	private final DataOutputStream out;
+	private long position;
+	private final List<GroupArchiveReader.Chunk> index = new ArrayList<GroupArchiveReader.Chunk>();
+
+	private final Deflater deflater = new Deflater();
+	private byte[] raw = new byte[MAX_CHUNK_EVENTS * 12];
+	private int rawLength = 0;
+	private byte[] compressed = new byte[1024];
+
+	// current chunk
+	private int eventCount = 0;
+	private long firstTime = NO_TIME, lastTime = NO_TIME;
+	private int flags = 0;
+	private int chunkFrequency = 0;
+	private long prevSequential = 0, prevReal = 0;
+
+	private int frequency = 0;
+	private boolean closed = false;
+
+	public GroupArchiveWriter(File file) throws IOException {
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeBytes(MAGIC);
+		position = MAGIC.length();
+	}
+
+	public synchronized void write(GroupReaderEvent event) throws IOException {
+		if(closed) throw new IOException("Archive closed");
+
+		boolean change = event instanceof FrequencyChangeEvent || event instanceof StationChangeEvent;
+		RDSTime time = event.getTime();
+		long real = time instanceof RealTime ? time.getRealTime(null, null).getTime() : NO_TIME;
+
+		if(eventCount > 0 && (change || eventCount >= MAX_CHUNK_EVENTS ||
+				(real != NO_TIME && firstTime != NO_TIME && real - firstTime >= MAX_CHUNK_DURATION))) {
+			writeChunk();
+		}
+
+		if(event instanceof FrequencyChangeEvent) frequency = ((FrequencyChangeEvent) event).frequency;
+
+		if(eventCount == 0) {
+			chunkFrequency = frequency;
+			if(event instanceof FrequencyChangeEvent) flags = FLAG_FREQUENCY_CHANGE;
+			else if(event instanceof StationChangeEvent) flags = FLAG_STATION_CHANGE;
+		}
+		if(real != NO_TIME) {
+			if(firstTime == NO_TIME) firstTime = real;
+			lastTime = real;
+		}
+
+		if(rawLength + 32 > raw.length) raw = Arrays.copyOf(raw, 2 * raw.length);
+
+		int tagPos = rawLength++;
+		int tag;
+		if(event instanceof GroupEvent) {
+			GroupEvent group = (GroupEvent) event;
+			int extra = group.correctedBlocks & 0xF;
+			if(group.ignored) extra |= 0x10;
+			extra |= group.stream << 5;
+			tag = extra == 0 ? TYPE_GROUP : TYPE_GROUP_EXTRA;
+			for(int i=0; i<4; i++) {
+				if(group.blocks[i] < 0) tag |= 1 << (4+i);
+			}
+			if(extra != 0) raw[rawLength++] = (byte) extra;
+		} else if(event instanceof FrequencyChangeEvent) {
+			tag = TYPE_FREQUENCY;
+		} else if(event instanceof StationChangeEvent) {
+			tag = TYPE_STATION;
+		} else throw new IOException("Cannot archive event " + event);
+
+		if(time instanceof SequentialTime) {
+			tag |= TIME_SEQUENTIAL << 2;
+			int t = ((SequentialTime) time).getGroupTime();
+			writeVarLong(t - prevSequential);
+			prevSequential = t;
+		} else if(time instanceof RealTime) {
+			tag |= TIME_REAL << 2;
+			writeVarLong(real - prevReal);
+			prevReal = real;
+		}
+		raw[tagPos] = (byte) tag;
+
+		if(event instanceof GroupEvent) {
+			int[] blocks = ((GroupEvent) event).blocks;
+			for(int i=0; i<4; i++) {
+				if(blocks[i] >= 0) {
+					raw[rawLength++] = (byte) (blocks[i] >> 8);
+					raw[rawLength++] = (byte) blocks[i];
+				}
+			}
+		} else if(event instanceof FrequencyChangeEvent) {
+			writeVarLong(frequency);
+		}
+
+		eventCount++;
+	}
+
+	// zigzag, then 7 bits per byte
+	private void writeVarLong(long v) {
+		v = (v << 1) ^ (v >> 63);
+		while((v & ~0x7FL) != 0) {
+			raw[rawLength++] = (byte) ((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		raw[rawLength++] = (byte) v;
+	}
+
+	private void writeChunk() throws IOException {
+		deflater.reset();
+		deflater.setInput(raw, 0, rawLength);
+		deflater.finish();
+		int compressedLength = 0;
+		while(!deflater.finished()) {
+			if(compressedLength == compressed.length) compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+			compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+		}
+
+		GroupArchiveReader.Chunk chunk = new GroupArchiveReader.Chunk(position, rawLength, compressedLength,
+				eventCount, firstTime, lastTime, flags, chunkFrequency);
+		chunk.write(out);
+		out.write(compressed, 0, compressedLength);
+		out.flush();
+		position += GroupArchiveReader.Chunk.HEADER_SIZE + compressedLength;
+		index.add(chunk);
+
+		rawLength = 0;
+		eventCount = 0;
+		firstTime = lastTime = NO_TIME;
+		flags = 0;
+		prevSequential = prevReal = 0;
+	}
+
+	/**
+	 * Writes the pending events as a chunk, so that they can be read back
+	 * even if the archive is not closed properly.
+	 */
+	public synchronized void flush() throws IOException {
+		if(!closed && eventCount > 0) writeChunk();
+	}
+
+	/**
+	 * Writes the pending events and the index, and closes the file.
+	 */
+	public synchronized void close() throws IOException {
+		if(closed) return;
+		flush();
+		closed = true;
+
+		long indexPosition = position;
+		out.writeInt(-1);
+		out.writeInt(index.size());
+		for(GroupArchiveReader.Chunk c : index) {
+			out.writeLong(c.offset);
+			c.write(out);
+		}
+		out.writeLong(indexPosition);
+		out.writeBytes(INDEX_MAGIC);
+		out.close();
+		deflater.end();
+	}
+}
@@ -30,7 +30,9 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -50,6 +52,30 @@ public class HexFileGroupReader extends GroupReader {
 	private int groupTime = 0;
 	private static final Pattern SPACE = Pattern.compile("\\s+");
 	
+	// lines are parsed directly in this buffer, between lineStart and lineEnd
+	private char[] buf = new char[1 << 16];
+	private int pos = 0, limit = 0;
+	private int lineStart, lineEnd;
+	private boolean eof = false;
+	private boolean skipLF = false;
+	
+	// milliseconds for a fraction of second of 2, 3 or 4 digits, computed
+	// once the way parseHexLine() does it, to get exactly the same values
+	private final static int[][] FRACTION_MILLIS = new int[5][];
+	static {
+		for(int len=2, n=100; len<=4; len++, n*=10) {
+			FRACTION_MILLIS[len] = new int[n];
+			for(int i=0; i<n; i++) {
+				String digits = Integer.toString(n + i).substring(1);
+				FRACTION_MILLIS[len][i] = (int)(Float.parseFloat("0." + digits) * 1000);
+			}
+		}
+	}
+	
+	// offset between local time and UTC, for the latest local minute seen
+	private long cachedMinute = Long.MIN_VALUE;
+	private long cachedOffset;
+	
 	public HexFileGroupReader(BufferedReader br) {
 		this.br = br;
 	}
@@ -63,16 +89,222 @@ public class HexFileGroupReader extends GroupReader {
 		GroupReaderEvent event;
 		
 		do {
-			String line = br.readLine();
-			if(line == null) throw new EndOfStream();
+			if(! nextLine()) throw new EndOfStream();
 
-			event = parseHexLine(line, new SequentialTime(groupTime));
+			event = parseLine(buf, lineStart, lineEnd, new SequentialTime(groupTime));
 			groupTime++;
 		} while(event == null);
 		
 		return event;
 	}
 	
+	/**
+	 * Finds the next line in the buffer, with the same conventions as
+	 * {@link BufferedReader#readLine()}.
+	 * 
+	 * @return false at the end of the stream
+	 */
+	private boolean nextLine() throws IOException {
+		if(skipLF) {
+			if(pos == limit && ! eof) fill();
+			if(pos < limit && buf[pos] == '\n') pos++;
+			skipLF = false;
+		}
+		
+		int scan = pos;
+		for(;;) {
+			for(int i=scan; i<limit; i++) {
+				char c = buf[i];
+				if(c == '\n' || c == '\r') {
+					lineStart = pos;
+					lineEnd = i;
+					pos = i + 1;
+					skipLF = c == '\r';
+					return true;
+				}
+			}
+			
+			if(eof) {
+				if(pos == limit) return false;
+				lineStart = pos;
+				lineEnd = limit;
+				pos = limit;
+				return true;
+			}
+			
+			scan = limit - pos;
+			fill();
+			scan += pos;
+		}
+	}
+	
+	// moves the pending characters to the beginning of the buffer, and reads more
+	private void fill() throws IOException {
+		if(pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		}
+		if(limit == buf.length) buf = Arrays.copyOf(buf, 2 * buf.length);
+		
+		int n = br.read(buf, limit, buf.length - limit);
+		if(n < 0) eof = true;
+		else limit += n;
+	}
+	
+	/**
+	 * Parses a line in place. Lines in the usual format (4 blocks of 4 hex
+	 * digits or {@code ----}, possibly followed by an RDS Spy time stamp) are
+	 * parsed without creating intermediate objects. Other lines are given
+	 * to {@link #parseHexLine(String, RDSTime)}, so that the result is
+	 * always the same.
+	 */
+	private GroupReaderEvent parseLine(char[] s, int start, int end, RDSTime time) throws IOException {
+		// same as String.trim()
+		while(start < end && s[start] <= ' ') start++;
+		while(end > start && s[end-1] <= ' ') end--;
+		
+		if(start == end) return null;
+		if(s[start] == '%' || s[start] == '<') return parseHexLine(new String(s, start, end - start), time);
+		
+		int[] res = new int[4];
+		int p = start;
+		for(int i=0; i<4; i++) {
+			if(i > 0) {
+				int sep = p;
+				while(p < end && isSpace(s[p])) p++;
+				if(p == sep) return parseHexLine(new String(s, start, end - start), time);
+			}
+			
+			// a block is exactly 4 hex digits, or ----
+			if(end - p < 4 || (end - p > 4 && ! isSpace(s[p+4]))) {
+				return parseHexLine(new String(s, start, end - start), time);
+			}
+			if(s[p] == '-' && s[p+1] == '-' && s[p+2] == '-' && s[p+3] == '-') {
+				res[i] = -1;
+			} else {
+				int v = 0;
+				for(int j=0; j<4; j++) {
+					int d = hexDigit(s[p+j]);
+					if(d < 0) return parseHexLine(new String(s, start, end - start), time);
+					v = (v << 4) | d;
+				}
+				res[i] = v;
+			}
+			p += 4;
+		}
+		
+		// the time stamp follows the last @ of the line
+		int at = -1;
+		for(int i=end-1; i>=p; i--) {
+			char c = s[i];
+			if(c == '@' && at == -1) at = i;
+			// line terminators, which the time stamp regular expression rejects
+			if(c == '\u0085' || c == '\u2028' || c == '\u2029') {
+				return parseHexLine(new String(s, start, end - start), time);
+			}
+		}
+		
+		if(at != -1) {
+			RDSTime t = parseTimeStamp(s, at + 1, end);
+			if(t == null) return parseHexLine(new String(s, start, end - start), time);
+			time = t;
+		}
+		
+		return new GroupEvent(time, res, false);
+	}
+	
+	/**
+	 * Parses a time stamp in the format {@code yyyy/MM/dd HH:mm:ss.ff}.
+	 * 
+	 * @return the time, or null if the time stamp is not in the exact
+	 * expected format
+	 */
+	private RDSTime parseTimeStamp(char[] s, int p, int end) {
+		if(end - p < 20) return null;
+		int year = digits(s, p, 4);
+		if(year < 0 || s[p+4] != '/') return null;
+		int month = digits(s, p+5, 2);
+		if(month < 0 || s[p+7] != '/') return null;
+		int day = digits(s, p+8, 2);
+		if(day < 0) return null;
+		p += 10;
+		
+		int sep = p;
+		while(p < end && isSpace(s[p])) p++;
+		if(p == sep || end - p < 11) return null;
+		
+		int hour = digits(s, p, 2);
+		if(hour < 0 || s[p+2] != ':') return null;
+		int minute = digits(s, p+3, 2);
+		if(minute < 0 || s[p+5] != ':') return null;
+		int second = digits(s, p+6, 2);
+		if(second < 0) return null;
+		
+		// any separator, then 2 to 4 digits
+		p += 9;
+		int len = end - p;
+		if(len < 2 || len > 4) return null;
+		int fraction = digits(s, p, len);
+		if(fraction < 0) return null;
+		
+		// the calendar is lenient, so out of range fields are carried over
+		int y = year, m = month;
+		if(m == 0) {
+			y--;
+			m = 12;
+		} else {
+			y += (m - 1) / 12;
+			m = (m - 1) % 12 + 1;
+		}
+		if(y <= 1970) return null;		// let the calendar handle old dates
+		long local = (daysFromCivil(y, m) + day - 1) * 86400000L +
+				hour * 3600000L + minute * 60000L + second * 1000L;
+		
+		// the offset to UTC is computed by the calendar once per minute
+		long min = local / 60000;
+		if(min != cachedMinute) {
+			GregorianCalendar c = new GregorianCalendar(year, month - 1, day, hour, minute, second);
+			cachedOffset = c.getTimeInMillis() - local;
+			cachedMinute = min;
+		}
+		
+		return new RealTime(new Date(local + cachedOffset + FRACTION_MILLIS[len][fraction]));
+	}
+	
+	// number of days between 1970-01-01 and the first day of the given month
+	private static long daysFromCivil(int y, int m) {
+		if(m <= 2) y--;
+		long era = y / 400;
+		int yoe = (int) (y - era * 400);
+		int doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5;
+		int doe = yoe * 365 + yoe/4 - yoe/100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+	
+	// value of n decimal digits, -1 if they are not all digits
+	private static int digits(char[] s, int p, int n) {
+		int v = 0;
+		for(int i=0; i<n; i++) {
+			char c = s[p+i];
+			if(c < '0' || c > '9') return -1;
+			v = 10*v + c - '0';
+		}
+		return v;
+	}
+	
+	private static int hexDigit(char c) {
+		if(c >= '0' && c <= '9') return c - '0';
+		if(c >= 'A' && c <= 'F') return c - 'A' + 10;
+		if(c >= 'a' && c <= 'f') return c - 'a' + 10;
+		return -1;
+	}
+	
+	// characters matched by \s in regular expressions
+	private static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+	
 	/* package */ static GroupReaderEvent parseHexLine(String line, RDSTime time) throws IOException {
 		line = line.trim();
 		
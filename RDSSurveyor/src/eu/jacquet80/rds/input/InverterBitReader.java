@@ -45,5 +45,17 @@ public class InverterBitReader extends BitReader {
 	public boolean getBit() throws IOException {
 		return !baseReader.getBit();
 	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = baseReader.readBits(dst, maxBits);
+		if(n <= 0) return n;
+		
+		for(int i=0; i<(n+63)/64; i++) dst[i] = ~dst[i];
+		
+		// keep the unused bits of the last word at zero
+		if((n & 63) != 0) dst[n >> 6] &= -1L << (64 - (n & 63));
+		return n;
+	}
 
 }
@@ -0,0 +1,212 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.util.FmDemodulator;
+import eu.jacquet80.rds.util.PolyphaseChannelizer;
+
+/**
+ * The MPX signal of one FM station of an I/Q signal, as a stream of 16-bit
+ * little-endian samples that can be fed to an {@link AudioBitReader}.
+ *
+ * The I/Q samples are shifted so that the station is at 0 Hz, filtered and
+ * decimated down to about 250 kHz, and FM-demodulated. All this happens
+ * block by block, in the thread that reads the stream, so that a recording is
+ * never held in memory.
+ */
+public class IqMpxInputStream extends InputStream {
+	// bandwidth kept around the station, and minimum rate of the demodulated MPX
+	private final static int CHANNEL_BANDWIDTH = 200000;
+	private final static int MIN_MPX_RATE = 240000;
+
+	private final static int BLOCK_SIZE = 1 << 15;
+
+	private final IqReader in;
+	private final int sampleRate;
+	private final int mpxRate;
+	private final PolyphaseChannelizer filter;
+	private final FmDemodulator demodulator = new FmDemodulator();
+	private PrintStream console = System.out;
+
+	private final float[] inI = new float[BLOCK_SIZE], inQ = new float[BLOCK_SIZE];
+	private final float[][] outI, outQ;
+	private final byte[] pcm;
+	private int pcmPos = 0, pcmEnd = 0;
+
+	// oscillator that brings the station to 0 Hz, if it is not already there
+	private final double stepRe, stepIm;
+	private double oscRe = 1, oscIm = 0;
+	private final boolean shift;
+
+	private boolean eof = false;
+	private long samples = 0;
+	private long start = 0, frontEndTime = 0;
+
+	/**
+	 * @param in the I/Q samples
+	 * @param sampleRate the I/Q sample rate, in Hz
+	 * @param offset the frequency of the station relative to the center of the
+	 *   I/Q signal, in Hz
+	 */
+	public IqMpxInputStream(IqReader in, int sampleRate, int offset) {
+		if(sampleRate < MIN_MPX_RATE) {
+			throw new IllegalArgumentException("The sample rate must be at least " + MIN_MPX_RATE + " Hz.");
+		}
+		if(2 * Math.abs(offset) + CHANNEL_BANDWIDTH > sampleRate) {
+			throw new IllegalArgumentException("The station is outside of the I/Q signal.");
+		}
+		this.in = in;
+		this.sampleRate = sampleRate;
+
+		// the largest decimation that divides the sample rate, and keeps the MPX rate high enough
+		int decimation = 1;
+		for(int d = sampleRate / MIN_MPX_RATE; d > 1; d--) {
+			if(sampleRate % d == 0) {
+				decimation = d;
+				break;
+			}
+		}
+		this.mpxRate = sampleRate / decimation;
+
+		// a single-channel filter bank is a decimating lowpass filter
+		int transition = Math.max(mpxRate - CHANNEL_BANDWIDTH, 1);
+		int taps = decimation == 1 ? 1 : (int) Math.ceil(5.5 * sampleRate / transition);
+		filter = new PolyphaseChannelizer(1, decimation, taps, .5 / decimation);
+
+		int maxOut = filter.getMaxOutputCount(BLOCK_SIZE);
+		outI = new float[1][maxOut];
+		outQ = new float[1][maxOut];
+		pcm = new byte[2 * maxOut];
+
+		shift = offset != 0;
+		stepRe = Math.cos(-2 * Math.PI * offset / sampleRate);
+		stepIm = Math.sin(-2 * Math.PI * offset / sampleRate);
+	}
+
+	/**
+	 * Returns the sample rate of the MPX signal, in Hz.
+	 */
+	public int getMpxRate() {
+		return mpxRate;
+	}
+
+	/**
+	 * Sets where to report the throughput when the end of the I/Q signal is
+	 * reached.
+	 */
+	public void setConsole(PrintStream console) {
+		this.console = console == null ? RDSSurveyor.nullConsole : console;
+	}
+
+	/**
+	 * Returns the number of I/Q samples read so far.
+	 */
+	public long getSampleCount() {
+		return samples;
+	}
+
+	private boolean fill() throws IOException {
+		if(eof) return false;
+		long t0 = System.nanoTime();
+		if(start == 0) start = t0;
+
+		int count = 0;
+		while(count == 0) {
+			int n = in.read(inI, inQ, BLOCK_SIZE);
+			if(n < 0) {
+				eof = true;
+				report();
+				return false;
+			}
+			samples += n;
+			if(shift) mix(n);
+			count = filter.process(inI, inQ, n, outI, outQ);
+		}
+		demodulator.demodulate(outI[0], outQ[0], count, pcm, 0);
+		pcmPos = 0;
+		pcmEnd = 2 * count;
+
+		frontEndTime += System.nanoTime() - t0;
+		return true;
+	}
+
+	private void mix(int n) {
+		double re = oscRe, im = oscIm;
+		for(int i=0; i<n; i++) {
+			final float sI = inI[i], sQ = inQ[i];
+			inI[i] = (float) (sI * re - sQ * im);
+			inQ[i] = (float) (sI * im + sQ * re);
+			final double r = re * stepRe - im * stepIm;
+			im = re * stepIm + im * stepRe;
+			re = r;
+		}
+
+		// keep the oscillator on the unit circle despite rounding errors
+		double norm = Math.hypot(re, im);
+		oscRe = re / norm;
+		oscIm = im / norm;
+	}
+
+	private void report() {
+		double secs = (System.nanoTime() - start) / 1e9;
+		double frontEnd = frontEndTime / 1e9;
+		console.printf("Demodulated %.1f s of I/Q signal in %.1f s: %.2f MS/s overall, %.2f MS/s for filtering and demodulation\n",
+				(double) samples / sampleRate, secs,
+				secs > 0 ? samples / secs / 1e6 : 0, frontEnd > 0 ? samples / frontEnd / 1e6 : 0);
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(pcmPos == pcmEnd && !fill()) return -1;
+		return pcm[pcmPos++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len == 0) return 0;
+		if(pcmPos == pcmEnd && !fill()) return -1;
+		int n = Math.min(len, pcmEnd - pcmPos);
+		System.arraycopy(pcm, pcmPos, b, off, n);
+		pcmPos += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return pcmEnd - pcmPos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		eof = true;
+		in.close();
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads interleaved I/Q samples, as recorded by SDR tools, and converts
+ * them to floats in [-1, 1].
+ * 
+ * Files are memory-mapped, a window at a time, so that large recordings are
+ * read without copying them through system calls.
+ */
+public class IqReader {
+	public static enum Format {
+		/** 8-bit unsigned, centered on 127.5, as produced by rtl_sdr */
+		U8(2),
+		/** 16-bit signed, little-endian */
+		S16LE(4);
+
+		/** bytes per complex sample */
+		public final int sampleSize;
+
+		private Format(int sampleSize) {
+			this.sampleSize = sampleSize;
+		}
+
+		public static Format forName(String name) {
+			if("u8".equalsIgnoreCase(name)) return U8;
+			if("s16".equalsIgnoreCase(name) || "s16le".equalsIgnoreCase(name)) return S16LE;
+			throw new IllegalArgumentException("Unknown I/Q format: " + name);
+		}
+	}
+
+	// size of the mapped windows of files, a multiple of all sample sizes
+	private final static int WINDOW_SIZE = 1 << 26;
+
+	private final InputStream in;
+	private final FileChannel channel;
+	private final Format format;
+	private byte[] buf = new byte[0];
+
+	private MappedByteBuffer window = null;
+	private long windowEnd = 0;
+
+	public IqReader(InputStream in, Format format) {
+		this.in = in;
+		this.channel = null;
+		this.format = format;
+	}
+
+	public IqReader(File file, Format format) throws IOException {
+		this.in = null;
+		this.channel = new RandomAccessFile(file, "r").getChannel();
+		this.format = format;
+	}
+
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Reads samples, blocking until the buffers are full or the end of the
+	 * input is reached.
+	 *
+	 * @return the number of samples read, or -1 at the end of the input
+	 */
+	public int read(float[] i, float[] q, int count) throws IOException {
+		int len = count * format.sampleSize;
+		if(buf.length < len) buf = new byte[len];
+
+		int n = 0;
+		while(n < len) {
+			int r = channel == null ? in.read(buf, n, len - n) : readMapped(buf, n, len - n);
+			if(r < 0) break;
+			n += r;
+		}
+		if(n == 0) return -1;
+
+		int samples = n / format.sampleSize;
+		convert(buf, 0, format, i, q, samples);
+		return samples;
+	}
+
+	private int readMapped(byte[] dst, int offset, int len) throws IOException {
+		if(window == null || !window.hasRemaining()) {
+			long size = channel.size();
+			if(windowEnd >= size) return -1;
+			long length = Math.min(WINDOW_SIZE, size - windowEnd);
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowEnd, length);
+			windowEnd += length;
+		}
+		int n = Math.min(len, window.remaining());
+		window.get(dst, offset, n);
+		return n;
+	}
+
+	/**
+	 * Converts raw samples to floats.
+	 */
+	public static void convert(byte[] src, int offset, Format format, float[] i, float[] q, int count) {
+		if(format == Format.U8) {
+			for(int k=0, p=offset; k<count; k++, p+=2) {
+				i[k] = ((src[p] & 0xFF) - 127.5f) * (1 / 128f);
+				q[k] = ((src[p+1] & 0xFF) - 127.5f) * (1 / 128f);
+			}
+		} else {
+			for(int k=0, p=offset; k<count; k++, p+=4) {
+				i[k] = (short) ((src[p] & 0xFF) | (src[p+1] << 8)) * (1 / 32768f);
+				q[k] = (short) ((src[p+2] & 0xFF) | (src[p+3] << 8)) * (1 / 32768f);
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		if(channel == null) in.close(); else channel.close();
+		window = null;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+/**
+ * Merges the groups of the data streams of a station, typically the basic
+ * stream and the additional streams of RDS2, into a single group stream.
+ *
+ * Each data stream is read in a thread of its own, so that the streams are
+ * synchronized in parallel. Groups are returned in the order in which they
+ * are received, and can be told apart by their
+ * {@link eu.jacquet80.rds.input.group.GroupEvent#stream stream}.
+ * The merged stream ends when all the data streams have ended.
+ */
+public class MultiStreamGroupReader extends GroupReader {
+	private final static int QUEUE_LENGTH = 256;
+
+	// marks the end of a data stream in the queue
+	private final static Object END_OF_STREAM = new Object();
+
+	private final GroupReader[] streams;
+	private final BlockingQueue<Object> events = new ArrayBlockingQueue<Object>(QUEUE_LENGTH);
+	private int running = -1;
+
+	public MultiStreamGroupReader(GroupReader ... streams) {
+		this.streams = streams;
+		setParent(streams[0]);
+	}
+
+	// the streams are read once the readers are fully configured, from the first read on
+	private void start() {
+		running = streams.length;
+		for(int i=0; i<streams.length; i++) {
+			final GroupReader stream = streams[i];
+			Thread t = new Thread("RDS-Stream-" + i) {
+				@Override
+				public void run() {
+					try {
+						while(true) {
+							GroupReaderEvent event = stream.getGroup();
+							if(event != null) events.put(event);
+						}
+					} catch(EndOfStream e) {
+						// end of this data stream
+					} catch(IOException e) {
+						// let the consumer know
+						try {
+							events.put(e);
+						} catch(InterruptedException e1) {
+							return;
+						}
+					} catch(InterruptedException e) {
+						return;
+					}
+
+					try {
+						events.put(END_OF_STREAM);
+					} catch(InterruptedException e) {
+						// the consumer is not waiting anymore
+					}
+				}
+			};
+			// they only pass groups on, and must not outlive an abandoned reader
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/**
+	 * Creates a reader of all the data streams demodulated by an
+	 * {@link AudioBitReader}, each of them synchronized by a
+	 * {@link BitStreamSynchronizer}. If there is only the basic stream, its
+	 * synchronizer is returned directly.
+	 *
+	 * @param console where the synchronizer of the basic stream reports its
+	 *   progress; the other ones are silent
+	 */
+	public static GroupReader forAudio(PrintStream console, AudioBitReader audio) {
+		if(audio.getStreamCount() == 1) return new BitStreamSynchronizer(console, audio);
+
+		GroupReader[] streams = new GroupReader[audio.getStreamCount()];
+		streams[0] = new BitStreamSynchronizer(console, audio, 0);
+		for(int i=1; i<streams.length; i++) {
+			streams[i] = new BitStreamSynchronizer(RDSSurveyor.nullConsole, audio.getStream(i), i);
+		}
+		return new MultiStreamGroupReader(streams);
+	}
+
+	/**
+	 * Returns the readers of the data streams, the basic stream first.
+	 */
+	public GroupReader[] getStreams() {
+		return streams.clone();
+	}
+
+	@Override
+	public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+		if(running < 0) start();
+		while(running > 0) {
+			Object o;
+			try {
+				o = events.take();
+			} catch(InterruptedException e) {
+				throw new EndOfStream();
+			}
+
+			if(o == END_OF_STREAM) running--;
+			else if(o instanceof IOException) throw (IOException) o;
+			else return (GroupReaderEvent) o;
+		}
+		throw new EndOfStream();
+	}
+}
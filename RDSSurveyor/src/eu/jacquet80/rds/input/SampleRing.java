@@ -0,0 +1,198 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package eu.jacquet80.rds.input;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of 16-bit samples in a direct buffer, written by a producer that
+ * must never wait, typically the native driver of a tuner, and read as a
+ * {@link SampleSource}.
+ *
+ * The producer writes the samples of a block in the ring, after the samples
+ * written so far, then makes them available by calling {@link #commit(int)}.
+ * Native code writes directly in the memory of the buffer returned by
+ * {@link #getBuffer()}, so the samples are not copied on the way to the
+ * reader. If the reader lags so much that there is no room left for a
+ * block, the producer drops it and reports an overrun.
+ *
+ * Samples are in the native byte order. Positions are counted in samples
+ * since the ring was created, sample <i>i</i> being at index
+ * <i>i</i> modulo the capacity of the buffer.
+ */
+public class SampleRing implements SampleSource {
+	private final ShortBuffer samples;
+	private final ByteBuffer buffer;
+	private final int mask;
+
+	/* number of samples written by the producer, and read by the consumer */
+	private volatile long written = 0;
+	private volatile long read = 0;
+	private volatile boolean closed = false;
+
+	private volatile Thread waitingConsumer = null;
+
+	private volatile long overruns = 0;
+	private volatile long droppedSamples = 0;
+
+	/**
+	 * @param capacity the capacity in samples, rounded up to a power of 2
+	 */
+	public SampleRing(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		buffer = ByteBuffer.allocateDirect(2 * size).order(ByteOrder.nativeOrder());
+		samples = buffer.asShortBuffer();
+		mask = size - 1;
+	}
+
+	/**
+	 * Returns the buffer that holds the samples, for the producer to write
+	 * into.
+	 */
+	public ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the capacity in samples.
+	 */
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Returns the number of samples that can be written without overwriting
+	 * samples not read yet.
+	 */
+	public int getFreeSpace() {
+		return (int) (mask + 1 - (written - read));
+	}
+
+	/**
+	 * Makes samples available to the reader. Must be called only by the
+	 * producer, after it has written them in the buffer.
+	 *
+	 * @param count the number of samples written, at most the free space
+	 */
+	public void commit(int count) {
+		written += count;
+		Thread consumer = waitingConsumer;
+		if(consumer != null) LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Reports that the producer has dropped samples because the ring was
+	 * full. Must be called only by the producer.
+	 *
+	 * @param count the number of samples dropped
+	 */
+	public void overrun(int count) {
+		overruns++;
+		droppedSamples += count;
+	}
+
+	/**
+	 * Writes samples, or drops them if there is not enough room. Must be
+	 * called only by the producer; a native producer may write directly in
+	 * the buffer instead.
+	 *
+	 * @return true if the samples have been written, false if they have
+	 *   been dropped
+	 */
+	public boolean write(short[] src, int off, int len) {
+		if(len > getFreeSpace()) {
+			overrun(len);
+			return false;
+		}
+
+		int pos = (int) written & mask;
+		int first = Math.min(len, mask + 1 - pos);
+		samples.position(pos);
+		samples.put(src, off, first);
+		samples.position(0);
+		samples.put(src, off + first, len - first);
+		commit(len);
+		return true;
+	}
+
+	/**
+	 * Signals the end of the samples, after those written so far. Must be
+	 * called only by the producer.
+	 */
+	public void end() {
+		close();
+	}
+
+	@Override
+	public int read(float[] dst, int off, int len) {
+		long pos = read;
+		while(written == pos) {
+			if(closed) {
+				if(written == pos) return -1;
+				break;
+			}
+			waitingConsumer = Thread.currentThread();
+			if(written == pos && !closed) LockSupport.parkNanos(this, 100000000L);
+			waitingConsumer = null;
+		}
+
+		int n = (int) Math.min(len, written - pos);
+		for(int i=0; i<n; i++) {
+			dst[off + i] = samples.get((int) (pos + i) & mask) * (1f / 32768);
+		}
+		read = pos + n;
+		return n;
+	}
+
+	/**
+	 * Stops reading. The reader gets the end of the samples once those
+	 * already written have been read.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Thread consumer = waitingConsumer;
+		if(consumer != null) LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Returns the number of blocks dropped because the ring was full.
+	 */
+	public long getOverrunCount() {
+		return overruns;
+	}
+
+	/**
+	 * Returns the number of samples dropped because the ring was full.
+	 */
+	public long getDroppedSampleCount() {
+		return droppedSamples;
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+
+/**
+ * A source of 16-bit audio samples, such as an MPX signal, read by an
+ * {@link AudioBitReader}.
+ *
+ * Samples are given as floats, a sample <i>s</i> being <i>s</i>/32768.
+ */
+public interface SampleSource {
+	/**
+	 * Reads samples, waiting until at least one is available.
+	 *
+	 * @param dst where to store the samples
+	 * @param off the index of the first sample in {@code dst}
+	 * @param len the maximum number of samples to read, at least 1
+	 * @return the number of samples read, or -1 at the end of the samples
+	 */
+	public int read(float[] dst, int off, int len) throws IOException;
+
+	/**
+	 * Stops reading. The source may release its resources.
+	 */
+	public void close() throws IOException;
+}
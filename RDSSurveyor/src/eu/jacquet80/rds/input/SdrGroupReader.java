@@ -1,11 +1,7 @@
 package eu.jacquet80.rds.input;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.PrintStream;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -20,8 +16,11 @@ public class SdrGroupReader extends TunerGroupReader {
 	/** The sample rate at which we receive data from the tuner. */
 	private static final int sampleRate = 250000;
 	
-	private final PipedInputStream syncIn;
-	private final DataOutputStream tunerOut;
+	/** The capacity of the sample ring, about one second of samples. */
+	private static final int RING_CAPACITY = 1 << 18;
+	
+	/* Samples written by the native tuner driver, read by the demodulator */
+	private final SampleRing ring = new SampleRing(RING_CAPACITY);
 	private final BitStreamSynchronizer synchronizer;
 	private boolean synced = false;
 	private boolean newGroups;
@@ -54,9 +53,7 @@ public class SdrGroupReader extends TunerGroupReader {
 					aFilename + ": cannot load library");
 		}
 
-		syncIn = new PipedInputStream();
-		tunerOut = new DataOutputStream(new PipedOutputStream(syncIn));
-		synchronizer = new BitStreamSynchronizer(console, new AudioBitReader(new DataInputStream(syncIn), sampleRate));
+		synchronizer = new BitStreamSynchronizer(console, new AudioBitReader(ring, sampleRate));
 		
 		synchronizer.addStatusChangeListener(new BitStreamSynchronizer.StatusChangeListener() {
 			@Override
@@ -221,6 +218,23 @@ public class SdrGroupReader extends TunerGroupReader {
 		return ret;
 	}
 	
+	/**
+	 * @brief Returns the number of sample blocks the tuner driver has dropped.
+	 * 
+	 * Blocks are dropped when the demodulator lags so much behind the tuner that the sample ring
+	 * is full.
+	 */
+	public long getOverrunCount() {
+		return ring.getOverrunCount();
+	}
+	
+	/**
+	 * @brief Returns the number of samples the tuner driver has dropped.
+	 */
+	public long getDroppedSampleCount() {
+		return ring.getDroppedSampleCount();
+	}
+	
 	/**
 	 * @brief Returns current signal strength in dBm.
 	 * 
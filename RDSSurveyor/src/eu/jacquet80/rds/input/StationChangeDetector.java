@@ -46,6 +46,14 @@ public class StationChangeDetector extends GroupReader {
 		public void visit(GroupEvent groupEvent) {
 			int[] blocks = groupEvent.blocks;
 			
+			// groups of the additional data streams of RDS2 do not carry
+			// the PI, they just follow the groups of the basic stream
+			if(groupEvent.stream != 0) {
+				if(expectingPI) queuedGroups.addLast(groupEvent);
+				result = expectingPI ? null : groupEvent;
+				return;
+			}
+			
 			///System.out.println(". " + blocks[0]);
 			
 			if(expectingPI) {
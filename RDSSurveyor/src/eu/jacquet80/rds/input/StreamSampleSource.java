@@ -0,0 +1,76 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+
+package eu.jacquet80.rds.input;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The samples of a stream of 16-bit little-endian PCM, such as a raw MPX
+ * recording or the output of another program.
+ */
+public class StreamSampleSource implements SampleSource {
+	private final InputStream in;
+	private byte[] buf = new byte[0];
+
+	// 1 if the first byte of a sample has been read, and is kept at buf[0]
+	private int pending = 0;
+
+	public StreamSampleSource(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read(float[] dst, int off, int len) throws IOException {
+		if(buf.length < 2 * len) {
+			byte[] b = new byte[2 * len];
+			b[0] = buf.length > 0 ? buf[0] : 0;
+			buf = b;
+		}
+
+		int n = pending;
+		while(n < 2) {
+			int r = in.read(buf, n, 2 * len - n);
+			if(r < 0) return -1;
+			n += r;
+		}
+
+		int count = n / 2;
+		for(int i=0; i<count; i++) {
+			dst[off + i] = (short) ((buf[2*i] & 0xFF) | (buf[2*i + 1] << 8)) * (1f / 32768);
+		}
+
+		pending = n & 1;
+		if(pending != 0) buf[0] = buf[n - 1];
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
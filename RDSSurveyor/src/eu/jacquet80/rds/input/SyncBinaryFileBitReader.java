@@ -32,10 +32,18 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 
+/**
+ * Reads a synchronized binary file, in which every block of 26 bits is
+ * stored in 4 bytes: 3 full bytes, and the 2 most significant bits of the
+ * fourth byte.
+ */
 public class SyncBinaryFileBitReader extends BitReader {
 	private final InputStream isr;
+	private final byte[] buf = new byte[4096];
+	private int bufPos = 0;
+	private int bufLen = 0;
 	private int oct;
-	private int octPtr;
+	private int octPtr;     // number of bits of oct not read yet
 	private int bytePtr;
 	
 	public SyncBinaryFileBitReader(InputStream isr) throws FileNotFoundException {
@@ -55,24 +63,55 @@ public class SyncBinaryFileBitReader extends BitReader {
 		this(new FileInputStream(f));
 	}
 	
+	/**
+	 * Loads the next byte into oct, keeping only its 2 upper bits if it is
+	 * the last byte of a block.
+	 * 
+	 * @param block whether to block if no data is available yet
+	 * @return false at the end of the stream, or if no data is available
+	 * and <code>block</code> is false
+	 */
+	private boolean nextByte(boolean block) throws IOException {
+		if(bufPos == bufLen) {
+			if(!block && isr.available() == 0) return false;
+			bufLen = isr.read(buf);
+			bufPos = 0;
+			if(bufLen <= 0) {
+				bufLen = 0;
+				return false;
+			}
+		}
+		oct = buf[bufPos++] & 0xFF;
+		bytePtr = (bytePtr + 1) % 4;
+		if(bytePtr == 3) {
+			oct >>= 6;
+			octPtr = 2;
+		} else octPtr = 8;
+		return true;
+	}
 	
 	public boolean getBit() throws IOException {
-		oct = oct<<1;
-
 		if(octPtr==0) {
-			oct = isr.read();
-			bytePtr = (bytePtr + 1) % 4;
-			if(oct == -1) {
+			if(! nextByte(true)) {
 				throw new EOFException();
 			}
-			octPtr=8;
 		}
 
 		octPtr--;
-		if(bytePtr == 3 && octPtr == 6) octPtr = 0;
-		//System.err.print(((oct & 128)>>7) + "(" + octPtr + ")");
-		return (oct&128) != 0;
+		return ((oct >> octPtr) & 1) != 0;
 	}
 
-
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = 0;
+		while(n < maxBits) {
+			if(octPtr == 0 && !nextByte(n == 0)) break;
+			
+			int count = Math.min(octPtr, maxBits - n);
+			octPtr -= count;
+			putBits(dst, n, oct >> octPtr, count);
+			n += count;
+		}
+		return n == 0 ? -1 : n;
+	}
 }
@@ -36,6 +36,7 @@ public class TeeBitReader extends BitReader {
 	private int currentByte = 0;
 	private int currentBitCount = 0;
 	private int currentByteCount = 0;
+	private byte[] outBuf = new byte[64];
 	
 	public TeeBitReader(BitReader reader, File of) throws IOException {
 		this.reader = reader;
@@ -60,6 +61,34 @@ public class TeeBitReader extends BitReader {
 		}
 		return bit;
 	}
+	
+	@Override
+	public int readBits(long[] dst, int maxBits) throws IOException {
+		int n = reader.readBits(dst, maxBits);
+		if(n <= 0) return n;
+		
+		if(outBuf.length < n / 8 + 1) outBuf = new byte[n / 8 + 1];
+		int outLen = 0;
+		for(int pos = 0; pos < n; ) {
+			// complete the current byte with as many bits as possible
+			int count = Math.min(8 - currentBitCount, n - pos);
+			long word = dst[pos >> 6] << (pos & 63);
+			if((pos & 63) + count > 64) word |= dst[(pos >> 6) + 1] >>> (64 - (pos & 63));
+			currentByte = (currentByte << count) | (int) (word >>> (64 - count));
+			currentBitCount += count;
+			pos += count;
+			if(currentBitCount == 8) {
+				outBuf[outLen++] = (byte) currentByte;
+				currentByte = 0;
+				currentBitCount = 0;
+			}
+		}
+		if(outLen > 0) {
+			writer.write(outBuf, 0, outLen);
+			writer.flush();
+		}
+		return n;
+	}
 
 	@Override
 	protected void finalize() throws Throwable {
@@ -61,6 +61,9 @@ public class TeeGroupReader extends GroupReader {
 			
 			@Override
 			public void visit(GroupEvent groupEvent) {
+				// the hex format has no notion of the additional data streams of RDS2
+				if(groupEvent.stream != 0) return;
+				
 				for(int i=0; i<4; i++) {
 					if(groupEvent.blocks[i]>=0) writer.printf("%04X ", groupEvent.blocks[i]);
 					else writer.print("---- ");
@@ -8,15 +8,35 @@ public class GroupEvent extends GroupReaderEvent {
 	public final int[] blocks;
 	public final boolean ignored;
 	
+	/** Bit i is set if block i has been obtained by error correction */
+	public final int correctedBlocks;
+	
+	/** Data stream: 0 for the basic stream, 1 to 3 for the additional streams of RDS2 */
+	public final int stream;
+	
 	@Override
 	public void accept(GroupReaderEventVisitor visitor) {
 		visitor.visit(this);
 	}
 
-	public GroupEvent(RDSTime time, int[] blocks, boolean ignored) {
+	public GroupEvent(RDSTime time, int[] blocks, boolean ignored, int correctedBlocks, int stream) {
 		super(time);
 		this.blocks = blocks;
 		this.ignored = ignored;
+		this.correctedBlocks = correctedBlocks;
+		this.stream = stream;
+	}
+	
+	public GroupEvent(RDSTime time, int[] blocks, boolean ignored, int correctedBlocks) {
+		this(time, blocks, ignored, correctedBlocks, 0);
+	}
+	
+	public GroupEvent(RDSTime time, int[] blocks, boolean ignored) {
+		this(time, blocks, ignored, 0);
+	}
+	
+	public boolean isCorrected(int block) {
+		return (correctedBlocks & (1 << block)) != 0;
 	}
 	
 	@Override
@@ -28,6 +48,6 @@ public class GroupEvent extends GroupReaderEvent {
 			else r[i] = "----";
 		}
 		
-		return "(Group: " + r[0] + " " + r[1] + " " + r[2] + " " + r[3] + ")";
+		return "(Group" + (stream == 0 ? "" : " stream " + stream) + ": " + r[0] + " " + r[1] + " " + r[2] + " " + r[3] + ")";
 	}
 }
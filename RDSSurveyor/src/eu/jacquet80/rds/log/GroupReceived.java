@@ -1,5 +1,6 @@
 package eu.jacquet80.rds.log;
 
+import eu.jacquet80.rds.core.GroupAnalyzer;
 
 
 /**
@@ -9,13 +10,56 @@ public class GroupReceived extends LogMessage {
 	private final int[] blocks;
 	private final String analysis;
 	private final int nbOk;
+	private final int correctedBlocks;
+	private final int stream;
 	
 	public GroupReceived(RDSTime time, int[] blocks, int nbOk, String analysis) {
+		this(time, blocks, nbOk, analysis, 0);
+	}
+	
+	/**
+	 * @param correctedBlocks a bit mask of the blocks that were corrected
+	 */
+	public GroupReceived(RDSTime time, int[] blocks, int nbOk, String analysis, int correctedBlocks) {
+		this(time, blocks, nbOk, analysis, correctedBlocks, 0);
+	}
+	
+	/**
+	 * @param correctedBlocks a bit mask of the blocks that were corrected
+	 * @param stream the data stream the group was received on, 0 for the
+	 * basic stream, 1 to 3 for the additional streams of RDS2
+	 */
+	public GroupReceived(RDSTime time, int[] blocks, int nbOk, String analysis, int correctedBlocks, int stream) {
 		super(time);
 		
 		this.blocks = blocks;
 		this.nbOk = nbOk;
 		this.analysis = analysis;
+		this.correctedBlocks = correctedBlocks;
+		this.stream = stream;
+	}
+	
+	/**
+	 * @brief Creates a message whose analysis is rendered only when it is requested.
+	 * 
+	 * The analysis text is not stored, it is rendered from the blocks by
+	 * {@link GroupAnalyzer} each time {@link #getAnalysis()} is called.
+	 * 
+	 * @param correctedBlocks a bit mask of the blocks that were corrected
+	 */
+	public GroupReceived(RDSTime time, int[] blocks, int nbOk, int correctedBlocks) {
+		this(time, blocks, nbOk, null, correctedBlocks, 0);
+	}
+	
+	/**
+	 * @brief Creates a message whose analysis is rendered only when it is requested.
+	 * 
+	 * @param correctedBlocks a bit mask of the blocks that were corrected
+	 * @param stream the data stream the group was received on, 0 for the
+	 * basic stream, 1 to 3 for the additional streams of RDS2
+	 */
+	public GroupReceived(RDSTime time, int[] blocks, int nbOk, int correctedBlocks, int stream) {
+		this(time, blocks, nbOk, null, correctedBlocks, stream);
 	}
 	
 	@Override
@@ -50,7 +94,31 @@ public class GroupReceived extends LogMessage {
 				(blocks[3] != -1 ? 8 : 0);
 	}
 	
+	/**
+	 * @brief Returns a bit field indicating which blocks were corrected.
+	 * 
+	 * Block 0 is indicated by the least-significant bit.
+	 */
+	public int getCorrectedBlocks() {
+		return correctedBlocks;
+	}
+	
+	/**
+	 * @brief Returns the data stream the group was received on.
+	 * 
+	 * 0 is the basic stream, 1 to 3 are the additional streams of RDS2.
+	 * Groups of the additional streams are type C groups: block A holds no
+	 * PI, and block B no group type.
+	 */
+	public int getStream() {
+		return stream;
+	}
+	
 	public String getAnalysis() {
+		if(analysis == null) {
+			if(stream != 0) return GroupAnalyzer.analyzeStreamGroup(stream, blocks);
+			return GroupAnalyzer.analyze(blocks, correctedBlocks);
+		}
 		return analysis;
 	}
 
@@ -77,8 +145,14 @@ public class GroupReceived extends LogMessage {
 		return toString(true);
 	}
 	
+	/**
+	 * @brief Returns the group type and version, -1 if unknown.
+	 * 
+	 * Groups of the additional streams of RDS2 have no group type, so -1
+	 * is returned for them.
+	 */
 	public int getGroupType() {
-		if(blocks[1] == -1) return -1;
+		if(stream != 0 || blocks[1] == -1) return -1;
 		else return (blocks[1] >> 11) & 0x1F;
 	}
 }
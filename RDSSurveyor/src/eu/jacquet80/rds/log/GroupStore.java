@@ -0,0 +1,375 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.jacquet80.rds.core.TunedStation;
+
+/**
+ * Compact, indexed copy of the groups of a {@link Log}.
+ * 
+ * Groups are stored column by column in primitive arrays (the four blocks,
+ * the OK and corrected masks, the time, the data stream, the station and
+ * the index of the message in the log), which takes about 26 bytes per
+ * group, instead of a {@link GroupReceived} object per group. Groups are
+ * identified by their row number, in the order they were received.
+ * 
+ * Rows are indexed by data stream, and the rows of the basic stream are
+ * also indexed by group type, by PI, and by PI and group type, so that a
+ * query such as "all 8A groups of PI F202 between t1 and t2" only looks at
+ * the matching rows. Groups of the additional data streams of RDS2 have
+ * neither PI nor group type.
+ * 
+ * Times are the raw values of {@link SequentialTime}, i.e. the bit time of
+ * the group for bit stream inputs, and milliseconds for real times. The
+ * streams of RDS2 are synchronized separately, so their times are only
+ * comparable within a stream: queries are always for one stream. Queries
+ * by time assume that times never decrease within a stream, which holds
+ * within a recording. A group without a time takes the time of the
+ * previous group of its stream.
+ */
+public class GroupStore {
+	private final static int CHUNK_BITS = 14;
+	private final static int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private final static int CHUNK_MASK = CHUNK_SIZE - 1;
+	
+	private final static byte KIND_NO_TIME = 0, KIND_SEQUENTIAL = 1, KIND_REAL = 2;
+	
+	private final static int MAX_STREAMS = 4;
+	
+	private static class Chunk {
+		private final short[][] blocks = new short[4][CHUNK_SIZE];
+		
+		// OK mask (low 4 bits) and corrected mask (high 4 bits)
+		private final byte[] masks = new byte[CHUNK_SIZE];
+		
+		// time kind (low 4 bits) and data stream (high 4 bits)
+		private final byte[] timeKinds = new byte[CHUNK_SIZE];
+		private final long[] times = new long[CHUNK_SIZE];
+		
+		// index in the list of stations, -1 if no station was tuned yet
+		private final int[] stations = new int[CHUNK_SIZE];
+		
+		// index of the message in the log
+		private final int[] messageIndexes = new int[CHUNK_SIZE];
+	}
+	
+	private final List<Chunk> chunks = new ArrayList<Chunk>();
+	private int size = 0;
+	private final long[] lastTimes = new long[MAX_STREAMS];
+	
+	private final List<TunedStation> stations = new ArrayList<TunedStation>();
+	
+	// indexes, type and version are numbered as in GroupReceived.getGroupType()
+	private final IntList[] byStream = new IntList[MAX_STREAMS];
+	private final IntList[] byType = new IntList[32];
+	private final Map<Integer, IntList> byPI = new HashMap<Integer, IntList>();
+	private final Map<Integer, IntList> byPIAndType = new HashMap<Integer, IntList>();
+	
+	// the PI rarely changes, so the index lists of the latest PI are cached
+	private int cachedPI = -1;
+	private IntList cachedPIList;
+	private final IntList[] cachedPITypeLists = new IntList[32];
+	
+	public GroupStore() {
+		for(int i=0; i<MAX_STREAMS; i++) byStream[i] = new IntList();
+		for(int i=0; i<32; i++) byType[i] = new IntList();
+	}
+	
+	/**
+	 * Appends a message of the log: groups are stored, and station changes
+	 * are recorded to know the station of the next groups.
+	 * 
+	 * @param message the message
+	 * @param messageIndex the index of the message in the log
+	 */
+	public synchronized void addMessage(LogMessage message, int messageIndex) {
+		if(message instanceof GroupReceived) {
+			add((GroupReceived) message, messageIndex);
+		} else if(message instanceof StationTuned) {
+			stations.add(((StationTuned) message).getStation());
+		}
+	}
+	
+	/**
+	 * Appends a group.
+	 * 
+	 * @param messageIndex the index of the group in the log
+	 * @return the row of the group
+	 */
+	public synchronized int add(GroupReceived group, int messageIndex) {
+		int stream = group.getStream();
+		int row = size;
+		int offset = row & CHUNK_MASK;
+		if(offset == 0) chunks.add(new Chunk());
+		Chunk chunk = chunks.get(row >> CHUNK_BITS);
+		
+		int[] blocks = group.getBlocks();
+		for(int b=0; b<4; b++) chunk.blocks[b][offset] = (short) blocks[b];
+		chunk.masks[offset] = (byte) (group.getOKMask() | (group.getCorrectedBlocks() << 4));
+		
+		RDSTime time = group.getTime();
+		if(time instanceof SequentialTime) {
+			chunk.timeKinds[offset] = KIND_SEQUENTIAL;
+			lastTimes[stream] = ((SequentialTime) time).getGroupTime();
+		} else if(time instanceof RealTime) {
+			chunk.timeKinds[offset] = KIND_REAL;
+			lastTimes[stream] = time.getRealTime(null, null).getTime();
+		} else {
+			chunk.timeKinds[offset] = KIND_NO_TIME;
+		}
+		chunk.timeKinds[offset] |= stream << 4;
+		chunk.times[offset] = lastTimes[stream];
+		chunk.stations[offset] = stations.size() - 1;
+		chunk.messageIndexes[offset] = messageIndex;
+		
+		size++;
+		
+		byStream[stream].add(row);
+		
+		// groups of the additional streams of RDS2 carry neither PI nor type
+		if(stream != 0) return row;
+		
+		int type = group.getGroupType();
+		if(type != -1) byType[type].add(row);
+		
+		int pi = blocks[0];
+		if(pi != -1) {
+			if(pi != cachedPI) {
+				cachedPI = pi;
+				cachedPIList = listFor(byPI, pi);
+				Arrays.fill(cachedPITypeLists, null);
+			}
+			cachedPIList.add(row);
+			if(type != -1) {
+				IntList l = cachedPITypeLists[type];
+				if(l == null) l = cachedPITypeLists[type] = listFor(byPIAndType, (pi << 5) | type);
+				l.add(row);
+			}
+		}
+		
+		return row;
+	}
+	
+	private static IntList listFor(Map<Integer, IntList> index, int key) {
+		IntList l = index.get(key);
+		if(l == null) {
+			l = new IntList();
+			index.put(key, l);
+		}
+		return l;
+	}
+	
+	public synchronized int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns a block of a group.
+	 * 
+	 * @param row the row of the group
+	 * @param block the index of the block, between 0 and 3
+	 * @return the block, or -1 if it was not received correctly
+	 */
+	public synchronized int getBlock(int row, int block) {
+		Chunk c = chunk(row);
+		int offset = row & CHUNK_MASK;
+		if((c.masks[offset] & (1 << block)) == 0) return -1;
+		return c.blocks[block][offset] & 0xFFFF;
+	}
+	
+	/**
+	 * Returns the blocks of a group, -1 for the blocks not received correctly.
+	 */
+	public synchronized int[] getBlocks(int row) {
+		int[] res = new int[4];
+		for(int b=0; b<4; b++) res[b] = getBlock(row, b);
+		return res;
+	}
+	
+	/**
+	 * @see GroupReceived#getOKMask()
+	 */
+	public synchronized int getOKMask(int row) {
+		return chunk(row).masks[row & CHUNK_MASK] & 0xF;
+	}
+	
+	/**
+	 * @see GroupReceived#getCorrectedBlocks()
+	 */
+	public synchronized int getCorrectedBlocks(int row) {
+		return (chunk(row).masks[row & CHUNK_MASK] >> 4) & 0xF;
+	}
+	
+	/**
+	 * @see GroupReceived#getStream()
+	 */
+	public synchronized int getStream(int row) {
+		return (chunk(row).timeKinds[row & CHUNK_MASK] >> 4) & 0xF;
+	}
+	
+	/**
+	 * Returns the PI code of a group, -1 if block A was not received
+	 * correctly or if the group belongs to an additional stream of RDS2.
+	 */
+	public synchronized int getPI(int row) {
+		return getStream(row) != 0 ? -1 : getBlock(row, 0);
+	}
+	
+	/**
+	 * @see GroupReceived#getGroupType()
+	 */
+	public synchronized int getGroupType(int row) {
+		int b = getStream(row) != 0 ? -1 : getBlock(row, 1);
+		return b == -1 ? -1 : (b >> 11) & 0x1F;
+	}
+	
+	/**
+	 * Returns the time of a group, as a bit time or a number of
+	 * milliseconds, see the class documentation.
+	 */
+	public synchronized long getTimeValue(int row) {
+		return chunk(row).times[row & CHUNK_MASK];
+	}
+	
+	public synchronized RDSTime getTime(int row) {
+		Chunk c = chunk(row);
+		int offset = row & CHUNK_MASK;
+		switch(c.timeKinds[offset] & 0xF) {
+		case KIND_SEQUENTIAL: return new SequentialTime((int) c.times[offset]);
+		case KIND_REAL: return new RealTime(new Date(c.times[offset]));
+		default: return null;
+		}
+	}
+	
+	/**
+	 * Returns the station that was tuned when a group was received, or
+	 * {@code null} if none.
+	 */
+	public synchronized TunedStation getStation(int row) {
+		int s = chunk(row).stations[row & CHUNK_MASK];
+		return s == -1 ? null : stations.get(s);
+	}
+	
+	/**
+	 * Returns the index of a group in the log, to retrieve the original
+	 * message with {@link Log#getMessage(int)}.
+	 */
+	public synchronized int getMessageIndex(int row) {
+		return chunk(row).messageIndexes[row & CHUNK_MASK];
+	}
+	
+	/**
+	 * Rebuilds a group message. Its analysis is rendered on demand from the
+	 * blocks, so it lacks the information that depends on the state of the
+	 * decoder.
+	 */
+	public synchronized GroupReceived getGroup(int row) {
+		int[] blocks = getBlocks(row);
+		return new GroupReceived(getTime(row), blocks, Integer.bitCount(getOKMask(row)), getCorrectedBlocks(row), getStream(row));
+	}
+	
+	/**
+	 * Finds the groups that match the given criteria.
+	 * 
+	 * @param stream the data stream, 0 for the basic stream, 1 to 3 for the
+	 * additional streams of RDS2
+	 * @param pi the PI code, or -1 for any PI; must be -1 for the additional
+	 * streams
+	 * @param type the group type and version, numbered as in
+	 * {@link GroupReceived#getGroupType()}, or -1 for any type; must be -1
+	 * for the additional streams
+	 * @param from the minimum time, inclusive
+	 * @param to the maximum time, exclusive
+	 * @return the rows of the matching groups, in increasing order
+	 */
+	public synchronized int[] select(int stream, int pi, int type, long from, long to) {
+		IntList list;
+		if(pi == -1 && type == -1) {
+			list = byStream[stream];
+		} else if(stream != 0) {
+			throw new IllegalArgumentException("The groups of stream " + stream + " have neither PI nor group type.");
+		} else if(pi == -1) {
+			list = byType[type];
+		} else if(type == -1) {
+			list = byPI.get(pi);
+		} else {
+			list = byPIAndType.get((pi << 5) | type);
+		}
+		if(list == null) return new int[0];
+		
+		int start = firstIndexAt(list, from);
+		int end = Math.max(start, firstIndexAt(list, to));
+		return Arrays.copyOfRange(list.values, start, end);
+	}
+	
+	// first index in the list whose row is at or after the given time
+	private int firstIndexAt(IntList list, long time) {
+		int lo = 0, hi = list.size;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(getTimeValue(list.values[mid]) < time) lo = mid + 1; else hi = mid;
+		}
+		return lo;
+	}
+	
+	/**
+	 * Returns the number of groups of a given type and version, in the basic
+	 * stream.
+	 */
+	public synchronized int countByType(int type) {
+		return byType[type].size;
+	}
+	
+	/**
+	 * Returns the PI codes seen so far.
+	 */
+	public synchronized Integer[] getPIs() {
+		return byPI.keySet().toArray(new Integer[byPI.size()]);
+	}
+	
+	private Chunk chunk(int row) {
+		if(row < 0 || row >= size) throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+		return chunks.get(row >> CHUNK_BITS);
+	}
+	
+	// growable list of rows
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size = 0;
+		
+		private void add(int v) {
+			if(size == values.length) values = Arrays.copyOf(values, size * 2);
+			values[size++] = v;
+		}
+	}
+}
@@ -25,21 +25,117 @@
 
 package eu.jacquet80.rds.log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Log {
-	private ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+	/** Number of messages per segment, the unit by which messages are moved to disk */
+	public final static int SEGMENT_SIZE = 4096;
+	
+	// messages are stored in segments of SEGMENT_SIZE messages, the
+	// segments moved to disk are null
+	private final ArrayList<LogMessage[]> segments = new ArrayList<LogMessage[]>();
+	private int count = 0;
+	
+	private int maxMessagesInMemory = 0;
+	private int firstSegmentInMemory = 0;
+	private File spillDir = null;
+	private LogSpillFile spillFile = null;
+	
+	// messages of the segments moved to disk that cannot be stored on disk
+	private final Map<Integer, LogMessage> retainedMessages = new HashMap<Integer, LogMessage>();
 
 	// create a set of log message visitors in order to ensure that the same
 	// visitor is not registered several times
 	private Set<LogMessageVisitor> newMessageListeners = new HashSet<LogMessageVisitor>();
 	
-	public synchronized void addMessage(LogMessage message) {
-		messages.add(message);
-		
-		for(LogMessageVisitor v : newMessageListeners) message.accept(v);
+	/** Number of messages that asynchronous listeners may lag behind */
+	public final static int ASYNC_BUFFER_SIZE = 8192;
+	
+	// the dispatcher is created when the first asynchronous listener registers
+	private LogDispatcher dispatcher = null;
+	private final Map<LogMessageVisitor, LogDispatcher.Subscription> asyncListeners = 
+			new HashMap<LogMessageVisitor, LogDispatcher.Subscription>();
+	
+	// ensures that messages are published to the dispatcher in the order
+	// they are added to the log
+	private final Object publishLock = new Object();
+	
+	// created on demand by getGroupStore()
+	private GroupStore groupStore = null;
+	
+	public void addMessage(LogMessage message) {
+		synchronized(publishLock) {
+			LogDispatcher d;
+			synchronized(this) {
+				int offset = count % SEGMENT_SIZE;
+				if(offset == 0) segments.add(new LogMessage[SEGMENT_SIZE]);
+				segments.get(segments.size() - 1)[offset] = message;
+				count++;
+				
+				if(groupStore != null) groupStore.addMessage(message, count - 1);
+				for(LogMessageVisitor v : newMessageListeners) message.accept(v);
+				
+				if(maxMessagesInMemory > 0) spillSegments();
+				d = dispatcher;
+			}
+			
+			// outside of the log's lock, because the dispatcher may have to
+			// wait for a listener
+			if(d != null) d.publish(message);
+		}
+	}
+	
+	/**
+	 * Limits the number of messages kept in memory.
+	 * 
+	 * When the limit is exceeded, the oldest segments of
+	 * {@link #SEGMENT_SIZE} messages are moved to a temporary file, and
+	 * read back when {@link #getMessage(int)} asks for them. Group messages
+	 * read back are new instances, whose analysis is rendered on demand
+	 * from their blocks. Other messages (station changes, EON switches,
+	 * etc.) refer to live objects, so they remain in memory, but they are
+	 * rare.
+	 * 
+	 * @param maxMessages the maximum number of messages in memory, or 0 for
+	 * no limit (the default)
+	 * @param dir the directory of the temporary file, or {@code null} for
+	 * the default temporary directory
+	 */
+	public synchronized void setMemoryLimit(int maxMessages, File dir) {
+		this.maxMessagesInMemory = maxMessages;
+		this.spillDir = dir;
+		if(maxMessages > 0) spillSegments();
+	}
+	
+	private void spillSegments() {
+		// the last segment, being filled, always remains in memory
+		while(count - firstSegmentInMemory * SEGMENT_SIZE > maxMessagesInMemory
+				&& firstSegmentInMemory < segments.size() - 1) {
+			LogMessage[] segment = segments.get(firstSegmentInMemory);
+			try {
+				if(spillFile == null) spillFile = new LogSpillFile(spillDir, SEGMENT_SIZE);
+				spillFile.writeSegment(firstSegmentInMemory, segment);
+			} catch(IOException e) {
+				System.err.println("Cannot move log messages to disk, keeping them in memory: " + e);
+				maxMessagesInMemory = 0;
+				return;
+			}
+			
+			for(int i=0; i<SEGMENT_SIZE; i++) {
+				if(!LogSpillFile.canStore(segment[i])) {
+					retainedMessages.put(firstSegmentInMemory * SEGMENT_SIZE + i, segment[i]);
+				}
+			}
+			segments.set(firstSegmentInMemory, null);
+			firstSegmentInMemory++;
+		}
 	}
 	
 	/*
@@ -53,29 +149,110 @@ public class Log {
 	// gotten and the moment the items are iterated. Newer messages simply are
 	// not scanned this time.
 	public synchronized int messageCount() {
-		return messages.size();
+		return count;
 	}
 	
 	public synchronized LogMessage getMessage(int i) {
-		return messages.get(i);
+		if(i < 0 || i >= count) throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + count);
+		
+		LogMessage[] segment = segments.get(i / SEGMENT_SIZE);
+		if(segment != null) return segment[i % SEGMENT_SIZE];
+		
+		LogMessage message = retainedMessages.get(i);
+		if(message != null) return message;
+		try {
+			return spillFile.read(i);
+		} catch(IOException e) {
+			throw new IllegalStateException("Cannot read log message #" + i + " from disk", e);
+		}
+	}
+	
+	/**
+	 * Returns a compact, indexed copy of the groups of this log, to query
+	 * them by stream, time, PI or group type without scanning the whole log.
+	 * 
+	 * The store is built on the first call, from the messages already in
+	 * the log, and it is then kept up to date as messages are added.
+	 */
+	public synchronized GroupStore getGroupStore() {
+		if(groupStore == null) {
+			GroupStore store = new GroupStore();
+			for(int i=0; i<count; i++) store.addMessage(getMessage(i), i);
+			groupStore = store;
+		}
+		return groupStore;
 	}
 	
 	/*public void addGroupListener(Runnable r) {
 		groupListeners.add(r);
 	}*/
 	
+	/**
+	 * Registers a listener that is called synchronously, by the thread that
+	 * adds each message. The listener must therefore be fast. It may
+	 * however purposely slow down decoding, e.g. to pace a playback.
+	 */
 	public synchronized void addNewMessageListener(LogMessageVisitor v) {
 		newMessageListeners.add(v);
 	}
 	
+	/**
+	 * Registers a listener that is called asynchronously, on a thread of its
+	 * own, so that it does not slow down decoding.
+	 * 
+	 * @param v the listener
+	 * @param policy what to do when the listener lags behind by more than
+	 * {@link #ASYNC_BUFFER_SIZE} messages
+	 * @return the subscription, which gives statistics about the listener
+	 */
+	public LogDispatcher.Subscription addAsyncMessageListener(LogMessageVisitor v, LogDispatcher.OverflowPolicy policy) {
+		synchronized(publishLock) {
+			synchronized(this) {
+				LogDispatcher.Subscription s = asyncListeners.get(v);
+				if(s == null) {
+					if(dispatcher == null) dispatcher = new LogDispatcher(ASYNC_BUFFER_SIZE);
+					s = dispatcher.subscribe(v, policy);
+					asyncListeners.put(v, s);
+				}
+				return s;
+			}
+		}
+	}
+	
+	/**
+	 * Unregisters a listener, whether it is synchronous or asynchronous.
+	 */
 	public synchronized void removeNewMessageListener(LogMessageVisitor v) {
 		newMessageListeners.remove(v);
+		LogDispatcher.Subscription s = asyncListeners.remove(v);
+		if(s != null) dispatcher.unsubscribe(s);
+	}
+	
+	/**
+	 * Returns the subscriptions of asynchronous listeners, e.g. to monitor
+	 * how much they lag behind.
+	 */
+	public synchronized List<LogDispatcher.Subscription> getAsyncListeners() {
+		return new ArrayList<LogDispatcher.Subscription>(asyncListeners.values());
+	}
+	
+	/**
+	 * Waits until asynchronous listeners have processed all the messages
+	 * added so far.
+	 */
+	public void flush() {
+		LogDispatcher d;
+		synchronized(this) {
+			d = dispatcher;
+		}
+		if(d != null) d.flush();
 	}
 	
 	public String toString() {
 		StringBuffer res = null;
 		synchronized(this) {
-			for(LogMessage m : messages) {
+			for(int i=0; i<count; i++) {
+				LogMessage m = getMessage(i);
 				if(res == null) res = new StringBuffer("Log\t");
 				else res.append("\n\t");
 				res.append(m);
@@ -85,7 +262,7 @@ public class Log {
 	}
 	
 	public synchronized boolean empty() {
-		return messages.size() == 0;
+		return count == 0;
 	}
 	
 	public void notifyGroup() {
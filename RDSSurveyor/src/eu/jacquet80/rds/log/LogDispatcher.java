@@ -0,0 +1,315 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Delivers log messages to listeners on their own threads, so that a slow
+ * listener does not slow down the decoding.
+ *
+ * Messages are published in a ring buffer by a single producer (the
+ * {@link Log}). Each listener has its own thread and its own cursor in the
+ * ring buffer, and its own policy for the case when it lags so much behind
+ * that the ring buffer is full.
+ */
+public class LogDispatcher {
+	public enum OverflowPolicy {
+		/** The producer waits for the listener: no message is ever lost */
+		BLOCK,
+
+		/** The oldest messages not yet processed by the listener are lost */
+		DROP_OLDEST,
+
+		/**
+		 * When the listener lags behind, only the latest of consecutive
+		 * group messages is delivered. Other messages are never lost: the
+		 * producer waits rather than overwriting them.
+		 */
+		COALESCE,
+	}
+
+	private final int capacity;
+	private final int mask;
+	private final AtomicReferenceArray<LogMessage> ring;
+
+	// sequence number of the message in each slot, -1 while it is being written
+	private final AtomicLongArray sequences;
+
+	// number of messages published so far
+	private volatile long published = 0;
+
+	private volatile Thread waitingProducer = null;
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+	/**
+	 * @param capacity the size of the ring buffer, rounded up to a power of 2
+	 */
+	public LogDispatcher(int capacity) {
+		int c = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		this.capacity = c;
+		this.mask = c - 1;
+		this.ring = new AtomicReferenceArray<LogMessage>(c);
+		this.sequences = new AtomicLongArray(c);
+		for(int i=0; i<c; i++) sequences.set(i, -1);
+	}
+
+	/**
+	 * Publishes a message. This must be called by only one thread at a time.
+	 */
+	public void publish(LogMessage message) {
+		long seq = published;
+		int slot = (int) (seq & mask);
+
+		while(! canOverwrite(seq)) {
+			waitingProducer = Thread.currentThread();
+			if(! canOverwrite(seq)) LockSupport.parkNanos(this, 1000000L);
+			waitingProducer = null;
+		}
+
+		sequences.set(slot, -1);
+		ring.set(slot, message);
+		sequences.set(slot, seq);
+		published = seq + 1;
+
+		for(Subscription s : subscriptions) {
+			if(s.waiting) LockSupport.unpark(s.thread);
+		}
+	}
+
+	private boolean canOverwrite(long seq) {
+		long old = seq - capacity;
+		if(old < 0) return true;
+
+		for(Subscription s : subscriptions) {
+			if(s.cursor > old) continue;	// already processed
+
+			switch(s.policy) {
+			case BLOCK:
+				return false;
+			case COALESCE:
+				if(! (ring.get((int) (old & mask)) instanceof GroupReceived)) return false;
+				break;
+			case DROP_OLDEST:
+				break;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Registers a listener, and starts its delivery thread.
+	 */
+	public Subscription subscribe(LogMessageVisitor visitor, OverflowPolicy policy) {
+		Subscription s = new Subscription(visitor, policy, published);
+		subscriptions.add(s);
+		s.thread.start();
+		return s;
+	}
+
+	public void unsubscribe(Subscription s) {
+		subscriptions.remove(s);
+		s.cancelled = true;
+		LockSupport.unpark(s.thread);
+
+		Thread producer = waitingProducer;
+		if(producer != null) LockSupport.unpark(producer);
+	}
+
+	public List<Subscription> getSubscriptions() {
+		return subscriptions;
+	}
+
+	/**
+	 * Waits until every listener has processed the messages published so far.
+	 */
+	public void flush() {
+		long target = published;
+		for(Subscription s : subscriptions) {
+			while((s.cursor < target || s.pendingGroup != null) && ! s.cancelled) {
+				LockSupport.parkNanos(this, 1000000L);
+			}
+		}
+	}
+
+	/**
+	 * A listener registered at the dispatcher.
+	 */
+	public class Subscription {
+		private final LogMessageVisitor visitor;
+		private final OverflowPolicy policy;
+		private final Thread thread;
+
+		// sequence number of the next message to process
+		private volatile long cursor;
+		private volatile boolean waiting = false;
+		private volatile boolean cancelled = false;
+
+		// with COALESCE, latest group read but not delivered yet
+		private volatile GroupReceived pendingGroup = null;
+
+		private volatile long delivered = 0, dropped = 0, coalesced = 0, maxLag = 0;
+
+		private Subscription(LogMessageVisitor visitor, OverflowPolicy policy, long start) {
+			this.visitor = visitor;
+			this.policy = policy;
+			this.cursor = start;
+
+			thread = new Thread() {
+				public void run() {
+					deliver();
+				}
+			};
+			thread.setName("RDS-Log-" + visitor.getClass().getName());
+			thread.setDaemon(true);
+		}
+
+		private void deliver() {
+			while(! cancelled) {
+				long c = cursor;
+				long p = published;
+
+				if(c == p) {
+					if(pendingGroup != null) {
+						accept(pendingGroup);
+						pendingGroup = null;
+						continue;
+					}
+
+					waiting = true;
+					if(published == c && ! cancelled) LockSupport.parkNanos(this, 100000000L);
+					waiting = false;
+					continue;
+				}
+
+				if(p - c > maxLag) maxLag = p - c;
+
+				// lapped by the producer: the ring buffer holds messages
+				// p - capacity to p - 1
+				if(policy != OverflowPolicy.BLOCK && p - c > capacity) {
+					dropped += p - capacity - c;
+					advance(p - capacity);
+					continue;
+				}
+
+				int slot = (int) (c & mask);
+				long s1 = sequences.get(slot);
+				LogMessage message = ring.get(slot);
+				long s2 = sequences.get(slot);
+				if(s1 != c || s2 != c) {
+					// overwritten while reading
+					dropped++;
+					advance(c + 1);
+					continue;
+				}
+
+				if(policy == OverflowPolicy.COALESCE) {
+					if(message instanceof GroupReceived) {
+						if(pendingGroup != null) coalesced++;
+						pendingGroup = (GroupReceived) message;
+						advance(c + 1);
+						continue;
+					}
+					if(pendingGroup != null) {
+						accept(pendingGroup);
+						pendingGroup = null;
+					}
+				}
+
+				accept(message);
+				advance(c + 1);
+			}
+		}
+
+		private void advance(long next) {
+			cursor = next;
+			Thread producer = waitingProducer;
+			if(producer != null) LockSupport.unpark(producer);
+		}
+
+		private void accept(LogMessage message) {
+			try {
+				message.accept(visitor);
+			} catch(RuntimeException e) {
+				System.err.println("In log listener " + visitor + ": " + e);
+				e.printStackTrace(System.err);
+			}
+			delivered++;
+		}
+
+		public LogMessageVisitor getVisitor() {
+			return visitor;
+		}
+
+		public OverflowPolicy getPolicy() {
+			return policy;
+		}
+
+		/**
+		 * Returns the number of published messages not yet processed by
+		 * this listener.
+		 */
+		public long getLag() {
+			return published - cursor;
+		}
+
+		public long getMaxLag() {
+			return maxLag;
+		}
+
+		public long getDeliveredCount() {
+			return delivered;
+		}
+
+		/**
+		 * Returns the number of messages lost because the ring buffer was
+		 * full (policy {@link OverflowPolicy#DROP_OLDEST} or
+		 * {@link OverflowPolicy#COALESCE}).
+		 */
+		public long getDroppedCount() {
+			return dropped;
+		}
+
+		/**
+		 * Returns the number of group messages skipped because a more recent
+		 * group was available (policy {@link OverflowPolicy#COALESCE}).
+		 */
+		public long getCoalescedCount() {
+			return coalesced;
+		}
+
+		public String toString() {
+			return visitor.getClass().getName() + " [" + policy + "]: lag=" + getLag() +
+					", max lag=" + maxLag + ", delivered=" + delivered +
+					", dropped=" + dropped + ", coalesced=" + coalesced;
+		}
+	}
+}
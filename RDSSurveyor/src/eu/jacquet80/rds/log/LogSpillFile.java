@@ -0,0 +1,155 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+/**
+ * Temporary file holding the segments of a {@link Log} that have been moved
+ * out of memory.
+ *
+ * Each message takes a fixed-size record, so that message {@code i} is
+ * found at offset {@code i * RECORD_SIZE}. Only group messages can be
+ * stored; other messages leave an empty record, and must be kept in memory
+ * by the log.
+ */
+class LogSpillFile {
+	// kind and stream (4 bits each), time (8 bytes), OK mask and corrected
+	// mask (4 bits each), then the 4 blocks on 16 bits
+	private final static int RECORD_SIZE = 1 + 8 + 1 + 4*2;
+
+	private final static byte KIND_NONE = 0, KIND_NO_TIME = 1, KIND_SEQUENTIAL = 2, KIND_REAL = 3;
+
+	private final File file;
+	private final RandomAccessFile raf;
+	private final int segmentSize;
+	private final byte[] buffer;
+
+	// index of the segment currently in the buffer, -1 if none
+	private int bufferedSegment = -1;
+
+	public LogSpillFile(File dir, int segmentSize) throws IOException {
+		this.file = File.createTempFile("rdslog", ".seg", dir);
+		this.file.deleteOnExit();
+		this.raf = new RandomAccessFile(file, "rw");
+		this.segmentSize = segmentSize;
+		this.buffer = new byte[segmentSize * RECORD_SIZE];
+	}
+
+	/**
+	 * Tells whether a message can be stored on disk.
+	 */
+	public static boolean canStore(LogMessage message) {
+		if(!(message instanceof GroupReceived)) return false;
+		RDSTime time = message.getTime();
+		return time == null || time instanceof SequentialTime || time instanceof RealTime;
+	}
+
+	/**
+	 * Writes a full segment of messages.
+	 *
+	 * @param segment the index of the segment in the log
+	 * @param messages the messages of the segment
+	 */
+	public void writeSegment(int segment, LogMessage[] messages) throws IOException {
+		bufferedSegment = -1;
+		for(int i=0; i<segmentSize; i++) {
+			int pos = i * RECORD_SIZE;
+			if(!canStore(messages[i])) {
+				buffer[pos] = KIND_NONE;
+				continue;
+			}
+
+			GroupReceived group = (GroupReceived) messages[i];
+			RDSTime time = group.getTime();
+			long t = 0;
+			if(time == null) {
+				buffer[pos] = KIND_NO_TIME;
+			} else if(time instanceof SequentialTime) {
+				buffer[pos] = KIND_SEQUENTIAL;
+				t = ((SequentialTime) time).getGroupTime();
+			} else {
+				buffer[pos] = KIND_REAL;
+				t = time.getRealTime(null, null).getTime();
+			}
+			buffer[pos] |= group.getStream() << 4;
+			for(int b=0; b<8; b++) buffer[pos + 1 + b] = (byte) (t >> (56 - 8*b));
+
+			int[] blocks = group.getBlocks();
+			buffer[pos + 9] = (byte) (group.getOKMask() | (group.getCorrectedBlocks() << 4));
+			for(int b=0; b<4; b++) {
+				buffer[pos + 10 + 2*b] = (byte) (blocks[b] >> 8);
+				buffer[pos + 11 + 2*b] = (byte) blocks[b];
+			}
+		}
+
+		raf.seek((long) segment * segmentSize * RECORD_SIZE);
+		raf.write(buffer);
+	}
+
+	/**
+	 * Reads back a message.
+	 *
+	 * @param index the index of the message in the log
+	 * @return the message, or {@code null} if it was not stored on disk
+	 */
+	public LogMessage read(int index) throws IOException {
+		int segment = index / segmentSize;
+		if(segment != bufferedSegment) {
+			raf.seek((long) segment * segmentSize * RECORD_SIZE);
+			raf.readFully(buffer);
+			bufferedSegment = segment;
+		}
+
+		int pos = (index % segmentSize) * RECORD_SIZE;
+		byte kind = (byte) (buffer[pos] & 0xF);
+		int stream = (buffer[pos] >> 4) & 0xF;
+		if(kind == KIND_NONE) return null;
+
+		long t = 0;
+		for(int b=0; b<8; b++) t = (t << 8) | (buffer[pos + 1 + b] & 0xFF);
+		RDSTime time;
+		switch(kind) {
+		case KIND_SEQUENTIAL: time = new SequentialTime((int) t); break;
+		case KIND_REAL: time = new RealTime(new Date(t)); break;
+		default: time = null;
+		}
+
+		int okMask = buffer[pos + 9] & 0xF;
+		int corrected = (buffer[pos + 9] >> 4) & 0xF;
+		int[] blocks = new int[4];
+		for(int b=0; b<4; b++) {
+			if((okMask & (1<<b)) != 0) {
+				blocks[b] = ((buffer[pos + 10 + 2*b] & 0xFF) << 8) | (buffer[pos + 11 + 2*b] & 0xFF);
+			} else blocks[b] = -1;
+		}
+
+		return new GroupReceived(time, blocks, Integer.bitCount(okMask), corrected, stream);
+	}
+}
@@ -6,8 +6,19 @@ import java.util.Date;
 public class RealTime implements RDSTime {
 	private final Date time;
 	
-	private final static SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH.mm.ss");
-	private static final SimpleDateFormat LONG_TIME_FORMAT = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+	// formats are not thread-safe, and times are formatted by several decoders at once
+	private final static ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("HH.mm.ss");
+		}
+	};
+	private static final ThreadLocal<SimpleDateFormat> LONG_TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			return new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+		}
+	};
 	
 	/**
 	 * @brief Converts a {@code RealTime} instance to a {@code Date}.
@@ -30,10 +41,10 @@ public class RealTime implements RDSTime {
 	}
 	
 	public String toString() {
-		return TIME_FORMAT.format(this.time);
+		return TIME_FORMAT.get().format(this.time);
 	}
 	
 	public String toLongString() {
-		return LONG_TIME_FORMAT.format(this.time);
+		return LONG_TIME_FORMAT.get().format(this.time);
 	}
 }
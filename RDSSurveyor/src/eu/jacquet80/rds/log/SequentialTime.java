@@ -13,7 +13,13 @@ public class SequentialTime implements RDSTime {
 
 	private final int groupTime;
 	
-	private final static NumberFormat FORMAT = new DecimalFormat("0000");
+	// formats are not thread-safe, and times are formatted by several decoders at once
+	private final static ThreadLocal<NumberFormat> FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return new DecimalFormat("0000");
+		}
+	};
 
 	/**
 	 * @brief Converts a {@code SequentialTime} instance to a {@code Date}.
@@ -37,8 +43,15 @@ public class SequentialTime implements RDSTime {
 		this.groupTime = groupTime;
 	}
 	
+	/**
+	 * @brief Returns the raw time value, as passed to the constructor.
+	 */
+	public int getGroupTime() {
+		return groupTime;
+	}
+	
 	public String toString() {
-		return FORMAT.format(groupTime % 10000);
+		return FORMAT.get().format(groupTime % 10000);
 	}
 
 	@Override
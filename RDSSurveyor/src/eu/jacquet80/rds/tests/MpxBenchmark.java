@@ -0,0 +1,141 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+
+/**
+ * Measures the sample throughput of {@link AudioBitReader} on a synthetic
+ * MPX signal: mono audio, a 19 kHz pilot, noise and an RDS subcarrier
+ * slightly off 57 kHz, carrying valid groups.
+ *
+ * Usage: <code>MpxBenchmark [iterations] [seconds] [sample rate]</code>
+ */
+public class MpxBenchmark {
+	private final byte[] samples;
+	private final int sampleRate;
+	private final int nbGroups;
+	private AudioBitReader lastReader;
+
+	public MpxBenchmark(int seconds, int sampleRate) {
+		this.sampleRate = sampleRate;
+		nbGroups = (int) (seconds * 1187.5 / 104);
+		float[] mpx = makeMpx(nbGroups, sampleRate, 0xF202, new Random(42));
+		samples = new byte[mpx.length * 2];
+		for(int i=0; i<mpx.length; i++) {
+			short s = (short) Math.max(-32768, Math.min(32767, mpx[i] * 32767));
+			samples[2*i] = (byte) s;
+			samples[2*i + 1] = (byte) (s >> 8);
+		}
+	}
+
+	/**
+	 * Generates a synthetic MPX signal, in [-1, 1], carrying groups with the
+	 * given PI code and random contents.
+	 */
+	public static float[] makeMpx(int nbGroups, int sampleRate, int pi, Random rnd) {
+		// map a syndrome value to the 10-bit check word that produces it
+		int[] checkForSyndrome = new int[1024];
+		for(int c=0; c<1024; c++) checkForSyndrome[RDS.calcSyndrome(c)] = c;
+
+		// data bits, 104 per group
+		boolean[] bits = new boolean[nbGroups * 104];
+		int n = 0;
+		for(int g=0; g<nbGroups; g++) {
+			for(int b=0; b<4; b++) {
+				int data = b == 0 ? pi : rnd.nextInt(0x10000);
+				int synd = RDS.calcSyndrome(data << 10) ^ RDS.syndromes[b][0];
+				int block = (data << 10) | checkForSyndrome[synd];
+				for(int i=25; i>=0; i--) bits[n++] = ((block >> i) & 1) != 0;
+			}
+		}
+
+		int nbSamples = (int) ((long) bits.length * sampleRate * 2 / 2375);
+		float[] mpx = new float[nbSamples];
+		boolean level = false;
+		int prevBit = -1;
+		for(int i=0; i<nbSamples; i++) {
+			double t = (double) i / sampleRate;
+
+			// differential encoding, then biphase symbols
+			int bit = (int) ((long) i * 2375 / 2 / sampleRate);
+			if(bit != prevBit) {
+				if(bits[bit]) level = !level;
+				prevBit = bit;
+			}
+			boolean firstHalf = (long) i * 2375 / sampleRate % 2 == 0;
+			double symbol = (level ^ firstHalf) ? 1 : -1;
+
+			mpx[i] = (float) (0.3 * Math.sin(2 * Math.PI * 440 * t) + 0.2 * Math.sin(2 * Math.PI * 3170 * t)
+					+ 0.08 * Math.sin(2 * Math.PI * 19000 * t)
+					+ 0.04 * symbol * Math.sin(2 * Math.PI * 57003 * t + 0.3)
+					+ 0.02 * rnd.nextGaussian());
+		}
+		return mpx;
+	}
+
+	public long run() throws IOException {
+		AudioBitReader audio = new AudioBitReader(new DataInputStream(new ByteArrayInputStream(samples)), sampleRate);
+		lastReader = audio;
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(RDSSurveyor.nullConsole, audio);
+		long groups = 0;
+		try {
+			while(true) {
+				sync.getGroup();
+				groups++;
+			}
+		} catch(EndOfStream e) {}
+		return groups;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+		int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+		int sampleRate = args.length > 2 ? Integer.parseInt(args[2]) : 250000;
+
+		MpxBenchmark bench = new MpxBenchmark(seconds, sampleRate);
+		System.out.printf("Signal: %d samples at %d Hz, %d groups\n", bench.samples.length / 2, sampleRate, bench.nbGroups);
+
+		for(int i=0; i<iterations; i++) {
+			long start = System.nanoTime();
+			long groups = bench.run();
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Iteration %d: %d groups, %.2f MS/s\n",
+					i, groups, bench.samples.length / 2 / secs / 1e6);
+		}
+		System.out.printf("Bit queue: at most %d bits, %d overruns\n",
+				bench.lastReader.getMaxQueuedBitCount(), bench.lastReader.getOverrunCount());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.BinaryFileBitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+
+/**
+ * Measures the bit throughput of {@link BitStreamSynchronizer} on a synthetic
+ * bitstream made of bursts of valid groups separated by noise (fades), so
+ * that both synchronization acquisition and the synchronized path are
+ * exercised.
+ *
+ * Usage: <code>SyncBenchmark [iterations] [megabits]</code>
+ */
+public class SyncBenchmark {
+	private final static int NOISE_BITS = 3000;
+	private final static int GROUPS_PER_BURST = 30;
+
+	private final byte[] stream;
+	private final int nbBits;
+
+	public SyncBenchmark(int megabits) {
+		Random rnd = new Random(42);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+
+		// map a syndrome value to the 10-bit check word that produces it
+		int[] checkForSyndrome = new int[1024];
+		for(int c=0; c<1024; c++) checkForSyndrome[RDS.calcSyndrome(c)] = c;
+
+		int cur = 0, curBits = 0, total = 0;
+		while(total < megabits * 1000000) {
+			// noise
+			for(int i=0; i<NOISE_BITS; i++) {
+				cur = (cur << 1) | (rnd.nextBoolean() ? 1 : 0);
+				if(++curBits == 8) { bos.write(cur); cur = 0; curBits = 0; }
+			}
+			total += NOISE_BITS;
+
+			// valid groups
+			for(int g=0; g<GROUPS_PER_BURST; g++) {
+				for(int b=0; b<4; b++) {
+					int data = b == 0 ? 0xF202 : rnd.nextInt(0x10000);
+					int synd = RDS.calcSyndrome(data << 10) ^ RDS.syndromes[b][0];
+					int block = (data << 10) | checkForSyndrome[synd];
+					for(int i=25; i>=0; i--) {
+						cur = (cur << 1) | ((block >> i) & 1);
+						if(++curBits == 8) { bos.write(cur); cur = 0; curBits = 0; }
+					}
+				}
+			}
+			total += GROUPS_PER_BURST * 104;
+		}
+
+		stream = bos.toByteArray();
+		nbBits = stream.length * 8;
+	}
+
+	public long run() throws IOException {
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(RDSSurveyor.nullConsole,
+				new BinaryFileBitReader(new ByteArrayInputStream(stream)));
+		long groups = 0;
+		try {
+			while(true) {
+				sync.getGroup();
+				groups++;
+			}
+		} catch(EndOfStream e) {}
+		return groups;
+	}
+
+	public static void main(String[] args) throws IOException {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int megabits = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		SyncBenchmark bench = new SyncBenchmark(megabits);
+		System.out.printf("Stream: %d bits\n", bench.nbBits);
+
+		for(int i=0; i<iterations; i++) {
+			long start = System.nanoTime();
+			long groups = bench.run();
+			double secs = (System.nanoTime() - start) / 1e9;
+			System.out.printf("Iteration %d: %d groups, %.2f Mbit/s\n",
+					i, groups, bench.nbBits / secs / 1e6);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.Random;
+
+import eu.jacquet80.rds.app.oda.tmc.LocationQueries;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation;
+
+/**
+ * Measures the latency of TMC location lookups that miss the cache, on a
+ * synthetic location table imported into an in-memory database, then in a
+ * snapshot of that database: first from one thread, then from several
+ * threads at once, and finally to resolve the extent of messages.
+ *
+ * Usage: <code>TmcLookupBenchmark [points] [lookups] [threads]</code>
+ */
+public class TmcLookupBenchmark {
+	private static final int CID = 58;
+	private static final int TABCD = 1;
+	private static final int NB_AREAS = 50;
+	private static final int NB_ROADS = 200;
+	/** Location codes of areas, roads and segments come before those of points. */
+	private static final int FIRST_POINT = 1000;
+
+	private static PrintWriter open(File dir, String name, String header) throws IOException {
+		PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, name)), "ISO-8859-1"));
+		w.println(header);
+		return w;
+	}
+
+	/**
+	 * Writes a location table with the given number of points, spread over
+	 * a fixed number of roads of two segments each, in exchange format.
+	 */
+	public static void writeTables(File dir, int nbPoints, Random rnd) throws IOException {
+		PrintWriter w = open(dir, "COUNTRIES.DAT", "CID;ECC;CCD;CNAME");
+		w.println(CID + ";E0;D;Testland");
+		w.close();
+
+		w = open(dir, "LOCATIONDATASETS.DAT", "CID;TABCD;DCOMMENT;VERSION;VERSIONDESCRIPTION");
+		w.println(CID + ";" + TABCD + ";Synthetic;1.0;");
+		w.close();
+
+		w = open(dir, "NAMES.DAT", "CID;LID;NID;NAME;NCOMMENT;OFFICIALNAME");
+		for(int nid=1; nid<=nbPoints; nid++) w.println(CID + ";1;" + nid + ";Name " + nid + ";;");
+		w.close();
+
+		w = open(dir, "ADMINISTRATIVEAREA.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;NID;POL_LCD");
+		for(int a=1; a<=NB_AREAS; a++) w.println(CID + ";" + TABCD + ";" + a + ";A;3;0;" + a + ";");
+		w.close();
+
+		w = open(dir, "ROADS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;ROADNUMBER;RNID;N1ID;N2ID;POL_LCD;PES_LEV");
+		for(int r=0; r<NB_ROADS; r++) {
+			int lcd = NB_AREAS + 1 + r;
+			w.println(CID + ";" + TABCD + ";" + lcd + ";L;1;1;A" + r + ";" + (r+1) + ";" + (r+2) + ";" + (r+3) + ";" + (1 + r % NB_AREAS) + ";0");
+		}
+		w.close();
+
+		w = open(dir, "SEGMENTS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;ROADNUMBER;RNID;N1ID;N2ID;ROA_LCD;SEG_LCD;POL_LCD");
+		PrintWriter o = open(dir, "SOFFSETS.DAT", "CID;TABCD;LCD;NEG_OFF_LCD;POS_OFF_LCD");
+		for(int r=0; r<NB_ROADS; r++) {
+			int lcd = NB_AREAS + NB_ROADS + 1 + 2 * r;
+			for(int i=0; i<2; i++) {
+				w.println(CID + ";" + TABCD + ";" + (lcd + i) + ";L;3;0;A" + r + ";" + (r+1) + ";" + (r+2+i) + ";" + (r+3+i) + ";" + (NB_AREAS + 1 + r) + ";;");
+				o.println(CID + ";" + TABCD + ";" + (lcd + i) + ";" + (i == 1 ? lcd : "") + ";" + (i == 0 ? lcd + 1 : ""));
+			}
+		}
+		w.close();
+		o.close();
+
+		// points follow each other along their road, the first half on its first segment
+		PrintWriter p = open(dir, "POINTS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;JUNCTIONNUMBER;RNID;N1ID;N2ID;POL_LCD;OTH_LCD;SEG_LCD;ROA_LCD;XCOORD;YCOORD;URBAN");
+		o = open(dir, "POFFSETS.DAT", "CID;TABCD;LCD;NEG_OFF_LCD;POS_OFF_LCD");
+		int perRoad = (nbPoints + NB_ROADS - 1) / NB_ROADS;
+		for(int i=0; i<nbPoints; i++) {
+			int lcd = FIRST_POINT + i;
+			int road = i / perRoad;
+			int pos = i % perRoad;
+			int segment = NB_AREAS + NB_ROADS + 1 + 2 * road + (2 * pos >= perRoad ? 1 : 0);
+			p.println(CID + ";" + TABCD + ";" + lcd + ";P;1;" + (1 + rnd.nextInt(10)) + ";" + (pos + 1) + ";;" + (i + 1) + ";;"
+					+ (1 + rnd.nextInt(NB_AREAS)) + ";;" + segment + ";" + (NB_AREAS + 1 + road) + ";"
+					+ (600000 + rnd.nextInt(100000)) + ";" + (4500000 + rnd.nextInt(100000)) + ";0");
+			o.println(CID + ";" + TABCD + ";" + lcd + ";"
+					+ (pos > 0 ? lcd - 1 : "") + ";" + (pos < perRoad - 1 && i < nbPoints - 1 ? lcd + 1 : ""));
+		}
+		p.close();
+		o.close();
+	}
+
+	/** Looks up points in a random order, and returns the latency of each lookup in nanoseconds. */
+	private static long[] lookup(int nbPoints, int nbLookups, Random rnd) {
+		long[] times = new long[nbLookups];
+		for(int i=0; i<nbLookups; i++) {
+			int lcd = FIRST_POINT + rnd.nextInt(nbPoints);
+			long start = System.nanoTime();
+			TMCLocation loc = TMC.getLocation(CID, TABCD, lcd);
+			times[i] = System.nanoTime() - start;
+			if(loc == null) throw new IllegalStateException("Location " + lcd + " not found");
+		}
+		return times;
+	}
+
+	/**
+	 * Resolves the extent of messages at random points, as the rendering of
+	 * a message does, and returns the latency of each in nanoseconds.
+	 */
+	private static long[] offsets(int nbPoints, int nbLookups, Random rnd) {
+		long[] times = new long[nbLookups];
+		for(int i=0; i<nbLookups; i++) {
+			TMCLocation loc = TMC.getLocation(CID, TABCD, FIRST_POINT + rnd.nextInt(nbPoints));
+			int extent = 1 + rnd.nextInt(31);
+			int direction = rnd.nextInt(2);
+			long start = System.nanoTime();
+			loc.getOffset(extent, direction);
+			times[i] = System.nanoTime() - start;
+		}
+		return times;
+	}
+
+	private static void report(String title, long[] times, double wallSecs) {
+		long sum = 0, max = 0;
+		for(long t : times) {
+			sum += t;
+			max = Math.max(max, t);
+		}
+		System.out.printf("%s: %d lookups in %.2f s, mean %.1f us, max %.1f ms\n",
+				title, times.length, wallSecs, sum / 1e3 / times.length, max / 1e6);
+	}
+
+	/** Measures lookups with an empty cache, first from one thread, then from several threads. */
+	private static void measure(String backend, final int nbPoints, final int nbLookups, int nbThreads) throws InterruptedException {
+		// warm up, then measure with an empty cache each time
+		lookup(nbPoints, nbLookups, new Random(1));
+		TMC.getCache().clear();
+		LocationQueries.resetStatistics();
+		long start = System.nanoTime();
+		long[] times = lookup(nbPoints, nbLookups, new Random(2));
+		report(backend + ", 1 thread", times, (System.nanoTime() - start) / 1e9);
+		System.out.print(LocationQueries.getStatistics());
+
+		TMC.getCache().clear();
+		LocationQueries.resetStatistics();
+		final long[][] threadTimes = new long[nbThreads][];
+		Thread[] threads = new Thread[nbThreads];
+		for(int t=0; t<nbThreads; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					threadTimes[id] = lookup(nbPoints, nbLookups, new Random(3 + id));
+				}
+			};
+		}
+		start = System.nanoTime();
+		for(Thread t : threads) t.start();
+		for(Thread t : threads) t.join();
+		double secs = (System.nanoTime() - start) / 1e9;
+		long[] all = new long[nbThreads * nbLookups];
+		for(int t=0; t<nbThreads; t++) System.arraycopy(threadTimes[t], 0, all, t * nbLookups, nbLookups);
+		report(backend + ", " + nbThreads + " threads", all, secs);
+		System.out.print(LocationQueries.getStatistics());
+
+		TMC.getCache().clear();
+		LocationQueries.resetStatistics();
+		start = System.nanoTime();
+		times = offsets(nbPoints, nbLookups, new Random(4));
+		report(backend + ", offsets", times, (System.nanoTime() - start) / 1e9);
+		System.out.print(LocationQueries.getStatistics());
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException, SQLException {
+		final int nbPoints = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		final int nbLookups = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		int nbThreads = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+		File dir = File.createTempFile("ltbench", "");
+		dir.delete();
+		dir.mkdir();
+		writeTables(dir, nbPoints, new Random(42));
+		TMC.setDbUrl("jdbc:hsqldb:mem:.");
+		long start = System.nanoTime();
+		TMC.readLocationTablesFromDir(dir);
+		System.out.printf("Imported %d points in %.2f s\n", nbPoints, (System.nanoTime() - start) / 1e9);
+		for(File f : dir.listFiles()) f.delete();
+		dir.delete();
+
+		measure("database", nbPoints, nbLookups, nbThreads);
+
+		File snapshot = File.createTempFile("ltbench", ".snapshot");
+		start = System.nanoTime();
+		TMC.writeSnapshot(snapshot);
+		System.out.printf("Wrote a snapshot of %d bytes in %.2f s\n", snapshot.length(), (System.nanoTime() - start) / 1e9);
+		TMC.setSnapshot(snapshot);
+		measure("snapshot", nbPoints, nbLookups, nbThreads);
+		snapshot.delete();
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ RDS Surveyor -- RDS decoder, analyzer and monitor tool and library.
+ For more information see
+   http://www.jacquet80.eu/
+   http://rds-surveyor.sourceforge.net/
+
+ Copyright (c) 2009, 2010 Christophe Jacquet
+
+ This file is part of RDS Surveyor.
+
+ RDS Surveyor is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Lesser Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ RDS Surveyor is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Lesser Public License for more details.
+
+ You should have received a copy of the GNU Lesser Public License
+ along with RDS Surveyor.  If not, see <http://www.gnu.org/licenses/>.
+
+*/
+
+package eu.jacquet80.rds.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.core.BandDecoder;
+import eu.jacquet80.rds.input.IqReader;
+
+/**
+ * Measures the throughput of {@link BandDecoder} on a synthetic 8-bit I/Q
+ * signal carrying a few FM stations, each with RDS.
+ *
+ * Usage: <code>WidebandBenchmark [seconds] [sample rate] [stations]</code>
+ */
+public class WidebandBenchmark {
+	private final static int CHANNEL_RATE = 240000;
+	private final static double DEVIATION = 75000;
+
+	public static byte[] makeIq(int seconds, int sampleRate, int nbStations) {
+		Random rnd = new Random(42);
+		int nbGroups = (int) (seconds * 1187.5 / 104);
+		int interp = sampleRate / CHANNEL_RATE;
+
+		int nbSamples = 0;
+		float[][] mpx = new float[nbStations][];
+		double[] offset = new double[nbStations];
+		for(int s=0; s<nbStations; s++) {
+			mpx[s] = MpxBenchmark.makeMpx(nbGroups, CHANNEL_RATE, 0xF201 + s, rnd);
+			nbSamples = mpx[s].length * interp;
+			// stations 300 kHz apart, around the center
+			offset[s] = (s - (nbStations - 1) / 2.) * 300000;
+		}
+
+		byte[] iq = new byte[2 * nbSamples];
+		double[] phase = new double[nbStations];
+		double amplitude = 0.8 / nbStations;
+		for(int i=0; i<nbSamples; i++) {
+			double re = 0, im = 0;
+			for(int s=0; s<nbStations; s++) {
+				// linear interpolation of the MPX signal
+				int j = i / interp;
+				float frac = (float) (i % interp) / interp;
+				float a = mpx[s][j], b = j + 1 < mpx[s].length ? mpx[s][j+1] : a;
+				double freq = offset[s] + DEVIATION * (a + frac * (b - a));
+				phase[s] += 2 * Math.PI * freq / sampleRate;
+				if(phase[s] > Math.PI) phase[s] -= 2 * Math.PI;
+				if(phase[s] < -Math.PI) phase[s] += 2 * Math.PI;
+				re += amplitude * Math.cos(phase[s]);
+				im += amplitude * Math.sin(phase[s]);
+			}
+			re += 0.01 * rnd.nextGaussian();
+			im += 0.01 * rnd.nextGaussian();
+			iq[2*i] = (byte) Math.max(0, Math.min(255, Math.round(re * 128 + 127.5)));
+			iq[2*i + 1] = (byte) Math.max(0, Math.min(255, Math.round(im * 128 + 127.5)));
+		}
+		return iq;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+		int sampleRate = args.length > 1 ? Integer.parseInt(args[1]) : 2400000;
+		int nbStations = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+		byte[] iq = makeIq(seconds, sampleRate, nbStations);
+		System.out.printf("Signal: %d samples at %d Hz, %d stations\n", iq.length / 2, sampleRate, nbStations);
+
+		// random groups may look like TMC messages
+		TMC.setDbUrl("jdbc:hsqldb:mem:.");
+		
+		BandDecoder decoder = new BandDecoder(sampleRate, 98000, BandDecoder.DEFAULT_SPACING);
+		decoder.setWriteLogs(false);
+		decoder.run(new IqReader(new ByteArrayInputStream(iq), IqReader.Format.U8));
+	}
+}
@@ -9,6 +9,8 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.util.HashSet;
@@ -17,6 +19,7 @@ import java.util.regex.Pattern;
 
 import javax.swing.BorderFactory;
 import javax.swing.BoundedRangeModel;
+import javax.swing.JComboBox;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -27,7 +30,9 @@ import javax.swing.event.DocumentListener;
 
 import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
 import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.GroupStore;
 import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogDispatcher;
 
 public class DumpDisplay extends JFrame {
 	private static final long serialVersionUID = -5330439172208705930L;
@@ -41,6 +46,7 @@ public class DumpDisplay extends JFrame {
 	private final DumpPanel contents = new DumpPanel();
 	private final JScrollBar scroll = new JScrollBar(JScrollBar.VERTICAL);
 	private final JTextField search = new JTextField();
+	private final JComboBox<String> typeFilter = new JComboBox<String>();
 	private final BoundedRangeModel scrollModel;
 	private final static Font font = new Font(MainWindow.MONOSPACED, Font.PLAIN, 12);
 	
@@ -74,6 +80,13 @@ public class DumpDisplay extends JFrame {
 	
 	private Pattern searchText = null;
 	
+	// when a group type is selected, the groups of this type are taken
+	// from the group store of the current log instead of the scroll back
+	private Log currentLog = null;
+	private int filteredType = -1;
+	private int[] filteredRows = new int[0];
+	private int filteredStoreSize = 0;
+	
 	public DumpDisplay(int scrollBackSize) {
 		super("Group analyzer");
 		
@@ -86,6 +99,18 @@ public class DumpDisplay extends JFrame {
 		JPanel searchBox = new JPanel(new BorderLayout());
 		searchBox.add(new JLabel(" Highlight text:  "), BorderLayout.WEST);
 		searchBox.add(search, BorderLayout.CENTER);
+		
+		typeFilter.addItem("All groups");
+		for(int type=0; type<32; type++) {
+			typeFilter.addItem("Only " + (type >> 1) + (char)('A' + (type & 1)));
+		}
+		typeFilter.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setFilteredType(typeFilter.getSelectedIndex() - 1);
+			}
+		});
+		searchBox.add(typeFilter, BorderLayout.EAST);
 		searchBox.setBorder(BorderFactory.createEmptyBorder(2, 2, 2, 2));
 		
 		this.add(searchBox, BorderLayout.NORTH);
@@ -148,14 +173,57 @@ public class DumpDisplay extends JFrame {
 			size++;
 		}
 
+		if(filteredType == -1) setLineCount(size);
+		changed = true;
+	}
+	
+	private void setLineCount(int count) {
 		boolean down = scrollModel.getValue() == scrollModel.getMaximum() - scrollModel.getExtent();
-		scrollModel.setMaximum(size);
+		scrollModel.setMaximum(count);
 		// move to the new line only if the scroll bar was all the way down:
-		if(down) scrollModel.setValue(size-numLines);
+		if(down) scrollModel.setValue(count-numLines);
+	}
+	
+	private synchronized void setFilteredType(int type) {
+		filteredType = type;
+		filteredRows = new int[0];
+		filteredStoreSize = 0;
+		scrollModel.setValue(0);
+		updateFilteredRows();
+		if(type == -1) setLineCount(size);
 		changed = true;
 	}
 	
+	// the group store only grows, so the rows are looked up again only if
+	// it has new groups
+	private void updateFilteredRows() {
+		if(filteredType == -1 || currentLog == null) return;
+		GroupStore store = currentLog.getGroupStore();
+		if(store.size() == filteredStoreSize) return;
+		filteredStoreSize = store.size();
+		filteredRows = store.select(0, -1, filteredType, Long.MIN_VALUE, Long.MAX_VALUE);
+		setLineCount(filteredRows.length);
+	}
+	
+	private synchronized int lineCount() {
+		return filteredType == -1 ? size : filteredRows.length;
+	}
+	
+	// lineIndex is the "intuitive" index between 0 and the max value
+	private synchronized GroupReceived groupAt(int lineIndex) {
+		if(filteredType == -1) {
+			if(lineIndex >= size) return null;
+			// the actual index of groups[] must take into account the fact
+			// that groups[] is a circular buffer
+			return groups[(firstIndex + lineIndex) % groups.length];
+		}
+		if(lineIndex >= filteredRows.length) return null;
+		int row = filteredRows[lineIndex];
+		return (GroupReceived) currentLog.getMessage(currentLog.getGroupStore().getMessageIndex(row));
+	}
+	
 	private synchronized void update() {
+		updateFilteredRows();
 		repaint();
 	}
 	
@@ -185,26 +253,24 @@ public class DumpDisplay extends JFrame {
 			// correct the extent, because numLines cannot be set before the frame is painted once
 			if(scrollModel.getExtent() != numLines) {
 				scrollModel.setExtent(numLines);
-				if(scrollModel.getValue() > size - numLines) scrollModel.setValue(size - numLines);
+				if(scrollModel.getValue() > lineCount() - numLines) scrollModel.setValue(lineCount() - numLines);
 			}
 			
 			int y = lineHeight;
 			int lineIndex;
 			int countRemaining;
-			if(size < numLines) {
+			int count = lineCount();
+			if(count < numLines) {
 				//lineIndex = firstIndex;
-				countRemaining = size;
+				countRemaining = count;
 			} else {
 				//lineIndex = (nextIndex - numLines) % groups.length;
 				countRemaining = numLines;
 			}
 			lineIndex = scrollModel.getValue();
 			
-			while(lineIndex < groups.length && countRemaining > 0) {
-				// lineIndex is the "intuitive" index between 0 and the max value
-				// However the actual index of groups[] must take into account
-				// the fact that groups[] is a circular buffer
-				GroupReceived currentGroup = groups[(firstIndex + lineIndex) % groups.length];
+			while(lineIndex < count && countRemaining > 0) {
+				GroupReceived currentGroup = groupAt(lineIndex);
 				if(currentGroup == null) {
 					System.err.println("DumpDisplay: null group at lineIndex="
 							+ lineIndex + ", firstIndex=" + firstIndex + ", size=" + size);
@@ -250,17 +316,21 @@ public class DumpDisplay extends JFrame {
 		// (otherwise each line read would appear twice (or more) in the
 		// window...)
 		if(! logsImRegisteredAt.contains(log)) {
-			log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			log.addAsyncMessageListener(new DefaultLogMessageVisitor() {
 				@Override
 				public void visit(GroupReceived groupReceived) {
 					addGroup(groupReceived);
 				}
-			});
+			}, LogDispatcher.OverflowPolicy.DROP_OLDEST);
 			
 			logsImRegisteredAt.add(log);
 		}
 		
 		synchronized(this) {
+			currentLog = log;
+			filteredRows = new int[0];
+			filteredStoreSize = 0;
+			
 			scrollModel.setExtent(0);
 			scrollModel.setMinimum(0);
 			scrollModel.setMaximum(0);
@@ -71,6 +71,7 @@ import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
 import eu.jacquet80.rds.log.EndOfStream;
 import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogDispatcher;
 import eu.jacquet80.rds.log.LogMessageVisitor;
 import eu.jacquet80.rds.log.StationTuned;
 import eu.jacquet80.rds.ui.app.AppPanel;
@@ -207,7 +208,7 @@ public class MainWindow extends JFrame {
 		pack();
 		repaint();
 		
-		log.addNewMessageListener(windowUpdaterVisitor);
+		log.addAsyncMessageListener(windowUpdaterVisitor, LogDispatcher.OverflowPolicy.COALESCE);
 		
 		dumpDisplay.resetForNewLog(log);
 	}
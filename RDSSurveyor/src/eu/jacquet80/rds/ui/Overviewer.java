@@ -3,23 +3,33 @@ package eu.jacquet80.rds.ui;
 import java.io.PrintStream;
 import java.util.Arrays;
 
+import eu.jacquet80.rds.core.DecoderSession;
 import eu.jacquet80.rds.core.DecoderShell;
 import eu.jacquet80.rds.core.GroupLevelDecoder;
 import eu.jacquet80.rds.core.TunedStation;
 import eu.jacquet80.rds.input.TunerGroupReader;
 
 public class Overviewer extends Thread {
+	private final DecoderSession session;
 	private final TunerGroupReader tgr;
 	private PrintStream console;
 	
 	
 	public Overviewer(TunerGroupReader tgr, PrintStream console) {
+		this(DecoderShell.instance, tgr, console);
+	}
+	
+	/**
+	 * @param session the session which decodes the groups of the tuner
+	 */
+	public Overviewer(DecoderSession session, TunerGroupReader tgr, PrintStream console) {
+		this.session = session;
 		this.tgr = tgr;
 		this.console = console;
 	}
 	
 	public void run() {
-		GroupLevelDecoder groupDecoder = DecoderShell.instance.getGroupReader();
+		GroupLevelDecoder groupDecoder = session.getGroupReader();
 		
 		console.println("Measuring signal strength");
 		MeasuredSignal[] strength = new MeasuredSignal[206];
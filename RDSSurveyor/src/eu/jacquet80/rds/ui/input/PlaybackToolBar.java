@@ -103,6 +103,7 @@ public class PlaybackToolBar extends InputToolBar {
 			}
 		};
 		
+		// synchronous listener on purpose: it paces the playback
 		log.addNewMessageListener(visitor);
 		
 		initialTime = System.currentTimeMillis();
@@ -0,0 +1,94 @@
+package eu.jacquet80.rds.util;
+
+import biz.source_code.dsp.filter.IirFilter;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+
+/**
+ * @brief An IIR filter which processes blocks of samples in place.
+ *
+ * Like {@link IirFilter}, this is a direct form I filter: the last inputs and the last outputs
+ * are kept in two separate histories, and each output is computed in the same order, so that the
+ * results are the same as those of {@link IirFilter}. The histories are shifted instead of being
+ * indexed modulo their length, and blocks of samples are filtered without a method call per
+ * sample. Samples are stored as floats, while the histories are kept in double precision, as in
+ * {@link IirFilter}.
+ */
+public class BlockIirFilter {
+	private final double[] a;
+	private final double[] b;
+
+	/* Last inputs and outputs, most recent first: x[k] is x(n - 1 - k), y[k] is y(n - 1 - k) */
+	private final double[] x;
+	private final double[] y;
+
+	public BlockIirFilter(IirFilterCoefficients coeffs) {
+		if (coeffs.a.length < 1 || coeffs.b.length < 1 || coeffs.a[0] != 1.0)
+			throw new IllegalArgumentException("Invalid coefficients.");
+		a = coeffs.a.clone();
+		b = coeffs.b.clone();
+		x = new double[b.length - 1];
+		y = new double[a.length - 1];
+	}
+
+	/**
+	 * @brief Filters a sample.
+	 */
+	public double step(double in) {
+		double acc = b[0] * in;
+		for (int k = 1; k < b.length; k++) acc += b[k] * x[k - 1];
+		for (int k = 1; k < a.length; k++) acc -= a[k] * y[k - 1];
+		if (x.length > 0) {
+			System.arraycopy(x, 0, x, 1, x.length - 1);
+			x[0] = in;
+		}
+		if (y.length > 0) {
+			System.arraycopy(y, 0, y, 1, y.length - 1);
+			y[0] = acc;
+		}
+		return acc;
+	}
+
+	/**
+	 * @brief Filters samples in place.
+	 *
+	 * @param buf the samples
+	 * @param from the index of the first sample to filter
+	 * @param to the index after the last sample to filter
+	 */
+	public void filter(float[] buf, int from, int to) {
+		if (a.length == 6 && b.length == 6) {
+			filter5(buf, from, to);
+			return;
+		}
+		for (int i = from; i < to; i++) {
+			buf[i] = (float) step(buf[i]);
+		}
+	}
+
+	/* Same as filter(), unrolled for the common 5th order, with the histories in local variables */
+	private void filter5(float[] buf, int from, int to) {
+		final double a1 = a[1], a2 = a[2], a3 = a[3], a4 = a[4], a5 = a[5];
+		final double b0 = b[0], b1 = b[1], b2 = b[2], b3 = b[3], b4 = b[4], b5 = b[5];
+		double x1 = x[0], x2 = x[1], x3 = x[2], x4 = x[3], x5 = x[4];
+		double y1 = y[0], y2 = y[1], y3 = y[2], y4 = y[3], y5 = y[4];
+		for (int i = from; i < to; i++) {
+			final double in = buf[i];
+			double acc = b0 * in;
+			acc += b1 * x1;
+			acc += b2 * x2;
+			acc += b3 * x3;
+			acc += b4 * x4;
+			acc += b5 * x5;
+			acc -= a1 * y1;
+			acc -= a2 * y2;
+			acc -= a3 * y3;
+			acc -= a4 * y4;
+			acc -= a5 * y5;
+			x5 = x4; x4 = x3; x3 = x2; x2 = x1; x1 = in;
+			y5 = y4; y4 = y3; y3 = y2; y2 = y1; y1 = acc;
+			buf[i] = (float) acc;
+		}
+		x[0] = x1; x[1] = x2; x[2] = x3; x[3] = x4; x[4] = x5;
+		y[0] = y1; y[1] = y2; y[2] = y3; y[3] = y4; y[4] = y5;
+	}
+}
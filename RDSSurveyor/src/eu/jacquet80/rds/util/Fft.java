@@ -0,0 +1,116 @@
+package eu.jacquet80.rds.util;
+
+/**
+ * @brief A complex FFT of any size.
+ *
+ * This is a mixed-radix decimation in time, in the manner of kissfft: the size is split into
+ * prime factors, each stage being computed by a generic butterfly. It is meant for the small
+ * sizes of filter banks, where the size is the number of channels and need not be a power of 2.
+ */
+public class Fft {
+	private final int n;
+	private final int[] factors;
+
+	/* twiddle factors exp(-2 i pi k / n) */
+	private final double[] twRe, twIm;
+
+	private final double[] inRe, inIm;
+	private final double[] scratchRe, scratchIm;
+
+	public Fft(int n) {
+		if (n < 1) throw new IllegalArgumentException("Invalid FFT size: " + n);
+		this.n = n;
+
+		int count = 0;
+		int[] f = new int[32];
+		int rest = n;
+		for (int p = 2; rest > 1; ) {
+			if (rest % p == 0) {
+				f[count++] = p;
+				rest /= p;
+			} else {
+				p = (p == 2) ? 3 : p + 2;
+				if (p * p > rest) p = rest;
+			}
+		}
+		factors = new int[count];
+		System.arraycopy(f, 0, factors, 0, count);
+
+		twRe = new double[n];
+		twIm = new double[n];
+		for (int k = 0; k < n; k++) {
+			twRe[k] = Math.cos(-2 * Math.PI * k / n);
+			twIm[k] = Math.sin(-2 * Math.PI * k / n);
+		}
+
+		int maxFactor = 1;
+		for (int p : factors) maxFactor = Math.max(maxFactor, p);
+		inRe = new double[n];
+		inIm = new double[n];
+		scratchRe = new double[maxFactor];
+		scratchIm = new double[maxFactor];
+	}
+
+	public int getSize() {
+		return n;
+	}
+
+	/**
+	 * @brief Transforms in place, without scaling.
+	 *
+	 * @param re the real parts
+	 * @param im the imaginary parts
+	 * @param inverse true for the inverse transform, i.e. with exp(+2 i pi k / n)
+	 */
+	public void transform(double[] re, double[] im, boolean inverse) {
+		if (n == 1) return;
+		System.arraycopy(re, 0, inRe, 0, n);
+		System.arraycopy(im, 0, inIm, 0, n);
+		work(re, im, 0, 0, 1, 0, inverse);
+	}
+
+	private void work(double[] outRe, double[] outIm, int out, int in, int fstride, int stage, boolean inverse) {
+		final int p = factors[stage];
+		final int m = subSize(stage);
+
+		if (m == 1) {
+			for (int q = 0; q < p; q++) {
+				outRe[out + q] = inRe[in + q * fstride];
+				outIm[out + q] = inIm[in + q * fstride];
+			}
+		} else {
+			for (int q = 0; q < p; q++) {
+				work(outRe, outIm, out + q * m, in + q * fstride, fstride * p, stage + 1, inverse);
+			}
+		}
+
+		// generic butterfly, with the twiddle factors of this stage
+		final double sign = inverse ? -1 : 1;
+		for (int u = 0; u < m; u++) {
+			for (int q = 0, k = out + u; q < p; q++, k += m) {
+				scratchRe[q] = outRe[k];
+				scratchIm[q] = outIm[k];
+			}
+			for (int q1 = 0, k = u; q1 < p; q1++, k += m) {
+				double re = scratchRe[0], im = scratchIm[0];
+				int tw = 0;
+				for (int q = 1; q < p; q++) {
+					tw += fstride * k;
+					tw %= n;
+					double c = twRe[tw], s = sign * twIm[tw];
+					re += scratchRe[q] * c - scratchIm[q] * s;
+					im += scratchRe[q] * s + scratchIm[q] * c;
+				}
+				outRe[out + k] = re;
+				outIm[out + k] = im;
+			}
+		}
+	}
+
+	/* the size of the sub-transforms of a stage */
+	private int subSize(int stage) {
+		int m = 1;
+		for (int i = stage + 1; i < factors.length; i++) m *= factors[i];
+		return m;
+	}
+}
@@ -0,0 +1,42 @@
+package eu.jacquet80.rds.util;
+
+/**
+ * @brief Demodulates FM from complex baseband samples into 16-bit MPX samples.
+ *
+ * The output is the phase difference between consecutive samples, scaled like the output of the
+ * native SDR backend: 2^14 for a phase difference of pi. A deviation of 75 kHz thus gives
+ * 9830 at 250 kHz.
+ */
+public class FmDemodulator {
+	private static final double SCALE = (1 << 14) / Math.PI;
+
+	private float prevI = 0, prevQ = 0;
+
+	/**
+	 * @brief Demodulates samples into 16-bit little-endian PCM.
+	 *
+	 * @param inI the in-phase components
+	 * @param inQ the quadrature components
+	 * @param count the number of samples
+	 * @param pcm the output buffer, with room for 2 bytes per sample
+	 * @param offset the position of the first output byte
+	 */
+	public void demodulate(float[] inI, float[] inQ, int count, byte[] pcm, int offset) {
+		float pI = prevI, pQ = prevQ;
+		for (int i = 0; i < count; i++) {
+			final float cI = inI[i], cQ = inQ[i];
+
+			// angle of the current sample times the conjugate of the previous one
+			final double re = cI * pI + cQ * pQ;
+			final double im = cQ * pI - cI * pQ;
+			final int v = (int) (Math.atan2(im, re) * SCALE);
+
+			pcm[offset++] = (byte) v;
+			pcm[offset++] = (byte) (v >> 8);
+			pI = cI;
+			pQ = cQ;
+		}
+		prevI = pI;
+		prevQ = pQ;
+	}
+}
@@ -0,0 +1,263 @@
+package eu.jacquet80.rds.util;
+
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @brief A queue of bits between one producer thread and one consumer thread.
+ *
+ * Bits are packed 64 per word in a ring buffer, in the format used by
+ * {@link eu.jacquet80.rds.input.BitReader#readBits(long[], int)}. The producer makes its bits
+ * visible to the consumer in batches, when a word is complete or when it calls {@link #flush()},
+ * so there is no lock and at most one volatile write per batch. A thread that has to wait
+ * (producer on a full queue, consumer on an empty one) parks until the other side wakes it.
+ *
+ * Optionally, each bit carries a reliability, from 0 (a guess) to 255 (certain), for consumers
+ * that make soft decisions. Reliabilities may be kept from the start, or from the moment the
+ * consumer asks for them with {@link #keepReliabilities()}.
+ */
+public class PackedBitQueue {
+	private final long[] ring;
+	/* null unless reliabilities are kept; set once, possibly while the producer is running */
+	private volatile byte[] reliabilities;
+	private final int mask;
+	private final long capacity;
+
+	/* number of bits published by the producer, and read by the consumer */
+	private volatile long published = 0;
+	private volatile long consumed = 0;
+	private volatile boolean closed = false;
+
+	/* position of the next bit written by the producer, at least published */
+	private long writePos = 0;
+
+	private volatile Thread waitingProducer = null;
+	private volatile Thread waitingConsumer = null;
+
+	private volatile long overruns = 0;
+	private volatile long maxOccupancy = 0;
+
+	/**
+	 * @param capacity the capacity in bits, rounded up to a power of 2, at least 64
+	 */
+	public PackedBitQueue(int capacity) {
+		this(capacity, false);
+	}
+
+	/**
+	 * @param capacity the capacity in bits, rounded up to a power of 2, at least 64
+	 * @param soft whether the reliability of each bit is kept
+	 */
+	public PackedBitQueue(int capacity, boolean soft) {
+		int words = Integer.highestOneBit(Math.max(capacity, 64) - 1) << 1 >> 6;
+		if (words == 0) words = 1;
+		this.ring = new long[words];
+		this.mask = words - 1;
+		this.capacity = (long) words * 64;
+		this.reliabilities = soft ? new byte[words * 64] : null;
+	}
+
+	/**
+	 * @brief Starts keeping the reliability of each bit. May be called by any thread.
+	 *
+	 * Bits added before are given reliability 255, as if the queue did not keep reliabilities.
+	 */
+	public synchronized void keepReliabilities() {
+		if (reliabilities != null) return;
+		byte[] r = new byte[ring.length * 64];
+		Arrays.fill(r, (byte) 255);
+		reliabilities = r;
+	}
+
+	/**
+	 * @brief Returns true if the reliability of each bit is kept.
+	 */
+	public boolean isSoft() {
+		return reliabilities != null;
+	}
+
+	/**
+	 * @brief Adds a bit. Must be called only by the producer thread.
+	 *
+	 * If the queue is full, this waits for the consumer, unless the queue has been cancelled, in
+	 * which case the bit is discarded.
+	 */
+	public void put(boolean bit) {
+		put(bit, 255);
+	}
+
+	/**
+	 * @brief Adds a bit and its reliability. Must be called only by the producer thread.
+	 *
+	 * The reliability is ignored if the queue does not keep reliabilities.
+	 *
+	 * @param reliability from 0 to 255
+	 */
+	public void put(boolean bit, int reliability) {
+		if (writePos - consumed == capacity) {
+			publish();
+			overruns++;
+			while (writePos - consumed == capacity) {
+				if (closed) return;
+				waitingProducer = Thread.currentThread();
+				if (writePos - consumed == capacity) LockSupport.parkNanos(this, 1000000L);
+				waitingProducer = null;
+			}
+		}
+
+		int word = (int) (writePos >> 6) & mask;
+		long m = 1L << (63 - (int) (writePos & 63));
+		if (bit) ring[word] |= m; else ring[word] &= ~m;
+		byte[] r = reliabilities;
+		if (r != null) r[(int) writePos & (r.length - 1)] = (byte) reliability;
+		writePos++;
+
+		if ((writePos & 63) == 0) publish();
+	}
+
+	/**
+	 * @brief Makes the bits added so far available to the consumer.
+	 */
+	public void flush() {
+		if (writePos != published) publish();
+	}
+
+	/**
+	 * @brief Signals the end of the stream, after the bits added so far.
+	 */
+	public void close() {
+		publish();
+		closed = true;
+		Thread consumer = waitingConsumer;
+		if (consumer != null) LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * @brief Stops reading before the end of the stream. Must be called only by the consumer thread.
+	 *
+	 * The producer no longer waits for the consumer, and the consumer gets the end of the stream
+	 * once the bits already published have been read.
+	 */
+	public void cancel() {
+		closed = true;
+		Thread producer = waitingProducer;
+		if (producer != null) LockSupport.unpark(producer);
+	}
+
+	private void publish() {
+		published = writePos;
+		long occupancy = writePos - consumed;
+		if (occupancy > maxOccupancy) maxOccupancy = occupancy;
+		Thread consumer = waitingConsumer;
+		if (consumer != null) LockSupport.unpark(consumer);
+	}
+
+	/* waits until bits are available, returns false at the end of the stream */
+	private boolean await() {
+		while (published == consumed) {
+			if (closed) return published != consumed;
+			waitingConsumer = Thread.currentThread();
+			if (published == consumed && !closed) LockSupport.parkNanos(this, 100000000L);
+			waitingConsumer = null;
+		}
+		return true;
+	}
+
+	private void advance(long next) {
+		consumed = next;
+		Thread producer = waitingProducer;
+		if (producer != null) LockSupport.unpark(producer);
+	}
+
+	/**
+	 * @brief Reads a bit. Must be called only by the consumer thread.
+	 *
+	 * @throws EOFException at the end of the stream
+	 */
+	public boolean take() throws EOFException {
+		if (!await()) throw new EOFException();
+		long pos = consumed;
+		boolean bit = ((ring[(int) (pos >> 6) & mask] >>> (63 - (int) (pos & 63))) & 1) != 0;
+		advance(pos + 1);
+		return bit;
+	}
+
+	/**
+	 * @brief Reads the available bits, waiting for at least one.
+	 *
+	 * Must be called only by the consumer thread. Bits are packed in {@code dst} in the same
+	 * format as {@link eu.jacquet80.rds.input.BitReader#readBits(long[], int)}.
+	 *
+	 * @return the number of bits read, or -1 at the end of the stream
+	 */
+	public int take(long[] dst, int maxBits) {
+		return take(dst, null, maxBits);
+	}
+
+	/**
+	 * @brief Reads the available bits and their reliabilities, waiting for at least one bit.
+	 *
+	 * Must be called only by the consumer thread. If the queue does not keep reliabilities, all
+	 * bits are given reliability 255.
+	 *
+	 * @param reliability receives the reliability of bit i at index i, as an unsigned byte;
+	 * may be null
+	 * @return the number of bits read, or -1 at the end of the stream
+	 */
+	public int take(long[] dst, byte[] reliability, int maxBits) {
+		if (!await()) return -1;
+		long pos = consumed;
+		int n = (int) Math.min(maxBits, published - pos);
+
+		if (reliability != null) {
+			byte[] r = reliabilities;
+			if (r == null) {
+				Arrays.fill(reliability, 0, n, (byte) 255);
+			} else {
+				int len = r.length;
+				int from = (int) pos & (len - 1);
+				int first = Math.min(n, len - from);
+				System.arraycopy(r, from, reliability, 0, first);
+				System.arraycopy(r, 0, reliability, first, n - first);
+			}
+		}
+
+		for (int done = 0; done < n; done += 64) {
+			int count = Math.min(64, n - done);
+			int offset = (int) (pos & 63);
+			long v = ring[(int) (pos >> 6) & mask] << offset;
+			if (offset + count > 64) v |= ring[(int) ((pos >> 6) + 1) & mask] >>> (64 - offset);
+			dst[done >> 6] = count == 64 ? v : v & (-1L << (64 - count));
+			pos += count;
+		}
+
+		advance(pos);
+		return n;
+	}
+
+	/**
+	 * @brief Returns the number of published bits not read yet.
+	 */
+	public long size() {
+		return published - consumed;
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @brief Returns the largest number of bits that have been waiting in the queue.
+	 */
+	public long getMaxOccupancy() {
+		return maxOccupancy;
+	}
+
+	/**
+	 * @brief Returns the number of times the producer had to wait because the queue was full.
+	 */
+	public long getOverrunCount() {
+		return overruns;
+	}
+}
@@ -0,0 +1,145 @@
+package eu.jacquet80.rds.util;
+
+/**
+ * @brief Splits a complex baseband signal into equally spaced channels.
+ *
+ * This is a polyphase analysis filter bank: for each output sample, the latest input samples
+ * are weighted by a lowpass prototype filter, folded into as many branches as there are
+ * channels, and transformed by an FFT. The cost per input sample is therefore that of one
+ * prototype filter, whatever the number of channels.
+ *
+ * Channel k is centered at k times the channel spacing (input rate / number of channels);
+ * channels above half the number of channels are the negative frequencies. Each channel is
+ * brought to baseband and decimated by the given factor, which may be smaller than the number
+ * of channels so that the channels overlap, as FM channels do.
+ */
+public class PolyphaseChannelizer {
+	private final int channels;
+	private final int decimation;
+	private final int length;
+
+	/* prototype filter, reversed so that it applies to the history from oldest to newest */
+	private final float[] proto;
+
+	/* input history, written twice so that the latest samples are always contiguous */
+	private final float[] histI, histQ;
+	private int histPos = 0;
+
+	/* input samples until the next output sample */
+	private int untilOutput;
+
+	/* index of the latest input sample modulo the number of channels, for phase correction */
+	private int phase = 0;
+
+	private final Fft fft;
+	private final double[] foldRe, foldIm;
+	private final double[] rotRe, rotIm;
+
+	/**
+	 * @param channels the number of channels
+	 * @param decimation the decimation factor of each channel
+	 * @param tapsPerChannel the length of the prototype filter, divided by the number of channels
+	 * @param cutoff the cutoff frequency of the prototype filter, as a fraction of the input rate
+	 */
+	public PolyphaseChannelizer(int channels, int decimation, int tapsPerChannel, double cutoff) {
+		this.channels = channels;
+		this.decimation = decimation;
+		this.length = channels * tapsPerChannel;
+		this.untilOutput = decimation;
+
+		// windowed sinc (Blackman window), with unit gain at DC
+		proto = new float[length];
+		double sum = 0;
+		double[] h = new double[length];
+		for (int i = 0; i < length; i++) {
+			double t = i - (length - 1) / 2.;
+			double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+			double w = 0.42 - 0.5 * Math.cos(2 * Math.PI * i / (length - 1)) + 0.08 * Math.cos(4 * Math.PI * i / (length - 1));
+			h[i] = sinc * w;
+			sum += h[i];
+		}
+		for (int i = 0; i < length; i++) proto[length - 1 - i] = (float) (h[i] / sum);
+
+		histI = new float[2 * length];
+		histQ = new float[2 * length];
+
+		fft = new Fft(channels);
+		foldRe = new double[channels];
+		foldIm = new double[channels];
+		rotRe = new double[channels];
+		rotIm = new double[channels];
+		for (int k = 0; k < channels; k++) {
+			rotRe[k] = Math.cos(-2 * Math.PI * k / channels);
+			rotIm[k] = Math.sin(-2 * Math.PI * k / channels);
+		}
+	}
+
+	public int getChannelCount() {
+		return channels;
+	}
+
+	public int getDecimation() {
+		return decimation;
+	}
+
+	/**
+	 * @brief Returns the maximum number of output samples per channel for a given number of input
+	 * samples.
+	 */
+	public int getMaxOutputCount(int inputCount) {
+		return inputCount / decimation + 1;
+	}
+
+	/**
+	 * @brief Filters input samples.
+	 *
+	 * @param inI the in-phase components of the input
+	 * @param inQ the quadrature components of the input
+	 * @param count the number of input samples
+	 * @param outI the in-phase components of the output of each channel, with room for
+	 *   {@link #getMaxOutputCount(int)} samples
+	 * @param outQ the quadrature components of the output of each channel
+	 * @return the number of output samples of each channel
+	 */
+	public int process(float[] inI, float[] inQ, int count, float[][] outI, float[][] outQ) {
+		final float[] hI = histI, hQ = histQ, h = proto;
+		final int len = length, m = channels;
+		int outCount = 0;
+
+		for (int i = 0; i < count; i++) {
+			hI[histPos] = hI[histPos + len] = inI[i];
+			hQ[histPos] = hQ[histPos + len] = inQ[i];
+			if (++histPos == len) histPos = 0;
+			if (++phase == m) phase = 0;
+
+			if (--untilOutput > 0) continue;
+			untilOutput = decimation;
+
+			// weight and fold: the history runs from histPos (oldest) to histPos + len - 1 (newest)
+			for (int r = 0; r < m; r++) {
+				foldRe[r] = 0;
+				foldIm[r] = 0;
+			}
+			for (int j = 0, base = histPos; j < len; j += m, base += m) {
+				for (int s = 0; s < m; s++) {
+					final float w = h[j + s];
+					foldRe[m - 1 - s] += hI[base + s] * w;
+					foldIm[m - 1 - s] += hQ[base + s] * w;
+				}
+			}
+
+			fft.transform(foldRe, foldIm, true);
+
+			// bring each channel to baseband: rotate by exp(-2 i pi k t / m), t being the index of
+			// the newest sample, whose residue modulo m is phase - 1
+			final int t = phase == 0 ? m - 1 : phase - 1;
+			for (int k = 0, idx = 0; k < m; k++, idx = (idx + t) % m) {
+				final double c = rotRe[idx], s = rotIm[idx];
+				outI[k][outCount] = (float) (foldRe[k] * c - foldIm[k] * s);
+				outQ[k][outCount] = (float) (foldRe[k] * s + foldIm[k] * c);
+			}
+			outCount++;
+		}
+		return outCount;
+	}
+}
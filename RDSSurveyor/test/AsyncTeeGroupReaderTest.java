@@ -0,0 +1,109 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.input.AsyncTeeGroupReader;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.SequentialTime;
+
+class AsyncTeeGroupReaderTest {
+	private final static int COUNT = 10000;
+
+	@TempDir
+	File dir;
+
+	private static int[] blocks(int i) {
+		return new int[] {0xF202, i & 0xFFFF, i % 7 == 0 ? -1 : 0x1234, 0x5678};
+	}
+
+	private static class Source extends GroupReader {
+		private int i = 0;
+
+		@Override
+		public GroupReaderEvent getGroup() throws EndOfStream {
+			if(i == COUNT) throw new EndOfStream();
+			i++;
+			return new GroupEvent(new SequentialTime(i), blocks(i), false);
+		}
+	}
+
+	@Test
+	void testRotatedFilesReadBack() throws IOException, GroupReader.EndOfStream {
+		GroupReader tee = new AsyncTeeGroupReader(new Source(), dir, 50000, 0);
+		int n = 0;
+		try {
+			while(true) {
+				tee.getGroup();
+				n++;
+			}
+		} catch(GroupReader.EndOfStream e) {
+		}
+		assertEquals(COUNT, n);
+
+		File[] files = dir.listFiles();
+		assertTrue(files.length > 1);
+		Arrays.sort(files);
+
+		int i = 0;
+		for(File f : files) {
+			HexFileGroupReader r = new HexFileGroupReader(f);
+			try {
+				while(true) {
+					i++;
+					assertArrayEquals(blocks(i), ((GroupEvent) r.getGroup()).blocks);
+				}
+			} catch(GroupReader.EndOfStream e) {
+				i--;
+			}
+		}
+		assertEquals(COUNT, i);
+	}
+
+	@Test
+	void testEventModifiedAfterGetGroup() throws IOException, GroupReader.EndOfStream {
+		File out = new File(dir, "out.rds");
+		AsyncTeeGroupReader tee = new AsyncTeeGroupReader(new Source(), out);
+		for(int i=0; i<COUNT; i++) {
+			// as the decoder does with a corrected block it rejects
+			((GroupEvent) tee.getGroup()).blocks[0] = -1;
+		}
+		tee.close();
+
+		HexFileGroupReader r = new HexFileGroupReader(out);
+		for(int i=1; i<=COUNT; i++) {
+			assertArrayEquals(blocks(i), ((GroupEvent) r.getGroup()).blocks);
+		}
+	}
+
+	@Test
+	void testSyncIntervalFromStart() throws IOException, GroupReader.EndOfStream, InterruptedException {
+		File out = new File(dir, "out.rds");
+		AsyncTeeGroupReader tee = new AsyncTeeGroupReader(new Source(), out, 50);
+		for(int i=0; i<100; i++) tee.getGroup();
+
+		// the groups are on disk long before the default sync interval
+		long deadline = System.currentTimeMillis() + 2000;
+		int n = 0;
+		while(n < 100) {
+			if(System.currentTimeMillis() > deadline) fail("only " + n + " groups written");
+			Thread.sleep(20);
+			HexFileGroupReader r = new HexFileGroupReader(out);
+			try {
+				for(n=0; ; n++) r.getGroup();
+			} catch(GroupReader.EndOfStream e) {
+			}
+		}
+		tee.close();
+	}
+}
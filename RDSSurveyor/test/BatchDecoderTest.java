@@ -0,0 +1,76 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.core.BatchDecoder;
+
+class BatchDecoderTest {
+	@TempDir
+	File dir;
+
+	// a station transmitting its PS in groups 0A
+	private File writeInput(String name, int pi, String ps) throws IOException {
+		File f = new File(dir, name);
+		f.getParentFile().mkdirs();
+		PrintWriter w = new PrintWriter(f);
+		w.println("% RDS hexgroups");
+		for(int i=0; i<40; i++) {
+			int seg = i % 4;
+			w.printf("%04X %04X E0CD %02X%02X @%04d\n", pi, 0x0408 | seg,
+					(int) ps.charAt(2*seg), (int) ps.charAt(2*seg + 1), i);
+		}
+		w.close();
+		return f;
+	}
+
+	@Test
+	void testDecodeDirectory() throws IOException, InterruptedException {
+		writeInput("in/a.rds", 0xF202, "STATION1");
+		writeInput("in/sub/b.rds", 0xF203, "STATION2");
+		writeInput("in/sub/c.txt", 0xF204, "STATION3");
+
+		File out = new File(dir, "out");
+		BatchDecoder batch = new BatchDecoder(out, 2);
+		batch.setConsole(null);
+		String spec = new File(dir, "in").getPath();
+		List<BatchDecoder.Result> results = batch.run(spec);
+
+		assertEquals(3, results.size());
+		assertEquals("F202 STATION1", results.get(0).getStationList());
+		assertEquals("F203 STATION2", results.get(1).getStationList());
+		assertEquals("F204 STATION3", results.get(2).getStationList());
+		for(BatchDecoder.Result r : results) {
+			assertNull(r.error);
+			assertEquals(40, r.groups);
+			assertTrue(r.output.isFile());
+		}
+		assertEquals(new File(out, "sub" + File.separator + "b.rds.rds"), results.get(1).output);
+
+		BufferedReader summary = new BufferedReader(new FileReader(new File(out, BatchDecoder.SUMMARY_FILE)));
+		int lines = 0;
+		while(summary.readLine() != null) lines++;
+		summary.close();
+		assertEquals(4, lines);
+	}
+
+	@Test
+	void testPattern() throws IOException {
+		writeInput("a.rds", 0xF202, "STATION1");
+		writeInput("b.txt", 0xF203, "STATION2");
+		writeInput("c.rds", 0xF204, "STATION3");
+
+		List<File> inputs = BatchDecoder.listInputs(new File(dir, "*.rds").getPath());
+		assertEquals(2, inputs.size());
+		assertEquals("c.rds", inputs.get(1).getName());
+	}
+}
@@ -0,0 +1,201 @@
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.BinStringFileBitReader;
+import eu.jacquet80.rds.input.BitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.group.GroupEvent;
+
+class BitStreamSynchronizerTest {
+	private final static int[] GROUP = {0xF202, 0x0408, 0x5C66, 0x2043};
+
+	private static int encode(int data, int offset) {
+		int block = data << 10;
+		for(int check=0; check<1024; check++) {
+			if(RDS.calcSyndrome(block | check) == offset) return block | check;
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Sends 10 clean groups to acquire synchronization, then one group in
+	 * which the given error is applied to every block.
+	 * 
+	 * @return the last group received
+	 */
+	private GroupEvent send(int error, int maxBurst) throws IOException {
+		StringBuilder bits = new StringBuilder();
+		for(int g=0; g<11; g++) {
+			for(int i=0; i<4; i++) {
+				int block = encode(GROUP[i], RDS.syndromes[i][0]);
+				if(g == 10) block ^= error;
+				for(int b=25; b>=0; b--) bits.append((block >> b) & 1);
+			}
+		}
+
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(RDSSurveyor.nullConsole,
+				new BinStringFileBitReader(new ByteArrayInputStream(bits.toString().getBytes())));
+		sync.setMaxCorrectableBurst(maxBurst);
+		List<GroupEvent> groups = new ArrayList<GroupEvent>();
+		try {
+			while(true) groups.add((GroupEvent) sync.getGroup());
+		} catch(EndOfStream e) {}
+		return groups.get(groups.size()-1);
+	}
+
+	@Test
+	void testCleanGroup() throws IOException {
+		GroupEvent last = send(0, 2);
+		for(int i=0; i<4; i++) assertEquals(GROUP[i], last.blocks[i]);
+		assertEquals(0, last.correctedBlocks);
+	}
+
+	@Test
+	void testBurstCorrected() throws IOException {
+		GroupEvent last = send(0x3 << 12, 2);
+		for(int i=0; i<4; i++) assertEquals(GROUP[i], last.blocks[i]);
+		assertEquals(0xF, last.correctedBlocks);
+	}
+
+	@Test
+	void testBurstTooLong() throws IOException {
+		GroupEvent last = send(0x15 << 3, 2);
+		for(int i=0; i<4; i++) assertEquals(-1, last.blocks[i]);
+
+		last = send(0x15 << 3, 5);
+		for(int i=0; i<4; i++) assertEquals(GROUP[i], last.blocks[i]);
+		assertEquals(0xF, last.correctedBlocks);
+	}
+
+	@Test
+	void testCorrectionDisabled() throws IOException {
+		GroupEvent last = send(1, 0);
+		for(int i=0; i<4; i++) assertEquals(-1, last.blocks[i]);
+		assertEquals(0, last.correctedBlocks);
+	}
+
+	/**
+	 * A bit reader that makes soft decisions: all bits are reliable, except
+	 * some bits of the blocks of the last group, given for each block, among
+	 * which are the wrong ones.
+	 */
+	private static class SoftBitReader extends BitReader {
+		private final List<Boolean> bits = new ArrayList<Boolean>();
+		private final List<Integer> reliabilities = new ArrayList<Integer>();
+		private int pos = 0;
+
+		SoftBitReader(int[] errors, int[] unreliable, int reliability) {
+			for(int g=0; g<11; g++) {
+				for(int i=0; i<4; i++) {
+					int block = encode(GROUP[i], RDS.syndromes[i][0]);
+					for(int b=25; b>=0; b--) {
+						boolean wrong = g == 10 && ((errors[i] >> b) & 1) != 0;
+						boolean doubtful = g == 10 && ((unreliable[i] >> b) & 1) != 0;
+						bits.add((((block >> b) & 1) != 0) ^ wrong);
+						reliabilities.add(doubtful ? reliability : 200 + b);
+					}
+				}
+			}
+		}
+
+		@Override
+		public boolean getBit() throws IOException {
+			if(pos == bits.size()) throw new EOFException();
+			return bits.get(pos++);
+		}
+
+		@Override
+		public boolean hasReliability() {
+			return true;
+		}
+
+		@Override
+		public int readBits(long[] dst, byte[] reliability, int maxBits) throws IOException {
+			int n = 0;
+			for(; n < maxBits && pos < bits.size(); n++, pos++) {
+				putBits(dst, n, bits.get(pos) ? 1 : 0, 1);
+				reliability[n] = (byte) (int) reliabilities.get(pos);
+			}
+			return n == 0 ? -1 : n;
+		}
+	}
+
+	private GroupEvent sendSoft(int error, int reliability, int maxFlips) throws IOException {
+		int[] errors = {error, error, error, error};
+		return sendSoft(errors, errors, reliability, maxFlips);
+	}
+
+	private GroupEvent sendSoft(int[] errors, int[] unreliable, int reliability, int maxFlips) throws IOException {
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(RDSSurveyor.nullConsole,
+				new SoftBitReader(errors, unreliable, reliability));
+		// only soft-decision correction
+		sync.setMaxCorrectableBurst(0);
+		sync.setMaxSoftFlips(maxFlips);
+		List<GroupEvent> groups = new ArrayList<GroupEvent>();
+		try {
+			while(true) groups.add((GroupEvent) sync.getGroup());
+		} catch(EndOfStream e) {}
+		return groups.get(groups.size()-1);
+	}
+
+	// three scattered errors, too far apart for burst correction
+	private final static int SCATTERED_ERRORS = (1 << 23) | (1 << 14) | (1 << 5);
+
+	@Test
+	void testUnreliableBitsFlipped() throws IOException {
+		GroupEvent last = sendSoft(SCATTERED_ERRORS, 30, 3);
+		for(int i=0; i<4; i++) assertEquals(GROUP[i], last.blocks[i]);
+		assertEquals(0xF, last.correctedBlocks);
+	}
+
+	@Test
+	void testTooManyUnreliableBits() throws IOException {
+		GroupEvent last = sendSoft(SCATTERED_ERRORS, 30, 2);
+		for(int i=0; i<4; i++) assertEquals(-1, last.blocks[i]);
+
+		last = sendSoft((1 << 23) | (1 << 5), 30, 2);
+		for(int i=0; i<4; i++) assertEquals(GROUP[i], last.blocks[i]);
+		assertEquals(0xF, last.correctedBlocks);
+	}
+
+	@Test
+	void testReliableBitsNotFlipped() throws IOException {
+		GroupEvent last = sendSoft(SCATTERED_ERRORS, 250, 3);
+		for(int i=0; i<4; i++) assertEquals(-1, last.blocks[i]);
+		assertEquals(0, last.correctedBlocks);
+	}
+
+	@Test
+	void testAmbiguousOffsetNotCorrected() throws IOException {
+		// offset words C and C' differ by 4 check bits: with block B lost,
+		// flipping either half of them gives a valid block C or C'
+		int d = encode(GROUP[2], RDS.syndromes[2][0]) ^ encode(GROUP[2], RDS.syndromes[2][1]);
+		int half = d & -d;
+		half |= (d ^ half) & -(d ^ half);
+		int[] errors = {0, SCATTERED_ERRORS, half, 0};
+		int[] unreliable = {0, 0, d, 0};
+
+		GroupEvent last = sendSoft(errors, unreliable, 30, 2);
+		assertEquals(-1, last.blocks[1]);
+		assertEquals(-1, last.blocks[2]);
+		assertEquals(GROUP[3], last.blocks[3]);
+
+		// with block B known, the version tells the offset word
+		errors[1] = 0;
+		last = sendSoft(errors, unreliable, 30, 2);
+		assertEquals(GROUP[2], last.blocks[2]);
+		assertEquals(4, last.correctedBlocks);
+	}
+}
@@ -0,0 +1,47 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import biz.source_code.dsp.filter.FilterCharacteristicsType;
+import biz.source_code.dsp.filter.FilterPassType;
+import biz.source_code.dsp.filter.IirFilter;
+import biz.source_code.dsp.filter.IirFilterCoefficients;
+import biz.source_code.dsp.filter.IirFilterDesignFisher;
+
+import eu.jacquet80.rds.util.BlockIirFilter;
+
+class BlockIirFilterTest {
+	/**
+	 * Filters random samples in blocks of various lengths, and compares
+	 * them with the output of the reference filter.
+	 */
+	private static void compare(int order) {
+		IirFilterCoefficients coeffs = IirFilterDesignFisher.design(FilterPassType.lowpass,
+				FilterCharacteristicsType.butterworth, order, 0, 2000.0 / 228000, 2000.0 / 228000);
+		IirFilter reference = new IirFilter(coeffs);
+		BlockIirFilter filter = new BlockIirFilter(coeffs);
+
+		Random random = new Random(order);
+		float[] buf = new float[1000];
+		for(int round=0; round<20; round++) {
+			int from = random.nextInt(100);
+			int to = from + random.nextInt(buf.length - from);
+			float[] expected = new float[buf.length];
+			for(int i=from; i<to; i++) {
+				buf[i] = (float) (random.nextDouble() * 2 - 1);
+				expected[i] = (float) reference.step(buf[i]);
+			}
+			filter.filter(buf, from, to);
+			for(int i=from; i<to; i++) assertEquals(expected[i], buf[i], 0);
+		}
+	}
+
+	@Test
+	void testSameAsIirFilter() {
+		compare(5);
+		compare(1);
+		compare(3);
+	}
+}
@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.core.DecoderSession;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.SequentialTime;
+import eu.jacquet80.rds.log.StationLost;
+
+class DecoderSessionTest {
+	private final static int COUNT = 2000;
+
+	// a station transmitting its PS in groups 0A
+	private static class Source extends GroupReader {
+		private final int pi;
+		private final String ps;
+		private int i = 0;
+
+		Source(int pi, String ps) {
+			this.pi = pi;
+			this.ps = ps;
+		}
+
+		@Override
+		public GroupReaderEvent getGroup() throws IOException, EndOfStream {
+			if(i == COUNT) throw new EndOfStream();
+			int seg = i % 4;
+			int[] blocks = {pi, 0x0408 | seg, 0xE0CD, ps.charAt(2*seg) << 8 | ps.charAt(2*seg + 1)};
+			i++;
+			return new GroupEvent(new SequentialTime(i), blocks, false);
+		}
+	}
+
+	@Test
+	void testIndependentSessions() throws InterruptedException {
+		final CountDownLatch ended = new CountDownLatch(2);
+		DecoderSession[] sessions = new DecoderSession[2];
+		for(int k=0; k<2; k++) {
+			sessions[k] = new DecoderSession("test" + k);
+			sessions[k].getLog().addNewMessageListener(new DefaultLogMessageVisitor() {
+				@Override
+				public void visit(StationLost stationLost) {
+					if(stationLost.isLastInStream()) ended.countDown();
+				}
+			});
+		}
+
+		sessions[0].process(new Source(0xF201, "SESSION0"), false);
+		sessions[1].process(new Source(0xF202, "SESSION1"), false);
+		assertTrue(ended.await(30, TimeUnit.SECONDS));
+
+		for(int k=0; k<2; k++) {
+			assertEquals(0xF201 + k, sessions[k].getGroupReader().getTunedStation().getPI());
+			assertEquals("SESSION" + k, sessions[k].getGroupReader().getTunedStation().getStationName());
+			sessions[k].close();
+		}
+	}
+}
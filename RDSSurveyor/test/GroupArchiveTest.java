@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.input.ArchiveTeeGroupReader;
+import eu.jacquet80.rds.input.GroupArchiveReader;
+import eu.jacquet80.rds.input.GroupArchiveWriter;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.log.RealTime;
+
+class GroupArchiveTest {
+	private final static long START = 1400000000000L;
+	private final static int COUNT = 20000;
+
+	@TempDir
+	File dir;
+
+	private static int[] blocks(int i) {
+		return new int[] {0xF202, i & 0xFFFF, i % 7 == 0 ? -1 : 0x1234, 0x5678};
+	}
+
+	// one group every 87 ms, and a frequency change every 5000 groups
+	private File write() throws IOException {
+		File f = new File(dir, "test.rdsa");
+		GroupArchiveWriter w = new GroupArchiveWriter(f);
+		for(int i=0; i<COUNT; i++) {
+			RealTime time = new RealTime(new Date(START + 87L * i));
+			if(i % 5000 == 0) w.write(new FrequencyChangeEvent(time, 87500 + i / 5000 * 100));
+			w.write(new GroupEvent(time, blocks(i), false, i % 3, i % 4));
+		}
+		w.close();
+		return f;
+	}
+
+	@Test
+	void testReadBack() throws IOException, EndOfStream {
+		File f = write();
+		GroupArchiveReader r = new GroupArchiveReader(new FileInputStream(f));
+		for(int i=0; i<COUNT; i++) {
+			if(i % 5000 == 0) {
+				assertEquals(87500 + i / 5000 * 100, ((FrequencyChangeEvent) r.getGroup()).frequency);
+			}
+			GroupEvent g = (GroupEvent) r.getGroup();
+			assertArrayEquals(blocks(i), g.blocks);
+			assertEquals(i % 3, g.correctedBlocks);
+			assertEquals(i % 4, g.stream);
+			assertEquals(START + 87L * i, g.getTime().getRealTime(null, null).getTime());
+		}
+		r.close();
+		assertTrue(f.length() < COUNT * 12);
+	}
+
+	@Test
+	void testSeek() throws IOException, EndOfStream {
+		GroupArchiveReader r = new GroupArchiveReader(write());
+		assertEquals(COUNT + 4, r.getEventCount());
+
+		r.seek(new Date(START + 87L * 12345 - 10));
+		assertArrayEquals(blocks(12345), ((GroupEvent) r.getGroup()).blocks);
+		assertEquals(87700, r.getFrequency());
+
+		assertTrue(r.seekToNextChange());
+		assertEquals(87800, ((FrequencyChangeEvent) r.getGroup()).frequency);
+		assertArrayEquals(blocks(15000), ((GroupEvent) r.getGroup()).blocks);
+		r.close();
+	}
+
+	@Test
+	void testInterruptedRecording() throws IOException, EndOfStream {
+		File f = write();
+		RandomAccessFile raf = new RandomAccessFile(f, "rw");
+		raf.setLength(f.length() / 2);
+		raf.close();
+
+		GroupArchiveReader r = new GroupArchiveReader(f);
+		long count = r.getEventCount();
+		assertTrue(count > 0 && count < COUNT);
+		for(long i=0; i<count; i++) r.getGroup();
+		assertThrows(EndOfStream.class, r::getGroup);
+		r.close();
+	}
+
+	@Test
+	void testClose() throws IOException, EndOfStream {
+		File f = write();
+		GroupArchiveReader r = new GroupArchiveReader(f);
+		r.close();
+		assertThrows(IOException.class, r::getGroup);
+
+		// a tee closes the archive it reads at the end of the stream
+		FileInputStream in = new FileInputStream(f);
+		GroupReader tee = new ArchiveTeeGroupReader(new GroupArchiveReader(in), new File(dir, "copy.rdsa"));
+		try {
+			while(true) tee.getGroup();
+		} catch(EndOfStream e) {
+		}
+		assertThrows(IOException.class, in::read);
+	}
+}
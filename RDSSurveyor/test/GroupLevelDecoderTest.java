@@ -1,14 +1,19 @@
 
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
 import eu.jacquet80.rds.core.GroupLevelDecoder;
 import eu.jacquet80.rds.core.TunedStation;
 import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.GroupReceived;
 import eu.jacquet80.rds.log.Log;
 import eu.jacquet80.rds.log.SequentialTime;
 
@@ -81,4 +86,59 @@ class GroupLevelDecoderTest {
 		assertEquals(ts.getDateTime(), "00:00+0min 1900-03-01");
 	}
 
+	List<String> analyze(boolean analysisEnabled, String ...groups) throws IOException {
+		Log log = new Log();
+		final List<String> res = new ArrayList<String>();
+		log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				res.add(groupReceived.getAnalysis());
+			}
+		});
+		GroupLevelDecoder decoder = new GroupLevelDecoder(log);
+		decoder.setAnalysisEnabled(analysisEnabled);
+		for(String g : groups) {
+			String[] p = g.split(" ");
+			int[] blocks = new int[4];
+			for(int i=0; i<4; i++) blocks[i] = Integer.parseInt(p[i], 16);
+			decoder.processOneGroup(new GroupEvent(new SequentialTime(0), blocks, false));
+		}
+		return res;
+	}
+
+	@Test
+	void testLazyAnalysis() throws IOException {
+		String[] groups = {
+				"F202 0408 E0CD 2043",
+				"F202 2401 4142 4344",
+				"F202 41E1 C565 1802",
+				"F202 E400 4142 1134",
+				"F202 F400 2052 2054"};
+		assertEquals(analyze(true, groups), analyze(false, groups));
+	}
+
+	@Test
+	void testCorrectedPI() throws IOException {
+		Log log = new Log();
+		final List<int[]> logged = new ArrayList<int[]>();
+		log.addNewMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				logged.add(groupReceived.getBlocks());
+			}
+		});
+		GroupLevelDecoder decoder = new GroupLevelDecoder(log);
+
+		// a corrected PI is accepted while the PI of the station is unknown
+		decoder.processOneGroup(new GroupEvent(new SequentialTime(0), new int[] {0xF202, 0x0408, 0x5C66, 0x2043}, false, 1));
+		assertEquals(0xF202, decoder.getTunedStation().getPI());
+
+		// then a different corrected PI is rejected, in the log but not in the event
+		int[] blocks = {0xF203, 0x0409, 0x5C62, 0x554C};
+		decoder.processOneGroup(new GroupEvent(new SequentialTime(1), blocks, false, 1));
+		assertEquals(0xF202, decoder.getTunedStation().getPI());
+		assertArrayEquals(new int[] {0xF203, 0x0409, 0x5C62, 0x554C}, blocks);
+		assertArrayEquals(new int[] {-1, 0x0409, 0x5C62, 0x554C}, logged.get(1));
+	}
+
 }
@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.HexFileGroupReader;
+import eu.jacquet80.rds.input.group.FrequencyChangeEvent;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+class HexFileGroupReaderTest {
+	private static HexFileGroupReader reader(String text) {
+		return new HexFileGroupReader(new BufferedReader(new StringReader(text)));
+	}
+
+	@Test
+	void testBlocksAndMissingBlocks() throws IOException, EndOfStream {
+		HexFileGroupReader r = reader("\r\n  F202 0408 ---- abCD  \r\n% comment\n<RDS Spy>\nF202 2000 4142 4344");
+
+		GroupEvent g = (GroupEvent) r.getGroup();
+		assertArrayEquals(new int[] {0xF202, 0x0408, -1, 0xABCD}, g.blocks);
+		assertTrue(g.getTime() instanceof SequentialTime);
+
+		g = (GroupEvent) r.getGroup();
+		assertArrayEquals(new int[] {0xF202, 0x2000, 0x4142, 0x4344}, g.blocks);
+
+		assertThrows(EndOfStream.class, r::getGroup);
+	}
+
+	@Test
+	void testFrequencyChange() throws IOException, EndOfStream {
+		FrequencyChangeEvent f = (FrequencyChangeEvent) reader("% Freq 95400\n").getGroup();
+		assertEquals(95400, f.frequency);
+	}
+
+	@Test
+	void testRdsSpyTimeStamp() throws IOException, EndOfStream {
+		GroupEvent g = (GroupEvent) reader("F202 0408 2000 4142 @2014/10/26 02:30:15.25\n").getGroup();
+
+		GregorianCalendar c = new GregorianCalendar(2014, 9, 26, 2, 30, 15);
+		c.set(Calendar.MILLISECOND, 250);
+		assertEquals(c.getTime(), ((RealTime) g.getTime()).getRealTime(null, null));
+	}
+}
@@ -0,0 +1,65 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.input.IqMpxInputStream;
+import eu.jacquet80.rds.input.IqReader;
+
+class IqMpxInputStreamTest {
+	private final static int RATE = 2400000;
+	private final static int COUNT = 240000;
+
+	@TempDir
+	File dir;
+
+	// a 16-bit I/Q file of a carrier at the given frequency
+	private File writeCarrier(double freq) throws IOException {
+		byte[] iq = new byte[4 * COUNT];
+		for(int i=0; i<COUNT; i++) {
+			short re = (short) Math.round(16000 * Math.cos(2 * Math.PI * freq * i / RATE));
+			short im = (short) Math.round(16000 * Math.sin(2 * Math.PI * freq * i / RATE));
+			iq[4*i] = (byte) re;
+			iq[4*i + 1] = (byte) (re >> 8);
+			iq[4*i + 2] = (byte) im;
+			iq[4*i + 3] = (byte) (im >> 8);
+		}
+		File f = new File(dir, "carrier.s16");
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(iq);
+		out.close();
+		return f;
+	}
+
+	// a carrier 20 kHz above the station demodulates to a constant
+	@Test
+	void testCarrierAboveStation() throws IOException {
+		File f = writeCarrier(320000);
+		IqMpxInputStream mpx = new IqMpxInputStream(new IqReader(f, IqReader.Format.S16LE), RATE, 300000);
+		mpx.setConsole(null);
+		assertEquals(240000, mpx.getMpxRate());
+
+		DataInputStream in = new DataInputStream(mpx);
+		int expected = (int) (20000. / 240000 * (1 << 15));
+		int n = 0;
+		try {
+			while(true) {
+				int v = Short.reverseBytes(in.readShort());
+				// after the filter delay
+				if(n++ > 100) assertEquals(expected, v, 20);
+			}
+		} catch(EOFException e) {
+			// end of the signal
+		}
+		in.close();
+
+		assertEquals(COUNT / 10, n);
+		assertEquals(COUNT, mpx.getSampleCount());
+	}
+}
@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.app.oda.tmc.LocationCache;
+import eu.jacquet80.rds.app.oda.tmc.LocationCache.Kind;
+
+class LocationCacheTest {
+	@Test
+	void testKindsAndFields() {
+		LocationCache cache = new LocationCache(100);
+		cache.put(Kind.POINT, 58, 1, 12345, "point");
+		cache.put(Kind.SEGMENT, 58, 1, 12345, "segment");
+		cache.put(Kind.POINT, 58, 2, 12345, "other table");
+		cache.put(Kind.LANGUAGE_NAME, 58, 3, 70000, "name");
+
+		assertEquals("point", cache.get(Kind.POINT, 58, 1, 12345));
+		assertEquals("segment", cache.get(Kind.SEGMENT, 58, 1, 12345));
+		assertEquals("other table", cache.get(Kind.POINT, 58, 2, 12345));
+		assertEquals("name", cache.get(Kind.LANGUAGE_NAME, 58, 3, 70000));
+		assertNull(cache.get(Kind.ROAD, 58, 1, 12345));
+		assertEquals(4, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	void testRecentlyUsedEntriesKept() {
+		LocationCache cache = new LocationCache(10);
+		for(int i=0; i<10; i++) cache.put(Kind.POINT, 1, 1, i, i);
+		cache.put(Kind.POINT, 1, 1, 100, 100);
+		assertEquals(1, cache.getEvictionCount());
+
+		// entries looked up again survive, the one never looked up goes first
+		for(int i=0; i<10; i++) cache.get(Kind.POINT, 1, 1, i);
+		cache.put(Kind.POINT, 1, 1, 101, 101);
+		assertNull(cache.get(Kind.POINT, 1, 1, 100));
+		assertEquals(10, cache.size());
+	}
+
+	@Test
+	void testBoundedUnderChurn() {
+		LocationCache cache = new LocationCache(1000);
+		Map<Integer, Integer> last = new HashMap<Integer, Integer>();
+		Random rnd = new Random(7);
+		for(int n=0; n<200000; n++) {
+			int lcd = rnd.nextInt(5000);
+			if(rnd.nextBoolean()) {
+				cache.put(Kind.POINT, 58, 1, lcd, n);
+				last.put(lcd, n);
+				assertEquals(n, cache.get(Kind.POINT, 58, 1, lcd));
+			} else {
+				Object v = cache.get(Kind.POINT, 58, 1, lcd);
+				// evicted or up to date, never stale nor misplaced
+				if(v != null) assertEquals(last.get(lcd), v);
+			}
+			assertTrue(cache.size() <= 1000);
+		}
+		assertEquals(1000, cache.size());
+		assertTrue(cache.getEvictionCount() > 0);
+	}
+}
@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.app.oda.tmc.Road;
+import eu.jacquet80.rds.app.oda.tmc.Segment;
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation;
+import eu.jacquet80.rds.app.oda.tmc.TMCPoint;
+import eu.jacquet80.rds.tests.TmcLookupBenchmark;
+
+class LocationSnapshotTest {
+	private final static int NB_POINTS = 1000;
+
+	@TempDir
+	File dir;
+
+	/**
+	 * Describes every location of the synthetic table, with the neighbours
+	 * and ends which are looked up separately.
+	 */
+	private static List<String> describe() {
+		List<String> res = new ArrayList<String>();
+		for(int lcd=1; lcd<=1000 + NB_POINTS; lcd++) {
+			TMCLocation loc = TMC.getLocation("D", 1, lcd);
+			if(loc == null) {
+				res.add(null);
+				continue;
+			}
+			String s = loc.getClass().getSimpleName() + " " + loc;
+			if(loc instanceof TMCPoint)
+				s += ((TMCPoint) loc).getOffset(3, 0) + " " + ((TMCPoint) loc).getOffset(2, 1);
+			else if(loc instanceof Segment)
+				s += Arrays.toString(((Segment) loc).getFirstCoordinates()) + Arrays.toString(((Segment) loc).getLastCoordinates());
+			else if(loc instanceof Road)
+				s += Arrays.toString(((Road) loc).getFirstCoordinates()) + Arrays.toString(((Road) loc).getLastCoordinates());
+			res.add(s);
+		}
+		return res;
+	}
+
+	@Test
+	void testSnapshotMatchesDatabase() throws IOException, SQLException {
+		TmcLookupBenchmark.writeTables(dir, NB_POINTS, new Random(5));
+		TMC.setDbUrl("jdbc:hsqldb:mem:snapshottest");
+		TMC.readLocationTablesFromDir(dir);
+		List<String> expected = describe();
+
+		File file = new File(dir, "lt.snapshot");
+		TMC.writeSnapshot(file);
+		try {
+			TMC.setSnapshot(file);
+			// the snapshot alone must answer
+			TMC.setDbUrl("jdbc:hsqldb:mem:snapshottest-empty");
+			assertEquals(expected, describe());
+			assertNull(TMC.getLocation("D", 1, 1000 + NB_POINTS + 1));
+			assertNull(TMC.getLocation("F", 1, 1000));
+		} finally {
+			TMC.setSnapshot(null);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation;
+import eu.jacquet80.rds.app.oda.tmc.TMCName;
+import eu.jacquet80.rds.app.oda.tmc.TMCPoint;
+
+class LocationTableImportTest {
+	private final static int NB_NAMES = 2500;
+
+	@TempDir
+	File dir;
+
+	private static void write(File dir, String name, String... lines) throws IOException {
+		PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, name)), "ISO-8859-1"));
+		for(String line : lines) w.println(line);
+		w.close();
+	}
+
+	/**
+	 * Writes a dataset with enough names for several batches, one of them
+	 * duplicated, and a single point.
+	 */
+	private static void writeDataset(File dir, int cid, String ccd) throws IOException {
+		dir.mkdir();
+		write(dir, "COUNTRIES.DAT", "CID;ECC;CCD;CNAME", cid + ";E0;" + ccd + ";Country " + cid);
+		write(dir, "LOCATIONDATASETS.DAT", "CID;TABCD;DCOMMENT;VERSION;VERSIONDESCRIPTION", cid + ";1;;1.0;");
+		String[] names = new String[NB_NAMES + 2];
+		names[0] = "CID;LID;NID;NAME;NCOMMENT;OFFICIALNAME";
+		for(int nid=1; nid<=NB_NAMES; nid++) names[nid] = cid + ";1;" + nid + ";Name " + cid + "/" + nid + ";;";
+		names[NB_NAMES + 1] = names[NB_NAMES];
+		names[NB_NAMES] = cid + ";1;1500;Duplicate;;";
+		write(dir, "NAMES.DAT", names);
+		write(dir, "POINTS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;JUNCTIONNUMBER;RNID;N1ID;N2ID;POL_LCD;OTH_LCD;SEG_LCD;ROA_LCD;XCOORD;YCOORD;URBAN",
+				cid + ";1;5000;P;1;3;12;;7;;;;;;612345;4512345;0");
+	}
+
+	@Test
+	void testImportDatasets() throws IOException {
+		writeDataset(new File(dir, "a"), 58, "D");
+		writeDataset(new File(dir, "b"), 40, "F");
+		TMC.setDbUrl("jdbc:hsqldb:mem:importtest");
+		TMC.readLocationTables(dir);
+
+		for(int cid : new int[] {58, 40}) {
+			for(int nid=1; nid<=NB_NAMES; nid++) {
+				TMCName name = TMC.getName(cid, nid);
+				assertNotNull(name);
+				// the duplicate is skipped, and the rows after it are imported
+				assertEquals("Name " + cid + "/" + nid, name.name);
+			}
+			TMCLocation loc = TMC.getLocation(cid, 1, 5000);
+			assertEquals(TMCPoint.class, loc.getClass());
+			assertEquals(6.12345f, ((TMCPoint) loc).xCoord, 1e-5f);
+			assertEquals("Name " + cid + "/7", ((TMCPoint) loc).name1.name);
+		}
+		assertNull(TMC.getName(58, NB_NAMES + 1));
+	}
+}
@@ -0,0 +1,204 @@
+
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.log.DefaultLogMessageVisitor;
+import eu.jacquet80.rds.log.EndOfStream;
+import eu.jacquet80.rds.log.GroupReceived;
+import eu.jacquet80.rds.log.GroupStore;
+import eu.jacquet80.rds.log.Log;
+import eu.jacquet80.rds.log.LogDispatcher;
+import eu.jacquet80.rds.log.LogMessage;
+import eu.jacquet80.rds.log.SequentialTime;
+
+class LogTest {
+	private static int[] blocks(int i) {
+		return new int[] {0xF202, i & 0xFFFF, i % 7 == 0 ? -1 : 0x1234, 0x5678};
+	}
+
+	@Test
+	void testSpilledMessagesReadBack() {
+		Log log = new Log();
+		log.setMemoryLimit(Log.SEGMENT_SIZE, null);
+
+		int n = 3 * Log.SEGMENT_SIZE + 10;
+		LogMessage other = null;
+		for(int i=0; i<n; i++) {
+			if(i == 100) {
+				other = new EndOfStream(null);
+				log.addMessage(other);
+			} else {
+				int[] b = blocks(i);
+				log.addMessage(new GroupReceived(new SequentialTime(i), b, b[2] == -1 ? 3 : 4, "", i % 3 == 0 ? 2 : 0));
+			}
+		}
+
+		assertEquals(n, log.messageCount());
+		assertSame(other, log.getMessage(100));
+		for(int i=0; i<n; i++) {
+			if(i == 100) continue;
+			GroupReceived g = (GroupReceived) log.getMessage(i);
+			assertArrayEquals(blocks(i), g.getBlocks());
+			assertEquals(blocks(i)[2] == -1 ? 3 : 4, g.getNbOk());
+			assertEquals(i % 3 == 0 ? 2 : 0, g.getCorrectedBlocks());
+			assertEquals(i, ((SequentialTime) g.getTime()).getGroupTime());
+		}
+	}
+
+	@Test
+	void testStreamGroups() {
+		Log log = new Log();
+		log.setMemoryLimit(Log.SEGMENT_SIZE, null);
+		GroupStore store = log.getGroupStore();
+
+		// every other group belongs to an additional stream of RDS2
+		int n = 3 * Log.SEGMENT_SIZE;
+		for(int i=0; i<n; i++) {
+			log.addMessage(new GroupReceived(new SequentialTime(i), blocks(i), 4, 0, i % 2 == 0 ? 0 : 1 + i % 3));
+		}
+
+		for(int i=0; i<n; i++) {
+			GroupReceived g = (GroupReceived) log.getMessage(i);
+			assertEquals(i % 2 == 0 ? 0 : 1 + i % 3, g.getStream());
+			assertEquals(i % 2 == 0 ? 0 : 1 + i % 3, store.getStream(i));
+			assertEquals(i % 2 == 0 ? 0xF202 : -1, store.getPI(i));
+			if(i % 2 != 0) {
+				assertEquals(-1, g.getGroupType());
+				assertTrue(g.getAnalysis().startsWith("Stream " + g.getStream() + ", Type C"));
+			}
+		}
+		assertEquals(n / 2, store.select(0, 0xF202, -1, 0, n).length);
+
+		// stream 1: the odd groups that are multiples of 3
+		int[] rows = store.select(1, -1, -1, 300, 600);
+		assertEquals(50, rows.length);
+		for(int row : rows) {
+			assertEquals(1, store.getStream(row));
+			assertEquals(row, store.getMessageIndex(row));
+		}
+	}
+
+	@Test
+	void testAsyncListeners() {
+		Log log = new Log();
+		final List<Integer> all = new ArrayList<Integer>();
+		log.addAsyncMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				all.add(groupReceived.getBlocks()[1]);
+			}
+		}, LogDispatcher.OverflowPolicy.BLOCK);
+		LogDispatcher.Subscription slow = log.addAsyncMessageListener(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				// stalls at the first group, so that it is lapped by the producer
+				if(groupReceived.getBlocks()[1] != 0) return;
+				try {
+					Thread.sleep(200);
+				} catch(InterruptedException e) {}
+			}
+		}, LogDispatcher.OverflowPolicy.DROP_OLDEST);
+
+		int n = 4 * Log.ASYNC_BUFFER_SIZE;
+		for(int i=0; i<n; i++) {
+			log.addMessage(new GroupReceived(new SequentialTime(i), blocks(i), 4, ""));
+		}
+		log.flush();
+
+		assertEquals(n, all.size());
+		for(int i=0; i<n; i++) assertEquals(i & 0xFFFF, (int) all.get(i));
+		assertTrue(slow.getDroppedCount() > 0);
+		assertEquals(n, slow.getDroppedCount() + slow.getDeliveredCount());
+	}
+
+	@Test
+	void testCoalesceExactlyFullRing() throws InterruptedException {
+		final int capacity = 8;
+		LogDispatcher dispatcher = new LogDispatcher(capacity);
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final CountDownLatch resume = new CountDownLatch(1);
+		final List<LogMessage> received = new ArrayList<LogMessage>();
+		LogDispatcher.Subscription s = dispatcher.subscribe(new DefaultLogMessageVisitor() {
+			@Override
+			public void visit(GroupReceived groupReceived) {
+				received.add(groupReceived);
+				if(received.size() > 1) return;
+				blocked.countDown();
+				try {
+					resume.await();
+				} catch(InterruptedException e) {}
+			}
+
+			@Override
+			public void visit(EndOfStream endOfStream) {
+				received.add(endOfStream);
+			}
+		}, LogDispatcher.OverflowPolicy.COALESCE);
+
+		// the listener is stuck in the first group, with its cursor on the next message
+		dispatcher.publish(new GroupReceived(new SequentialTime(0), blocks(1), 4, ""));
+		blocked.await();
+
+		// then falls behind by exactly the size of the ring: nothing has been overwritten
+		LogMessage other = new EndOfStream(null);
+		dispatcher.publish(other);
+		for(int i=2; i<=capacity; i++) {
+			dispatcher.publish(new GroupReceived(new SequentialTime(i), blocks(i), 4, ""));
+		}
+		resume.countDown();
+		dispatcher.flush();
+
+		assertEquals(0, s.getDroppedCount());
+		assertEquals(3, received.size());
+		assertSame(other, received.get(1));
+		assertEquals(capacity, ((GroupReceived) received.get(2)).getBlocks()[1]);
+		assertEquals(capacity - 2, s.getCoalescedCount());
+	}
+
+	@Test
+	void testGroupStoreQueries() {
+		Log log = new Log();
+		int n = 50000;
+		for(int i=0; i<n/2; i++) {
+			log.addMessage(new GroupReceived(new SequentialTime(i), storeBlocks(i), 4, "", i % 5 == 0 ? 4 : 0));
+		}
+		// built from the groups already in the log, then kept up to date
+		GroupStore store = log.getGroupStore();
+		for(int i=n/2; i<n; i++) {
+			log.addMessage(new GroupReceived(new SequentialTime(i), storeBlocks(i), 4, "", i % 5 == 0 ? 4 : 0));
+		}
+
+		assertEquals(n, store.size());
+		assertArrayEquals(storeBlocks(12345), store.getBlocks(12345));
+		assertEquals(4, store.getCorrectedBlocks(12345));
+		assertEquals(12345, store.getTimeValue(12345));
+
+		// 8A groups (type 16) of PI F202 between 1000 and 40000
+		int[] rows = store.select(0, 0xF202, 16, 1000, 40000);
+		List<Integer> expected = new ArrayList<Integer>();
+		for(int i=1000; i<40000; i++) {
+			int[] b = storeBlocks(i);
+			if(b[0] == 0xF202 && ((b[1] >> 11) & 0x1F) == 16) expected.add(i);
+		}
+		assertEquals(expected.size(), rows.length);
+		for(int i=0; i<rows.length; i++) assertEquals((int) expected.get(i), rows[i]);
+
+		assertEquals((n + 2) / 3, store.select(0, -1, 0, 0, n).length);
+		assertEquals(10, store.select(0, -1, -1, 100, 110).length);
+	}
+
+	private static int[] storeBlocks(int i) {
+		int pi = i < 30000 ? 0xF202 : 0xF201;
+		int type = i % 3 == 0 ? 0 : i % 3 == 1 ? 16 : 4;
+		return new int[] {pi, (type << 11) | (i & 0x1F), i & 0xFFFF, 0x2020};
+	}
+}
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.GroupReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.MultiStreamGroupReader;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+class MultiStreamGroupReaderTest {
+	private final static int RATE = 250000;
+	private final static int NB_GROUPS = 80;
+
+	// adds the biphase-coded groups of a data stream, whose first block is marker, on a subcarrier
+	private static void addStream(float[] mpx, double carrier, int marker, Random rnd) {
+		int[] checkForSyndrome = new int[1024];
+		for(int c=0; c<1024; c++) checkForSyndrome[RDS.calcSyndrome(c)] = c;
+
+		boolean[] bits = new boolean[NB_GROUPS * 104];
+		int n = 0;
+		for(int g=0; g<NB_GROUPS; g++) {
+			for(int b=0; b<4; b++) {
+				int data = b == 0 ? marker : rnd.nextInt(0x10000);
+				int synd = RDS.calcSyndrome(data << 10) ^ RDS.syndromes[b][0];
+				int block = (data << 10) | checkForSyndrome[synd];
+				for(int i=25; i>=0; i--) bits[n++] = ((block >> i) & 1) != 0;
+			}
+		}
+
+		boolean level = false;
+		int prevBit = -1;
+		for(int i=0; i<mpx.length; i++) {
+			int bit = (int) ((long) i * 2375 / 2 / RATE);
+			if(bit >= bits.length) break;
+			if(bit != prevBit) {
+				if(bits[bit]) level = !level;
+				prevBit = bit;
+			}
+			boolean firstHalf = (long) i * 2375 / RATE % 2 == 0;
+			double symbol = (level ^ firstHalf) ? 1 : -1;
+			mpx[i] += (float) (0.04 * symbol * Math.sin(2 * Math.PI * carrier * i / RATE));
+		}
+	}
+
+	@Test
+	void testAllStreams() throws IOException {
+		Random rnd = new Random(42);
+		float[] mpx = new float[(int) ((long) NB_GROUPS * 104 * RATE * 2 / 2375) + RATE / 10];
+		for(int s=0; s<AudioBitReader.MAX_STREAMS; s++) {
+			addStream(mpx, AudioBitReader.STREAM_CARRIERS[s], 0xC000 + s, rnd);
+		}
+		byte[] pcm = new byte[2 * mpx.length];
+		for(int i=0; i<mpx.length; i++) {
+			short v = (short) ((0.3 * Math.sin(2 * Math.PI * 440. * i / RATE) + 0.08 * Math.sin(2 * Math.PI * 19000. * i / RATE)
+					+ mpx[i] + 0.01 * rnd.nextGaussian()) * 32767);
+			pcm[2*i] = (byte) v;
+			pcm[2*i + 1] = (byte) (v >> 8);
+		}
+
+		AudioBitReader audio = new AudioBitReader(new DataInputStream(new ByteArrayInputStream(pcm)), RATE, AudioBitReader.MAX_STREAMS);
+		assertEquals(4, audio.getStreamCount());
+		GroupReader reader = MultiStreamGroupReader.forAudio(RDSSurveyor.nullConsole, audio);
+
+		int[] good = new int[4], wrong = new int[4];
+		try {
+			while(true) {
+				GroupReaderEvent event = reader.getGroup();
+				if(!(event instanceof GroupEvent)) continue;
+				GroupEvent group = (GroupEvent) event;
+				// each group is tagged with the stream it was received on
+				if(group.blocks[0] >= 0 && group.blocks[0] != 0xC000 + group.stream) wrong[group.stream]++;
+				if(group.blocks[0] >= 0 && group.blocks[1] >= 0 && group.blocks[2] >= 0 && group.blocks[3] >= 0) {
+					good[group.stream]++;
+				}
+			}
+		} catch(EndOfStream e) {
+			// end of the signal
+		}
+
+		for(int s=0; s<4; s++) {
+			assertTrue(good[s] > NB_GROUPS * 8 / 10, "stream " + s + ": " + good[s] + " groups");
+			// the group during which synchronization is acquired has only its last blocks
+			assertTrue(wrong[s] <= 1, "stream " + s + ": " + wrong[s] + " groups from another stream");
+		}
+	}
+}
@@ -0,0 +1,87 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.app.oda.tmc.TMC;
+import eu.jacquet80.rds.app.oda.tmc.TMCLocation;
+import eu.jacquet80.rds.app.oda.tmc.TMCPoint;
+
+class OffsetChainTest {
+	private final static int NB_POINTS = 10;
+	/** The point whose negative offset disagrees with its neighbor. */
+	private final static int BROKEN = 1207;
+
+	@TempDir
+	File dir;
+
+	private static void write(File dir, String name, String... lines) throws IOException {
+		PrintWriter w = new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(dir, name)), "ISO-8859-1"));
+		for(String line : lines) w.println(line);
+		w.close();
+	}
+
+	/**
+	 * Writes two roads of points: road 11 is linked both ways, road 12 has
+	 * one point whose negative offset skips its neighbor.
+	 */
+	private void writeTables() throws IOException {
+		write(dir, "COUNTRIES.DAT", "CID;ECC;CCD;CNAME", "58;E0;D;Country");
+		write(dir, "LOCATIONDATASETS.DAT", "CID;TABCD;DCOMMENT;VERSION;VERSIONDESCRIPTION", "58;1;;1.0;");
+		write(dir, "NAMES.DAT", "CID;LID;NID;NAME;NCOMMENT;OFFICIALNAME", "58;1;1;Name;;");
+		write(dir, "ROADS.DAT", "CID;TABCD;LCD;CLASS;TCD;STCD;ROADNUMBER;RNID;N1ID;N2ID;POL_LCD;PES_LEV",
+				"58;1;11;L;1;1;A1;1;1;1;;", "58;1;12;L;1;1;A2;1;1;1;;");
+		String[] points = new String[2 * NB_POINTS + 1];
+		String[] offsets = new String[2 * NB_POINTS + 1];
+		points[0] = "CID;TABCD;LCD;CLASS;TCD;STCD;JUNCTIONNUMBER;RNID;N1ID;N2ID;POL_LCD;OTH_LCD;SEG_LCD;ROA_LCD;XCOORD;YCOORD;URBAN";
+		offsets[0] = "CID;TABCD;LCD;NEG_OFF_LCD;POS_OFF_LCD";
+		int n = 1;
+		for(int road : new int[] {11, 12})
+			for(int i=0; i<NB_POINTS; i++) {
+				int lcd = road * 100 + i;
+				points[n] = "58;1;" + lcd + ";P;1;3;;;1;;;;;" + road + ";600000;4500000;0";
+				String neg = (i == 0) ? "" : String.valueOf((lcd == BROKEN) ? lcd - 2 : lcd - 1);
+				String pos = (i == NB_POINTS - 1) ? "" : String.valueOf(lcd + 1);
+				offsets[n++] = "58;1;" + lcd + ";" + neg + ";" + pos;
+			}
+		write(dir, "POINTS.DAT", points);
+		write(dir, "POFFSETS.DAT", offsets);
+	}
+
+	/** Walks the offsets one by one. */
+	private static TMCPoint walk(TMCPoint point, int extent, int direction) {
+		for(int i=0; i<extent; i++) {
+			TMCPoint next = (direction == 0) ? point.getPosOffset() : point.getNegOffset();
+			if(next != null) point = next;
+		}
+		return point;
+	}
+
+	@Test
+	void testOffsetsMatchWalk() throws IOException {
+		writeTables();
+		TMC.setDbUrl("jdbc:hsqldb:mem:offsetchaintest");
+		TMC.readLocationTablesFromDir(dir);
+
+		for(int lcd : new int[] {1100, 1105, 1109, 1200, 1203, BROKEN, 1209})
+			for(int extent=0; extent<=NB_POINTS + 2; extent++)
+				for(int direction=0; direction<2; direction++) {
+					TMCPoint point = (TMCPoint) TMC.getLocation(58, 1, lcd);
+					TMCLocation offset = point.getOffset(extent, direction);
+					assertSame(walk(point, extent, direction), offset);
+				}
+		assertEquals(1109, TMC.getPoint(58, 1, 1102).getOffset(31, 0).lcd);
+		assertEquals(1100, TMC.getPoint(58, 1, 1102).getOffset(31, 1).lcd);
+
+		TMC.getCache().clear();
+		assertEquals(NB_POINTS, TMC.prefetch(58, 1, 12));
+		assertEquals(0, TMC.prefetch(58, 1, 13));
+	}
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.util.PackedBitQueue;
+
+class PackedBitQueueTest {
+	private final static int COUNT = 100000;
+
+	private static boolean bit(int i) {
+		return (i * 2654435761L & 0x10000) != 0;
+	}
+
+	@Test
+	void testThroughSmallQueue() throws InterruptedException, EOFException {
+		final PackedBitQueue queue = new PackedBitQueue(128);
+		Thread producer = new Thread() {
+			public void run() {
+				for(int i=0; i<COUNT; i++) {
+					queue.put(bit(i));
+					if(i % 37 == 0) queue.flush();
+				}
+				queue.close();
+			}
+		};
+		producer.start();
+
+		// alternate single bits and packed reads of various sizes
+		long[] words = new long[2];
+		int i = 0;
+		while(i < COUNT) {
+			if(i % 3 == 0) {
+				assertEquals(bit(i), queue.take());
+				i++;
+				continue;
+			}
+			int n = queue.take(words, 1 + i % 100);
+			assertTrue(n > 0);
+			for(int k=0; k<n; k++, i++) {
+				assertEquals(bit(i), ((words[k >> 6] >>> (63 - (k & 63))) & 1) != 0);
+			}
+		}
+		producer.join();
+
+		assertEquals(-1, queue.take(words, 64));
+		assertThrows(EOFException.class, queue::take);
+		assertTrue(queue.getMaxOccupancy() <= queue.getCapacity());
+	}
+
+	@Test
+	void testReliabilitiesAcrossWrapAround() {
+		PackedBitQueue queue = new PackedBitQueue(128, true);
+		long[] words = new long[2];
+		byte[] reliability = new byte[128];
+		int i = 0;
+		for(int round=0; round<3; round++) {
+			for(int k=0; k<100; k++) queue.put(bit(i + k), (i + k) * 7 & 0xFF);
+			queue.flush();
+			assertEquals(100, queue.take(words, reliability, 128));
+			for(int k=0; k<100; k++, i++) {
+				assertEquals(bit(i), ((words[k >> 6] >>> (63 - (k & 63))) & 1) != 0);
+				assertEquals(i * 7 & 0xFF, reliability[k] & 0xFF);
+			}
+		}
+	}
+
+	@Test
+	void testReliabilitiesKeptOnRequest() {
+		PackedBitQueue queue = new PackedBitQueue(128);
+		long[] words = new long[2];
+		byte[] reliability = new byte[128];
+		for(int k=0; k<10; k++) queue.put(bit(k), 7);
+		queue.keepReliabilities();
+		for(int k=10; k<20; k++) queue.put(bit(k), 7);
+		queue.flush();
+
+		// the bits added before the request are considered certain
+		assertEquals(20, queue.take(words, reliability, 128));
+		for(int k=0; k<20; k++) assertEquals(k < 10 ? 255 : 7, reliability[k] & 0xFF);
+	}
+}
@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.util.PolyphaseChannelizer;
+
+class PolyphaseChannelizerTest {
+	private final static int CHANNELS = 24;
+	private final static int DECIMATION = 10;
+	private final static int COUNT = 24000;
+
+	// a tone 2 kHz above the center of channel -5, at 2.4 MS/s
+	@Test
+	void testToneInOneChannel() {
+		double freq = -5 * 100000 + 2000;
+		float[] inI = new float[COUNT], inQ = new float[COUNT];
+		for(int i=0; i<COUNT; i++) {
+			inI[i] = (float) Math.cos(2 * Math.PI * freq * i / 2400000);
+			inQ[i] = (float) Math.sin(2 * Math.PI * freq * i / 2400000);
+		}
+
+		PolyphaseChannelizer c = new PolyphaseChannelizer(CHANNELS, DECIMATION, 14, .5 / DECIMATION);
+		float[][] outI = new float[CHANNELS][c.getMaxOutputCount(COUNT)];
+		float[][] outQ = new float[CHANNELS][c.getMaxOutputCount(COUNT)];
+		int n = c.process(inI, inQ, COUNT, outI, outQ);
+		assertEquals(COUNT / DECIMATION, n);
+
+		// after the filter delay, the tone is in its channel only, at the offset frequency
+		int ch = CHANNELS - 5;
+		for(int j=100; j<n; j++) {
+			assertEquals(1, Math.hypot(outI[ch][j], outQ[ch][j]), .01);
+			for(int k=0; k<CHANNELS; k++) {
+				if(Math.abs(k - ch) > 1) assertTrue(Math.hypot(outI[k][j], outQ[k][j]) < .001);
+			}
+			double dphi = Math.atan2(outQ[ch][j], outI[ch][j]) - Math.atan2(outQ[ch][j-1], outI[ch][j-1]);
+			dphi = Math.IEEEremainder(dphi, 2 * Math.PI);
+			assertEquals(2 * Math.PI * 2000 / 240000, dphi, 1e-3);
+		}
+	}
+}
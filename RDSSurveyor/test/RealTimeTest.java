@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import eu.jacquet80.rds.log.RealTime;
+import eu.jacquet80.rds.log.SequentialTime;
+
+class RealTimeTest {
+	private final static int NB_THREADS = 8;
+	private final static int COUNT = 20000;
+
+	/**
+	 * Formats times from several threads at once, as the decoders of a
+	 * batch do, and checks that no result is garbled.
+	 */
+	@Test
+	void testConcurrentFormatting() throws InterruptedException {
+		final AtomicReference<String> error = new AtomicReference<String>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t=0; t<NB_THREADS; t++) {
+			final long start = 1400000000000L + t * 86400000L * 400;
+			Thread thread = new Thread() {
+				public void run() {
+					SimpleDateFormat format = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss.SSS");
+					for(int i=0; i<COUNT && error.get() == null; i++) {
+						Date date = new Date(start + 3600123L * i);
+						String expected = format.format(date);
+						String actual = new RealTime(date).toLongString();
+						if(!expected.equals(actual)) error.set(expected + " != " + actual);
+
+						String seq = new SequentialTime(i).toLongString();
+						if(!String.format("%04d", i % 10000).equals(seq)) error.set(i + " != " + seq);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for(Thread thread : threads) thread.join();
+		assertEquals(null, error.get());
+	}
+}
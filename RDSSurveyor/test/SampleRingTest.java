@@ -0,0 +1,156 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import eu.jacquet80.rds.RDSSurveyor;
+import eu.jacquet80.rds.core.BitStreamSynchronizer;
+import eu.jacquet80.rds.core.RDS;
+import eu.jacquet80.rds.input.AudioBitReader;
+import eu.jacquet80.rds.input.GroupReader.EndOfStream;
+import eu.jacquet80.rds.input.SampleRing;
+import eu.jacquet80.rds.input.SampleSource;
+import eu.jacquet80.rds.input.StreamSampleSource;
+import eu.jacquet80.rds.input.group.GroupEvent;
+import eu.jacquet80.rds.input.group.GroupReaderEvent;
+
+class SampleRingTest {
+	private final static int RATE = 250000;
+	private final static int NB_GROUPS = 100;
+	private final static int[] GROUP = {0xF202, 0x0408, 0x5C66, 0x2043};
+
+	@TempDir
+	File dir;
+
+	@Test
+	void testAcrossWrapAround() {
+		SampleRing ring = new SampleRing(1000);
+		assertEquals(1024, ring.getCapacity());
+
+		short[] block = new short[300];
+		float[] read = new float[300];
+		int next = 0;
+		for(int round=0; round<10; round++) {
+			for(int i=0; i<300; i++) block[i] = (short) (next + i - 1500);
+			assertTrue(ring.write(block, 0, 300));
+			int n = 0;
+			while(n < 300) n += ring.read(read, n, 300 - n);
+			for(int i=0; i<300; i++) assertEquals((short) (next + i - 1500) / 32768f, read[i]);
+			next += 300;
+		}
+		assertEquals(0, ring.getOverrunCount());
+	}
+
+	@Test
+	void testOverrun() {
+		SampleRing ring = new SampleRing(1024);
+		short[] block = new short[800];
+		assertTrue(ring.write(block, 0, 800));
+		assertFalse(ring.write(block, 0, 800));
+		assertEquals(1, ring.getOverrunCount());
+		assertEquals(800, ring.getDroppedSampleCount());
+
+		ring.end();
+		float[] read = new float[1024];
+		assertEquals(800, ring.read(read, 0, 1024));
+		assertEquals(-1, ring.read(read, 0, 1024));
+	}
+
+	// a raw MPX recording of the same group over and over
+	private File writeMpx() throws IOException {
+		int[] blocks = new int[4];
+		for(int b=0; b<4; b++) {
+			for(int check=0; check<1024; check++) {
+				if(RDS.calcSyndrome((GROUP[b] << 10) | check) == RDS.syndromes[b][0]) blocks[b] = (GROUP[b] << 10) | check;
+			}
+		}
+
+		int nbSamples = (int) ((long) NB_GROUPS * 104 * RATE * 2 / 2375);
+		byte[] pcm = new byte[2 * nbSamples];
+		boolean level = false;
+		int prevBit = -1;
+		for(int i=0; i<nbSamples; i++) {
+			int bit = (int) ((long) i * 2375 / 2 / RATE);
+			if(bit != prevBit) {
+				if(((blocks[bit / 26 % 4] >> (25 - bit % 26)) & 1) != 0) level = !level;
+				prevBit = bit;
+			}
+			boolean firstHalf = (long) i * 2375 / RATE % 2 == 0;
+			double symbol = (level ^ firstHalf) ? 1 : -1;
+			short v = (short) ((0.08 * Math.sin(2 * Math.PI * 19000. * i / RATE)
+					+ 0.05 * symbol * Math.sin(2 * Math.PI * 57000. * i / RATE)) * 32767);
+			pcm[2*i] = (byte) v;
+			pcm[2*i + 1] = (byte) (v >> 8);
+		}
+
+		File f = new File(dir, "mpx.raw");
+		FileOutputStream out = new FileOutputStream(f);
+		out.write(pcm);
+		out.close();
+		return f;
+	}
+
+	private static int countGroups(SampleSource source) throws IOException {
+		BitStreamSynchronizer sync = new BitStreamSynchronizer(RDSSurveyor.nullConsole, new AudioBitReader(source, RATE));
+		int good = 0;
+		try {
+			while(true) {
+				GroupReaderEvent event = sync.getGroup();
+				if(!(event instanceof GroupEvent)) continue;
+				int[] blocks = ((GroupEvent) event).blocks;
+				if(blocks[0] == GROUP[0] && blocks[1] == GROUP[1] && blocks[2] == GROUP[2] && blocks[3] == GROUP[3]) good++;
+			}
+		} catch(EndOfStream e) {
+			// end of the recording
+		}
+		return good;
+	}
+
+	// a recording fed block by block into the ring, as the tuner driver does, decodes as read directly
+	@Test
+	void testRecordingInsteadOfTuner() throws Exception {
+		final File f = writeMpx();
+		final SampleRing ring = new SampleRing(1 << 14);
+
+		Thread tuner = new Thread() {
+			@Override
+			public void run() {
+				short[] block = new short[4096];
+				try {
+					DataInputStream in = new DataInputStream(new FileInputStream(f));
+					try {
+						while(true) {
+							for(int i=0; i<block.length; i++) block[i] = Short.reverseBytes(in.readShort());
+							while(ring.getFreeSpace() < block.length) Thread.sleep(1);
+							ring.write(block, 0, block.length);
+						}
+					} catch(EOFException e) {
+						// end of the recording
+					}
+					in.close();
+				} catch(Exception e) {
+					e.printStackTrace();
+				}
+				ring.end();
+			}
+		};
+		tuner.start();
+
+		int fromRing = countGroups(ring);
+		tuner.join();
+		int direct = countGroups(new StreamSampleSource(new FileInputStream(f)));
+
+		assertEquals(0, ring.getOverrunCount());
+		assertTrue(direct > NB_GROUPS * 9 / 10, direct + " groups");
+		assertEquals(direct, fromRing, 1);
+	}
+}